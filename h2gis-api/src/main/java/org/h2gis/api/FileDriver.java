@@ -71,6 +71,24 @@ public interface FileDriver {
      */
     Object getField(long rowId, int columnId) throws IOException;
 
+    /**
+     * Return all the fields of the given row. Drivers should override this method
+     * in order to read and decode the record only once.
+     *
+     * @param rowId Row index [0-getRowCount()].
+     * @param reuse Array to fill, it is used if its length is at least {@link #getFieldCount()}. Can be null.
+     * @return The row content, reuse or a new array.
+     * @throws java.io.IOException Read error.
+     */
+    default Object[] getRow(long rowId, Object[] reuse) throws IOException {
+        int fieldCount = getFieldCount();
+        Object[] values = reuse != null && reuse.length >= fieldCount ? reuse : new Object[fieldCount];
+        for (int columnId = 0; columnId < fieldCount; columnId++) {
+            values[columnId] = getField(rowId, columnId);
+        }
+        return values;
+    }
+
     /**
      * Insert values to the current row.
      *
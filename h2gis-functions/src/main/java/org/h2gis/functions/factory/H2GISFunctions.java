@@ -54,6 +54,7 @@ import org.h2gis.functions.spatial.convert.*;
 import org.h2gis.functions.spatial.create.*;
 import org.h2gis.functions.spatial.crs.ST_SetSRID;
 import org.h2gis.functions.spatial.crs.ST_Transform;
+import org.h2gis.functions.spatial.crs.ST_TransformTable;
 import org.h2gis.functions.spatial.distance.*;
 import org.h2gis.functions.spatial.earth.ST_GeometryShadow;
 import org.h2gis.functions.spatial.earth.ST_Isovist;
@@ -76,6 +77,7 @@ import org.h2gis.functions.spatial.split.ST_Split;
 import org.h2gis.functions.spatial.split.ST_SubDivide;
 import org.h2gis.functions.spatial.topography.*;
 import org.h2gis.functions.spatial.topology.ST_Graph;
+import org.h2gis.functions.spatial.topology.ST_GraphUpdate;
 import org.h2gis.functions.spatial.topology.ST_Node;
 import org.h2gis.functions.spatial.topology.ST_Polygonize;
 import org.h2gis.functions.spatial.trigonometry.ST_Azimuth;
@@ -175,6 +177,7 @@ public class H2GISFunctions {
                 new ST_EnvelopesIntersect(),
                 new ST_Accum(),
                 new ST_Transform(),
+                new ST_TransformTable(),
                 new ST_SetSRID(),
                 new ST_CoordDim(),
                 new ST_GeometryTypeCode(),
@@ -294,6 +297,7 @@ public class H2GISFunctions {
                 new TSVWrite(),
                 new ST_NPoints(),
                 new ST_Graph(),
+                new ST_GraphUpdate(),
                 new H2GISversion(),
                 new ST_Collect(),
                 new ST_RemoveDuplicatedCoordinates(),
@@ -22,6 +22,7 @@ package org.h2gis.functions.io.asc;
 import org.h2gis.api.DriverFunction;
 import org.h2gis.api.ProgressVisitor;
 import org.h2gis.functions.io.DriverManager;
+import org.h2gis.functions.io.utility.ImportOptions;
 import org.h2gis.functions.io.utility.PRJUtil;
 
 import java.io.File;
@@ -94,7 +95,7 @@ public class AscDriverFunction implements DriverFunction {
     @Override
     public String[] importFile(Connection connection, String tableReference, File fileName, String options, ProgressVisitor progress
     ) throws SQLException, IOException {
-        return importFile(connection, tableReference, fileName, progress);
+        return importFile(connection, tableReference, fileName, options, false, progress);
     }
 
     @Override
@@ -106,9 +107,13 @@ public class AscDriverFunction implements DriverFunction {
     @Override
     public String[] importFile(Connection connection, String tableReference, File fileName, String encoding, boolean deleteTables, ProgressVisitor progress) throws SQLException, IOException {
         DriverManager.check(connection,tableReference,fileName,progress);
+        ImportOptions importOptions = ImportOptions.parse(encoding, AscReaderDriver.BATCH_MAX_SIZE);
         AscReaderDriver ascReaderDriver = new AscReaderDriver();
         ascReaderDriver.setDeleteTable(deleteTables);
-        ascReaderDriver.setEncoding(encoding);
+        if (importOptions.getEncoding() != null) {
+            ascReaderDriver.setEncoding(importOptions.getEncoding());
+        }
+        ascReaderDriver.setImportOptions(importOptions);
         int srid = 0;
         String filePath = fileName.getAbsolutePath();
         final int dotIndex = filePath.lastIndexOf('.');
@@ -21,6 +21,7 @@ package org.h2gis.functions.io.asc;
 
 import org.h2gis.api.EmptyProgressVisitor;
 import org.h2gis.api.ProgressVisitor;
+import org.h2gis.functions.io.utility.ImportOptions;
 import org.h2gis.utilities.TableLocation;
 import org.h2gis.utilities.dbtypes.DBTypes;
 import org.h2gis.utilities.dbtypes.DBUtils;
@@ -65,7 +66,7 @@ import java.util.zip.GZIPInputStream;
  */
 public class AscReaderDriver {
 
-    private static final int BATCH_MAX_SIZE = 100;
+    static final int BATCH_MAX_SIZE = 100;
     private static final int BUFFER_SIZE = 16384;
     private boolean as3DPoint = true;
     private Envelope extractEnvelope = null;
@@ -83,6 +84,7 @@ public class AscReaderDriver {
     private boolean deleteTable = false;
     private String encoding = "UTF-8";
     private boolean importNodata = false;
+    private ImportOptions importOptions = new ImportOptions(BATCH_MAX_SIZE);
 
     /**
      * @return If true ASC is imported as 3D points cloud, Raster is imported in
@@ -300,9 +302,10 @@ public class AscReaderDriver {
                         + "(PK,the_geom, Z) VALUES (?, ?, ?)");
             }
 
+            importOptions.begin(connection);
+            ImportOptions.Batch batch = importOptions.createBatch(connection, preparedStatement);
             // Read data
             GeometryFactory factory = new GeometryFactory();
-            int batchSize = 0;
             int firstRow = 0;
             int firstCol = 0;
             int lastRow = nrows;
@@ -339,13 +342,11 @@ public class AscReaderDriver {
                             if (Math.abs(noData - z) != 0) {
                                 preparedStatement.setObject(2, cell);
                                 preparedStatement.setObject(3, z);
-                                preparedStatement.addBatch();
-                                batchSize++;
+                                batch.addRow(0);
                             } else if (importNodata) {
                                 preparedStatement.setObject(2, cell);
                                 preparedStatement.setObject(3, noData);
-                                preparedStatement.addBatch();
-                                batchSize++;
+                                batch.addRow(0);
                             }
                         } else {
                             //Set the PK
@@ -355,21 +356,13 @@ public class AscReaderDriver {
                             if (Math.abs(noData - z) != 0) {
                                 preparedStatement.setObject(2, cell);
                                 preparedStatement.setObject(3, z);
-                                preparedStatement.addBatch();
-                                batchSize++;
+                                batch.addRow(0);
                             } else if (importNodata) {
                                 preparedStatement.setObject(2, cell);
                                 preparedStatement.setObject(3, noData);
-                                preparedStatement.addBatch();
-                                batchSize++;
+                                batch.addRow(0);
                             }
                         }
-                        if (batchSize >= BATCH_MAX_SIZE) {
-                            preparedStatement.executeBatch();
-                            connection.commit();
-                            preparedStatement.clearBatch();
-                            batchSize = 0;
-                        }
                     }
                 }
                 cellProgress.endStep();
@@ -377,10 +370,7 @@ public class AscReaderDriver {
                     break;
                 }
             }
-            if (batchSize > 0) {
-                preparedStatement.executeBatch();
-                connection.commit();
-            }
+            batch.finish();
             connection.setAutoCommit(true);
             return outputTable;
         } catch (NoSuchElementException | NumberFormatException | IOException | SQLException ex) {
@@ -406,6 +396,15 @@ public class AscReaderDriver {
         this.deleteTable = deleteTable;
     }
 
+    /**
+     * Set the batch and commit policy of the import
+     *
+     * @param importOptions
+     */
+    public void setImportOptions(ImportOptions importOptions) {
+        this.importOptions = importOptions;
+    }
+
     /**
      * Set encoding
      *
@@ -24,6 +24,7 @@ import org.h2.tools.Csv;
 import org.h2gis.api.DriverFunction;
 import org.h2gis.api.ProgressVisitor;
 import org.h2gis.functions.io.DriverManager;
+import org.h2gis.functions.io.utility.ImportOptions;
 import org.h2gis.utilities.JDBCUtilities;
 import org.h2gis.utilities.TableLocation;
 
@@ -199,9 +200,11 @@ public class CSVDriverFunction implements DriverFunction{
             // Skip how many nodes in order to update progression at a step of 1%
             long readFileSizeEachNode = Math.max(1, (fileSize / AVERAGE_NODE_SIZE) / 100);
             int average_row_size = 0;
+            ImportOptions importOptions = ImportOptions.parse(csvOptions, BATCH_MAX_SIZE);
             Csv csv = new Csv();
-            if (csvOptions != null && csvOptions.indexOf('=') >= 0) {
-                csv.setOptions(csvOptions);
+            String formatOptions = importOptions.getFormatOptions();
+            if (formatOptions != null) {
+                csv.setOptions(formatOptions);
             }
             ResultSet reader = csv.read(new BufferedReader(new InputStreamReader(fis)), null);
             ResultSetMetaData metadata = reader.getMetaData();
@@ -227,9 +230,9 @@ public class CSVDriverFunction implements DriverFunction{
             try (Statement stmt = connection.createStatement()) {
                 stmt.execute(createTable.toString());
             }
-            connection.setAutoCommit(false);
+            importOptions.begin(connection);
             PreparedStatement pst = connection.prepareStatement(insertTable.toString());
-            long batchSize = 0;
+            ImportOptions.Batch batch = importOptions.createBatch(connection, pst);
             try {
                 while (reader.next()) {
                     if (progress.isCanceled()) {
@@ -239,14 +242,7 @@ public class CSVDriverFunction implements DriverFunction{
                     for (int i = 0; i < columnCount; i++) {
                         pst.setString(i + 1, reader.getString(i + 1));
                     }
-                    pst.addBatch();
-                    batchSize++;
-                    if (batchSize >= BATCH_MAX_SIZE) {
-                        pst.executeBatch();
-                        connection.commit();
-                        pst.clearBatch();
-                        batchSize = 0;
-                    }
+                    batch.addRow(0);
                     if (average_row_size++ % readFileSizeEachNode == 0) {
                         // Update Progress
                         try {
@@ -256,11 +252,7 @@ public class CSVDriverFunction implements DriverFunction{
                         }
                     }
                 }
-                if (batchSize > 0) {
-                    pst.executeBatch();
-                    connection.commit();
-                    pst.clearBatch();
-                }
+                batch.finish();
             } finally {
                 pst.close();
                 connection.setAutoCommit(true);
@@ -23,6 +23,7 @@ package org.h2gis.functions.io.dbf;
 import org.h2.table.Column;
 import org.h2.util.JdbcUtils;
 import org.h2.value.TypeInfo;
+import org.h2.value.Value;
 import org.h2gis.api.DriverFunction;
 import org.h2gis.api.EmptyProgressVisitor;
 import org.h2gis.api.ProgressVisitor;
@@ -32,6 +33,7 @@ import org.h2gis.functions.io.dbf.internal.DbaseFileException;
 import org.h2gis.functions.io.dbf.internal.DbaseFileHeader;
 import org.h2gis.functions.io.file_table.FileEngine;
 import org.h2gis.functions.io.file_table.H2TableIndex;
+import org.h2gis.functions.io.utility.ImportOptions;
 import org.h2gis.utilities.JDBCUtilities;
 import org.h2gis.utilities.TableLocation;
 
@@ -229,10 +231,11 @@ public class DBFDriverFunction implements DriverFunction {
                 stmt.execute("DROP TABLE IF EXISTS " + outputTable);
                 stmt.close();
             }
+            ImportOptions importOptions = ImportOptions.parse(options, BATCH_MAX_SIZE);
             DBFDriver dbfDriver = new DBFDriver();
-            dbfDriver.initDriverFromFile(fileName, options);
+            dbfDriver.initDriverFromFile(fileName, importOptions.getEncoding());
             DbaseFileHeader dbfHeader = dbfDriver.getDbaseFileHeader();
-            ProgressVisitor copyProgress = progress.subProcess((int) (dbfDriver.getRowCount() / BATCH_MAX_SIZE));
+            ProgressVisitor copyProgress = progress.subProcess((int) (dbfDriver.getRowCount() / importOptions.getBatchSize()));
             if (dbfHeader.getNumFields() == 0) {
                 JDBCUtilities.createEmptyTable(connection, outputTable);
             } else {
@@ -246,33 +249,25 @@ public class DBFDriverFunction implements DriverFunction {
                                 types));
                     }
                     try {
-                        connection.setAutoCommit(false);
+                        importOptions.begin(connection);
                         int columnCount = dbfDriver.getFieldCount();
                         try (PreparedStatement preparedStatement = connection.prepareStatement(
                                 String.format("INSERT INTO %s VALUES ( %s )", outputTable,
                                         getQuestionMark(dbfHeader.getNumFields() + 1)))) {
                             JDBCUtilities.attachCancelResultSet(preparedStatement, progress);
-                            long batchSize = 0;
+                            ImportOptions.Batch batch = importOptions.createBatch(connection, preparedStatement);
+                            Object[] row = null;
                             for (int rowId = 0; rowId < dbfDriver.getRowCount(); rowId++) {
                                 preparedStatement.setObject(1, rowId + 1);
+                                row = dbfDriver.getRow(rowId, row);
                                 for (int columnId = 0; columnId < columnCount; columnId++) {
-                                    JdbcUtils.set(preparedStatement,columnId + 2, dbfDriver.getField(rowId, columnId), null);
+                                    JdbcUtils.set(preparedStatement,columnId + 2, (Value) row[columnId], null);
                                 }
-                                preparedStatement.addBatch();
-                                batchSize++;
-                                if (batchSize >= BATCH_MAX_SIZE) {
-                                    preparedStatement.executeBatch();
-                                    connection.commit();
-                                    preparedStatement.clearBatch();
-                                    batchSize = 0;
+                                if (batch.addRow(dbfDriver.getEstimatedRowSize(rowId))) {
                                     copyProgress.endStep();
                                 }
                             }
-                            if (batchSize > 0) {
-                                preparedStatement.executeBatch();
-                                connection.commit();
-                                preparedStatement.clearBatch();
-                            }
+                            batch.finish();
                         }
                     } catch (Exception ex) {
                         connection.setAutoCommit(true);
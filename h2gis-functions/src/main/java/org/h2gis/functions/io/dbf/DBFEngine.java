@@ -41,6 +41,8 @@ public class DBFEngine extends FileEngine<DBFDriver> {
     @Override
     protected DBFDriver createDriver(File filePath, List<String> args) throws IOException {
         DBFDriver driver = new DBFDriver();
+        // Linked tables are read at random positions
+        driver.setMemoryMapped(true);
         driver.initDriverFromFile(filePath,  args.size() > 1 ? args.get(1) : null);
         return driver;
     }
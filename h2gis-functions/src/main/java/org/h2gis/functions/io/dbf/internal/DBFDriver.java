@@ -22,6 +22,7 @@ package org.h2gis.functions.io.dbf.internal;
 
 import org.h2.value.Value;
 import org.h2gis.api.FileDriver;
+import org.h2gis.functions.io.utility.MappedFile;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -36,6 +37,22 @@ public class DBFDriver implements FileDriver {
     private File dbfFile;
     protected DbaseFileReader dbaseFileReader;
     protected DbaseFileWriter dbaseFileWriter;
+    private boolean memoryMapped = false;
+
+    /**
+     * @param memoryMapped True to read the file through a memory mapping, must be set before
+     * {@link #initDriverFromFile(File, String)}. Recommended for random access.
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    /**
+     * @return True if the file is read through a memory mapping
+     */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
 
     /**
      * Init file header for DBF File
@@ -56,7 +73,16 @@ public class DBFDriver implements FileDriver {
         // Read columns from files metadata
         this.dbfFile = dbfFile;
         FileInputStream fis = new FileInputStream(dbfFile);
-        dbaseFileReader = new DbaseFileReader(fis.getChannel(), forceEncoding);
+        MappedFile mappedFile = memoryMapped ? MappedFile.open(dbfFile) : null;
+        try {
+            dbaseFileReader = new DbaseFileReader(fis.getChannel(), forceEncoding, mappedFile);
+        } catch (IOException | RuntimeException ex) {
+            if (mappedFile != null) {
+                mappedFile.close();
+            }
+            fis.close();
+            throw ex;
+        }
     }
 
     public void initDriver(File dbfFile, DbaseFileHeader dbaseHeader) throws IOException {
@@ -113,7 +139,7 @@ public class DBFDriver implements FileDriver {
     }
 
     @Override
-    public void close() throws IOException {
+    public synchronized void close() throws IOException {
         if(dbaseFileReader != null) {
             dbaseFileReader.close();
         } else if(dbaseFileWriter != null) {
@@ -144,11 +170,21 @@ public class DBFDriver implements FileDriver {
         return totalSize;
     }
 
+    // The reader is not thread safe and the driver of a linked table is shared by all the sessions
+
     @Override
-    public Value getField(long rowId, int columnId) throws IOException {
+    public synchronized Value getField(long rowId, int columnId) throws IOException {
         return dbaseFileReader.getFieldValue((int)rowId, columnId);
     }
 
+    @Override
+    public synchronized Object[] getRow(long rowId, Object[] reuse) throws IOException {
+        int fieldCount = getFieldCount();
+        Object[] values = reuse != null && reuse.length >= fieldCount ? reuse : new Value[fieldCount];
+        dbaseFileReader.readRecord((int) rowId, values, 0);
+        return values;
+    }
+
     /**
      * Get the file reader
      * @return 
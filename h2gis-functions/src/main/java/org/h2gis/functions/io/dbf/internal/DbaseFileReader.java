@@ -20,6 +20,7 @@
 package org.h2gis.functions.io.dbf.internal;
 
 import org.h2.value.*;
+import org.h2gis.functions.io.utility.MappedFile;
 import org.h2gis.functions.io.utility.ReadBufferManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -73,6 +74,7 @@ public class DbaseFileReader {
     private CharsetDecoder decoder;
     private char[] fieldTypes;
     private int[] fieldLengths;
+    private byte[] recordBytes;
     private static final Logger LOG = LoggerFactory.getLogger(DbaseFileReader.class);
 
     /**
@@ -83,16 +85,30 @@ public class DbaseFileReader {
      */
     public DbaseFileReader(FileChannel channel, String forceEncoding)
             throws IOException {
+        this(channel, forceEncoding, null);
+    }
+
+    /**
+     * Creates a new instance of DBaseFileReader
+     *
+     * @param channel The readable channel to use.
+     * @param forceEncoding If defined use this encoding instead of the one defined in dbf header.
+     * @param mappedFile Read the records through this memory mapping of the file instead of a heap buffer, null
+     * for a heap buffer. The reader owns the reference to the mapping and releases it when closed.
+     * @throws java.io.IOException If an error occurs while initializing.
+     */
+    public DbaseFileReader(FileChannel channel, String forceEncoding, MappedFile mappedFile)
+            throws IOException {
         this.channel = channel;
 
         header = new DbaseFileHeader();
         header.readHeader(channel, forceEncoding);
 
-        init();
+        init(mappedFile);
     }
 
-    private void init() throws IOException {
-        buffer = new ReadBufferManager(channel);
+    private void init(MappedFile mappedFile) throws IOException {
+        buffer = ReadBufferManager.open(channel, mappedFile);
 
         // The entire file is in little endian
         buffer.order(ByteOrder.LITTLE_ENDIAN);
@@ -128,6 +144,9 @@ public class DbaseFileReader {
      * @throws java.io.IOException If an error occurs.
      */
     public void close() throws IOException {
+        if (buffer != null) {
+            buffer.close();
+        }
         if (channel != null && channel.isOpen()) {
             channel.close();
         }
@@ -165,6 +184,32 @@ public class DbaseFileReader {
 
     }
 
+    /**
+     * Read all the fields of a record. The record is read at once then each field is decoded.
+     *
+     * @param row Row index
+     * @param values Array to fill
+     * @param offset Position of the first field in values
+     * @throws IOException
+     */
+    public void readRecord(int row, Object[] values, int offset) throws IOException {
+        long recordPosition = header.getHeaderLength() + (long) row * header.getRecordLength() + 1;
+        // Skip the deletion flag
+        int length = header.getRecordLength() - 1;
+        if (recordBytes == null || recordBytes.length != length) {
+            recordBytes = new byte[length];
+        }
+        buffer.get(recordPosition, recordBytes);
+        int fieldPosition = 0;
+        for (int column = 0; column < fieldLengths.length; column++) {
+            charBuffer.clear();
+            decoder.decode(ByteBuffer.wrap(recordBytes, fieldPosition, fieldLengths[column]), charBuffer, true);
+            charBuffer.flip();
+            values[offset + column] = readObject(0, column);
+            fieldPosition += fieldLengths[column];
+        }
+    }
+
     public int getLengthFor(int column) {
         return header.getFieldLength(column);
     }
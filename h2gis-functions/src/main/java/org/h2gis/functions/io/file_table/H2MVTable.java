@@ -61,6 +61,7 @@ public class H2MVTable extends MVTable {
     private static final Logger LOG = LoggerFactory.getLogger(H2MVTable.class);
     private final ArrayList<Index> indexes = new ArrayList<>();
     private Column rowIdColumn;
+    private final RowCache rowCache = new RowCache(RowCache.DEFAULT_MAX_MEMORY);
 
     public H2MVTable(FileDriver driver, CreateTableData data) {
         super(data, data.session.getDatabase().getStore());
@@ -69,7 +70,7 @@ public class H2MVTable extends MVTable {
         indexColumn.sortType = SortOrder.ASCENDING;
         indexes.add(new H2TableIndex(driver,this,this.getId(),
                 data.schema.getUniqueIndexName(data.session, this,data.tableName + "." +
-                        data.columns.get(0).getName() + "_INDEX_"),indexColumn));
+                        data.columns.get(0).getName() + "_INDEX_"),indexColumn, rowCache));
         this.driver = driver;
     }
     /**
@@ -79,7 +80,7 @@ public class H2MVTable extends MVTable {
     public void init(Session session) {        
         IndexColumn indexColumn = new IndexColumn("pk");
         indexColumn.column = new Column("pk", TypeInfo.TYPE_BIGINT);
-        indexes.add(0, new H2TableIndex(driver,this,this.getId(), indexColumn));
+        indexes.add(0, new H2TableIndex(driver,this,this.getId(), indexColumn, rowCache));
     }
 
     @Override
@@ -92,6 +93,7 @@ public class H2MVTable extends MVTable {
         for (Index index : indexes) {
             index.close(session);
         }
+        rowCache.clear();
         try {
             driver.close();
         } catch (IOException ex) {
@@ -128,7 +130,10 @@ public class H2MVTable extends MVTable {
         }
         Index index;
         if (indexType.isSpatial()) {
-            index = new MVSpatialIndex(session.getDatabase(), this, indexId, indexName, cols,  uniqueColumnCount, indexType);
+            index = createFileSpatialIndex(indexName, indexId, cols, indexType);
+            if (index == null) {
+                index = new MVSpatialIndex(session.getDatabase(), this, indexId, indexName, cols, uniqueColumnCount, indexType);
+            }
         } else {
             index = new MVSecondaryIndex(session.getDatabase(), this, indexId, indexName, cols,uniqueColumnCount, indexType);
         }
@@ -151,6 +156,31 @@ public class H2MVTable extends MVTable {
         return index;
     }
 
+    /**
+     * Create a spatial index stored in a file next to the linked file, if the driver supports it
+     * @param indexName Index name
+     * @param indexId Index identifier
+     * @param cols Index columns
+     * @param indexType Index type
+     * @return The index or null if the driver cannot provide a spatial index on this column
+     */
+    private Index createFileSpatialIndex(String indexName, int indexId, IndexColumn[] cols, IndexType indexType) {
+        if (!(driver instanceof SpatialIndexDriver) || cols.length != 1) {
+            return null;
+        }
+        try {
+            // The first column of the table is the primary key, it does not exists in the driver
+            PackedRTree rTree = ((SpatialIndexDriver) driver).getSpatialIndex(cols[0].column.getColumnId() - 1);
+            if (rTree == null) {
+                return null;
+            }
+            return new H2SpatialTableIndex(rTree, this, indexId, indexName, cols[0], indexType);
+        } catch (IOException ex) {
+            LOG.warn("Cannot use the spatial index file, the index will be stored in the database", ex);
+            return null;
+        }
+    }
+
     /**
      * Rebuild the index
      * @param session
@@ -0,0 +1,222 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.file_table;
+
+import org.h2.api.ErrorCode;
+import org.h2.command.query.AllColumnsForPlan;
+import org.h2.engine.Constants;
+import org.h2.engine.SessionLocal;
+import org.h2.index.Cursor;
+import org.h2.index.Index;
+import org.h2.index.IndexCondition;
+import org.h2.index.IndexType;
+import org.h2.index.SpatialIndex;
+import org.h2.message.DbException;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+import org.h2.result.SortOrder;
+import org.h2.table.IndexColumn;
+import org.h2.table.Table;
+import org.h2.table.TableFilter;
+import org.h2.util.geometry.GeometryUtils;
+import org.h2.value.Value;
+import org.h2.value.ValueGeometry;
+
+import java.io.IOException;
+
+/**
+ * Spatial index of a {@link org.h2gis.api.FileDriver} backed by a {@link PackedRTree} file.
+ * The index is read only, it is never stored in the database.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public class H2SpatialTableIndex extends Index implements SpatialIndex {
+
+    private final PackedRTree rTree;
+    private final int geometryColumnId;
+
+    /**
+     * Constructor
+     * @param rTree Index file
+     * @param table Linked table
+     * @param id Index identifier
+     * @param indexName Unique index name
+     * @param indexColumn Geometry column
+     * @param indexType Spatial index type
+     */
+    public H2SpatialTableIndex(PackedRTree rTree, Table table, int id, String indexName, IndexColumn indexColumn,
+                               IndexType indexType) {
+        super(table, id, indexName, new IndexColumn[]{indexColumn}, 0, indexType);
+        this.rTree = rTree;
+        this.geometryColumnId = indexColumn.column.getColumnId();
+    }
+
+    @Override
+    public void checkRename() {
+        // Nothing to check
+    }
+
+    @Override
+    public void close(SessionLocal session) {
+        try {
+            rTree.close();
+        } catch (IOException ex) {
+            throw DbException.get(ErrorCode.IO_EXCEPTION_1, ex);
+        }
+    }
+
+    @Override
+    public void add(SessionLocal session, Row row) {
+        throw DbException.get(ErrorCode.FEATURE_NOT_SUPPORTED_1,"add in file spatial index");
+    }
+
+    @Override
+    public void remove(SessionLocal session, Row row) {
+        throw DbException.get(ErrorCode.FEATURE_NOT_SUPPORTED_1,"remove in file spatial index");
+    }
+
+    @Override
+    public Cursor find(SessionLocal session, SearchRow first, SearchRow last) {
+        return findByGeometry(session, first, last, null);
+    }
+
+    @Override
+    public Cursor findByGeometry(SessionLocal session, SearchRow first, SearchRow last, SearchRow intersection) {
+        if (intersection == null) {
+            return new FileSpatialCursor(table, session, null, table.getRowCount(session));
+        }
+        Value value = intersection.getValue(geometryColumnId);
+        if (!(value instanceof ValueGeometry)) {
+            return new FileSpatialCursor(table, session, null, table.getRowCount(session));
+        }
+        double[] envelope = ((ValueGeometry) value).getEnvelopeNoCopy();
+        if (envelope == null) {
+            // Empty geometry
+            return new FileSpatialCursor(table, session, new int[0], 0);
+        }
+        try {
+            int[] rows = rTree.search(envelope[GeometryUtils.MIN_X], envelope[GeometryUtils.MIN_Y],
+                    envelope[GeometryUtils.MAX_X], envelope[GeometryUtils.MAX_Y]);
+            return new FileSpatialCursor(table, session, rows, rows.length);
+        } catch (IOException ex) {
+            throw DbException.get(ErrorCode.IO_EXCEPTION_1, ex);
+        }
+    }
+
+    @Override
+    public double getCost(SessionLocal session, int[] masks, TableFilter[] tableFilters, int filter, SortOrder sortOrder, AllColumnsForPlan allColumnsForPlan) {
+        // Never use the spatial index without spatial filter
+        if (masks == null || (masks[geometryColumnId] & IndexCondition.SPATIAL_INTERSECTS) != IndexCondition.SPATIAL_INTERSECTS) {
+            return Long.MAX_VALUE;
+        }
+        // Same scale as the scan cost of H2TableIndex, a window query is estimated as a
+        // bounded range: the nodes from the root to a leaf then a quarter of the rows
+        long rowCount = table.getRowCountApproximation(session) + Constants.COST_ROW_OFFSET;
+        return 10 * (rTree.getLevelCount() + rowCount / 4);
+    }
+
+    @Override
+    public void remove(SessionLocal session) {
+        // The index file is kept in order to be reused when the file is linked again
+        close(session);
+    }
+
+    @Override
+    public void truncate(SessionLocal session) {
+        throw DbException.get(ErrorCode.FEATURE_NOT_SUPPORTED_1,"truncate in file spatial index");
+    }
+
+    @Override
+    public boolean needRebuild() {
+        return false;
+    }
+
+    @Override
+    public long getRowCount(SessionLocal session) {
+        return table.getRowCount(session);
+    }
+
+    @Override
+    public long getRowCountApproximation(SessionLocal session) {
+        return table.getRowCountApproximation(session);
+    }
+
+    @Override
+    public long getDiskSpaceUsed() {
+        return rTree.getFile().length();
+    }
+
+    /**
+     * Iterate over the rows found in the spatial index
+     */
+    private static class FileSpatialCursor implements Cursor {
+        private final Table table;
+        private final SessionLocal session;
+        private final int[] rows;
+        private final long rowCount;
+        private long position = -1;
+
+        /**
+         * @param table Linked table
+         * @param session Session
+         * @param rows Row index [0-n[ or null to iterate over all the rows
+         * @param rowCount Number of rows
+         */
+        private FileSpatialCursor(Table table, SessionLocal session, int[] rows, long rowCount) {
+            this.table = table;
+            this.session = session;
+            this.rows = rows;
+            this.rowCount = rowCount;
+        }
+
+        private long getKey() {
+            return rows == null ? position + 1 : rows[(int) position] + 1;
+        }
+
+        @Override
+        public Row get() {
+            return table.getRow(session, getKey());
+        }
+
+        @Override
+        public SearchRow getSearchRow() {
+            return get();
+        }
+
+        @Override
+        public boolean next() {
+            if (position + 1 < rowCount) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean previous() {
+            if (position > 0) {
+                position--;
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -51,6 +51,7 @@ public class H2TableIndex extends Index {
 
     private FileDriver driver;
     private final boolean isScanIndex;
+    private final RowCache rowCache;
 
     /**
      * Constructor for scan index. Hidden column _ROWID_.
@@ -60,9 +61,22 @@ public class H2TableIndex extends Index {
      * @param indexColumn Column to index
      */
     public H2TableIndex(FileDriver driver, Table table, int id,  IndexColumn indexColumn) {  
+        this(driver, table, id, indexColumn, null);
+    }
+
+    /**
+     * Constructor for scan index. Hidden column _ROWID_.
+     * @param driver Linked file driver
+     * @param table Linked table
+     * @param id Index identifier
+     * @param indexColumn Column to index
+     * @param rowCache Decoded rows cache shared by the table indexes, can be null
+     */
+    public H2TableIndex(FileDriver driver, Table table, int id,  IndexColumn indexColumn, RowCache rowCache) {
         super(table, id, table.getName() + "_ROWID_", new IndexColumn[]{indexColumn}, 0,IndexType.createScan(true));
         this.isScanIndex = true;
         this.driver = driver;
+        this.rowCache = rowCache;
     }
 
     /**
@@ -74,9 +88,23 @@ public class H2TableIndex extends Index {
      * @param indexColumn Column to index
      */
     public H2TableIndex(FileDriver driver, Table table, int id, String indexName, IndexColumn indexColumn) {
+            this(driver, table, id, indexName, indexColumn, null);
+    }
+
+    /**
+     * Constructor for primary key index.
+     * @param driver Linked file driver
+     * @param table Linked table
+     * @param id Index identifier
+     * @param indexName Unique index name
+     * @param indexColumn Column to index
+     * @param rowCache Decoded rows cache shared by the table indexes, can be null
+     */
+    public H2TableIndex(FileDriver driver, Table table, int id, String indexName, IndexColumn indexColumn, RowCache rowCache) {
             super(table, id, indexName, new IndexColumn[]{indexColumn}, 0,IndexType.createPrimaryKey(true, false));
             this.isScanIndex = false;
             this.driver = driver;
+            this.rowCache = rowCache;
     }
 
     @Override
@@ -90,7 +118,7 @@ public class H2TableIndex extends Index {
 
     @Override
     public Row getRow(SessionLocal session, long key) {
-        return new DriverRow(driver, key);
+        return new DriverRow(driver, key, rowCache);
     }
 
     @Override
@@ -247,30 +275,53 @@ public class H2TableIndex extends Index {
     }
 
     /**
-     * This class is requiring only field value on demand instead of gathering the full row values from drivers
+     * This class is requiring the field values from the driver only when the first value is read.
+     * The whole record is then decoded at once and kept in the table row cache.
      */
     public static class DriverRow extends Row {
         FileDriver driver;
+        RowCache rowCache;
+        Value[] driverValues;
         int memory; // estimated row size in bytes
 
         public DriverRow(FileDriver driver, long key) {
+            this(driver, key, null);
+        }
+
+        public DriverRow(FileDriver driver, long key, RowCache rowCache) {
             this.driver = driver;
             this.key = key;
+            this.rowCache = rowCache;
         }
 
-        @Override
-        public Value[] getValueList() {
-            try {
-                int columnCount = getColumnCount();
-                Value[] values = new Value[columnCount];
-                values[0] = ValueBigint.get(key);
-                for(int i = 1; i < columnCount; i++) {
-                    values[i] = (Value)(driver.getField(key - 1, i - 1));
+        /**
+         * @return The values of the driver fields, without the primary key
+         */
+        private Value[] getDriverValues() {
+            if (driverValues == null) {
+                Value[] values = rowCache != null ? rowCache.get(key) : null;
+                if (values == null) {
+                    try {
+                        values = (Value[]) driver.getRow(key - 1, new Value[driver.getFieldCount()]);
+                    } catch (IOException ex) {
+                        throw DbException.get(ErrorCode.IO_EXCEPTION_1, ex);
+                    }
+                    if (rowCache != null) {
+                        rowCache.put(key, values);
+                    }
                 }
-                return values;
-            } catch (IOException ex) {
-                throw DbException.get(ErrorCode.IO_EXCEPTION_1, ex);
+                driverValues = values;
             }
+            return driverValues;
+        }
+
+        @Override
+        public Value[] getValueList() {
+            Value[] fields = getDriverValues();
+            Value[] values = new Value[fields.length + 1];
+            values[0] = ValueBigint.get(key);
+            System.arraycopy(fields, 0, values, 1, fields.length);
+            return values;
         }
 
         @Override
@@ -282,17 +333,11 @@ public class H2TableIndex extends Index {
         public Value getValue(int column) {
             if(column == ROWID_INDEX) {
                 return ValueBigint.get(key);
+            } else if(column == 0) {
+                // pk
+                return ValueBigint.get(key);
             } else {
-                try {
-                    if(column == 0) {
-                        // pk
-                        return ValueBigint.get(key);
-                    } else {
-                        return (Value)(driver.getField(key - 1, column - 1));
-                    }
-                } catch (IOException ex) {
-                    throw DbException.get(ErrorCode.IO_EXCEPTION_1,ex);
-                }
+                return getDriverValues()[column - 1];
             }
         }
 
@@ -300,6 +345,7 @@ public class H2TableIndex extends Index {
         public void setValue(int i, Value value) {
             if (i == ROWID_INDEX) {
                 key = value.getLong();
+                driverValues = null;
             }
         }
 
@@ -314,6 +360,7 @@ public class H2TableIndex extends Index {
         @Override
         public void copyFrom(SearchRow source) {
             setKey(source.getKey());
+            driverValues = null;
             int columnCount = getColumnCount();
             for (int i = 0; i < columnCount; i++) {
                 setValue(i, source.getValue(i));
@@ -0,0 +1,469 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.file_table;
+
+import org.h2gis.functions.io.utility.MappedFile;
+import org.h2gis.functions.io.utility.ReadBufferManager;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Static R-Tree stored in a file next to the source data file.
+ * The tree is bulk loaded: items are sorted along a Hilbert curve, then packed
+ * in nodes of {@link #getNodeSize()} entries, level by level up to the root.
+ * Node envelopes are stored as float values rounded outward, so the index can
+ * return false positives but never miss an item.
+ *
+ * The file keeps the length and the last modification date of the source file
+ * in order to be reused as long as the source file is not modified.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public class PackedRTree implements Closeable {
+    /** Index file extension */
+    public static final String FILE_EXTENSION = "h2qix";
+    /** Default number of entries per node */
+    public static final int DEFAULT_NODE_SIZE = 16;
+    private static final int MAGIC = 0x48325152;
+    private static final int VERSION = 1;
+    // magic, version, source length, source last modified, item count, node size, level count
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4;
+    private static final int HILBERT_MAX = (1 << 16) - 1;
+
+    private final File file;
+    private ReadBufferManager buffer;
+    private final int itemCount;
+    private final int nodeSize;
+    private final int[] levelBounds;
+    private final int numNodes;
+    private final long boxesOffset;
+    private final long indicesOffset;
+
+    private PackedRTree(File file, ReadBufferManager buffer, int itemCount, int nodeSize, int[] levelBounds) {
+        this.file = file;
+        this.buffer = buffer;
+        this.itemCount = itemCount;
+        this.nodeSize = nodeSize;
+        this.levelBounds = levelBounds;
+        this.numNodes = levelBounds.length == 0 ? 0 : levelBounds[levelBounds.length - 1];
+        this.boxesOffset = HEADER_SIZE + 4L * levelBounds.length;
+        this.indicesOffset = boxesOffset + 16L * numNodes;
+    }
+
+    /**
+     * Open an existing index file.
+     * @param indexFile Index file path
+     * @param sourceFile Indexed data file
+     * @return The index or null if the index file does not exists or is not up to date with the source file
+     * @throws IOException
+     */
+    public static PackedRTree open(File indexFile, File sourceFile) throws IOException {
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        ReadBufferManager buffer = null;
+        try {
+            // The nodes are read at random positions
+            buffer = new ReadBufferManager(MappedFile.open(indexFile));
+            if (buffer.getLength() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                    || buffer.getLong(8) != sourceFile.length() || buffer.getLong(16) != sourceFile.lastModified()) {
+                buffer.close();
+                return null;
+            }
+            int itemCount = buffer.getInt(24);
+            int nodeSize = buffer.getInt(28);
+            int[] levelBounds = new int[buffer.getInt(32)];
+            for (int i = 0; i < levelBounds.length; i++) {
+                levelBounds[i] = buffer.getInt(HEADER_SIZE + 4L * i);
+            }
+            PackedRTree rTree = new PackedRTree(indexFile, buffer, itemCount, nodeSize, levelBounds);
+            if (buffer.getLength() != rTree.indicesOffset + 4L * rTree.numNodes) {
+                // Truncated file
+                rTree.close();
+                return null;
+            }
+            return rTree;
+        } catch (IOException | RuntimeException ex) {
+            if (buffer != null) {
+                buffer.close();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * @return Number of indexed items
+     */
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * @return Maximum number of entries per node
+     */
+    public int getNodeSize() {
+        return nodeSize;
+    }
+
+    /**
+     * @return Number of levels, including the leaves and the root
+     */
+    public int getLevelCount() {
+        return levelBounds.length;
+    }
+
+    /**
+     * @return Index file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Find the items whose envelope intersects the provided envelope.
+     * @param minX Minimum x of the search envelope
+     * @param minY Minimum y of the search envelope
+     * @param maxX Maximum x of the search envelope
+     * @param maxY Maximum y of the search envelope
+     * @return Item identifiers sorted in ascending order
+     * @throws IOException
+     */
+    public synchronized int[] search(double minX, double minY, double maxX, double maxY) throws IOException {
+        if (numNodes == 0) {
+            return new int[0];
+        }
+        int[] results = new int[16];
+        int resultCount = 0;
+        int[] stack = new int[levelBounds.length * nodeSize + 1];
+        int stackSize = 0;
+        int nodeIndex = numNodes - 1;
+        while (true) {
+            int end = Math.min(nodeIndex + nodeSize, upperBound(nodeIndex));
+            boolean isLeaf = nodeIndex < itemCount;
+            for (int pos = nodeIndex; pos < end; pos++) {
+                long boxPos = boxesOffset + 16L * pos;
+                if (maxX < buffer.getFloat(boxPos) || maxY < buffer.getFloat(boxPos + 4)
+                        || minX > buffer.getFloat(boxPos + 8) || minY > buffer.getFloat(boxPos + 12)) {
+                    continue;
+                }
+                int index = buffer.getInt(indicesOffset + 4L * pos);
+                if (isLeaf) {
+                    if (resultCount == results.length) {
+                        results = Arrays.copyOf(results, resultCount * 2);
+                    }
+                    results[resultCount++] = index;
+                } else {
+                    if (stackSize == stack.length) {
+                        stack = Arrays.copyOf(stack, stackSize * 2);
+                    }
+                    stack[stackSize++] = index;
+                }
+            }
+            if (stackSize == 0) {
+                break;
+            }
+            nodeIndex = stack[--stackSize];
+        }
+        results = Arrays.copyOf(results, resultCount);
+        // Ascending order keep the reads of the source file sequential
+        Arrays.sort(results);
+        return results;
+    }
+
+    /**
+     * @param nodeIndex Node position
+     * @return The end position of the level that contains this node
+     */
+    private int upperBound(int nodeIndex) {
+        for (int levelBound : levelBounds) {
+            if (levelBound > nodeIndex) {
+                return levelBound;
+            }
+        }
+        return numNodes;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (buffer != null) {
+            buffer.close();
+        }
+        buffer = null;
+    }
+
+    /**
+     * Compute the position of a point on the Hilbert curve of order 16.
+     * @param x x in [0-65535]
+     * @param y y in [0-65535]
+     * @return Hilbert curve position
+     */
+    static long hilbert(int x, int y) {
+        int a = x ^ y;
+        int b = 0xFFFF ^ a;
+        int c = 0xFFFF ^ (x | y);
+        int d = x & (y ^ 0xFFFF);
+
+        int A = a | (b >> 1);
+        int B = (a >> 1) ^ a;
+        int C = ((c >> 1) ^ (b & (d >> 1))) ^ c;
+        int D = ((a & (c >> 1)) ^ (d >> 1)) ^ d;
+
+        a = A; b = B; c = C; d = D;
+        A = ((a & (a >> 2)) ^ (b & (b >> 2)));
+        B = ((a & (b >> 2)) ^ (b & ((a ^ b) >> 2)));
+        C ^= ((a & (c >> 2)) ^ (b & (d >> 2)));
+        D ^= ((b & (c >> 2)) ^ ((a ^ b) & (d >> 2)));
+
+        a = A; b = B; c = C; d = D;
+        A = ((a & (a >> 4)) ^ (b & (b >> 4)));
+        B = ((a & (b >> 4)) ^ (b & ((a ^ b) >> 4)));
+        C ^= ((a & (c >> 4)) ^ (b & (d >> 4)));
+        D ^= ((b & (c >> 4)) ^ ((a ^ b) & (d >> 4)));
+
+        a = A; b = B; c = C; d = D;
+        C ^= ((a & (c >> 8)) ^ (b & (d >> 8)));
+        D ^= ((b & (c >> 8)) ^ ((a ^ b) & (d >> 8)));
+
+        a = C ^ (C >> 1);
+        b = D ^ (D >> 1);
+
+        int i0 = x ^ y;
+        int i1 = b | (0xFFFF ^ (i0 | a));
+
+        i0 = (i0 | (i0 << 8)) & 0x00FF00FF;
+        i0 = (i0 | (i0 << 4)) & 0x0F0F0F0F;
+        i0 = (i0 | (i0 << 2)) & 0x33333333;
+        i0 = (i0 | (i0 << 1)) & 0x55555555;
+
+        i1 = (i1 | (i1 << 8)) & 0x00FF00FF;
+        i1 = (i1 | (i1 << 4)) & 0x0F0F0F0F;
+        i1 = (i1 | (i1 << 2)) & 0x33333333;
+        i1 = (i1 | (i1 << 1)) & 0x55555555;
+
+        return ((i1 << 1) | i0) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Collect the item envelopes then write the packed tree.
+     */
+    public static class Builder {
+        private float[] boxes;
+        private int[] ids;
+        private int itemCount = 0;
+        private final int nodeSize;
+        private double minX = Double.POSITIVE_INFINITY;
+        private double minY = Double.POSITIVE_INFINITY;
+        private double maxX = Double.NEGATIVE_INFINITY;
+        private double maxY = Double.NEGATIVE_INFINITY;
+
+        /**
+         * @param capacity Expected number of items
+         * @param nodeSize Maximum number of entries per node
+         */
+        public Builder(int capacity, int nodeSize) {
+            if (nodeSize < 2) {
+                throw new IllegalArgumentException("The node size must be greater than 1");
+            }
+            this.boxes = new float[Math.max(1, capacity) * 4];
+            this.ids = new int[Math.max(1, capacity)];
+            this.nodeSize = nodeSize;
+        }
+
+        /**
+         * Add an item
+         * @param id Item identifier, returned by {@link PackedRTree#search(double, double, double, double)}
+         * @param minX Minimum x of the item envelope
+         * @param minY Minimum y of the item envelope
+         * @param maxX Maximum x of the item envelope
+         * @param maxY Maximum y of the item envelope
+         */
+        public void add(int id, double minX, double minY, double maxX, double maxY) {
+            if (itemCount == ids.length) {
+                ids = Arrays.copyOf(ids, itemCount * 2);
+                boxes = Arrays.copyOf(boxes, itemCount * 8);
+            }
+            int pos = itemCount * 4;
+            boxes[pos] = floorFloat(minX);
+            boxes[pos + 1] = floorFloat(minY);
+            boxes[pos + 2] = ceilFloat(maxX);
+            boxes[pos + 3] = ceilFloat(maxY);
+            ids[itemCount++] = id;
+            this.minX = Math.min(this.minX, minX);
+            this.minY = Math.min(this.minY, minY);
+            this.maxX = Math.max(this.maxX, maxX);
+            this.maxY = Math.max(this.maxY, maxY);
+        }
+
+        private static float floorFloat(double value) {
+            float f = (float) value;
+            return f > value ? Math.nextDown(f) : f;
+        }
+
+        private static float ceilFloat(double value) {
+            float f = (float) value;
+            return f < value ? Math.nextUp(f) : f;
+        }
+
+        /**
+         * Pack the tree and write it. The file is first written in a temporary file then moved to the destination,
+         * so concurrent readers never see a partial index. If the destination folder is read only the index is
+         * written in the temporary folder and deleted on exit.
+         * @param indexFile Index file path
+         * @param sourceFile Indexed data file
+         * @return The opened index
+         * @throws IOException
+         */
+        public PackedRTree write(File indexFile, File sourceFile) throws IOException {
+            // Compute the levels bounds
+            int[] levelBounds;
+            if (itemCount == 0) {
+                levelBounds = new int[0];
+            } else {
+                levelBounds = new int[]{itemCount};
+                int n = itemCount;
+                int numNodes = n;
+                do {
+                    n = (n + nodeSize - 1) / nodeSize;
+                    numNodes += n;
+                    levelBounds = Arrays.copyOf(levelBounds, levelBounds.length + 1);
+                    levelBounds[levelBounds.length - 1] = numNodes;
+                } while (n != 1);
+            }
+            int numNodes = levelBounds.length == 0 ? 0 : levelBounds[levelBounds.length - 1];
+            float[] nodeBoxes = new float[numNodes * 4];
+            int[] indices = new int[numNodes];
+            // Sort items along the Hilbert curve
+            long[] keys = new long[itemCount];
+            double width = maxX - minX;
+            double height = maxY - minY;
+            for (int i = 0; i < itemCount; i++) {
+                int pos = i * 4;
+                int x = width > 0 ? (int) (HILBERT_MAX * ((boxes[pos] + boxes[pos + 2]) / 2 - minX) / width) : 0;
+                int y = height > 0 ? (int) (HILBERT_MAX * ((boxes[pos + 1] + boxes[pos + 3]) / 2 - minY) / height) : 0;
+                x = Math.max(0, Math.min(HILBERT_MAX, x));
+                y = Math.max(0, Math.min(HILBERT_MAX, y));
+                keys[i] = (hilbert(x, y) << 31) | i;
+            }
+            Arrays.sort(keys);
+            for (int i = 0; i < itemCount; i++) {
+                int item = (int) (keys[i] & Integer.MAX_VALUE);
+                System.arraycopy(boxes, item * 4, nodeBoxes, i * 4, 4);
+                indices[i] = ids[item];
+            }
+            keys = null;
+            // Pack the upper levels
+            int pos = 0;
+            for (int level = 0; level < levelBounds.length - 1; level++) {
+                int end = levelBounds[level];
+                int parent = end;
+                while (pos < end) {
+                    int nodeStart = pos;
+                    float nodeMinX = Float.POSITIVE_INFINITY;
+                    float nodeMinY = Float.POSITIVE_INFINITY;
+                    float nodeMaxX = Float.NEGATIVE_INFINITY;
+                    float nodeMaxY = Float.NEGATIVE_INFINITY;
+                    for (int j = 0; j < nodeSize && pos < end; j++, pos++) {
+                        nodeMinX = Math.min(nodeMinX, nodeBoxes[pos * 4]);
+                        nodeMinY = Math.min(nodeMinY, nodeBoxes[pos * 4 + 1]);
+                        nodeMaxX = Math.max(nodeMaxX, nodeBoxes[pos * 4 + 2]);
+                        nodeMaxY = Math.max(nodeMaxY, nodeBoxes[pos * 4 + 3]);
+                    }
+                    nodeBoxes[parent * 4] = nodeMinX;
+                    nodeBoxes[parent * 4 + 1] = nodeMinY;
+                    nodeBoxes[parent * 4 + 2] = nodeMaxX;
+                    nodeBoxes[parent * 4 + 3] = nodeMaxY;
+                    indices[parent] = nodeStart;
+                    parent++;
+                }
+            }
+            File destination = indexFile;
+            File tmpFile;
+            try {
+                tmpFile = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getAbsoluteFile().getParentFile());
+            } catch (IOException ex) {
+                // Read only folder
+                tmpFile = File.createTempFile(indexFile.getName(), ".tmp");
+                tmpFile.deleteOnExit();
+                destination = tmpFile;
+            }
+            try (FileChannel out = FileChannel.open(tmpFile.toPath(), StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer bb = ByteBuffer.allocate(64 * 1024);
+                bb.putInt(MAGIC);
+                bb.putInt(VERSION);
+                bb.putLong(sourceFile.length());
+                bb.putLong(sourceFile.lastModified());
+                bb.putInt(itemCount);
+                bb.putInt(nodeSize);
+                bb.putInt(levelBounds.length);
+                for (int levelBound : levelBounds) {
+                    bb = flushIfFull(out, bb, 4);
+                    bb.putInt(levelBound);
+                }
+                for (float value : nodeBoxes) {
+                    bb = flushIfFull(out, bb, 4);
+                    bb.putFloat(value);
+                }
+                for (int index : indices) {
+                    bb = flushIfFull(out, bb, 4);
+                    bb.putInt(index);
+                }
+                bb.flip();
+                while (bb.hasRemaining()) {
+                    out.write(bb);
+                }
+            }
+            if (destination != tmpFile) {
+                try {
+                    Files.move(tmpFile.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(tmpFile.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            PackedRTree rTree = open(destination, sourceFile);
+            if (rTree == null) {
+                throw new IOException("Unable to read the spatial index file " + destination.getAbsolutePath());
+            }
+            return rTree;
+        }
+
+        private static ByteBuffer flushIfFull(FileChannel out, ByteBuffer bb, int length) throws IOException {
+            if (bb.remaining() < length) {
+                bb.flip();
+                while (bb.hasRemaining()) {
+                    out.write(bb);
+                }
+                bb.clear();
+            }
+            return bb;
+        }
+    }
+}
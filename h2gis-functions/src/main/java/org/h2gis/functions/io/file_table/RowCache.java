@@ -0,0 +1,115 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.file_table;
+
+import org.h2.value.Value;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Least recently used cache of the decoded rows of a {@link org.h2gis.api.FileDriver}.
+ * The cache is bounded by the estimated memory of the values, not by the number of rows.
+ * The cached values are immutable and shared by all the sessions reading the table.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public class RowCache {
+    /** Default memory bound, in bytes */
+    public static final long DEFAULT_MAX_MEMORY = 16 * 1024 * 1024;
+
+    private final long maxMemory;
+    private long memory = 0;
+    private final LinkedHashMap<Long, CachedRow> rows = new LinkedHashMap<>(256, 0.75f, true);
+
+    /**
+     * @param maxMemory Maximum estimated memory of the cached rows, in bytes
+     */
+    public RowCache(long maxMemory) {
+        this.maxMemory = maxMemory;
+    }
+
+    /**
+     * @param key Row key
+     * @return The row values or null if the row is not in the cache
+     */
+    public synchronized Value[] get(long key) {
+        CachedRow row = rows.get(key);
+        return row == null ? null : row.values;
+    }
+
+    /**
+     * Add a row, evict the least recently used rows if the cache is full.
+     * @param key Row key
+     * @param values Row values, must not be modified afterwards
+     */
+    public synchronized void put(long key, Value[] values) {
+        int rowMemory = getMemory(values);
+        if (rowMemory > maxMemory) {
+            return;
+        }
+        CachedRow old = rows.put(key, new CachedRow(values, rowMemory));
+        if (old != null) {
+            memory -= old.memory;
+        }
+        memory += rowMemory;
+        Iterator<CachedRow> it = rows.values().iterator();
+        while (memory > maxMemory && it.hasNext()) {
+            memory -= it.next().memory;
+            it.remove();
+        }
+    }
+
+    /**
+     * Remove all the rows
+     */
+    public synchronized void clear() {
+        rows.clear();
+        memory = 0;
+    }
+
+    /**
+     * @return Estimated memory of the cached rows, in bytes
+     */
+    public synchronized long getMemory() {
+        return memory;
+    }
+
+    private static int getMemory(Value[] values) {
+        int rowMemory = 64 + 8 * values.length;
+        for (Value value : values) {
+            if (value != null) {
+                rowMemory += value.getMemory();
+            }
+        }
+        return rowMemory;
+    }
+
+    private static class CachedRow {
+        final Value[] values;
+        final int memory;
+
+        CachedRow(Value[] values, int memory) {
+            this.values = values;
+            this.memory = memory;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.file_table;
+
+import java.io.IOException;
+
+/**
+ * Implemented by the {@link org.h2gis.api.FileDriver} that are able to provide a file based spatial index.
+ * This index is used by {@link H2MVTable} instead of an index stored in the database.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public interface SpatialIndexDriver {
+
+    /**
+     * Open the spatial index of the given field, build it if necessary.
+     *
+     * @param columnId Field index, as in {@link org.h2gis.api.FileDriver#getField(long, int)}
+     * @return The spatial index, the item identifiers are the row index [0-getRowCount()[,
+     * null if the field cannot be indexed by the driver
+     * @throws IOException Read or write error
+     */
+    PackedRTree getSpatialIndex(int columnId) throws IOException;
+}
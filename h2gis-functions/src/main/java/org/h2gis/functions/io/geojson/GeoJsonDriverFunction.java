@@ -28,6 +28,7 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import org.h2gis.functions.io.DriverManager;
+import org.h2gis.functions.io.utility.ImportOptions;
 import org.h2gis.utilities.dbtypes.DBTypes;
 import org.h2gis.utilities.dbtypes.DBUtils;
 
@@ -84,7 +85,9 @@ public class GeoJsonDriverFunction implements DriverFunction {
         progress  = DriverManager.check(connection, tableReference, fileName, progress);
         GeoJsonWriteDriver geoJsonDriver = new GeoJsonWriteDriver(connection);
         try {
-            geoJsonDriver.write(progress, tableReference, fileName, encoding, deleteFiles);
+            ImportOptions exportOptions = ImportOptions.parse(encoding, GeoJsonReaderDriver.BATCH_MAX_SIZE);
+            geoJsonDriver.setThreads(exportOptions.getIntOption(GeoJsonWriteDriver.THREADS, 1));
+            geoJsonDriver.write(progress, tableReference, fileName, exportOptions.getEncoding(), deleteFiles);
             return new String[]{fileName.getAbsolutePath()};
         }catch (SQLException|IOException ex){
             throw new SQLException(ex);
@@ -100,7 +103,8 @@ public class GeoJsonDriverFunction implements DriverFunction {
     @Override
     public String[] importFile(Connection connection, String tableReference, File fileName, String options, boolean deleteTables, ProgressVisitor progress) throws SQLException, IOException {
         DriverManager.check(connection,tableReference,fileName,progress);
-        GeoJsonReaderDriver geoJsonReaderDriver = new GeoJsonReaderDriver(connection, fileName, options, deleteTables);
+        GeoJsonReaderDriver geoJsonReaderDriver = new GeoJsonReaderDriver(connection, fileName,
+                ImportOptions.parse(options, GeoJsonReaderDriver.BATCH_MAX_SIZE), deleteTables);
         String outputTable =  geoJsonReaderDriver.read(progress, tableReference);
         if(outputTable==null){
             return null;
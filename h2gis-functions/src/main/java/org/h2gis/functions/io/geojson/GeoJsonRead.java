@@ -24,10 +24,12 @@ import org.h2.value.ValueBoolean;
 import org.h2.value.ValueNull;
 import org.h2.value.ValueVarchar;
 import org.h2gis.api.AbstractFunction;
+import org.h2gis.api.DriverFunction;
 import org.h2gis.api.EmptyProgressVisitor;
 import org.h2gis.api.ScalarFunction;
 import org.h2gis.utilities.URIUtilities;
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
@@ -41,7 +43,7 @@ import java.sql.SQLException;
 public class GeoJsonRead extends AbstractFunction implements ScalarFunction {
 
     public GeoJsonRead() {
-        addProperty(PROP_REMARKS, "Import a GeoJSON 1.0 file."
+        addProperty(PROP_REMARKS, "Import a GeoJSON 1.0 file or a GeoJSON text sequence (.geojsonl, .geojsons)."
                 + "\n GeoJsonRead(..."
                 + "\n Supported arguments :"
                 + "\n path of the file"
@@ -114,7 +116,8 @@ public class GeoJsonRead extends AbstractFunction implements ScalarFunction {
     }
 
     public static void importTable(Connection connection, String fileName, String tableReference, String encoding, boolean deleteTable) throws IOException, SQLException {
-        GeoJsonDriverFunction gjdf = new GeoJsonDriverFunction();
-        gjdf.importFile(connection, tableReference, URIUtilities.fileFromString(fileName), encoding, deleteTable, new EmptyProgressVisitor());
+        File file = URIUtilities.fileFromString(fileName);
+        DriverFunction gjdf = GeoJsonSeqDriverFunction.isSequenceFile(file) ? new GeoJsonSeqDriverFunction() : new GeoJsonDriverFunction();
+        gjdf.importFile(connection, tableReference, file, encoding, deleteTable, new EmptyProgressVisitor());
     }
 }
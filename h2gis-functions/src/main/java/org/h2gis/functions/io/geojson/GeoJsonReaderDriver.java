@@ -23,9 +23,9 @@ import com.fasterxml.jackson.core.JsonEncoding;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
-import org.h2.value.ValueGeometry;
 import org.h2gis.api.EmptyProgressVisitor;
 import org.h2gis.api.ProgressVisitor;
+import org.h2gis.functions.io.utility.ImportOptions;
 import org.h2gis.utilities.JDBCUtilities;
 import org.h2gis.utilities.TableLocation;
 import org.h2gis.utilities.dbtypes.DBTypes;
@@ -35,6 +35,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.sql.*;
 import java.util.*;
 import java.util.zip.GZIPInputStream;
@@ -56,7 +57,7 @@ public class GeoJsonReaderDriver {
 
     private final File fileName;
     private final Connection connection;
-    private static GeometryFactory GF;
+    private GeometryFactory GF;
     private final String encoding;
     private final boolean deleteTable;
     private PreparedStatement preparedStatement = null;
@@ -73,11 +74,24 @@ public class GeoJsonReaderDriver {
     private String tableLocation;
     private LinkedHashMap<String, Integer> cachedColumnNames;
     private LinkedHashMap<String, Integer> cachedColumnIndex;
-    private static final int BATCH_MAX_SIZE = 100;
+    static final int BATCH_MAX_SIZE = 100;
+    private final ImportOptions importOptions;
 
     private Set finalGeometryTypes;
     private JsonEncoding jsonEncoding;
     private boolean hasZ =false;
+    /**
+     * Import option, true to read the file once and adapt the table schema while the features are inserted
+     */
+    public static final String SINGLE_PASS = "singlePass";
+    private boolean singlePass = false;
+    // Single pass state
+    private String stagingTable;
+    private boolean parsed2D = false;
+    private boolean parsed3D = false;
+    private Set<String> stagedColumns;
+    private List<Object[]> pendingRows;
+    private ImportOptions.Batch singlePassBatch;
 
     /**
      * Driver to import a GeoJSON file into a spatial table.
@@ -92,6 +106,50 @@ public class GeoJsonReaderDriver {
         this.fileName = fileName;
         this.encoding = encoding;
         this.deleteTable = deleteTable;
+        this.importOptions = new ImportOptions(BATCH_MAX_SIZE);
+    }
+
+    /**
+     * Driver to import a GeoJSON file into a spatial table.
+     *
+     * @param connection
+     * @param fileName
+     * @param importOptions Encoding, batch and commit policy of the import
+     * @param deleteTable
+     */
+    public GeoJsonReaderDriver(Connection connection, File fileName, ImportOptions importOptions, boolean deleteTable) {
+        this.connection = connection;
+        this.fileName = fileName;
+        this.encoding = importOptions.getEncoding();
+        this.deleteTable = deleteTable;
+        this.importOptions = importOptions;
+        this.singlePass = Boolean.parseBoolean(importOptions.getOption(SINGLE_PASS));
+    }
+
+    /**
+     * Parser of the features of a part of a GeoJSON file. The caller reads the file and delegates
+     * each feature, the metadata and the values are kept by this instance.
+     *
+     * @param dbType Database type used to format the column names
+     * @param tableLocation Table to create, null if the parser only reads features
+     * @param srid SRID of the parsed geometries
+     */
+    GeoJsonReaderDriver(DBTypes dbType, String tableLocation, int srid) {
+        this(null, null, (String) null, false);
+        this.dbType = dbType;
+        this.tableLocation = tableLocation;
+        this.parsedSRID = srid;
+        this.GF = new GeometryFactory(new PrecisionModel(), srid);
+        this.cachedColumnNames = new LinkedHashMap<>();
+        this.finalGeometryTypes = new HashSet<String>();
+    }
+
+    /**
+     * @param singlePass True to read the file once. The features are loaded into a staging table whose
+     * properties are stored as text, the table is then created from it with the types that have been found.
+     */
+    public void setSinglePass(boolean singlePass) {
+        this.singlePass = singlePass;
     }
 
     /**
@@ -139,7 +197,10 @@ public class GeoJsonReaderDriver {
                 this.progress = progress.subProcess(100);
                 init();
                 FileInputStream fis = new FileInputStream(fileName);
-                if (parseMetadata(new GZIPInputStream(fis))) {
+                if (singlePass) {
+                    parseSinglePass(fis, new GZIPInputStream(fis));
+                    return tableLocation;
+                } else if (parseMetadata(new GZIPInputStream(fis))) {
                     connection.setAutoCommit(false);
                     GF = new GeometryFactory(new PrecisionModel(), parsedSRID);
                     fis = new FileInputStream(fileName);
@@ -186,7 +247,10 @@ public class GeoJsonReaderDriver {
     private void parseGeoJson(ProgressVisitor progress) throws SQLException, IOException {
         this.progress = progress.subProcess(100);
         init();
-        if (parseMetadata(new FileInputStream(fileName))) {
+        if (singlePass) {
+            FileInputStream fis = new FileInputStream(fileName);
+            parseSinglePass(fis, fis);
+        } else if (parseMetadata(new FileInputStream(fileName))) {
             connection.setAutoCommit(false);
             GF = new GeometryFactory(new PrecisionModel(), parsedSRID);
             parseData(new FileInputStream(fileName));
@@ -272,46 +336,10 @@ public class GeoJsonReaderDriver {
         }
         // Now we create the table if there is at least one geometry field.          
         if (hasGeometryField) {
-            StringBuilder createTable = new StringBuilder();
-            createTable.append("CREATE TABLE ");
-            createTable.append(tableLocation);
-            createTable.append(" (");
-            //Add the geometry column
-            String finalGeometryType = GeoJsonField.GEOMETRY;
-            if (finalGeometryTypes.size() == 1) {
-                finalGeometryType = (String) finalGeometryTypes.iterator().next();
-                createTable.append("THE_GEOM GEOMETRY(").append(hasZ?finalGeometryType+"Z":finalGeometryType).append(",").append(parsedSRID).append(")");
-            }
-            else{
-                createTable.append("THE_GEOM GEOMETRY(GEOMETRY,").append(parsedSRID).append(")");
-            }
-            cachedColumnIndex = new LinkedHashMap<>();
-            StringBuilder insertTable = new StringBuilder("INSERT INTO ");
-            insertTable.append(tableLocation).append(" VALUES(ST_GeomFromWKB(?, ").append(parsedSRID).append(")");
-
-            int i = 1;
-            for (Map.Entry<String, Integer> columns : cachedColumnNames.entrySet()) {
-                String columnName = columns.getKey();
-                Integer columnType = columns.getValue();
-                cachedColumnIndex.put(columnName, i++);
-                createTable.append(",").append(columns.getKey()).append(" ").append(getSQLTypeName(columnType));
-                if(columnType==Types.ARRAY){
-                    if(dbType == DBTypes.H2 || dbType == DBTypes.H2GIS){
-                        insertTable.append(",").append(" ? FORMAT json");
-                    }else {
-                        insertTable.append(",").append("cast(? as json)");
-                    }
-                }else {
-                    insertTable.append(",").append("?");
-                }
-            }
-            createTable.append(")");
-            insertTable.append(")");
-
             try (Statement stmt = connection.createStatement()) {
-                stmt.execute(createTable.toString());
+                stmt.execute(getCreateTableSQL());
             }
-            preparedStatement = connection.prepareStatement(insertTable.toString());
+            preparedStatement = connection.prepareStatement(getInsertSQL());
             return true;
 
         } else {
@@ -320,6 +348,61 @@ public class GeoJsonReaderDriver {
 
     }
 
+    /**
+     * Build the create table query from the collected metadata
+     *
+     * @return The create table query
+     * @throws SQLException
+     */
+    String getCreateTableSQL() throws SQLException {
+        StringBuilder createTable = new StringBuilder();
+        createTable.append("CREATE TABLE ");
+        createTable.append(tableLocation);
+        createTable.append(" (");
+        //Add the geometry column
+        String finalGeometryType = GeoJsonField.GEOMETRY;
+        if (finalGeometryTypes.size() == 1) {
+            finalGeometryType = (String) finalGeometryTypes.iterator().next();
+            createTable.append("THE_GEOM GEOMETRY(").append(hasZ?finalGeometryType+"Z":finalGeometryType).append(",").append(parsedSRID).append(")");
+        }
+        else{
+            createTable.append("THE_GEOM GEOMETRY(GEOMETRY,").append(parsedSRID).append(")");
+        }
+        for (Map.Entry<String, Integer> columns : cachedColumnNames.entrySet()) {
+            createTable.append(",").append(columns.getKey()).append(" ").append(getSQLTypeName(columns.getValue()));
+        }
+        createTable.append(")");
+        return createTable.toString();
+    }
+
+    /**
+     * Build the insert query from the columns found in the properties and set the index of the columns.
+     * The geometry is bound as a JTS geometry that carries the SRID, H2 stores it without calling a
+     * SQL function and the PostGIS JDBC wrapper writes it with its binary writer.
+     *
+     * @return The insert query
+     */
+    String getInsertSQL() {
+        cachedColumnIndex = new LinkedHashMap<>();
+        StringBuilder insertTable = new StringBuilder("INSERT INTO ");
+        insertTable.append(tableLocation).append(" VALUES(?");
+        int i = 1;
+        for (Map.Entry<String, Integer> columns : cachedColumnNames.entrySet()) {
+            cachedColumnIndex.put(columns.getKey(), i++);
+            if (columns.getValue() == Types.ARRAY) {
+                if (dbType == DBTypes.H2 || dbType == DBTypes.H2GIS) {
+                    insertTable.append(",").append(" ? FORMAT json");
+                } else {
+                    insertTable.append(",").append("cast(? as json)");
+                }
+            } else {
+                insertTable.append(",").append("?");
+            }
+        }
+        insertTable.append(")");
+        return insertTable.toString();
+    }
+
     /**
      * Parses the featureCollection to collect the field properties
      *
@@ -375,7 +458,7 @@ public class GeoJsonReaderDriver {
      *
      * @param jp
      */
-    private void parseFeatureMetadata(JsonParser jp) throws IOException, SQLException {
+    void parseFeatureMetadata(JsonParser jp) throws IOException, SQLException {
         jp.nextToken();
         String field = jp.getText();
         //Avoid all token which are not 'properties', 'geometry', 'type'
@@ -746,65 +829,123 @@ public class GeoJsonReaderDriver {
             fieldName = TableLocation.quoteIdentifier(fieldName, dbType);
             JsonToken value = jp.nextToken();
             if (null != value) {
-                Integer dataType = cachedColumnNames.get(fieldName);
-                boolean hasField = cachedColumnNames.containsKey(fieldName);
-                switch (value) {
-                    case VALUE_STRING:
-                        cachedColumnNames.put(fieldName, Types.VARCHAR);
-                        break;
-                    case VALUE_TRUE:
-                    case VALUE_FALSE:
-                        if (!hasField || dataType == Types.NULL) {
-                            cachedColumnNames.put(fieldName, Types.BOOLEAN);
-                        } else if (hasField && dataType != Types.BOOLEAN) {
-                            cachedColumnNames.put(fieldName, Types.VARCHAR);
-                        }
-                        break;
-                    case VALUE_NUMBER_FLOAT:
-                        if (!hasField || dataType == Types.NULL) {
-                            cachedColumnNames.put(fieldName, Types.DOUBLE);
-                        } else if (hasField) {
-                            if (dataType == Types.BIGINT) {
-                                cachedColumnNames.put(fieldName, Types.DOUBLE);
-                            } else if (dataType != Types.DOUBLE) {
-                                cachedColumnNames.put(fieldName, Types.VARCHAR);
-                            }
-                        }
-                        break;
-                    case VALUE_NUMBER_INT:
-                        if (!hasField || dataType == Types.NULL) {
-                            cachedColumnNames.put(fieldName, Types.BIGINT);
-                        } else if (hasField && dataType != Types.BIGINT && dataType!=Types.DOUBLE) {
-                            cachedColumnNames.put(fieldName, Types.VARCHAR);
-                        }
-                        break;
-                    case START_ARRAY:
-                        if (!hasField || dataType == Types.NULL) {
-                            cachedColumnNames.put(fieldName, Types.ARRAY);
-                        } else if (hasField && dataType != Types.ARRAY) {
-                            cachedColumnNames.put(fieldName, Types.VARCHAR);
-                        }
-                        parseArrayMetadata(jp);
-                        break;
-                    case START_OBJECT:
-                        if (!hasField || dataType == Types.NULL) {
-                            cachedColumnNames.put(fieldName, Types.ARRAY);
-                        }
-                        else if (hasField && dataType != Types.ARRAY) {
-                            cachedColumnNames.put(fieldName, Types.VARCHAR);
-                        }
-                        parseObjectMetadata(jp);
-                        break;
-                    case VALUE_NULL:
-                        if (!hasField) {
-                            cachedColumnNames.put(fieldName, Types.NULL);
-                        }
-                    //ignore other value
-                    default:
-                        break;
+                updateColumnType(fieldName, value);
+                if (value == JsonToken.START_ARRAY) {
+                    parseArrayMetadata(jp);
+                } else if (value == JsonToken.START_OBJECT) {
+                    parseObjectMetadata(jp);
+                }
+            }
+        }
+    }
+
+    /**
+     * Update the type of a column with the type of a property value. The type is widened
+     * to VARCHAR when the values are not compatible.
+     *
+     * @param fieldName Column name
+     * @param value Token of the value
+     * @return True if the column is new or if its type has changed
+     */
+    private boolean updateColumnType(String fieldName, JsonToken value) {
+        Integer dataType = cachedColumnNames.get(fieldName);
+        boolean hasField = cachedColumnNames.containsKey(fieldName);
+        Integer newType = dataType;
+        switch (value) {
+            case VALUE_STRING:
+                newType = Types.VARCHAR;
+                break;
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                if (!hasField || dataType == Types.NULL) {
+                    newType = Types.BOOLEAN;
+                } else if (dataType != Types.BOOLEAN) {
+                    newType = Types.VARCHAR;
+                }
+                break;
+            case VALUE_NUMBER_FLOAT:
+                if (!hasField || dataType == Types.NULL) {
+                    newType = Types.DOUBLE;
+                } else if (dataType == Types.BIGINT) {
+                    newType = Types.DOUBLE;
+                } else if (dataType != Types.DOUBLE) {
+                    newType = Types.VARCHAR;
+                }
+                break;
+            case VALUE_NUMBER_INT:
+                if (!hasField || dataType == Types.NULL) {
+                    newType = Types.BIGINT;
+                } else if (dataType != Types.BIGINT && dataType != Types.DOUBLE) {
+                    newType = Types.VARCHAR;
                 }
+                break;
+            case START_ARRAY:
+            case START_OBJECT:
+                if (!hasField || dataType == Types.NULL) {
+                    newType = Types.ARRAY;
+                } else if (dataType != Types.ARRAY) {
+                    newType = Types.VARCHAR;
+                }
+                break;
+            case VALUE_NULL:
+                if (!hasField) {
+                    newType = Types.NULL;
+                }
+                break;
+            //ignore other value
+            default:
+                break;
+        }
+        if (newType == null || newType.equals(dataType)) {
+            return false;
+        }
+        cachedColumnNames.put(fieldName, newType);
+        return true;
+    }
+
+    /**
+     * Add the metadata collected by another parser. The column types are widened with the
+     * same rules as the values of a single file.
+     *
+     * @param other Parser of the next part of the file
+     */
+    void mergeMetadata(GeoJsonReaderDriver other) {
+        for (Map.Entry<String, Integer> column : other.cachedColumnNames.entrySet()) {
+            switch (column.getValue()) {
+                case Types.VARCHAR:
+                    updateColumnType(column.getKey(), JsonToken.VALUE_STRING);
+                    break;
+                case Types.BOOLEAN:
+                    updateColumnType(column.getKey(), JsonToken.VALUE_TRUE);
+                    break;
+                case Types.DOUBLE:
+                    updateColumnType(column.getKey(), JsonToken.VALUE_NUMBER_FLOAT);
+                    break;
+                case Types.BIGINT:
+                    updateColumnType(column.getKey(), JsonToken.VALUE_NUMBER_INT);
+                    break;
+                case Types.ARRAY:
+                    updateColumnType(column.getKey(), JsonToken.START_ARRAY);
+                    break;
+                default:
+                    updateColumnType(column.getKey(), JsonToken.VALUE_NULL);
+                    break;
             }
         }
+        finalGeometryTypes.addAll(other.finalGeometryTypes);
+        hasZ |= other.hasZ;
+        hasGeometryField |= other.hasGeometryField;
+    }
+
+    /**
+     * Use the schema merged from all the parts of the file to parse the values of a part
+     *
+     * @param schema Parser holding the merged metadata, its column index is set by {@link #getInsertSQL()}
+     */
+    void setSchema(GeoJsonReaderDriver schema) {
+        this.cachedColumnIndex = schema.cachedColumnIndex;
+        // The 2D coordinates are set to z=0 when any part of the file is 3D
+        this.hasZ = schema.hasZ;
     }
 
     /**
@@ -836,7 +977,21 @@ public class GeoJsonReaderDriver {
      *
      * @param jp
      */
-    private Object[] parseFeature(JsonParser jp) throws IOException, SQLException {
+    Object[] parseFeature(JsonParser jp) throws IOException, SQLException {
+        Object[] values = new Object[cachedColumnIndex.size() + 1];
+        parseFeature(jp, values, null);
+        return values;
+    }
+
+    /**
+     * Parses a feature
+     *
+     * @param jp
+     * @param values Geometry and property values, ordered by column index
+     * @param properties If not null the property values are stored by name and the column
+     * types are updated, only the geometry is set in the values
+     */
+    private void parseFeature(JsonParser jp, Object[] values, Map<String, Object> properties) throws IOException, SQLException {
         jp.nextToken();
         String field = jp.getText();
         //Avoid all token which are not 'properties', 'geometry', 'type'
@@ -850,12 +1005,11 @@ public class GeoJsonReaderDriver {
             jp.nextToken();
             field = jp.getText();
         }
-        Object[] values = new Object[cachedColumnIndex.size() + 1];
         if (field.equalsIgnoreCase(GeoJsonField.GEOMETRY)) {
             setGeometry(jp, values);
             jp.nextToken();
         } else if (field.equalsIgnoreCase(GeoJsonField.PROPERTIES)) {
-            parseProperties(jp, values);
+            parseProperties(jp, values, properties);
             jp.nextToken();
         }
         //If there is only one geometry field in the feature them the next
@@ -878,12 +1032,10 @@ public class GeoJsonReaderDriver {
             if (secondParam.equalsIgnoreCase(GeoJsonField.GEOMETRY)) {
                 setGeometry(jp, values);
             } else if (secondParam.equalsIgnoreCase(GeoJsonField.PROPERTIES)) {
-                parseProperties(jp, values);
+                parseProperties(jp, values, properties);
             }
             while (jp.nextToken() != JsonToken.END_OBJECT); //END_OBJECT } feature
         }
-
-        return values;
     }
 
     /**
@@ -894,12 +1046,13 @@ public class GeoJsonReaderDriver {
      * @throws SQLException
      */
     private void setGeometry(JsonParser jp, Object[] values) throws IOException, SQLException {
+        hasGeometryField = true;
         if (jp.nextToken() != JsonToken.VALUE_NULL) {//START_OBJECT { in case of null geometry
             jp.nextToken(); // FIELD_NAME type     
             jp.nextToken(); //VALUE_STRING Point
             String geometryType = jp.getText();
             Geometry geom = parseGeometry(jp, geometryType);
-            values[0] = ValueGeometry.getFromGeometry(geom).getBytesNoCopy();
+            values[0] = geom;
         }
     }
 
@@ -915,6 +1068,9 @@ public class GeoJsonReaderDriver {
      * @return Geometry
      */
     private Geometry parseGeometry(JsonParser jp, String geometryType) throws IOException, SQLException {
+        if (singlePass) {
+            finalGeometryTypes.add(geometryType.toLowerCase());
+        }
         if (geometryType.equalsIgnoreCase(GeoJsonField.POINT)) {
             return parsePoint(jp);
         } else if (geometryType.equalsIgnoreCase(GeoJsonField.MULTIPOINT)) {
@@ -943,7 +1099,7 @@ public class GeoJsonReaderDriver {
      *
      * @param jp
      */
-    private void parseProperties(JsonParser jp, Object[] values) throws IOException, SQLException {
+    private void parseProperties(JsonParser jp, Object[] values, Map<String, Object> properties) throws IOException, SQLException {
         jp.nextToken();//START_OBJECT {
         while (jp.nextToken() != JsonToken.END_OBJECT) {
             String fieldName = TableLocation.capsIdentifier(jp.getText(), dbType); //FIELD_NAME columnName
@@ -951,49 +1107,53 @@ public class GeoJsonReaderDriver {
             JsonToken value = jp.nextToken();
             if (null == value) {
                 //ignore other value
-            } else switch (value) {
-                case VALUE_STRING:
-                    values[cachedColumnIndex.get(fieldName)] = jp.getText();
-                    break;
-                case VALUE_TRUE:
-                    values[cachedColumnIndex.get(fieldName)] = jp.getValueAsBoolean();
-                    break;
-                case VALUE_FALSE:
-                    values[cachedColumnIndex.get(fieldName)] = jp.getValueAsBoolean();
-                    break;
-                case VALUE_NUMBER_FLOAT:
-                    values[cachedColumnIndex.get(fieldName)] = jp.getValueAsDouble();
-                    break;
-                case VALUE_NUMBER_INT:
-                    if(jp.getNumberType() == JsonParser.NumberType.INT) {
-                        values[cachedColumnIndex.get(fieldName)] = jp.getIntValue();
-                    } else {
-                        values[cachedColumnIndex.get(fieldName)] = jp.getLongValue();
-                    }   break;
-                case START_ARRAY:
-                    {
-                        StringBuilder sb = new StringBuilder();
-                        parseArray(jp, sb);
-                        values[cachedColumnIndex.get(fieldName)] = sb.toString();
-                        break;
-                    }
-                case START_OBJECT:
-                    {
-                        StringBuilder sb = new StringBuilder();
-                        parseObject(jp, sb);
-                        values[cachedColumnIndex.get(fieldName)] = sb.toString();
-                        break;
-                    }
-                case VALUE_NULL:
-                    values[cachedColumnIndex.get(fieldName)] = null;
-                    break;
-                default:
-                    break;
+            } else if (properties != null) {
+                updateColumnType(fieldName, value);
+                properties.put(fieldName, getPropertyValue(jp, value));
+            } else {
+                values[cachedColumnIndex.get(fieldName)] = getPropertyValue(jp, value);
             }
         }
 
     }
 
+    /**
+     * Read the value of a property
+     *
+     * @param jp
+     * @param value Current token
+     * @return The value, arrays and objects are returned as JSON strings
+     */
+    private Object getPropertyValue(JsonParser jp, JsonToken value) throws IOException {
+        switch (value) {
+            case VALUE_STRING:
+                return jp.getText();
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                return jp.getValueAsBoolean();
+            case VALUE_NUMBER_FLOAT:
+                return jp.getValueAsDouble();
+            case VALUE_NUMBER_INT:
+                if (jp.getNumberType() == JsonParser.NumberType.INT) {
+                    return jp.getIntValue();
+                } else {
+                    return jp.getLongValue();
+                }
+            case START_ARRAY: {
+                StringBuilder sb = new StringBuilder();
+                parseArray(jp, sb);
+                return sb.toString();
+            }
+            case START_OBJECT: {
+                StringBuilder sb = new StringBuilder();
+                parseObject(jp, sb);
+                return sb.toString();
+            }
+            default:
+                return null;
+        }
+    }
+
     /**
      * Parses the featureCollection
      *
@@ -1016,10 +1176,10 @@ public class GeoJsonReaderDriver {
             firstParam = skipCRS(jp);
         }
         if (firstParam.equalsIgnoreCase(GeoJsonField.FEATURES)) {
-            connection.setAutoCommit(false);
+            importOptions.begin(connection);
             jp.nextToken(); // START_ARRAY [
             JsonToken token = jp.nextToken(); // START_OBJECT {
-            long batchSize = 0;
+            ImportOptions.Batch batch = importOptions.createBatch(connection, preparedStatement);
             while (token != JsonToken.END_ARRAY) {
                 jp.nextToken(); // FIELD_NAME type
                 jp.nextToken(); // VALUE_STRING Feature
@@ -1032,28 +1192,17 @@ public class GeoJsonReaderDriver {
                     for (int i = 0; i < values.length; i++) {
                         preparedStatement.setObject(i + 1, values[i]);
                     }
-                    preparedStatement.addBatch();
-                    batchSize++;
-                    if (batchSize >= BATCH_MAX_SIZE) {
-                        preparedStatement.executeBatch();
-                        connection.commit();
-                        preparedStatement.clearBatch();
-                        batchSize = 0;
-                    }
+                    batch.addRow(0);
 
                     token = jp.nextToken(); //START_OBJECT new feature                    
                     featureCounter++;
                     progress.setStep((featureCounter / nbFeature) * 100);
-                    if (batchSize > 0) {
-                            preparedStatement.executeBatch();
-                            connection.commit();
-                            preparedStatement.clearBatch();
-                    }
                 } else {
                     connection.setAutoCommit(true);
                     throw new SQLException("Malformed GeoJSON file. Expected 'Feature', found '" + geomType + "'");
                 }
             }
+            batch.finish();
             connection.setAutoCommit(true);
             //LOOP END_ARRAY ]
             log.info(featureCounter-1 + " geojson features have been imported.");
@@ -1345,16 +1494,308 @@ public class GeoJsonReaderDriver {
                 coord = new Coordinate(x, y, 0);
             }else {
                 coord = new Coordinate(x, y);
+                parsed2D = true;
             }
         } else {
             double z = jp.getDoubleValue();
             jp.nextToken(); // exit array
             coord = new Coordinate(x, y, z);
+            parsed3D = true;
         }
         jp.nextToken();
         return coord;
     }
 
+    /**
+     * Parses the GeoJSON file once. The features are buffered by batch and inserted into a staging table
+     * with an unconstrained geometry column and text properties, so a wider type never alters it. A new
+     * property adds a column, which copies the staging table on H2. When all the features have been
+     * inserted the table is created from the staging table in one statement, with the property types, the
+     * geometry type, the dimension and the SRID that have been found.
+     *
+     * @param fis File stream, used to follow the progression
+     * @param is Stream to parse
+     * @throws IOException
+     * @throws SQLException
+     */
+    private void parseSinglePass(FileInputStream fis, InputStream is) throws IOException, SQLException {
+        cachedColumnNames = new LinkedHashMap<>();
+        cachedColumnIndex = new LinkedHashMap<>();
+        stagedColumns = new HashSet<>();
+        finalGeometryTypes = new HashSet<String>();
+        pendingRows = new ArrayList<>();
+        GF = new GeometryFactory(new PrecisionModel(), parsedSRID);
+        boolean imported = false;
+        try (JsonParser jp = jsFactory.createParser(new InputStreamReader(is, jsonEncoding.getJavaName()))) {
+            jp.nextToken();//START_OBJECT
+            jp.nextToken(); // field_name (type)
+            String dataType = jp.getText();
+            if (dataType.equalsIgnoreCase(GeoJsonField.TYPE)) {
+                jp.nextToken(); // value_string (FeatureCollection)
+                dataType = jp.getText();
+                if (dataType.equalsIgnoreCase(GeoJsonField.FEATURECOLLECTION)) {
+                    jp.nextToken(); // FIELD_NAME features
+                    parseFeaturesSinglePass(jp, fis.getChannel());
+                } else if (dataType.equalsIgnoreCase(GeoJsonField.FEATURE)) {
+                    Object[] values = new Object[1];
+                    Map<String, Object> properties = new HashMap<>();
+                    parseFeature(jp, values, properties);
+                    addFeature(values[0], properties);
+                } else {
+                    hasGeometryField = true;
+                    Geometry geom = parseGeometry(jp, dataType);
+                    addFeature(geom, Collections.emptyMap());
+                }
+            } else if (dataType.equalsIgnoreCase(GeoJsonField.FEATURES)) {
+                parseFeaturesSinglePass(jp, fis.getChannel());
+            } else {
+                throw new SQLException("Malformed GeoJSON file. Found '" + dataType + "'");
+            }
+            finishSinglePass();
+            imported = true;
+        } finally {
+            is.close();
+            if (preparedStatement != null) {
+                preparedStatement.close();
+            }
+            if (!imported && stagingTable != null) {
+                connection.setAutoCommit(true);
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("DROP TABLE IF EXISTS " + stagingTable);
+                }
+            }
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Parses the featureCollection in a single pass
+     *
+     * @param jp
+     * @param fc Channel of the file, used to follow the progression
+     * @throws IOException
+     * @throws SQLException
+     */
+    private void parseFeaturesSinglePass(JsonParser jp, FileChannel fc) throws IOException, SQLException {
+        // Passes all the properties until "Feature" object is found
+        while (!jp.getText().equalsIgnoreCase(GeoJsonField.FEATURES)
+                && !jp.getText().equalsIgnoreCase(GeoJsonField.CRS)) {
+            jp.nextToken();
+            if (jp.getCurrentToken().equals(JsonToken.START_ARRAY) || jp.getCurrentToken().equals(JsonToken.START_OBJECT)) {
+                jp.skipChildren();
+            }
+            jp.nextToken();
+        }
+        if (jp.getText().equalsIgnoreCase(GeoJsonField.CRS)) {
+            parsedSRID = readCRS(jp);
+            GF = new GeometryFactory(new PrecisionModel(), parsedSRID);
+        }
+        if (jp.getText().equalsIgnoreCase(GeoJsonField.FEATURES)) {
+            long fileSize = fc.size();
+            jp.nextToken(); // START_ARRAY [
+            JsonToken token = jp.nextToken(); // START_OBJECT {
+            while (token != JsonToken.END_ARRAY) {
+                jp.nextToken(); // FIELD_NAME type
+                jp.nextToken(); // VALUE_STRING Feature
+                String geomType = jp.getText();
+                if (geomType.equalsIgnoreCase(GeoJsonField.FEATURE)) {
+                    if (progress.isCanceled()) {
+                        throw new SQLException("Canceled by user");
+                    }
+                    Object[] values = new Object[1];
+                    Map<String, Object> properties = new HashMap<>();
+                    parseFeature(jp, values, properties);
+                    addFeature(values[0], properties);
+                    token = jp.nextToken(); //START_OBJECT new feature
+                    if (featureCounter++ % AVERAGE_NODE_SIZE == 0 && fileSize > 0) {
+                        progress.setStep((int) ((fc.position() * 100) / fileSize));
+                    }
+                } else {
+                    throw new SQLException("Malformed GeoJSON file. Expected 'Feature', found '" + geomType + "'");
+                }
+            }
+            //LOOP END_ARRAY ]
+            // The crs member can follow the features, the SRID is set when the table is created
+            token = jp.nextToken(); // FIELD_NAME or END_OBJECT
+            while (token == JsonToken.FIELD_NAME) {
+                if (jp.getText().equalsIgnoreCase(GeoJsonField.CRS)) {
+                    parsedSRID = readCRS(jp);
+                    token = jp.getCurrentToken();
+                } else {
+                    token = jp.nextToken();
+                    if (token == JsonToken.START_ARRAY || token == JsonToken.START_OBJECT) {
+                        jp.skipChildren();
+                    }
+                    token = jp.nextToken();
+                }
+            }
+            log.info(featureCounter - 1 + " geojson features have been imported.");
+        } else {
+            throw new SQLException("Malformed GeoJSON file. Expected 'features', found '" + jp.getText() + "'");
+        }
+    }
+
+    /**
+     * Buffer a feature, the buffered features are inserted when the batch is full
+     *
+     * @param geometry Geometry value
+     * @param properties Property values by column name
+     * @throws SQLException
+     */
+    private void addFeature(Object geometry, Map<String, Object> properties) throws SQLException {
+        pendingRows.add(new Object[]{geometry, properties});
+        if (pendingRows.size() >= importOptions.getBatchSize()) {
+            flushPendingRows();
+        }
+    }
+
+    /**
+     * Create or alter the staging table according to the properties found so far then insert the
+     * buffered features
+     *
+     * @throws SQLException
+     */
+    private void flushPendingRows() throws SQLException {
+        if (stagingTable == null) {
+            createStagingTable();
+        } else if (stagedColumns.size() < cachedColumnNames.size()) {
+            alterStagingTable();
+        }
+        for (Object[] row : pendingRows) {
+            preparedStatement.setObject(1, row[0]);
+            Map<String, Object> properties = (Map<String, Object>) row[1];
+            for (Map.Entry<String, Integer> column : cachedColumnIndex.entrySet()) {
+                preparedStatement.setObject(column.getValue() + 1, properties.get(column.getKey()));
+            }
+            singlePassBatch.addRow(0);
+        }
+        pendingRows.clear();
+    }
+
+    /**
+     * Create the staging table with an unconstrained geometry column and text properties
+     *
+     * @throws SQLException
+     */
+    private void createStagingTable() throws SQLException {
+        TableLocation target = TableLocation.parse(tableLocation, dbType);
+        String staging = new TableLocation(target.getCatalog(), target.getSchema(),
+                target.getTable() + "_" + System.currentTimeMillis(), dbType).toString();
+        StringBuilder createTable = new StringBuilder();
+        createTable.append("CREATE TABLE ");
+        createTable.append(staging);
+        createTable.append(" (THE_GEOM GEOMETRY");
+        for (String columnName : cachedColumnNames.keySet()) {
+            createTable.append(",").append(columnName).append(" VARCHAR");
+            stagedColumns.add(columnName);
+        }
+        createTable.append(")");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(createTable.toString());
+        }
+        stagingTable = staging;
+        importOptions.begin(connection);
+        prepareStagingInsert();
+    }
+
+    /**
+     * Add the new columns to the staging table, the insert query is prepared again
+     *
+     * @throws SQLException
+     */
+    private void alterStagingTable() throws SQLException {
+        singlePassBatch.finish();
+        preparedStatement.close();
+        try (Statement stmt = connection.createStatement()) {
+            for (String columnName : cachedColumnNames.keySet()) {
+                if (stagedColumns.add(columnName)) {
+                    stmt.execute("ALTER TABLE " + stagingTable + " ADD COLUMN " + columnName + " VARCHAR");
+                }
+            }
+        }
+        prepareStagingInsert();
+    }
+
+    /**
+     * Prepare the insert query of the staging table and set the index of the columns
+     *
+     * @throws SQLException
+     */
+    private void prepareStagingInsert() throws SQLException {
+        cachedColumnIndex = new LinkedHashMap<>();
+        StringBuilder insertTable = new StringBuilder("INSERT INTO ");
+        insertTable.append(stagingTable).append(" VALUES(?");
+        int i = 1;
+        for (String columnName : cachedColumnNames.keySet()) {
+            cachedColumnIndex.put(columnName, i++);
+            insertTable.append(",?");
+        }
+        insertTable.append(")");
+        preparedStatement = connection.prepareStatement(insertTable.toString());
+        singlePassBatch = importOptions.createBatch(connection, preparedStatement);
+    }
+
+    /**
+     * Insert the remaining features then create the table from the staging table
+     *
+     * @throws SQLException
+     */
+    private void finishSinglePass() throws SQLException {
+        if (stagingTable == null || !pendingRows.isEmpty()) {
+            flushPendingRows();
+        }
+        singlePassBatch.finish();
+        if (!hasGeometryField) {
+            throw new SQLException("The geojson file  does not contain any geometry.");
+        }
+        String geometry = "THE_GEOM";
+        if (parsed2D && parsed3D) {
+            // Same as the two pass import, a missing z is set to 0 when the file contains 3D coordinates
+            geometry = "ST_Force3D(" + geometry + ")";
+        }
+        if (GF.getSRID() != parsedSRID) {
+            // The crs member follows the features
+            geometry = "ST_SetSRID(" + geometry + "," + parsedSRID + ")";
+        }
+        String geometryType = GeoJsonField.GEOMETRY;
+        if (finalGeometryTypes.size() == 1) {
+            String finalGeometryType = (String) finalGeometryTypes.iterator().next();
+            geometryType = parsed3D ? finalGeometryType + "Z" : finalGeometryType;
+        }
+        StringBuilder createTable = new StringBuilder();
+        createTable.append("CREATE TABLE ").append(tableLocation).append(" AS SELECT CAST(").append(geometry)
+                .append(" AS GEOMETRY(").append(geometryType).append(",").append(parsedSRID).append(")) THE_GEOM");
+        for (Map.Entry<String, Integer> columns : cachedColumnNames.entrySet()) {
+            String columnName = columns.getKey();
+            switch (columns.getValue()) {
+                case Types.NULL:
+                case Types.VARCHAR:
+                    createTable.append(",").append(columnName);
+                    break;
+                case Types.ARRAY:
+                    if (dbType == DBTypes.H2 || dbType == DBTypes.H2GIS) {
+                        createTable.append(",").append(columnName).append(" FORMAT JSON ").append(columnName);
+                    } else {
+                        createTable.append(",CAST(").append(columnName).append(" AS JSON) ").append(columnName);
+                    }
+                    break;
+                default:
+                    createTable.append(",CAST(").append(columnName).append(" AS ")
+                            .append(getSQLTypeName(columns.getValue())).append(") ").append(columnName);
+                    break;
+            }
+        }
+        createTable.append(" FROM ").append(stagingTable);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(createTable.toString());
+            stmt.execute("DROP TABLE " + stagingTable);
+        }
+        stagingTable = null;
+        if (!connection.getAutoCommit()) {
+            connection.commit();
+        }
+    }
+
     /**
      * Parses the GeoJSON data and set the values to the table.
      *
@@ -1442,7 +1883,7 @@ public class GeoJsonReaderDriver {
      * @param jp
      * @return
      */
-    private int readCRS(JsonParser jp) throws IOException, SQLException {
+    int readCRS(JsonParser jp) throws IOException, SQLException {
         int srid = 0;
         jp.nextToken(); //START_OBJECT {
         jp.nextToken();// crs type
@@ -0,0 +1,145 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.geojson;
+
+import org.h2gis.api.DriverFunction;
+import org.h2gis.api.ProgressVisitor;
+import org.h2gis.functions.io.DriverManager;
+import org.h2gis.functions.io.utility.ImportOptions;
+import org.h2gis.utilities.FileUtilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Driver to import and export GeoJSON text sequences, one feature per line. The lines are
+ * newline delimited (.geojsonl) or prefixed by a record separator as defined by RFC 8142 (.geojsons).
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public class GeoJsonSeqDriverFunction implements DriverFunction {
+
+    @Override
+    public IMPORT_DRIVER_TYPE getImportDriverType() {
+        return IMPORT_DRIVER_TYPE.COPY;
+    }
+
+    @Override
+    public String[] getImportFormats() {
+        return new String[]{"geojsonl", "geojsons"};
+    }
+
+    @Override
+    public String[] getExportFormats() {
+        return new String[]{"geojsonl", "geojsons"};
+    }
+
+    @Override
+    public String getFormatDescription(String format) {
+        if (format.equalsIgnoreCase("geojsonl")) {
+            return "Newline delimited GeoJSON";
+        } else if (format.equalsIgnoreCase("geojsons")) {
+            return "GeoJSON Text Sequences (RFC 8142)";
+        } else {
+            return "";
+        }
+    }
+
+    @Override
+    public boolean isSpatialFormat(String extension) {
+        return extension.equalsIgnoreCase("geojsonl") || extension.equalsIgnoreCase("geojsons");
+    }
+
+    /**
+     * @param fileName File path
+     * @return True if the file is a GeoJSON text sequence
+     */
+    public static boolean isSequenceFile(File fileName) {
+        return FileUtilities.isExtensionWellFormated(fileName, "geojsonl")
+                || FileUtilities.isExtensionWellFormated(fileName, "geojsons");
+    }
+
+    /**
+     * GeoJSON text sequences are always UTF-8 encoded
+     *
+     * @param encoding Encoding set by the user, may be null
+     * @throws SQLException If the encoding is not UTF-8
+     */
+    static void checkEncoding(String encoding) throws SQLException {
+        if (encoding != null && !encoding.isEmpty() && !encoding.replace("-", "").equalsIgnoreCase("UTF8")) {
+            throw new SQLException("GeoJSON text sequences only support the UTF-8 encoding");
+        }
+    }
+
+    @Override
+    public String[] exportTable(Connection connection, String tableReference, File fileName, ProgressVisitor progress) throws SQLException, IOException {
+        return exportTable(connection, tableReference, fileName, null, false, progress);
+    }
+
+    @Override
+    public String[] exportTable(Connection connection, String tableReference, File fileName, boolean deleteFiles, ProgressVisitor progress) throws SQLException, IOException {
+        return exportTable(connection, tableReference, fileName, null, deleteFiles, progress);
+    }
+
+    @Override
+    public String[] exportTable(Connection connection, String tableReference, File fileName, String encoding, boolean deleteFiles, ProgressVisitor progress) throws SQLException {
+        progress = DriverManager.check(connection, tableReference, fileName, progress);
+        GeoJsonWriteDriver geoJsonDriver = new GeoJsonWriteDriver(connection);
+        try {
+            ImportOptions exportOptions = ImportOptions.parse(encoding, GeoJsonSeqReaderDriver.BATCH_MAX_SIZE);
+            geoJsonDriver.setThreads(exportOptions.getIntOption(GeoJsonWriteDriver.THREADS, 1));
+            geoJsonDriver.write(progress, tableReference, fileName, exportOptions.getEncoding(), deleteFiles);
+            return new String[]{fileName.getAbsolutePath()};
+        } catch (SQLException | IOException ex) {
+            throw new SQLException(ex);
+        }
+    }
+
+    @Override
+    public String[] exportTable(Connection connection, String tableReference, File fileName, String encoding, ProgressVisitor progress) throws SQLException, IOException {
+        return exportTable(connection, tableReference, fileName, encoding, false, progress);
+    }
+
+    @Override
+    public String[] importFile(Connection connection, String tableReference, File fileName, String options, boolean deleteTables, ProgressVisitor progress) throws SQLException, IOException {
+        DriverManager.check(connection, tableReference, fileName, progress);
+        GeoJsonSeqReaderDriver reader = new GeoJsonSeqReaderDriver(connection, fileName,
+                ImportOptions.parse(options, GeoJsonSeqReaderDriver.BATCH_MAX_SIZE), deleteTables);
+        return new String[]{reader.read(progress, tableReference)};
+    }
+
+    @Override
+    public String[] importFile(Connection connection, String tableReference, File fileName, ProgressVisitor progress) throws SQLException, IOException {
+        return importFile(connection, tableReference, fileName, null, false, progress);
+    }
+
+    @Override
+    public String[] importFile(Connection connection, String tableReference, File fileName, String options, ProgressVisitor progress) throws SQLException, IOException {
+        return importFile(connection, tableReference, fileName, options, false, progress);
+    }
+
+    @Override
+    public String[] importFile(Connection connection, String tableReference, File fileName, boolean deleteTables, ProgressVisitor progress) throws SQLException, IOException {
+        return importFile(connection, tableReference, fileName, null, deleteTables, progress);
+    }
+}
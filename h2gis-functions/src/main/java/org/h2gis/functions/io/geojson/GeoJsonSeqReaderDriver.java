@@ -0,0 +1,439 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.geojson;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.h2gis.api.ProgressVisitor;
+import org.h2gis.functions.io.utility.ImportOptions;
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.dbtypes.DBTypes;
+import org.h2gis.utilities.dbtypes.DBUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Driver to import a GeoJSON text sequence into a spatial table.
+ *
+ * Each line of the file holds one feature. The file is split in byte ranges that end on a
+ * line feed, so a range can be parsed without reading the previous ones. The ranges are parsed
+ * twice, to collect the columns then to read the values, by worker threads when the threads
+ * option is set. The rows are inserted in the file order by the calling thread.
+ *
+ * The CRS is read from the first feature, as written by {@link GeoJsonWriteDriver}.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public class GeoJsonSeqReaderDriver {
+
+    /**
+     * Number of threads that parse the ranges of the file
+     */
+    public static final String THREADS = "threads";
+    /**
+     * Size in bytes of the ranges of the file
+     */
+    public static final String RANGE_SIZE = "rangeSize";
+    static final int BATCH_MAX_SIZE = 100;
+    private static final int DEFAULT_RANGE_SIZE = 4 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte LINE_FEED = '\n';
+    private static final byte RECORD_SEPARATOR = 0x1E;
+    private static final JsonFactory JS_FACTORY = new JsonFactory()
+            .configure(JsonParser.Feature.ALLOW_COMMENTS, true)
+            .configure(JsonParser.Feature.ALLOW_SINGLE_QUOTES, true)
+            .configure(JsonParser.Feature.ALLOW_NON_NUMERIC_NUMBERS, true);
+    private static final Logger log = LoggerFactory.getLogger(GeoJsonSeqReaderDriver.class);
+
+    private final Connection connection;
+    private final File fileName;
+    private final ImportOptions importOptions;
+    private final boolean deleteTable;
+    private DBTypes dbType;
+
+    /**
+     * Driver to import a GeoJSON text sequence into a spatial table.
+     *
+     * @param connection
+     * @param fileName
+     * @param importOptions Batch and commit policy of the import, threads and range size
+     * @param deleteTable
+     */
+    public GeoJsonSeqReaderDriver(Connection connection, File fileName, ImportOptions importOptions, boolean deleteTable) {
+        this.connection = connection;
+        this.fileName = fileName;
+        this.importOptions = importOptions;
+        this.deleteTable = deleteTable;
+    }
+
+    /**
+     * Read the GeoJSON text sequence.
+     *
+     * @param progress
+     * @param tableReference
+     * @return The name of the created table
+     * @throws java.sql.SQLException
+     * @throws java.io.IOException
+     */
+    public String read(ProgressVisitor progress, String tableReference) throws SQLException, IOException {
+        if (fileName == null || !GeoJsonSeqDriverFunction.isSequenceFile(fileName)) {
+            throw new SQLException("The geojson sequence read driver supports only geojsonl or geojsons extensions");
+        }
+        if (!fileName.exists()) {
+            throw new SQLException("The file " + fileName + " doesn't exist ");
+        }
+        GeoJsonSeqDriverFunction.checkEncoding(importOptions.getEncoding());
+        dbType = DBUtils.getDBType(connection);
+        String tableLocation = TableLocation.parse(tableReference, dbType).toString();
+        if (deleteTable) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("DROP TABLE IF EXISTS " + tableLocation);
+            }
+        }
+        if (fileName.length() == 0) {
+            JDBCUtilities.createEmptyTable(connection, tableLocation);
+            return tableLocation;
+        }
+        int threads = Math.max(1, importOptions.getIntOption(THREADS, 1));
+        int rangeSize = Math.max(1, importOptions.getIntOption(RANGE_SIZE, DEFAULT_RANGE_SIZE));
+        ExecutorService executor = null;
+        if (threads > 1) {
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "GeoJsonSeqRead worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        try (FileInputStream fis = new FileInputStream(fileName)) {
+            FileChannel channel = fis.getChannel();
+            long[] bounds = splitRanges(channel, rangeSize);
+            int rangeCount = bounds.length - 1;
+            ProgressVisitor copyProgress = progress.subProcess(rangeCount * 2);
+            final int srid = readSRID(channel, bounds[1]);
+
+            // Collect the columns of all the ranges
+            List<Future<GeoJsonReaderDriver>> metadata = new ArrayList<>(rangeCount);
+            for (int i = 0; i < rangeCount; i++) {
+                final long start = bounds[i];
+                final long end = bounds[i + 1];
+                metadata.add(submit(executor, () -> parseRangeMetadata(channel, start, end, srid)));
+            }
+            GeoJsonReaderDriver schema = new GeoJsonReaderDriver(dbType, tableLocation, srid);
+            try {
+                for (Future<GeoJsonReaderDriver> future : metadata) {
+                    schema.mergeMetadata(future.get());
+                    copyProgress.endStep();
+                }
+            } finally {
+                // Stop parsing the other ranges if one of them failed
+                for (Future<GeoJsonReaderDriver> future : metadata) {
+                    future.cancel(true);
+                }
+            }
+            if (!schema.hasGeometryField) {
+                throw new SQLException("The geojson file  does not contain any geometry.");
+            }
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute(schema.getCreateTableSQL());
+            }
+
+            // Parse the values, the number of parsed ranges waiting to be inserted is bounded
+            try (PreparedStatement preparedStatement = connection.prepareStatement(schema.getInsertSQL())) {
+                importOptions.begin(connection);
+                ImportOptions.Batch batch = importOptions.createBatch(connection, preparedStatement);
+                ArrayDeque<Future<List<Object[]>>> pending = new ArrayDeque<>();
+                long featureCount = 0;
+                int nextRange = 0;
+                try {
+                    while (nextRange < rangeCount || !pending.isEmpty()) {
+                        while (nextRange < rangeCount && pending.size() < threads * 2) {
+                            final long start = bounds[nextRange];
+                            final long end = bounds[nextRange + 1];
+                            pending.add(submit(executor, () -> parseRange(channel, start, end, srid, schema)));
+                            nextRange++;
+                        }
+                        if (progress.isCanceled()) {
+                            throw new SQLException("Canceled by user");
+                        }
+                        int rangeId = nextRange - pending.size();
+                        List<Object[]> rows = pending.poll().get();
+                        long rowSize = rows.isEmpty() ? 0 : (bounds[rangeId + 1] - bounds[rangeId]) / rows.size();
+                        for (Object[] values : rows) {
+                            for (int i = 0; i < values.length; i++) {
+                                preparedStatement.setObject(i + 1, values[i]);
+                            }
+                            batch.addRow(rowSize);
+                        }
+                        featureCount += rows.size();
+                        copyProgress.endStep();
+                    }
+                } finally {
+                    for (Future<List<Object[]>> future : pending) {
+                        future.cancel(true);
+                    }
+                }
+                batch.finish();
+                connection.setAutoCommit(true);
+                log.info(featureCount + " geojson features have been imported.");
+            }
+            return tableLocation;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("The import has been interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            } else if (ex.getCause() instanceof SQLException) {
+                throw (SQLException) ex.getCause();
+            }
+            throw new SQLException(ex.getCause());
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+                try {
+                    executor.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Run the task on a worker thread, or on the calling thread if there is no executor
+     */
+    private static <T> Future<T> submit(ExecutorService executor, Callable<T> task) {
+        if (executor != null) {
+            return executor.submit(task);
+        }
+        FutureTask<T> future = new FutureTask<>(task);
+        future.run();
+        return future;
+    }
+
+    /**
+     * Split the file in ranges of about rangeSize bytes, each range ends after a line feed
+     *
+     * @param channel File channel
+     * @param rangeSize Minimal size of a range
+     * @return The first byte of each range followed by the size of the file
+     */
+    static long[] splitRanges(FileChannel channel, int rangeSize) throws IOException {
+        long size = channel.size();
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long start = 0;
+        while (start + rangeSize < size) {
+            long position = start + rangeSize;
+            long next = -1;
+            while (next < 0 && position < size) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (buffer.get(i) == LINE_FEED) {
+                        next = position + i + 1;
+                        break;
+                    }
+                }
+                position += read;
+            }
+            if (next < 0 || next >= size) {
+                break;
+            }
+            bounds.add(next);
+            start = next;
+        }
+        bounds.add(size);
+        long[] ret = new long[bounds.size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = bounds.get(i);
+        }
+        return ret;
+    }
+
+    /**
+     * Read the CRS of the first feature
+     *
+     * @param channel File channel
+     * @param end End of the first range
+     * @return The SRID, 0 if the first feature has no CRS
+     */
+    private int readSRID(FileChannel channel, long end) throws IOException, SQLException {
+        try (JsonParser jp = JS_FACTORY.createParser(new RangeInputStream(channel, 0, end))) {
+            if (jp.nextToken() == JsonToken.START_OBJECT) {
+                while (jp.nextToken() == JsonToken.FIELD_NAME) {
+                    if (jp.getText().equalsIgnoreCase(GeoJsonField.CRS)) {
+                        return new GeoJsonReaderDriver(dbType, null, 0).readCRS(jp);
+                    }
+                    jp.nextToken();
+                    jp.skipChildren();
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Collect the columns and the geometry types of a range
+     */
+    private GeoJsonReaderDriver parseRangeMetadata(FileChannel channel, long start, long end, int srid)
+            throws IOException, SQLException {
+        GeoJsonReaderDriver parser = new GeoJsonReaderDriver(dbType, null, srid);
+        try (JsonParser jp = JS_FACTORY.createParser(new RangeInputStream(channel, start, end))) {
+            while (nextFeature(jp)) {
+                parser.parseFeatureMetadata(jp);
+            }
+        }
+        return parser;
+    }
+
+    /**
+     * Parse the features of a range
+     *
+     * @return The geometry and the property values of each feature, ordered by column index
+     */
+    private List<Object[]> parseRange(FileChannel channel, long start, long end, int srid,
+                                      GeoJsonReaderDriver schema) throws IOException, SQLException {
+        GeoJsonReaderDriver parser = new GeoJsonReaderDriver(dbType, null, srid);
+        parser.setSchema(schema);
+        List<Object[]> rows = new ArrayList<>();
+        try (JsonParser jp = JS_FACTORY.createParser(new RangeInputStream(channel, start, end))) {
+            while (nextFeature(jp)) {
+                rows.add(parser.parseFeature(jp));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Move the parser to the type of the next feature
+     *
+     * Syntax:
+     *
+     * { "type": "Feature", ...
+     *
+     * @param jp
+     * @return False at the end of the range
+     */
+    private static boolean nextFeature(JsonParser jp) throws IOException, SQLException {
+        JsonToken token = jp.nextToken(); // START_OBJECT {
+        if (token == null) {
+            return false;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new SQLException("Malformed GeoJSON sequence. Expected a feature, found '" + jp.getText() + "'");
+        }
+        jp.nextToken(); // FIELD_NAME type
+        jp.nextToken(); // VALUE_STRING Feature
+        String type = jp.getText();
+        if (!type.equalsIgnoreCase(GeoJsonField.FEATURE)) {
+            throw new SQLException("Malformed GeoJSON sequence. Expected 'Feature', found '" + type + "'");
+        }
+        return true;
+    }
+
+    /**
+     * Bytes of a range of the file. The channel is read with positional reads so it can be shared
+     * by the workers. The record separators are read as white spaces.
+     */
+    private static class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final long end;
+        private long position;
+
+        RangeInputStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+            buffer.limit(0);
+        }
+
+        private boolean fill() throws IOException {
+            if (position >= end) {
+                return false;
+            }
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                return false;
+            }
+            position += read;
+            buffer.flip();
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] == RECORD_SEPARATOR) {
+                    bytes[i] = ' ';
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!buffer.hasRemaining() && !fill()) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining() && !fill()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+    }
+}
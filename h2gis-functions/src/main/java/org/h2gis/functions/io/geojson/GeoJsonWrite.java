@@ -21,10 +21,12 @@ package org.h2gis.functions.io.geojson;
 
 
 import org.h2gis.api.AbstractFunction;
+import org.h2gis.api.DriverFunction;
 import org.h2gis.api.EmptyProgressVisitor;
 import org.h2gis.api.ScalarFunction;
 import org.h2gis.utilities.URIUtilities;
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
@@ -37,7 +39,7 @@ import java.sql.SQLException;
 public class GeoJsonWrite extends AbstractFunction implements ScalarFunction {
 
     public GeoJsonWrite() {
-        addProperty(PROP_REMARKS, "Export a spatial table to a GeoJSON 1.0 file.\n "
+        addProperty(PROP_REMARKS, "Export a spatial table to a GeoJSON 1.0 file or a GeoJSON text sequence (.geojsonl, .geojsons).\n "
                 + "\nGeoJsonWrite(..."
                 + "\n Supported arguments :"
                 + "\n path of the file, table name"
@@ -61,8 +63,9 @@ public class GeoJsonWrite extends AbstractFunction implements ScalarFunction {
      * @throws SQLException
      */
     public static void exportTable(Connection connection, String fileName, String tableReference, boolean deleteFile) throws IOException, SQLException {
-        GeoJsonDriverFunction geoJsonDriver = new GeoJsonDriverFunction();
-        geoJsonDriver.exportTable(connection, tableReference, URIUtilities.fileFromString(fileName),  deleteFile, new EmptyProgressVisitor());
+        File file = URIUtilities.fileFromString(fileName);
+        DriverFunction geoJsonDriver = GeoJsonSeqDriverFunction.isSequenceFile(file) ? new GeoJsonSeqDriverFunction() : new GeoJsonDriverFunction();
+        geoJsonDriver.exportTable(connection, tableReference, file,  deleteFile, new EmptyProgressVisitor());
     }
 
     /**
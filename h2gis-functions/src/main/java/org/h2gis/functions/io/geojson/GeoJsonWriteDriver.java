@@ -30,10 +30,18 @@ import org.h2gis.utilities.dbtypes.DBUtils;
 import org.locationtech.jts.geom.*;
 
 import java.io.*;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.sql.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPOutputStream;
@@ -67,6 +75,13 @@ public class GeoJsonWriteDriver {
     private Map<String, String> cachedSpecificColumns;
     private LinkedHashMap<String, Integer> cachedColumnIndex;
     private int columnCountProperties = -1;
+    private static final char RECORD_SEPARATOR = '\u001E';
+    /**
+     * Number of threads that format the features of a table
+     */
+    public static final String THREADS = "threads";
+    private static final int PARTITION_ROWS = 10000;
+    private int threads = 1;
 
     /**
      * A simple GeoJSON driver to write a spatial table to a GeoJSON file.
@@ -77,6 +92,14 @@ public class GeoJsonWriteDriver {
         this.connection = connection;
     }    
 
+    /**
+     * @param threads Number of threads that format the features when a table is written. The table
+     * is read by the calling thread in chunks of rows, the workers only format the chunks.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
     /**
      * Write a resulset to a geojson file
      *
@@ -96,6 +119,14 @@ public class GeoJsonWriteDriver {
                 throw new IOException("The geojson file already exist.");
             }
             geojsonWriter(progress, rs, new FileOutputStream(fileName), encoding);
+        } else if (GeoJsonSeqDriverFunction.isSequenceFile(fileName)) {
+            if (deleteFile) {
+                Files.deleteIfExists(fileName.toPath());
+            } else if (fileName.exists()) {
+                throw new IOException("The geojson sequence file already exist.");
+            }
+            geojsonSeqWriter(progress, rs, getRowCount(rs), new FileOutputStream(fileName), encoding,
+                    FileUtilities.isExtensionWellFormated(fileName, "geojsons"));
         } else if (FileUtilities.isExtensionWellFormated(fileName, "gz")) {
             if (deleteFile) {
                 Files.deleteIfExists(fileName.toPath());
@@ -137,7 +168,7 @@ public class GeoJsonWriteDriver {
                 }
             }
         } else {
-            throw new SQLException("Only .geojson , .gz or .zip extensions are supported");
+            throw new SQLException("Only .geojson , .geojsonl , .geojsons , .gz or .zip extensions are supported");
         }
     }
 
@@ -328,6 +359,16 @@ public class GeoJsonWriteDriver {
                     PreparedStatement ps = connection.prepareStatement(tableName, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
                     ResultSet rs = ps.executeQuery();
                     geojsonWriter(progress, rs, new FileOutputStream(fileName), encoding);
+                } else if (GeoJsonSeqDriverFunction.isSequenceFile(fileName)) {
+                    if (deleteFile) {
+                        Files.deleteIfExists(fileName.toPath());
+                    } else if (fileName.exists()) {
+                        throw new IOException("The geojson sequence file already exist.");
+                    }
+                    try (PreparedStatement ps = connection.prepareStatement(tableName)) {
+                        geojsonSeqWriter(progress, ps.executeQuery(), 0, new FileOutputStream(fileName), encoding,
+                                FileUtilities.isExtensionWellFormated(fileName, "geojsons"));
+                    }
                 } else if (FileUtilities.isExtensionWellFormated(fileName, "gz")) {
                     if (deleteFile) {
                         Files.deleteIfExists(fileName.toPath());
@@ -374,7 +415,7 @@ public class GeoJsonWriteDriver {
                         }
                     }
                 } else {
-                    throw new SQLException("Only .geojson , .gz or .zip extensions are supported");
+                    throw new SQLException("Only .geojson , .geojsonl , .geojsons , .gz or .zip extensions are supported");
                 }
             } else {
                 throw new SQLException("The select query must be enclosed in parenthesis: '(SELECT * FROM ORDERS)'.");
@@ -386,13 +427,38 @@ public class GeoJsonWriteDriver {
                 } else if (fileName.exists()) {
                     throw new IOException("The geojson file already exist.");
                 }
-                geojsonWriter(progress, tableName, new FileOutputStream(fileName), encoding);
+                if (threads > 1) {
+                    geojsonParallelWriter(progress, tableName, new FileOutputStream(fileName), encoding, false, false, false);
+                } else {
+                    geojsonWriter(progress, tableName, new FileOutputStream(fileName), encoding);
+                }
+            } else if (GeoJsonSeqDriverFunction.isSequenceFile(fileName)) {
+                if (deleteFile) {
+                    Files.deleteIfExists(fileName.toPath());
+                } else if (fileName.exists()) {
+                    throw new IOException("The geojson sequence file already exist.");
+                }
+                if (threads > 1) {
+                    geojsonParallelWriter(progress, tableName, new FileOutputStream(fileName), encoding, false, true,
+                            FileUtilities.isExtensionWellFormated(fileName, "geojsons"));
+                    return;
+                }
+                final TableLocation parse = TableLocation.parse(tableName, DBUtils.getDBType(connection));
+                int recordCount = JDBCUtilities.getRowCount(connection, parse.toString());
+                try (Statement st = connection.createStatement()) {
+                    geojsonSeqWriter(progress, st.executeQuery(String.format("select * from %s", tableName)), recordCount,
+                            new FileOutputStream(fileName), encoding, FileUtilities.isExtensionWellFormated(fileName, "geojsons"));
+                }
             } else if (FileUtilities.isExtensionWellFormated(fileName, "gz")) {
                 if (deleteFile) {
                     Files.deleteIfExists(fileName.toPath());
                 } else if (fileName.exists()) {
                     throw new IOException("The gz file already exist.");
                 }
+                if (threads > 1) {
+                    geojsonParallelWriter(progress, tableName, new FileOutputStream(fileName), encoding, true, false, false);
+                    return;
+                }
                 GZIPOutputStream gzos = null;
                 try {
                     FileOutputStream fos = new FileOutputStream(fileName);
@@ -418,7 +484,11 @@ public class GeoJsonWriteDriver {
                     FileOutputStream fos = new FileOutputStream(fileName);
                     zip = new ZipOutputStream(fos);
                     zip.putNextEntry(new ZipEntry(fileName.getName().substring(0, fileName.getName().length()-4)));
-                    geojsonWriter(progress, tableName, zip, encoding);
+                    if (threads > 1) {
+                        geojsonParallelWriter(progress, tableName, zip, encoding, false, false, false);
+                    } else {
+                        geojsonWriter(progress, tableName, zip, encoding);
+                    }
                 } finally {
                     try {
                         if (zip != null) {
@@ -429,11 +499,323 @@ public class GeoJsonWriteDriver {
                     }
                 }
             } else {
-                throw new SQLException("Only .geojson , .gz or .zip extensions are supported");
+                throw new SQLException("Only .geojson , .geojsonl , .geojsons , .gz or .zip extensions are supported");
             }
         }
     }
 
+    /**
+     * Method to write a table with several threads.
+     *
+     * The table is read once by the calling thread, on the export connection, and cut in chunks of
+     * rows. Each chunk is formatted by a worker into a byte buffer, the workers do not use the
+     * connection, so the export is safe on any JDBC driver. The buffers are written in the read
+     * order by the calling thread, the number of chunks waiting to be written is bounded. With
+     * gzipMembers each worker compresses its buffer as a gzip member, the concatenated members are a
+     * valid gzip file.
+     *
+     * @param progress
+     * @param tableName
+     * @param fos
+     * @param encoding
+     * @param gzipMembers True to write the buffers as gzip members
+     * @param sequence True to write a GeoJSON text sequence instead of a feature collection
+     * @param recordSeparator True to prefix each feature of the sequence by a record separator
+     * @throws SQLException
+     * @throws IOException
+     */
+    private void geojsonParallelWriter(ProgressVisitor progress, String tableName, OutputStream fos, String encoding,
+                                       boolean gzipMembers, boolean sequence, boolean recordSeparator) throws SQLException, IOException {
+        DBTypes dbTypes = DBUtils.getDBType(connection);
+        JsonEncoding jsonEncoding = JsonEncoding.UTF8;
+        if (sequence) {
+            GeoJsonSeqDriverFunction.checkEncoding(encoding);
+        } else if (encoding != null) {
+            try {
+                jsonEncoding = JsonEncoding.valueOf(encoding);
+            } catch (IllegalArgumentException ex) {
+                throw new SQLException("Only UTF-8, UTF-16BE, UTF-16LE, UTF-32BE, UTF-32LE encoding is supported");
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "GeoJsonWrite worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ArrayDeque<Future<Partition>> pending = new ArrayDeque<>();
+        try {
+            final TableLocation parse = TableLocation.parse(tableName, dbTypes);
+            int recordCount = JDBCUtilities.getRowCount(connection, parse.toString());
+            OutputStream out = new BufferedOutputStream(fos);
+            if (recordCount == 0) {
+                if (gzipMembers) {
+                    writeBlock(out, new byte[0], true);
+                }
+                out.flush();
+                return;
+            }
+            Tuple<String, Integer> geometryTableInfo = GeometryTableUtilities.getFirstGeometryColumnNameAndIndex(connection, parse);
+            final String[] authorityAndSRID = GeometryTableUtilities.getAuthorityAndSRID(connection, parse, geometryTableInfo.first());
+            final int geometryIndex = geometryTableInfo.second();
+            ProgressVisitor copyProgress = progress.subProcess((recordCount + PARTITION_ROWS - 1) / PARTITION_ROWS);
+
+            final JsonEncoding partitionEncoding = jsonEncoding;
+            Charset charset = Charset.forName(jsonEncoding.getJavaName());
+            try (Statement st = connection.createStatement()) {
+                st.setFetchSize(PARTITION_ROWS);
+                try (ResultSet rs = st.executeQuery(String.format("select * from %s", tableName))) {
+                    cacheMetadata(rs.getMetaData());
+                    if (!sequence) {
+                        // header of the GeoJSON file
+                        ByteArrayOutputStream header = new ByteArrayOutputStream();
+                        JsonGenerator jsonGenerator = new JsonFactory().createGenerator(header, jsonEncoding);
+                        jsonGenerator.writeStartObject();
+                        jsonGenerator.writeStringField("type", "FeatureCollection");
+                        if (authorityAndSRID != null) {
+                            writeCRS(jsonGenerator, authorityAndSRID);
+                        }
+                        jsonGenerator.writeArrayFieldStart("features");
+                        // Closing the generator would also close the features array
+                        jsonGenerator.flush();
+                        writeBlock(out, header.toByteArray(), gzipMembers);
+                    }
+                    boolean hasFeature = false;
+                    boolean finished = false;
+                    boolean first = true;
+                    while (!finished || !pending.isEmpty()) {
+                        while (!finished && pending.size() < threads * 2) {
+                            final List<Object[]> rows = readPartition(rs, geometryIndex);
+                            if (rows.size() < PARTITION_ROWS) {
+                                finished = true;
+                            }
+                            if (rows.isEmpty()) {
+                                break;
+                            }
+                            final String[] firstCRS = first ? authorityAndSRID : null;
+                            first = false;
+                            pending.add(executor.submit(() -> writePartition(rows, partitionEncoding, gzipMembers,
+                                    sequence, recordSeparator, firstCRS)));
+                        }
+                        if (pending.isEmpty()) {
+                            break;
+                        }
+                        Partition partition = pending.poll().get();
+                        if (partition.featureCount > 0) {
+                            if (hasFeature && !sequence) {
+                                writeBlock(out, ",".getBytes(charset), gzipMembers);
+                            }
+                            out.write(partition.bytes);
+                            hasFeature = true;
+                        }
+                        copyProgress.endStep();
+                    }
+                }
+            }
+            if (!sequence) {
+                // footer
+                writeBlock(out, "]}".getBytes(charset), gzipMembers);
+            }
+            out.flush();
+            copyProgress.endOfProgress();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("The export has been interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            } else if (ex.getCause() instanceof SQLException) {
+                throw (SQLException) ex.getCause();
+            }
+            throw new SQLException(ex.getCause());
+        } finally {
+            for (Future<Partition> future : pending) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+            try {
+                fos.close();
+            } catch (IOException ex) {
+                throw new SQLException(ex);
+            }
+        }
+    }
+
+    /**
+     * Read the next rows of the result set, at most {@link #PARTITION_ROWS}
+     *
+     * @param rs Result set of the table
+     * @param geometryIndex Index of the geometry column
+     * @return The geometry followed by the property values of each row
+     */
+    private List<Object[]> readPartition(ResultSet rs, int geometryIndex) throws SQLException {
+        List<Object[]> rows = new ArrayList<>();
+        while (rows.size() < PARTITION_ROWS && rs.next()) {
+            Object[] row = new Object[cachedColumnIndex.size() + 1];
+            row[0] = rs.getObject(geometryIndex);
+            int i = 1;
+            for (Map.Entry<String, Integer> entry : cachedColumnIndex.entrySet()) {
+                row[i++] = getPropertyValue(rs, entry.getKey(), entry.getValue());
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * Format the features of a chunk of rows
+     *
+     * @param rows Geometry followed by the property values of each row
+     * @param jsonEncoding Encoding
+     * @param gzip True to compress the features as a gzip member
+     * @param sequence True to write one feature per line
+     * @param recordSeparator True to prefix each line by a record separator
+     * @param authorityAndSRID CRS written in the first feature of a sequence, null otherwise
+     * @return The formatted features
+     */
+    private Partition writePartition(List<Object[]> rows, JsonEncoding jsonEncoding, boolean gzip, boolean sequence,
+                                     boolean recordSeparator, String[] authorityAndSRID) throws SQLException, IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int featureCount = 0;
+        JsonFactory jsonFactory = new JsonFactory();
+        jsonFactory.setRootValueSeparator(sequence ? null : ",");
+        JsonGenerator jsonGenerator = jsonFactory.createGenerator(gzip ? new GZIPOutputStream(bytes) : bytes, jsonEncoding);
+        for (Object[] row : rows) {
+            if (recordSeparator) {
+                jsonGenerator.writeRaw(RECORD_SEPARATOR);
+            }
+            // feature header
+            jsonGenerator.writeStartObject();
+            jsonGenerator.writeStringField("type", "Feature");
+            if (sequence && featureCount == 0 && authorityAndSRID != null) {
+                writeCRS(jsonGenerator, authorityAndSRID);
+            }
+            writeGeometry((Geometry) row[0], jsonGenerator);
+            writeProperties(jsonGenerator, row);
+            // feature footer
+            jsonGenerator.writeEndObject();
+            if (sequence) {
+                jsonGenerator.writeRaw('\n');
+            }
+            featureCount++;
+        }
+        jsonGenerator.close();
+        return new Partition(bytes.toByteArray(), featureCount);
+    }
+
+    /**
+     * Write a block of bytes, as a gzip member if gzip is true
+     */
+    private static void writeBlock(OutputStream out, byte[] bytes, boolean gzip) throws IOException {
+        if (gzip) {
+            GZIPOutputStream member = new GZIPOutputStream(new FilterOutputStream(out) {
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            });
+            member.write(bytes);
+            member.close();
+        } else {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Features formatted by a worker
+     */
+    private static class Partition {
+        final byte[] bytes;
+        final int featureCount;
+
+        Partition(byte[] bytes, int featureCount) {
+            this.bytes = bytes;
+            this.featureCount = featureCount;
+        }
+    }
+
+    /**
+     * Method to write a resulset to a GeoJSON text sequence. Each feature is written on its own
+     * line, prefixed by a record separator for RFC 8142 files. The features are streamed so the
+     * memory used does not depend on the number of rows. The CRS is written in the first feature.
+     *
+     * @param progress
+     * @param rs
+     * @param rowCount Number of rows used for the progression, 0 if unknown
+     * @param fos
+     * @param encoding
+     * @param recordSeparator True to prefix each feature by a record separator
+     * @throws SQLException
+     * @throws IOException
+     */
+    private void geojsonSeqWriter(ProgressVisitor progress, ResultSet rs, int rowCount, OutputStream fos, String encoding,
+                                  boolean recordSeparator) throws SQLException, IOException {
+        try {
+            GeoJsonSeqDriverFunction.checkEncoding(encoding);
+            ProgressVisitor copyProgress = progress.subProcess(rowCount);
+            ResultSetMetaData resultSetMetaData = rs.getMetaData();
+            int geometryIndex = GeometryTableUtilities.getFirstGeometryColumnNameAndIndex(resultSetMetaData).second();
+            cacheMetadata(resultSetMetaData);
+            JsonFactory jsonFactory = new JsonFactory();
+            jsonFactory.setRootValueSeparator(null);
+            JsonGenerator jsonGenerator = jsonFactory.createGenerator(new BufferedOutputStream(fos), JsonEncoding.UTF8);
+            boolean firstFeature = true;
+            int srid = 0;
+            while (rs.next()) {
+                Geometry geom = (Geometry) rs.getObject(geometryIndex);
+                if (recordSeparator) {
+                    jsonGenerator.writeRaw(RECORD_SEPARATOR);
+                }
+                // feature header
+                jsonGenerator.writeStartObject();
+                jsonGenerator.writeStringField("type", "Feature");
+                if (firstFeature) {
+                    firstFeature = false;
+                    if (geom != null) {
+                        srid = geom.getSRID();
+                        String[] authAndSrid = GeometryTableUtilities.getAuthorityAndSRID(connection, srid);
+                        if (authAndSrid != null) {
+                            writeCRS(jsonGenerator, authAndSrid);
+                        }
+                    }
+                } else if (geom != null && geom.getSRID() != srid) {
+                    throw new SQLException("Geojson file doesn't support mixed srid. \n"
+                            + srid + " != " + geom.getSRID());
+                }
+                writeGeometry(geom, jsonGenerator);
+                writeProperties(jsonGenerator, rs);
+                // feature footer
+                jsonGenerator.writeEndObject();
+                jsonGenerator.writeRaw('\n');
+                copyProgress.endStep();
+            }
+            copyProgress.endOfProgress();
+            jsonGenerator.flush();
+            jsonGenerator.close();
+        } finally {
+            rs.close();
+            try {
+                fos.close();
+            } catch (IOException ex) {
+                throw new SQLException(ex);
+            }
+        }
+    }
+
+    /**
+     * @param rs
+     * @return The number of rows of a scrollable resultset, 0 otherwise
+     */
+    private static int getRowCount(ResultSet rs) throws SQLException {
+        int type = rs.getType();
+        if (type == ResultSet.TYPE_SCROLL_INSENSITIVE || type == ResultSet.TYPE_SCROLL_SENSITIVE) {
+            rs.last();
+            int rowCount = rs.getRow();
+            rs.beforeFirst();
+            return rowCount;
+        }
+        return 0;
+    }
+
     /**
      * Write a GeoJSON feature and check its SRID.
      *
@@ -783,36 +1165,76 @@ public class GeoJsonWriteDriver {
             jsonGenerator.writeObjectFieldStart("properties");
             for (Map.Entry<String, Integer> entry : cachedColumnIndex.entrySet()) {
                 String columnName = entry.getKey();
-                Integer fieldId = entry.getValue();
-                if(cachedSpecificColumns.containsKey(columnName)){
-                    String specificType = cachedSpecificColumns.get(columnName);
-                    if(specificType.equalsIgnoreCase("JSON")) {
-                        jsonGenerator.writeFieldName(columnName);
-                        jsonGenerator.writeString(rs.getString(fieldId));
-                    }
-                    else if (specificType.equalsIgnoreCase("TIME")){
-                        jsonGenerator.writeStringField(columnName, rs.getObject(fieldId).toString());
-                    }
-                }
-                else if (rs.getObject(fieldId) instanceof Object[]) {
-                    Object[] array = (Object[]) rs.getObject(fieldId);
-                    jsonGenerator.writeArrayFieldStart(columnName);
-                    writeArray(jsonGenerator, array, true);
-                    jsonGenerator.writeEndArray();
-                } else if (rs.getObject(fieldId) != null && rs.getObject(fieldId).equals("{}")) {
-                    jsonGenerator.writeObjectFieldStart(columnName);
-                    jsonGenerator.writeEndObject();
-                } else if (rs.getObject(fieldId) == "null") {
-                    jsonGenerator.writeFieldName(columnName);
-                    jsonGenerator.writeNull();
-                } else {
-                    jsonGenerator.writeObjectField(columnName, rs.getObject(fieldId));
-                }
+                writeProperty(jsonGenerator, columnName, getPropertyValue(rs, columnName, entry.getValue()));
             }
             jsonGenerator.writeEndObject();
         }
     }
 
+    /**
+     * Write the GeoJSON properties of a row read by {@link #readPartition(ResultSet, int)}.
+     *
+     * @param jsonGenerator
+     * @param row Geometry followed by the property values
+     * @throws IOException
+     */
+    private void writeProperties(JsonGenerator jsonGenerator, Object[] row) throws IOException, SQLException {
+        if (columnCountProperties != -1) {
+            jsonGenerator.writeObjectFieldStart("properties");
+            int i = 1;
+            for (String columnName : cachedColumnIndex.keySet()) {
+                writeProperty(jsonGenerator, columnName, row[i++]);
+            }
+            jsonGenerator.writeEndObject();
+        }
+    }
+
+    /**
+     * @param rs
+     * @param columnName
+     * @param fieldId
+     * @return The value of a property, the JSON values are read as strings
+     * @throws SQLException
+     */
+    private Object getPropertyValue(ResultSet rs, String columnName, int fieldId) throws SQLException {
+        if ("JSON".equalsIgnoreCase(cachedSpecificColumns.get(columnName))) {
+            return rs.getString(fieldId);
+        }
+        return rs.getObject(fieldId);
+    }
+
+    /**
+     * Write a GeoJSON property.
+     *
+     * @param jsonGenerator
+     * @param columnName
+     * @param value
+     * @throws IOException
+     */
+    private void writeProperty(JsonGenerator jsonGenerator, String columnName, Object value) throws IOException, SQLException {
+        if (cachedSpecificColumns.containsKey(columnName)) {
+            String specificType = cachedSpecificColumns.get(columnName);
+            if (specificType.equalsIgnoreCase("JSON")) {
+                jsonGenerator.writeFieldName(columnName);
+                jsonGenerator.writeString((String) value);
+            } else if (specificType.equalsIgnoreCase("TIME")) {
+                jsonGenerator.writeStringField(columnName, value.toString());
+            }
+        } else if (value instanceof Object[]) {
+            jsonGenerator.writeArrayFieldStart(columnName);
+            writeArray(jsonGenerator, (Object[]) value, true);
+            jsonGenerator.writeEndArray();
+        } else if (value != null && value.equals("{}")) {
+            jsonGenerator.writeObjectFieldStart(columnName);
+            jsonGenerator.writeEndObject();
+        } else if (value == "null") {
+            jsonGenerator.writeFieldName(columnName);
+            jsonGenerator.writeNull();
+        } else {
+            jsonGenerator.writeObjectField(columnName, value);
+        }
+    }
+
     /**
      * Return true is the SQL type is supported by the GeoJSON driver.
      *
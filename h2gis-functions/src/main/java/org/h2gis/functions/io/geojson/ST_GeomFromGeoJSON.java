@@ -35,8 +35,11 @@ import java.sql.SQLException;
  * @author Erwan Bocher
  */
 public class ST_GeomFromGeoJSON extends DeterministicScalarFunction{
-    private static JsonFactory jsFactory;
-    private static GJGeometryReader reader;
+    private static final JsonFactory JS_FACTORY = new JsonFactory()
+            .configure(JsonParser.Feature.ALLOW_COMMENTS, true)
+            .configure(JsonParser.Feature.ALLOW_SINGLE_QUOTES, true)
+            .configure(JsonParser.Feature.ALLOW_NON_NUMERIC_NUMBERS, true);
+    private static final GJGeometryReader READER = new GJGeometryReader(new GeometryFactory());
 
     public ST_GeomFromGeoJSON() {
         addProperty(PROP_REMARKS, "Convert a geojson representation of a geometry to a geometry object.");
@@ -59,14 +62,8 @@ public class ST_GeomFromGeoJSON extends DeterministicScalarFunction{
         if (geojson == null) {
             return null;
         }
-        if (jsFactory == null) {
-            jsFactory = new JsonFactory();
-            jsFactory.configure(JsonParser.Feature.ALLOW_COMMENTS, true);
-            jsFactory.configure(JsonParser.Feature.ALLOW_SINGLE_QUOTES, true);
-            jsFactory.configure(JsonParser.Feature.ALLOW_NON_NUMERIC_NUMBERS, true);
-            reader = new GJGeometryReader(new GeometryFactory());
+        try (JsonParser jp = JS_FACTORY.createParser(geojson)) {
+            return READER.parseGeometry(jp);
         }
-        JsonParser jp = jsFactory.createParser(geojson);
-        return reader.parseGeometry(jp);
     }
 }
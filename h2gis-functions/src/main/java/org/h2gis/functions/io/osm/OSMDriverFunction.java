@@ -28,6 +28,7 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import org.h2gis.functions.io.DriverManager;
+import org.h2gis.functions.io.utility.ImportOptions;
 
 /**
  *
@@ -123,7 +124,7 @@ public class OSMDriverFunction implements DriverFunction {
     @Override
     public String[] importFile(Connection connection, String tableReference, File fileName, String options, boolean deleteTables, ProgressVisitor progress) throws SQLException, IOException {
         progress = DriverManager.check(connection,tableReference,fileName, progress);
-        OSMParser osmp = new OSMParser(connection, fileName, options, deleteTables);
+        OSMParser osmp = new OSMParser(connection, fileName, ImportOptions.parse(options, OSMParser.BATCH_SIZE), deleteTables);
         return osmp.read(tableReference, progress);
     }
 
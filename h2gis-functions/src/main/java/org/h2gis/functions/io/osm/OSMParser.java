@@ -24,6 +24,7 @@ import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.h2.api.ErrorCode;
 import org.h2gis.api.EmptyProgressVisitor;
 import org.h2gis.api.ProgressVisitor;
+import org.h2gis.functions.io.utility.ImportOptions;
 import org.h2gis.utilities.JDBCUtilities;
 import org.h2gis.utilities.TableLocation;
 import org.h2gis.utilities.TableUtilities;
@@ -67,7 +68,9 @@ public class OSMParser extends DefaultHandler {
     private final String encoding;
     private final boolean deleteTable;
     // Set the same batch size as OSMOSIS
-    private static final int BATCH_SIZE = 8000;
+    static final int BATCH_SIZE = 8000;
+    private final ImportOptions importOptions;
+    private int uncommittedBatches = 0;
     private PreparedStatement nodePreparedStmt;
     private PreparedStatement nodeTagPreparedStmt;
     private PreparedStatement wayPreparedStmt;
@@ -110,6 +113,21 @@ public class OSMParser extends DefaultHandler {
         this.fileName=fileName;
         this.encoding=encoding;
         this.deleteTable=deleteTable;
+        this.importOptions = new ImportOptions(BATCH_SIZE);
+    }
+
+    /**
+     * @param connection
+     * @param fileName
+     * @param importOptions Encoding, batch and commit policy of the import
+     * @param deleteTable
+     */
+    public OSMParser(Connection connection, File fileName, ImportOptions importOptions, boolean deleteTable) {
+        this.connection=connection;
+        this.fileName=fileName;
+        this.encoding=importOptions.getEncoding();
+        this.deleteTable=deleteTable;
+        this.importOptions = importOptions;
     }
 
     /**
@@ -133,7 +151,7 @@ public class OSMParser extends DefaultHandler {
             OSMTablesFactory.dropOSMTables(connection, requestedTable.toString());
         }
         checkOSMTables(connection, dbType, requestedTable, osmTableName);
-        connection.setAutoCommit(false);
+        importOptions.begin(connection);
         String[] outputOSMTableNames = createOSMDatabaseModel(connection, dbType, requestedTable, osmTableName);
 
 
@@ -367,6 +385,7 @@ public class OSMParser extends DefaultHandler {
             wayMemberPreparedStmtBatchSize = insertBatch(wayMemberPreparedStmt, wayMemberPreparedStmtBatchSize, 1);
             relationMemberPreparedStmtBatchSize = insertBatch(relationMemberPreparedStmt, relationMemberPreparedStmtBatchSize, 1);
             wayNodePreparedStmtBatchSize = insertBatch(wayNodePreparedStmt, wayNodePreparedStmtBatchSize, 1);
+            commit();
         } catch (SQLException ex) {
             throw new SAXException("Could not insert sql batch", ex);
         }
@@ -489,8 +508,11 @@ public class OSMParser extends DefaultHandler {
     private int insertBatch(PreparedStatement st, int batchSize, int maxBatchSize) throws SQLException {
         if(batchSize >= maxBatchSize) {
             st.executeBatch();
-            connection.commit();
             st.clearBatch();
+            uncommittedBatches++;
+            if (importOptions.getCommitInterval() > 0 && uncommittedBatches >= importOptions.getCommitInterval()) {
+                commit();
+            }
             return 0;
         } else {
             return batchSize;
@@ -498,7 +520,14 @@ public class OSMParser extends DefaultHandler {
     }
 
     private int insertBatch(PreparedStatement st, int batchSize) throws SQLException {
-        return insertBatch(st, batchSize, BATCH_SIZE);
+        return insertBatch(st, batchSize, importOptions.getBatchSize());
+    }
+
+    private void commit() throws SQLException {
+        if (!connection.getAutoCommit()) {
+            connection.commit();
+        }
+        uncommittedBatches = 0;
     }
 
     /**
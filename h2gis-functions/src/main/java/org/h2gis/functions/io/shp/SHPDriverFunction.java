@@ -22,6 +22,7 @@ package org.h2gis.functions.io.shp;
 import org.h2.table.Column;
 import org.h2.util.JdbcUtils;
 import org.h2.value.TypeInfo;
+import org.h2.value.Value;
 import org.h2gis.api.DriverFunction;
 import org.h2gis.api.ProgressVisitor;
 import org.h2gis.functions.io.DriverManager;
@@ -32,6 +33,7 @@ import org.h2gis.functions.io.file_table.H2TableIndex;
 import org.h2gis.functions.io.shp.internal.SHPDriver;
 import org.h2gis.functions.io.shp.internal.ShapeType;
 import org.h2gis.functions.io.shp.internal.ShapefileHeader;
+import org.h2gis.functions.io.utility.ImportOptions;
 import org.h2gis.functions.io.utility.PRJUtil;
 import org.h2gis.utilities.GeometryTypeCodes;
 import org.h2gis.utilities.JDBCUtilities;
@@ -42,8 +44,16 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.sql.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -64,6 +74,11 @@ public class SHPDriverFunction implements DriverFunction {
 
     public static String DESCRIPTION = "ESRI shapefile";
     private static final int BATCH_MAX_SIZE = 200;
+    /**
+     * Import option, number of threads decoding the rows. With more than one thread the ranges of
+     * batchSize rows are decoded in parallel and inserted in the file order.
+     */
+    public static final String THREADS = "threads";
 
     @Override
     public String[] exportTable(Connection connection, String tableReference, File fileName, ProgressVisitor progress) throws SQLException, IOException {
@@ -267,7 +282,7 @@ public class SHPDriverFunction implements DriverFunction {
      */
     @Override
     public String[] importFile(Connection connection, String tableReference, File fileName, String forceEncoding, ProgressVisitor progress) throws SQLException, IOException {
-        return importFile(connection, tableReference, fileName, null, false, progress);
+        return importFile(connection, tableReference, fileName, forceEncoding, false, progress);
     }
 
     @Override
@@ -288,9 +303,11 @@ public class SHPDriverFunction implements DriverFunction {
                 stmt.execute("DROP TABLE IF EXISTS " + outputTableName);
                 stmt.close();
             }
+            ImportOptions importOptions = ImportOptions.parse(options, BATCH_MAX_SIZE);
+            int threads = Math.max(1, importOptions.getIntOption(THREADS, 1));
             SHPDriver shpDriver = new SHPDriver();
-            shpDriver.initDriverFromFile(fileName, options);
-            ProgressVisitor copyProgress = progress.subProcess((int) (shpDriver.getRowCount() / BATCH_MAX_SIZE));
+            shpDriver.initDriverFromFile(fileName, importOptions.getEncoding());
+            ProgressVisitor copyProgress = progress.subProcess((int) (shpDriver.getRowCount() / importOptions.getBatchSize()));
             String lastSql = "";
             int dbfNumFields =0;
             try {
@@ -316,32 +333,18 @@ public class SHPDriverFunction implements DriverFunction {
 
                 }
                 try {
-                    connection.setAutoCommit(false);
                     lastSql = String.format("INSERT INTO %s VALUES (?, %s )", outputTableName,
                             DBFDriverFunction.getQuestionMark(dbfNumFields + 1));
                     final int columnCount = dbfNumFields+1;
-                    connection.setAutoCommit(false);
+                    importOptions.begin(connection);
                     try (PreparedStatement preparedStatement = connection.prepareStatement(lastSql)) {
-                        long batchSize = 0;
-                        for (int rowId = 0; rowId < shpDriver.getRowCount(); rowId++) {
-                            //Set the PK
-                            preparedStatement.setInt(1, rowId+1);
-                            for (int columnId = 0; columnId < columnCount; columnId++) {
-                                JdbcUtils.set(preparedStatement,columnId + 2, shpDriver.getField(rowId, columnId), null);
-                            }
-                            preparedStatement.addBatch();
-                            batchSize++;
-                            if (batchSize >= BATCH_MAX_SIZE) {
-                                preparedStatement.executeBatch();
-                                connection.commit();
-                                preparedStatement.clearBatch();
-                                batchSize = 0;
-                                copyProgress.endStep();
-                            }
-                        }
-                        if (batchSize > 0) {
-                            preparedStatement.executeBatch();
-                            connection.commit();
+                        ImportOptions.Batch batch = importOptions.createBatch(connection, preparedStatement);
+                        if (threads > 1) {
+                            copyRowsParallel(preparedStatement, batch, fileName, importOptions.getEncoding(), srid,
+                                    shpDriver.getRowCount(), columnCount, threads, importOptions.getBatchSize(),
+                                    copyProgress);
+                        } else {
+                            copyRows(preparedStatement, batch, shpDriver, columnCount, copyProgress);
                         }
                         return new String[]{outputTableName};
                     }
@@ -362,6 +365,136 @@ public class SHPDriverFunction implements DriverFunction {
         return null;
     }
 
+    /**
+     * Read the rows on the calling thread and insert them
+     */
+    private static void copyRows(PreparedStatement preparedStatement, ImportOptions.Batch batch, SHPDriver shpDriver,
+                                 int columnCount, ProgressVisitor copyProgress) throws SQLException, IOException {
+        Object[] row = null;
+        for (int rowId = 0; rowId < shpDriver.getRowCount(); rowId++) {
+            //Set the PK
+            preparedStatement.setInt(1, rowId+1);
+            row = shpDriver.getRow(rowId, row);
+            for (int columnId = 0; columnId < columnCount; columnId++) {
+                JdbcUtils.set(preparedStatement,columnId + 2, (Value) row[columnId], null);
+            }
+            if (batch.addRow(shpDriver.getEstimatedRowSize(rowId))) {
+                copyProgress.endStep();
+            }
+        }
+        batch.finish();
+    }
+
+    /**
+     * Decode the rows on worker threads, each worker reads a range of rows with its own driver.
+     * The ranges are inserted in the file order by the calling thread, the number of decoded ranges
+     * waiting to be inserted is bounded.
+     */
+    private static void copyRowsParallel(PreparedStatement preparedStatement, ImportOptions.Batch batch, File shpFile,
+                                         String encoding, int srid, long rowCount, int columnCount, int threads,
+                                         int rangeSize, ProgressVisitor copyProgress) throws SQLException, IOException {
+        List<SHPDriver> drivers = new ArrayList<>(threads);
+        BlockingQueue<SHPDriver> idleDrivers = new ArrayBlockingQueue<>(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "SHPRead worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ArrayDeque<Future<RowRange>> pending = new ArrayDeque<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                SHPDriver driver = new SHPDriver();
+                drivers.add(driver);
+                driver.setMemoryMapped(true);
+                driver.initDriverFromFile(shpFile, encoding);
+                driver.setSRID(srid);
+                idleDrivers.add(driver);
+            }
+            long nextRow = 0;
+            while (nextRow < rowCount || !pending.isEmpty()) {
+                while (nextRow < rowCount && pending.size() < threads * 2) {
+                    final long firstRow = nextRow;
+                    final long lastRow = Math.min(rowCount, firstRow + rangeSize);
+                    pending.add(executor.submit(() -> readRange(idleDrivers, firstRow, lastRow)));
+                    nextRow = lastRow;
+                }
+                RowRange range = pending.poll().get();
+                for (int i = 0; i < range.rows.length; i++) {
+                    //Set the PK
+                    preparedStatement.setInt(1, (int) (range.firstRow + i + 1));
+                    Object[] row = range.rows[i];
+                    for (int columnId = 0; columnId < columnCount; columnId++) {
+                        JdbcUtils.set(preparedStatement, columnId + 2, (Value) row[columnId], null);
+                    }
+                    if (batch.addRow(range.rowSizes[i])) {
+                        copyProgress.endStep();
+                    }
+                }
+            }
+            batch.finish();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("The import has been interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new SQLException(ex.getCause());
+        } finally {
+            for (Future<RowRange> future : pending) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            for (SHPDriver driver : drivers) {
+                driver.close();
+            }
+        }
+    }
+
+    /**
+     * Decode a range of rows with an idle driver
+     * @param idleDrivers Drivers not used by the other workers
+     * @param firstRow First row index
+     * @param lastRow Last row index, excluded
+     * @return The decoded rows
+     */
+    private static RowRange readRange(BlockingQueue<SHPDriver> idleDrivers, long firstRow, long lastRow)
+            throws IOException, InterruptedException {
+        SHPDriver driver = idleDrivers.take();
+        try {
+            int size = (int) (lastRow - firstRow);
+            Object[][] rows = new Object[size][];
+            int[] rowSizes = new int[size];
+            for (int i = 0; i < size; i++) {
+                rows[i] = driver.getRow(firstRow + i, null);
+                rowSizes[i] = driver.getEstimatedRowSize(firstRow + i);
+            }
+            return new RowRange(firstRow, rows, rowSizes);
+        } finally {
+            idleDrivers.add(driver);
+        }
+    }
+
+    /**
+     * Decoded rows
+     */
+    private static class RowRange {
+        final long firstRow;
+        final Object[][] rows;
+        final int[] rowSizes;
+
+        RowRange(long firstRow, Object[][] rows, int[] rowSizes) {
+            this.firstRow = firstRow;
+            this.rows = rows;
+            this.rowSizes = rowSizes;
+        }
+    }
+
     /**
      * Return the shape type supported by the shapefile format
      *
@@ -45,6 +45,8 @@ public class SHPEngine extends FileEngine<SHPDriver> {
     @Override
     protected SHPDriver createDriver(File filePath, List<String> args) throws IOException {
         SHPDriver driver = new SHPDriver();
+        // Linked tables are read at random positions
+        driver.setMemoryMapped(true);
         driver.initDriverFromFile(filePath, args.size() > 1 ? args.get(1) : null);        
         int srid = PRJUtil.getSRID(driver.prjFile);
         driver.setSRID(srid);
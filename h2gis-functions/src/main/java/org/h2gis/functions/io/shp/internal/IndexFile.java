@@ -20,6 +20,7 @@
 
 package org.h2gis.functions.io.shp.internal;
 
+import org.h2gis.functions.io.utility.MappedFile;
 import org.h2gis.functions.io.utility.ReadBufferManager;
 
 import java.io.IOException;
@@ -62,9 +63,30 @@ public class IndexFile {
 	 */
 	public IndexFile(FileChannel channel)
 			throws IOException {
+		this(channel, null);
+	}
+
+	/**
+	 * Load the index file from the given channel.
+	 *
+	 * @param channel
+	 *            The channel to read from.
+	 * @param mappedFile
+	 *            Read the offsets through this memory mapping of the file,
+	 *            null for a heap buffer. The reader owns the reference to
+	 *            the mapping and releases it when closed.
+	 * @throws java.io.IOException
+	 *             If an error occurs.
+	 */
+	public IndexFile(FileChannel channel, MappedFile mappedFile)
+			throws IOException {
 		readHeader(channel);
 		this.channel = channel;
-		this.buf = new ReadBufferManager(channel, 8 * 128);
+		if (mappedFile != null) {
+			this.buf = new ReadBufferManager(mappedFile);
+		} else {
+			this.buf = new ReadBufferManager(channel, 8 * 128);
+		}
 	}
 
 	/**
@@ -94,6 +116,9 @@ public class IndexFile {
 	}
 
 	public void close() throws IOException {
+		if (buf != null) {
+			buf.close();
+		}
 		if (channel != null && channel.isOpen()) {
 			channel.close();
 		}
@@ -26,6 +26,9 @@ import org.h2.value.ValueNull;
 import org.h2gis.api.FileDriver;
 import org.h2gis.functions.io.dbf.internal.DBFDriver;
 import org.h2gis.functions.io.dbf.internal.DbaseFileHeader;
+import org.h2gis.functions.io.file_table.PackedRTree;
+import org.h2gis.functions.io.file_table.SpatialIndexDriver;
+import org.h2gis.functions.io.utility.MappedFile;
 import org.locationtech.jts.geom.Geometry;
 
 import java.io.*;
@@ -46,7 +49,7 @@ import java.nio.file.Path;
  *
  * @author Nicolas Fortin
  */
-public class SHPDriver implements FileDriver {
+public class SHPDriver implements FileDriver, SpatialIndexDriver {
     private DBFDriver dbfDriver = new DBFDriver();
     public File shpFile;
     public File shxFile;
@@ -58,6 +61,7 @@ public class SHPDriver implements FileDriver {
     private ShapeType shapeType;
     public File prjFile;
     private int srid =0;
+    private boolean memoryMapped = false;
 
     /**
      * @param geometryFieldIndex The geometry field index in getRow() array.
@@ -96,6 +100,23 @@ public class SHPDriver implements FileDriver {
         dbfDriver.insertRow(dbfValues);
     }
 
+    /**
+     * @param memoryMapped True to read the shp, shx and dbf files through a memory mapping, must be set before
+     * {@link #initDriverFromFile(File, String)}. Recommended for random access, as the three files are read at
+     * unrelated positions for each row.
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+        dbfDriver.setMemoryMapped(memoryMapped);
+    }
+
+    /**
+     * @return True if the files are read through a memory mapping
+     */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
     /**
      * @return The geometry field index in getRow() array.
      */
@@ -186,10 +207,36 @@ public class SHPDriver implements FileDriver {
         if(shxFile==null){
             throw new IllegalArgumentException("SHX File not found");
         }
-        FileInputStream shpFis = new FileInputStream(shpFile);
-        shapefileReader = new ShapefileReader(shpFis.getChannel());
-        FileInputStream shxFis = new FileInputStream(shxFile);
-        shxFileReader = new IndexFile(shxFis.getChannel());
+        shapefileReader = openShapefileReader(shpFile);
+        shxFileReader = openIndexFile(shxFile);
+    }
+
+    private ShapefileReader openShapefileReader(File file) throws IOException {
+        FileInputStream fis = new FileInputStream(file);
+        MappedFile mappedFile = memoryMapped ? MappedFile.open(file) : null;
+        try {
+            return new ShapefileReader(fis.getChannel(), mappedFile);
+        } catch (IOException | RuntimeException ex) {
+            if (mappedFile != null) {
+                mappedFile.close();
+            }
+            fis.close();
+            throw ex;
+        }
+    }
+
+    private IndexFile openIndexFile(File file) throws IOException {
+        FileInputStream fis = new FileInputStream(file);
+        MappedFile mappedFile = memoryMapped ? MappedFile.open(file) : null;
+        try {
+            return new IndexFile(fis.getChannel(), mappedFile);
+        } catch (IOException | RuntimeException ex) {
+            if (mappedFile != null) {
+                mappedFile.close();
+            }
+            fis.close();
+            throw ex;
+        }
     }
 
     /**
@@ -211,8 +258,10 @@ public class SHPDriver implements FileDriver {
         return shapefileReader.getHeader();
     }
 
+    // The readers are not thread safe and the driver of a linked table is shared by all the sessions
+
     @Override
-    public void close() throws IOException {
+    public synchronized void close() throws IOException {
         dbfDriver.close();
         if(shapefileReader != null) {
             shapefileReader.close();
@@ -230,7 +279,7 @@ public class SHPDriver implements FileDriver {
     }
 
     @Override
-    public int getEstimatedRowSize(long rowId) {
+    public synchronized int getEstimatedRowSize(long rowId) {
         int totalSize = 0;
         totalSize += dbfDriver.getEstimatedRowSize(rowId);
         try {
@@ -242,15 +291,9 @@ public class SHPDriver implements FileDriver {
     }
 
     @Override
-    public Value getField(long rowId, int column) throws IOException {
+    public synchronized Value getField(long rowId, int column) throws IOException {
         if (column == geometryFieldIndex) {
-            Geometry geom = shapefileReader.geomAt(shxFileReader.getOffset((int) rowId));
-            if (geom != null) {
-                geom.setSRID(getSrid());
-                return ValueGeometry.getFromGeometry(geom);
-            } else {
-                return ValueNull.INSTANCE;
-            }
+            return getGeometry(rowId);
         } else {
             if(geometryFieldIndex < column) {
                 return dbfDriver.getDbaseFileReader().getFieldValue((int) rowId, column - 1);
@@ -260,6 +303,59 @@ public class SHPDriver implements FileDriver {
         }
     }
 
+    private Value getGeometry(long rowId) throws IOException {
+        Geometry geom = shapefileReader.geomAt(shxFileReader.getOffset((int) rowId));
+        if (geom != null) {
+            geom.setSRID(getSrid());
+            return ValueGeometry.getFromGeometry(geom);
+        } else {
+            return ValueNull.INSTANCE;
+        }
+    }
+
+    @Override
+    public synchronized Object[] getRow(long rowId, Object[] reuse) throws IOException {
+        int fieldCount = getFieldCount();
+        Object[] values = reuse != null && reuse.length >= fieldCount ? reuse : new Value[fieldCount];
+        // Read the DBF record first, then move the DBF fields after the geometry
+        dbfDriver.getDbaseFileReader().readRecord((int) rowId, values, 0);
+        if (geometryFieldIndex < fieldCount - 1) {
+            System.arraycopy(values, geometryFieldIndex, values, geometryFieldIndex + 1,
+                    fieldCount - 1 - geometryFieldIndex);
+        }
+        values[geometryFieldIndex] = getGeometry(rowId);
+        return values;
+    }
+
+    /**
+     * Open the spatial index stored next to the shape file. If the index file does not exist or is older than the
+     * shape file, the index is built from the bounding box of the records, the geometries are not decoded.
+     * @param columnId Field index
+     * @return The spatial index or null if the column is not the geometry column
+     * @throws IOException
+     */
+    @Override
+    public synchronized PackedRTree getSpatialIndex(int columnId) throws IOException {
+        if (columnId != geometryFieldIndex || shapefileReader == null) {
+            return null;
+        }
+        String path = shpFile.getAbsolutePath();
+        File indexFile = new File(path.substring(0, path.lastIndexOf('.')) + "." + PackedRTree.FILE_EXTENSION);
+        PackedRTree rTree = PackedRTree.open(indexFile, shpFile);
+        if (rTree == null) {
+            int recordCount = shxFileReader.getRecordCount();
+            PackedRTree.Builder builder = new PackedRTree.Builder(recordCount, PackedRTree.DEFAULT_NODE_SIZE);
+            double[] envelope = new double[4];
+            for (int i = 0; i < recordCount; i++) {
+                if (shapefileReader.envelopeAt(shxFileReader.getOffset(i), envelope)) {
+                    builder.add(i, envelope[0], envelope[1], envelope[2], envelope[3]);
+                }
+            }
+            rTree = builder.write(indexFile, shpFile);
+        }
+        return rTree;
+    }
+
     /**
      * Set a SRID code that will be used for geometries.
      * @param srid 
@@ -20,6 +20,7 @@
 
 package org.h2gis.functions.io.shp.internal;
 
+import org.h2gis.functions.io.utility.MappedFile;
 import org.h2gis.functions.io.utility.ReadBufferManager;
 import org.locationtech.jts.geom.Geometry;
 
@@ -66,9 +67,28 @@ public class ShapefileReader {
          *             If for some reason the file contains invalid records.
          */
         public ShapefileReader(FileChannel channel) throws IOException,
+                ShapefileException {
+                this(channel, null);
+        }
+
+        /**
+         * Creates a new instance of ShapeFile.
+         *
+         * @param channel
+         *            The ReadableByteChannel this reader will use.
+         * @param mappedFile
+         *            Read the records through this memory mapping of the
+         *            file, null for a heap buffer. The reader owns the
+         *            reference to the mapping and releases it when closed.
+         * @throws java.io.IOException
+         *             If problems arise.
+         * @throws ShapefileException
+         *             If for some reason the file contains invalid records.
+         */
+        public ShapefileReader(FileChannel channel, MappedFile mappedFile) throws IOException,
                 ShapefileException {
                 this.channel = channel;
-                init();
+                init(mappedFile);
         }
 
         // convenience to peak at a header
@@ -92,7 +112,7 @@ public class ShapefileReader {
                 return header;
         }
 
-        private void init() throws IOException {
+        private void init(MappedFile mappedFile) throws IOException {
                 header = readHeader(channel);
                 fileShapeType = header.getShapeType();
                 handler = fileShapeType.getShapeHandler();
@@ -103,7 +123,7 @@ public class ShapefileReader {
                 if (handler == null) {
                         throw new IOException("Unsuported shape type:" + fileShapeType);
                 }
-                buffer = new ReadBufferManager(channel);
+                buffer = ReadBufferManager.open(channel, mappedFile);
         }
 
         /**
@@ -124,6 +144,10 @@ public class ShapefileReader {
          *             If errors occur while closing the channel.
          */
         public void close() throws IOException {
+                if (buffer != null) {
+                        buffer.close();
+                        buffer = null;
+                }
                 if (channel != null && channel.isOpen()) {
                         channel.close();
                 }
@@ -162,6 +186,35 @@ public class ShapefileReader {
                 return handler.read(buffer, recordType);
         }
 
+        /**
+         * Read the envelope of a record from its header, without decoding the geometry.
+         *
+         * @param offset Record offset in bytes
+         * @param envelope Array of 4 values filled with minX, minY, maxX, maxY
+         * @return False if the record is a null shape
+         * @throws java.io.IOException
+         */
+        public boolean envelopeAt(int offset, double[] envelope) throws IOException {
+                // shape record is all little endian, skip the record header
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                ShapeType recordType = ShapeType.forID(buffer.getInt(offset + 8));
+                if (recordType == ShapeType.NULL) {
+                        return false;
+                }
+                if (recordType.isPointType()) {
+                        envelope[0] = buffer.getDouble(offset + 12);
+                        envelope[1] = buffer.getDouble(offset + 20);
+                        envelope[2] = envelope[0];
+                        envelope[3] = envelope[1];
+                } else {
+                        // Multipoint, line and polygon records start with the bounding box
+                        for (int i = 0; i < 4; i++) {
+                                envelope[i] = buffer.getDouble(offset + 12 + 8 * i);
+                        }
+                }
+                return true;
+        }
+
         /**
          * @param handler
          *            The handler to set.
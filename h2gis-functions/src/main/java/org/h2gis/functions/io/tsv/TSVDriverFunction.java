@@ -23,6 +23,7 @@ import org.h2.tools.Csv;
 import org.h2gis.api.DriverFunction;
 import org.h2gis.api.ProgressVisitor;
 import org.h2gis.functions.io.DriverManager;
+import org.h2gis.functions.io.utility.ImportOptions;
 import org.h2gis.utilities.JDBCUtilities;
 import org.h2gis.utilities.TableLocation;
 
@@ -279,6 +280,7 @@ public class TSVDriverFunction implements DriverFunction {
         progress = DriverManager.check(connection,tableReference, fileName,progress);
         final DBTypes dbType = DBUtils.getDBType(connection);
         TableLocation requestedTable = TableLocation.parse(tableReference, dbType);
+        ImportOptions importOptions = ImportOptions.parse(options, BATCH_MAX_SIZE);
         if (fileName != null && fileName.getName().toLowerCase().endsWith(".tsv")) {
             if (!fileName.exists()) {
                 throw new SQLException("The file " + requestedTable + " doesn't exist ");
@@ -326,9 +328,9 @@ public class TSVDriverFunction implements DriverFunction {
                 stmt.execute(createTable.toString());
             }
 
-            connection.setAutoCommit(false);
+            importOptions.begin(connection);
             PreparedStatement pst = connection.prepareStatement(insertTable.toString());
-            long batchSize = 0;
+            ImportOptions.Batch batch = importOptions.createBatch(connection, pst);
             try {
                 while (reader.next()) {
                     if (progress.isCanceled()) {
@@ -338,14 +340,7 @@ public class TSVDriverFunction implements DriverFunction {
                     for (int i = 0; i < columnCount; i++) {
                         pst.setString(i + 1, reader.getString(i + 1));
                     }
-                    pst.addBatch();
-                    batchSize++;
-                    if (batchSize >= BATCH_MAX_SIZE) {
-                        pst.executeBatch();
-                        connection.commit();
-                        pst.clearBatch();
-                        batchSize = 0;
-                    }
+                    batch.addRow(0);
 
                     if (average_row_size++ % readFileSizeEachNode == 0) {
                         // Update Progress
@@ -356,10 +351,7 @@ public class TSVDriverFunction implements DriverFunction {
                         }
                     }
                 }
-                if (batchSize > 0) {
-                    pst.executeBatch();
-                    connection.commit();
-                }
+                batch.finish();
                 connection.setAutoCommit(true);
                 return new String[]{table};
             } finally {
@@ -403,9 +395,9 @@ public class TSVDriverFunction implements DriverFunction {
                     stmt.execute(createTable.toString());
                 }
 
-                connection.setAutoCommit(false);
+                importOptions.begin(connection);
                 PreparedStatement pst = connection.prepareStatement(insertTable.toString());
-                long batchSize = 0;
+                ImportOptions.Batch batch = importOptions.createBatch(connection, pst);
                 try {
                     while (reader.next()) {
                         if (progress.isCanceled()) {
@@ -415,19 +407,9 @@ public class TSVDriverFunction implements DriverFunction {
                         for (int i = 0; i < columnCount; i++) {
                             pst.setString(i + 1, reader.getString(i + 1));
                         }
-                        pst.addBatch();
-                        batchSize++;
-                        if (batchSize >= BATCH_MAX_SIZE) {
-                            pst.executeBatch();
-                            connection.commit();
-                            pst.clearBatch();
-                            batchSize = 0;
-                        }
-                    }
-                    if (batchSize > 0) {
-                        pst.executeBatch();
-                        connection.commit();
+                        batch.addRow(0);
                     }
+                    batch.finish();
                     return new String[]{table};
                 } finally {
                     connection.setAutoCommit(true);
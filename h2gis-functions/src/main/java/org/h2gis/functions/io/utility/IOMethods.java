@@ -25,6 +25,7 @@ import org.h2gis.functions.io.asc.AscDriverFunction;
 import org.h2gis.functions.io.csv.CSVDriverFunction;
 import org.h2gis.functions.io.dbf.DBFDriverFunction;
 import org.h2gis.functions.io.geojson.GeoJsonDriverFunction;
+import org.h2gis.functions.io.geojson.GeoJsonSeqDriverFunction;
 import org.h2gis.functions.io.gpx.GPXDriverFunction;
 import org.h2gis.functions.io.json.JsonDriverFunction;
 import org.h2gis.functions.io.kml.KMLDriverFunction;
@@ -75,6 +76,7 @@ public class IOMethods {
         driverFunctionList.add(new CSVDriverFunction());
         driverFunctionList.add(new DBFDriverFunction());
         driverFunctionList.add(new GeoJsonDriverFunction());
+        driverFunctionList.add(new GeoJsonSeqDriverFunction());
         driverFunctionList.add(new GPXDriverFunction());
         driverFunctionList.add(new JsonDriverFunction());
         driverFunctionList.add(new KMLDriverFunction());
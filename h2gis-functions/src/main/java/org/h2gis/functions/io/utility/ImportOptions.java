@@ -0,0 +1,378 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+
+package org.h2gis.functions.io.utility;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Options shared by the file importers, read from the options argument of
+ * {@link org.h2gis.api.DriverFunction#importFile}.
+ *
+ * The options are space separated key=value pairs, ie "encoding=UTF-8 batchSize=10000 commitInterval=10".
+ * A value without key is the file encoding. The keys that are not listed below are kept for the format
+ * reader, see {@link #getFormatOptions()}.
+ * <ul>
+ * <li>batchSize : number of rows inserted in a single batch</li>
+ * <li>batchBytes : execute the batch when the estimated size of its rows reaches this value, 0 to ignore the size</li>
+ * <li>commitInterval : number of batches between two commits, 0 to commit once at the end of the import</li>
+ * <li>commitBytes : commit when the estimated size of the rows inserted since the last commit reaches this value,
+ * 0 to use the commit interval. When it is set the commit interval is ignored</li>
+ * <li>autoCommit : true to keep the connection in auto commit mode, false by default</li>
+ * <li>singleTransaction : true to commit once at the end of the import, with batches of
+ * {@link #SINGLE_TRANSACTION_BATCH_SIZE} rows unless batchSize is set. The table is created and indexed
+ * as usual</li>
+ * </ul>
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public class ImportOptions {
+
+    public static final String BATCH_SIZE = "batchSize";
+    public static final String BATCH_BYTES = "batchBytes";
+    public static final String COMMIT_INTERVAL = "commitInterval";
+    public static final String COMMIT_BYTES = "commitBytes";
+    public static final String AUTO_COMMIT = "autoCommit";
+    public static final String SINGLE_TRANSACTION = "singleTransaction";
+    public static final String ENCODING = "encoding";
+    public static final String CHARSET = "charset";
+    /**
+     * Default batch size of a single transaction import
+     */
+    public static final int SINGLE_TRANSACTION_BATCH_SIZE = 10000;
+
+    private int batchSize;
+    private long batchBytes = 0;
+    private int commitInterval = 1;
+    private long commitBytes = 0;
+    private boolean autoCommit = false;
+    private boolean singleTransaction = false;
+    private String encoding;
+    private final Map<String, String> formatOptions = new LinkedHashMap<>();
+
+    /**
+     * @param batchSize Default number of rows inserted in a single batch
+     */
+    public ImportOptions(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Parse the options given to an importer
+     *
+     * @param options Options, may be null
+     * @param defaultBatchSize Batch size used if the options does not set it
+     * @return The import options
+     * @throws SQLException If an import option has a wrong value
+     */
+    public static ImportOptions parse(String options, int defaultBatchSize) throws SQLException {
+        ImportOptions importOptions = new ImportOptions(defaultBatchSize);
+        if (options == null || options.trim().isEmpty()) {
+            return importOptions;
+        }
+        boolean batchSizeSet = false;
+        for (String option : options.trim().split("\\s+")) {
+            int separator = option.indexOf('=');
+            if (separator < 0) {
+                importOptions.encoding = option;
+                continue;
+            }
+            String key = option.substring(0, separator);
+            String value = option.substring(separator + 1);
+            try {
+                if (key.equalsIgnoreCase(BATCH_SIZE)) {
+                    importOptions.setBatchSize(Integer.parseInt(value));
+                    batchSizeSet = true;
+                } else if (key.equalsIgnoreCase(BATCH_BYTES)) {
+                    importOptions.setBatchBytes(Long.parseLong(value));
+                } else if (key.equalsIgnoreCase(COMMIT_INTERVAL)) {
+                    importOptions.setCommitInterval(Integer.parseInt(value));
+                } else if (key.equalsIgnoreCase(COMMIT_BYTES)) {
+                    importOptions.setCommitBytes(Long.parseLong(value));
+                } else if (key.equalsIgnoreCase(AUTO_COMMIT)) {
+                    importOptions.autoCommit = Boolean.parseBoolean(value);
+                } else if (key.equalsIgnoreCase(SINGLE_TRANSACTION)) {
+                    importOptions.singleTransaction = Boolean.parseBoolean(value);
+                } else {
+                    if (key.equalsIgnoreCase(ENCODING) || key.equalsIgnoreCase(CHARSET)) {
+                        importOptions.encoding = value;
+                    }
+                    importOptions.formatOptions.put(key, value);
+                }
+            } catch (IllegalArgumentException ex) {
+                throw new SQLException("Invalid value for the option " + key + " : " + value, ex);
+            }
+        }
+        if (importOptions.singleTransaction) {
+            importOptions.commitInterval = 0;
+            importOptions.commitBytes = 0;
+            if (!batchSizeSet) {
+                importOptions.batchSize = Math.max(importOptions.batchSize, SINGLE_TRANSACTION_BATCH_SIZE);
+            }
+        }
+        return importOptions;
+    }
+
+    /**
+     * @return Number of rows inserted in a single batch
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize Number of rows inserted in a single batch
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be greater than 0");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return Estimated size of the rows that triggers the batch execution, 0 if the size is ignored
+     */
+    public long getBatchBytes() {
+        return batchBytes;
+    }
+
+    /**
+     * @param batchBytes Estimated size of the rows that triggers the batch execution, 0 to ignore the size
+     */
+    public void setBatchBytes(long batchBytes) {
+        if (batchBytes < 0) {
+            throw new IllegalArgumentException("The batch size in bytes cannot be negative");
+        }
+        this.batchBytes = batchBytes;
+    }
+
+    /**
+     * @return Number of batches between two commits, 0 if the import is committed once at the end
+     */
+    public int getCommitInterval() {
+        return commitInterval;
+    }
+
+    /**
+     * @param commitInterval Number of batches between two commits, 0 to commit once at the end
+     */
+    public void setCommitInterval(int commitInterval) {
+        if (commitInterval < 0) {
+            throw new IllegalArgumentException("The commit interval cannot be negative");
+        }
+        this.commitInterval = commitInterval;
+    }
+
+    /**
+     * @return Estimated size of the rows inserted between two commits, 0 if the commit interval is used
+     */
+    public long getCommitBytes() {
+        return commitBytes;
+    }
+
+    /**
+     * @param commitBytes Estimated size of the rows inserted between two commits, 0 to use the commit interval
+     */
+    public void setCommitBytes(long commitBytes) {
+        if (commitBytes < 0) {
+            throw new IllegalArgumentException("The commit size in bytes cannot be negative");
+        }
+        this.commitBytes = commitBytes;
+    }
+
+    /**
+     * @return True if the connection is kept in auto commit mode during the import
+     */
+    public boolean isAutoCommit() {
+        return autoCommit;
+    }
+
+    /**
+     * @return True if the import is committed once at the end
+     */
+    public boolean isSingleTransaction() {
+        return singleTransaction;
+    }
+
+    /**
+     * @return The file encoding, null if not set
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * @param key Option name, case insensitive
+     * @return The value of an option that is not an import option, null if not set
+     */
+    public String getOption(String key) {
+        for (Map.Entry<String, String> entry : formatOptions.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(key)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param key Option name, case insensitive
+     * @param defaultValue Value returned if the option is not set
+     * @return The value of an option that is not an import option
+     * @throws SQLException If the value is not an integer
+     */
+    public int getIntOption(String key, int defaultValue) throws SQLException {
+        String value = getOption(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            throw new SQLException("Invalid value for the option " + key + " : " + value, ex);
+        }
+    }
+
+    /**
+     * @return The options that are not import options, ie the CSV options, null if there is none
+     */
+    public String getFormatOptions() {
+        if (formatOptions.isEmpty()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> entry : formatOptions.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Set the auto commit mode of the connection for the import
+     *
+     * @param connection Active connection
+     * @throws SQLException
+     */
+    public void begin(Connection connection) throws SQLException {
+        connection.setAutoCommit(autoCommit);
+    }
+
+    /**
+     * Create a batch that executes and commits the inserted rows according to these options
+     *
+     * @param connection Active connection
+     * @param preparedStatement Insert statement
+     * @return The batch
+     */
+    public Batch createBatch(Connection connection, PreparedStatement preparedStatement) {
+        return new Batch(connection, preparedStatement);
+    }
+
+    /**
+     * Rows added to an insert statement
+     */
+    public class Batch {
+        private final Connection connection;
+        private final PreparedStatement preparedStatement;
+        private int rowCount = 0;
+        private long byteCount = 0;
+        private int uncommittedBatches = 0;
+        private long uncommittedBytes = 0;
+        private int commitCount = 0;
+
+        private Batch(Connection connection, PreparedStatement preparedStatement) {
+            this.connection = connection;
+            this.preparedStatement = preparedStatement;
+        }
+
+        /**
+         * Add the parameters of the statement to the batch, the batch is executed if it is full
+         *
+         * @param rowBytes Estimated size of the row, 0 if unknown
+         * @return True if the batch has been executed
+         * @throws SQLException
+         */
+        public boolean addRow(long rowBytes) throws SQLException {
+            preparedStatement.addBatch();
+            rowCount++;
+            byteCount += rowBytes;
+            uncommittedBytes += rowBytes;
+            if (rowCount >= batchSize || (batchBytes > 0 && byteCount >= batchBytes)) {
+                execute();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Execute the rows added since the last execution and commit the transaction
+         *
+         * @throws SQLException
+         */
+        public void finish() throws SQLException {
+            if (rowCount > 0) {
+                preparedStatement.executeBatch();
+                preparedStatement.clearBatch();
+                rowCount = 0;
+                byteCount = 0;
+            }
+            commit();
+        }
+
+        private void execute() throws SQLException {
+            preparedStatement.executeBatch();
+            preparedStatement.clearBatch();
+            rowCount = 0;
+            byteCount = 0;
+            uncommittedBatches++;
+            if (commitBytes > 0) {
+                if (uncommittedBytes >= commitBytes) {
+                    commit();
+                }
+            } else if (commitInterval > 0 && uncommittedBatches >= commitInterval) {
+                commit();
+            }
+        }
+
+        /**
+         * @return Number of commits done by this batch
+         */
+        public int getCommitCount() {
+            return commitCount;
+        }
+
+        private void commit() throws SQLException {
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+                commitCount++;
+            }
+            uncommittedBatches = 0;
+            uncommittedBytes = 0;
+        }
+    }
+}
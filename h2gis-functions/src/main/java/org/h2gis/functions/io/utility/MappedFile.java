@@ -0,0 +1,202 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.utility;
+
+import org.h2.util.MemoryUnmapper;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read only memory mapping of a file.
+ * A single {@link MappedByteBuffer} cannot exceed 2 GB so the file is mapped in segments.
+ * Consecutive segments overlap of {@link #getSegmentMargin()} bytes, then any read smaller than this margin
+ * is contained in a single segment.
+ *
+ * The mapping is immutable, it can be shared by several {@link ReadBufferManager}, each one reading with its own
+ * view of the segments. {@link #open(File)} returns the mapping already shared by the other readers of the same file,
+ * the mapping is reference counted and released when its last reader is closed.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public final class MappedFile implements Closeable {
+    /** Default segment size, 1 GB */
+    public static final long DEFAULT_SEGMENT_SIZE = 1L << 30;
+    /** Default overlap between two segments, 1 MB */
+    public static final int DEFAULT_SEGMENT_MARGIN = 1 << 20;
+
+    /** Shared mappings, by file path, size and last modification time */
+    private static final Map<String, MappedFile> SHARED = new HashMap<>();
+
+    private final long size;
+    private final long segmentSize;
+    private final int segmentMargin;
+    private volatile MappedByteBuffer[] segments;
+    // Number of readers of the mapping, guarded by SHARED
+    private int references = 1;
+    // Key of the mapping in SHARED, null if the mapping is not shared
+    private String sharedKey;
+
+    /**
+     * Return the mapping of the file, shared with the other readers of the same version of the file. Each call must
+     * be followed by a call to {@link #close()}.
+     * @param file File
+     * @return The mapping of the whole file
+     * @throws IOException
+     */
+    public static MappedFile open(File file) throws IOException {
+        String key = file.getCanonicalPath() + "|" + file.length() + "|" + file.lastModified();
+        synchronized (SHARED) {
+            MappedFile mappedFile = SHARED.get(key);
+            if (mappedFile != null) {
+                mappedFile.references++;
+                return mappedFile;
+            }
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                mappedFile = new MappedFile(channel);
+            }
+            mappedFile.sharedKey = key;
+            SHARED.put(key, mappedFile);
+            return mappedFile;
+        }
+    }
+
+    /**
+     * Map the whole content of the channel
+     * @param channel File channel, it can be closed after this call
+     * @throws IOException
+     */
+    public MappedFile(FileChannel channel) throws IOException {
+        this(channel, DEFAULT_SEGMENT_SIZE, DEFAULT_SEGMENT_MARGIN);
+    }
+
+    /**
+     * Map the whole content of the channel
+     * @param channel File channel, it can be closed after this call
+     * @param segmentSize Size of a segment without the margin
+     * @param segmentMargin Overlap with the next segment
+     * @throws IOException
+     */
+    public MappedFile(FileChannel channel, long segmentSize, int segmentMargin) throws IOException {
+        if (segmentSize <= 0 || segmentMargin < 0 || segmentSize + segmentMargin > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid segment size");
+        }
+        this.size = channel.size();
+        this.segmentSize = segmentSize;
+        this.segmentMargin = segmentMargin;
+        int segmentCount = (int) ((size + segmentSize - 1) / segmentSize);
+        segments = new MappedByteBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            long start = i * segmentSize;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                    Math.min(segmentSize + segmentMargin, size - start));
+        }
+    }
+
+    /**
+     * @return File size in bytes
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return Overlap between two segments, reads up to this length never cross a segment boundary
+     */
+    public int getSegmentMargin() {
+        return segmentMargin;
+    }
+
+    /**
+     * @param bytePos Position in the file
+     * @return The index of the segment that starts before this position
+     */
+    public int getSegmentIndex(long bytePos) {
+        return (int) (bytePos / segmentSize);
+    }
+
+    /**
+     * @param segmentIndex Segment index
+     * @return Position of the first byte of the segment in the file
+     */
+    public long getSegmentStart(int segmentIndex) {
+        return segmentIndex * segmentSize;
+    }
+
+    /**
+     * @return Number of segments
+     */
+    public int getSegmentCount() {
+        return segments == null ? 0 : segments.length;
+    }
+
+    /**
+     * @param segmentIndex Segment index
+     * @return A new view on the segment, with its own position and byte order (BIG_ENDIAN)
+     * @throws IOException If the mapping has been closed
+     */
+    public ByteBuffer getSegment(int segmentIndex) throws IOException {
+        MappedByteBuffer[] mapped = segments;
+        if (mapped == null) {
+            throw new IOException("The file mapping is closed");
+        }
+        if (segmentIndex < 0 || segmentIndex >= mapped.length) {
+            throw new IOException("Read out of file bounds");
+        }
+        return mapped[segmentIndex].duplicate();
+    }
+
+    /**
+     * Release this reference to the mapping, the mapping is released with its last reference. The views returned by
+     * {@link #getSegment(int)} must not be used after this call.
+     */
+    @Override
+    public void close() {
+        MappedByteBuffer[] mapped;
+        synchronized (SHARED) {
+            if (references == 0) {
+                return;
+            }
+            references--;
+            if (references > 0) {
+                return;
+            }
+            if (sharedKey != null) {
+                SHARED.remove(sharedKey);
+            }
+            mapped = segments;
+            segments = null;
+        }
+        if (mapped != null) {
+            for (MappedByteBuffer segment : mapped) {
+                // Unmap now instead of waiting the GC, the file could not be deleted on Windows
+                MemoryUnmapper.unmap(segment);
+            }
+        }
+    }
+}
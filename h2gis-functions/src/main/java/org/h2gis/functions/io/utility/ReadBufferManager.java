@@ -25,6 +25,10 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 
+/**
+ * Reads a file through a window, either a heap buffer reloaded from the channel or a segment of a memory mapping.
+ * The window and the read position are mutable: an instance must be used by a single thread at a time.
+ */
 public final class ReadBufferManager {
 
         private int bufferSize;
@@ -32,6 +36,8 @@ public final class ReadBufferManager {
         private FileChannel channel;
         private long windowStart;
         private long positionInFile;
+        private MappedFile mappedFile;
+        private boolean closed = false;
 
         /**
          * Instantiates a ReadBufferManager to read the specified channel
@@ -60,6 +66,83 @@ public final class ReadBufferManager {
                 getWindowOffset(0, bufferSize);
         }
 
+        /**
+         * Instantiates a ReadBufferManager to read the specified memory mapped file. The
+         * window is a segment of the mapping, the file content is never copied.
+         *
+         * @param mappedFile Mapping, the reference is released by {@link #close()}
+         * @throws java.io.IOException
+         */
+        public ReadBufferManager(MappedFile mappedFile) throws IOException {
+                this.mappedFile = mappedFile;
+                windowStart = 0;
+                buffer = mappedFile.getSegmentCount() > 0 ? mappedFile.getSegment(0) : ByteBuffer.allocate(0);
+        }
+
+        /**
+         * Instantiates a ReadBufferManager to read the specified channel
+         *
+         * @param channel
+         * @param mappedFile Mapping of the channel file, see {@link MappedFile#open(java.io.File)}, or null to read
+         * the channel in a heap window
+         * @return The buffer manager
+         * @throws java.io.IOException
+         */
+        public static ReadBufferManager open(FileChannel channel, MappedFile mappedFile) throws IOException {
+                if (mappedFile != null) {
+                        return new ReadBufferManager(mappedFile);
+                } else {
+                        return new ReadBufferManager(channel);
+                }
+        }
+
+        /**
+         * @return True if the file is memory mapped
+         */
+        public boolean isMemoryMapped() {
+                return mappedFile != null;
+        }
+
+        /**
+         * Release the reference to the memory mapping, if any. The channel is not closed.
+         */
+        public void close() {
+                if (mappedFile != null && !closed) {
+                        closed = true;
+                        // Drop the view before the mapping may be unmapped
+                        buffer = ByteBuffer.allocate(0);
+                        windowStart = 0;
+                        mappedFile.close();
+                }
+        }
+
+        /**
+         * Moves the window to the mapped segment that contains the desired bytes and
+         * returns the position of the first byte in the segment
+         *
+         * @param bytePos
+         * @throws java.io.IOException
+         */
+        private int getMappedOffset(long bytePos, int length) throws IOException {
+                if (closed) {
+                        throw new IOException("The file mapping is closed");
+                }
+                if (bytePos < windowStart || bytePos + length > windowStart + buffer.capacity()) {
+                        if (length > mappedFile.getSegmentMargin()) {
+                                throw new IOException("Cannot read " + length + " bytes at once in a mapped file");
+                        }
+                        int segmentIndex = mappedFile.getSegmentIndex(bytePos);
+                        ByteOrder order = buffer.order();
+                        buffer = mappedFile.getSegment(segmentIndex);
+                        buffer.order(order);
+                        windowStart = mappedFile.getSegmentStart(segmentIndex);
+                        if (bytePos + length > windowStart + buffer.capacity()) {
+                                throw new IOException("Read out of file bounds");
+                        }
+                }
+                return (int) (bytePos - windowStart);
+        }
+
         /**
          * Moves the window if necessary to contain the desired byte and returns the
          * position of the byte in the window
@@ -68,6 +151,9 @@ public final class ReadBufferManager {
          * @throws java.io.IOException
          */
         private int getWindowOffset(long bytePos, int length) throws IOException {
+                if (mappedFile != null) {
+                        return getMappedOffset(bytePos, length);
+                }
                 long desiredMax = bytePos + length - 1;
                 if ((bytePos >= windowStart)
                         && (desiredMax < windowStart + buffer.capacity())) {
@@ -120,6 +206,9 @@ public final class ReadBufferManager {
          * @throws java.io.IOException
          */
         public long getLength() throws IOException {
+                if (mappedFile != null) {
+                        return mappedFile.size();
+                }
                 return channel.size();
         }
 
@@ -273,6 +362,18 @@ public final class ReadBufferManager {
                 return buffer.getDouble(windowOffset);
         }
 
+        /**
+         * Gets the float value at the specified position
+         *
+         * @param bytePos
+         * @return
+         * @throws java.io.IOException
+         */
+        public float getFloat(long bytePos) throws IOException {
+                int windowOffset = getWindowOffset(bytePos, 4);
+                return buffer.getFloat(windowOffset);
+        }
+
         /**
          * If the current position is at the end of the channel
          *
@@ -280,6 +381,9 @@ public final class ReadBufferManager {
          * @throws java.io.IOException
          */
         public boolean isEOF() throws IOException {
+                if (mappedFile != null) {
+                        return positionInFile >= mappedFile.size();
+                }
                 return (buffer.remaining() == 0)
                         && (windowStart + buffer.capacity() >= channel.size());
         }
@@ -292,6 +396,9 @@ public final class ReadBufferManager {
          * @throws java.io.IOException
          */
         public long remaining() throws IOException {
+                if (mappedFile != null) {
+                        return Math.max(0, mappedFile.size() - positionInFile);
+                }
                 return channel.size() - windowStart - buffer.position();
         }
 }
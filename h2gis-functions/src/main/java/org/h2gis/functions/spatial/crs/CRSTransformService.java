@@ -0,0 +1,283 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.spatial.crs;
+
+import org.cts.CRSFactory;
+import org.cts.IllegalCoordinateException;
+import org.cts.crs.CRSException;
+import org.cts.crs.CoordinateReferenceSystem;
+import org.cts.crs.GeodeticCRS;
+import org.cts.op.CoordinateOperation;
+import org.cts.op.CoordinateOperationException;
+import org.cts.op.CoordinateOperationFactory;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.CoordinateSequenceFilter;
+import org.locationtech.jts.geom.Geometry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread safe transformation of geometries between the CRSs of the
+ * spatial_ref_sys table.
+ *
+ * <p>The CRSs are resolved once per SRID and the coordinate operations once
+ * per pair of SRIDs, then kept in concurrent caches so the sessions
+ * transforming geometries at the same time only share read only objects.
+ * The registry is only used, under a lock, when a SRID is seen for the first
+ * time. The coordinates are transformed sequence by sequence, in place, with
+ * one buffer per sequence.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public final class CRSTransformService {
+
+    /**
+     * Maximum number of cached CRSs or coordinate operations, the cache is
+     * emptied when it is reached
+     */
+    public static final int MAX_CACHE_SIZE = 256;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("gui." + CRSTransformService.class);
+    private static final SpatialRefRegistry REGISTRY = new SpatialRefRegistry();
+    private static final CRSFactory CRS_FACTORY = new CRSFactory();
+    private static final Map<Integer, CoordinateReferenceSystem> CRS_CACHE = new ConcurrentHashMap<>();
+    private static final Map<EPSGTuple, Transformation> OPERATION_CACHE = new ConcurrentHashMap<>();
+
+    static {
+        //Activate the CRSFactory and the internal H2 spatial_ref_sys registry to
+        // manage Coordinate Reference Systems.
+        CRS_FACTORY.getRegistryManager().addRegistry(REGISTRY);
+    }
+
+    private CRSTransformService() {
+    }
+
+    /**
+     * Returns a copy of the geometry transformed to the target SRID.
+     *
+     * @param connection Connection used to read the spatial_ref_sys table
+     * @param geom       Geometry with a SRID, not null
+     * @param targetSRID Target SRID
+     * @return The transformed geometry, the input geometry if both CRSs are
+     * equal or null if there is no operation between them
+     * @throws SQLException if a CRS cannot be created or the transformation is
+     * not supported
+     */
+    public static Geometry transform(Connection connection, Geometry geom, int targetSRID) throws SQLException {
+        final int inputSRID = geom.getSRID();
+        if (inputSRID == 0) {
+            throw new SQLException("Cannot find a CRS");
+        }
+        final Transformation transformation = getTransformation(connection, inputSRID, targetSRID);
+        if (transformation == null) {
+            return null;
+        }
+        if (transformation.operation == null) {
+            return geom;
+        }
+        Geometry outPutGeom = geom.copy();
+        outPutGeom.apply(new CRSTransformSequenceFilter(transformation.operation));
+        outPutGeom.setSRID(targetSRID);
+        return outPutGeom;
+    }
+
+    /**
+     * @param connection Connection used to read the spatial_ref_sys table
+     * @param inputSRID  Source SRID
+     * @param targetSRID Target SRID
+     * @return The cached transformation, null if there is no operation between
+     * the two CRSs
+     * @throws SQLException if a CRS cannot be created or the transformation is
+     * not supported
+     */
+    public static Transformation getTransformation(Connection connection, int inputSRID, int targetSRID) throws SQLException {
+        final EPSGTuple epsg = new EPSGTuple(inputSRID, targetSRID);
+        Transformation transformation = OPERATION_CACHE.get(epsg);
+        if (transformation != null) {
+            return transformation;
+        }
+        final CoordinateReferenceSystem inputCRS = getCRS(connection, inputSRID);
+        final CoordinateReferenceSystem targetCRS = getCRS(connection, targetSRID);
+        if (inputCRS.equals(targetCRS)) {
+            transformation = new Transformation(null);
+        } else if (inputCRS instanceof GeodeticCRS && targetCRS instanceof GeodeticCRS) {
+            Set<CoordinateOperation> ops;
+            try {
+                ops = CoordinateOperationFactory
+                        .createCoordinateOperations((GeodeticCRS) inputCRS, (GeodeticCRS) targetCRS);
+            } catch (CoordinateOperationException ex) {
+                throw new SQLException("Cannot create the coordinate operation from "
+                        + inputCRS + " to " + targetCRS, ex);
+            }
+            if (ops.isEmpty()) {
+                return null;
+            }
+            transformation = new Transformation(CoordinateOperationFactory.getMostPrecise(ops));
+        } else {
+            throw new SQLException("The transformation from "
+                    + inputCRS + " to " + targetSRID + " is not yet supported.");
+        }
+        return cache(OPERATION_CACHE, epsg, transformation);
+    }
+
+    /**
+     * @param connection Connection used to read the spatial_ref_sys table
+     * @param srid       SRID
+     * @return The cached CRS of the SRID
+     * @throws SQLException if the CRS cannot be created
+     */
+    public static CoordinateReferenceSystem getCRS(Connection connection, int srid) throws SQLException {
+        CoordinateReferenceSystem crs = CRS_CACHE.get(srid);
+        if (crs != null) {
+            return crs;
+        }
+        // The registry and the factory are not thread safe
+        synchronized (REGISTRY) {
+            REGISTRY.setConnection(connection);
+            try {
+                crs = CRS_FACTORY.getCRS(REGISTRY.getRegistryName() + ":" + srid);
+            } catch (CRSException ex) {
+                throw new SQLException("Cannot create the CRS", ex);
+            } finally {
+                REGISTRY.setConnection(null);
+            }
+        }
+        if (crs == null) {
+            throw new SQLException("Cannot create the CRS");
+        }
+        return cache(CRS_CACHE, srid, crs);
+    }
+
+    /**
+     * Drop the cached CRSs and coordinate operations, for instance after the
+     * spatial_ref_sys table has been modified
+     */
+    public static void clear() {
+        OPERATION_CACHE.clear();
+        CRS_CACHE.clear();
+    }
+
+    private static <K, V> V cache(Map<K, V> cache, K key, V value) {
+        if (cache.size() >= MAX_CACHE_SIZE) {
+            cache.clear();
+        }
+        V previous = cache.putIfAbsent(key, value);
+        return previous == null ? value : previous;
+    }
+
+    /**
+     * Transform the coordinates of a sequence in place.
+     *
+     * <p>The z value of 2D coordinates is set to 0 before the transformation,
+     * the transformed z is written only if the sequence has a z dimension.
+     * The coordinates that cannot be transformed are left unchanged.
+     *
+     * @param sequence  Coordinate sequence
+     * @param operation Coordinate operation
+     * @return The number of coordinates that could not be transformed
+     */
+    public static int transform(CoordinateSequence sequence, CoordinateOperation operation) {
+        final double[] buffer = new double[3];
+        final int size = sequence.size();
+        // XY sequences, such as the ones decoded by H2, cannot store a z
+        final boolean hasZ = sequence.hasZ();
+        int errors = 0;
+        for (int i = 0; i < size; i++) {
+            buffer[0] = sequence.getX(i);
+            buffer[1] = sequence.getY(i);
+            final double z = sequence.getZ(i);
+            buffer[2] = Double.isNaN(z) ? 0 : z;
+            final double[] xyz;
+            try {
+                xyz = operation.transform(buffer);
+            } catch (CoordinateOperationException | IllegalCoordinateException ex) {
+                errors++;
+                continue;
+            }
+            sequence.setOrdinate(i, CoordinateSequence.X, xyz[0]);
+            sequence.setOrdinate(i, CoordinateSequence.Y, xyz[1]);
+            if (hasZ) {
+                sequence.setOrdinate(i, CoordinateSequence.Z, xyz.length > 2 ? xyz[2] : Double.NaN);
+            }
+        }
+        if (errors > 0) {
+            LOGGER.error(errors + " coordinates cannot be transformed with " + operation);
+        }
+        return errors;
+    }
+
+    /**
+     * A cached coordinate operation between two CRSs, the operation is null
+     * if both CRSs are equal.
+     */
+    public static final class Transformation {
+
+        private final CoordinateOperation operation;
+
+        private Transformation(CoordinateOperation operation) {
+            this.operation = operation;
+        }
+
+        /**
+         * @return The coordinate operation, null if there is nothing to do
+         */
+        public CoordinateOperation getOperation() {
+            return operation;
+        }
+    }
+
+    /**
+     * Applies a {@link CoordinateOperation} to each coordinate sequence of a
+     * geometry.
+     */
+    public static final class CRSTransformSequenceFilter implements CoordinateSequenceFilter {
+
+        private final CoordinateOperation coordinateOperation;
+
+        public CRSTransformSequenceFilter(CoordinateOperation coordinateOperation) {
+            this.coordinateOperation = coordinateOperation;
+        }
+
+        @Override
+        public void filter(CoordinateSequence seq, int i) {
+            // The whole sequence is transformed on its first coordinate
+            if (i == 0) {
+                transform(seq, coordinateOperation);
+            }
+        }
+
+        @Override
+        public boolean isDone() {
+            return false;
+        }
+
+        @Override
+        public boolean isGeometryChanged() {
+            return true;
+        }
+    }
+}
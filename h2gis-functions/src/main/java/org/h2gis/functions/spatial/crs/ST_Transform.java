@@ -20,14 +20,9 @@
 
 package org.h2gis.functions.spatial.crs;
 
-import org.cts.CRSFactory;
 import org.cts.IllegalCoordinateException;
-import org.cts.crs.CRSException;
-import org.cts.crs.CoordinateReferenceSystem;
-import org.cts.crs.GeodeticCRS;
 import org.cts.op.CoordinateOperation;
 import org.cts.op.CoordinateOperationException;
-import org.cts.op.CoordinateOperationFactory;
 import org.h2gis.api.AbstractFunction;
 import org.h2gis.api.ScalarFunction;
 import org.locationtech.jts.geom.Coordinate;
@@ -38,7 +33,6 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -53,10 +47,6 @@ import java.util.logging.Logger;
  */
 public class ST_Transform extends AbstractFunction implements ScalarFunction {
 
-    private static CRSFactory crsf;
-    private static SpatialRefRegistry srr = new SpatialRefRegistry();
-    private static Map<EPSGTuple, CoordinateOperation> copPool = new CopCache(5);
-
     /**
      * Constructor
      */
@@ -86,63 +76,14 @@ public class ST_Transform extends AbstractFunction implements ScalarFunction {
         if (codeEpsg == null) {
             throw new IllegalArgumentException("The SRID code cannot be null.");
         }
-        if (crsf == null) {
-            crsf = new CRSFactory();
-            //Activate the CRSFactory and the internal H2 spatial_ref_sys registry to
-            // manage Coordinate Reference Systems.
-            crsf.getRegistryManager().addRegistry(srr);
-        }
-        srr.setConnection(connection);
-        try {
-            int inputSRID = geom.getSRID();
-            if (inputSRID == 0) {
-                throw new SQLException("Cannot find a CRS");
-            } else {
-                CoordinateReferenceSystem inputCRS = crsf.getCRS(srr.getRegistryName() + ":" + inputSRID);
-                CoordinateReferenceSystem targetCRS = crsf.getCRS(srr.getRegistryName() + ":" + codeEpsg);
-                if (inputCRS.equals(targetCRS)) {
-                    return geom;
-                }
-                EPSGTuple epsg = new EPSGTuple(inputSRID, codeEpsg);
-                CoordinateOperation op = copPool.get(epsg);
-                if (op != null) {
-                    Geometry outPutGeom = geom.copy();
-                    outPutGeom.geometryChanged();
-                    outPutGeom.apply(new CRSTransformFilter(op));
-                    outPutGeom.setSRID(codeEpsg);
-                    return outPutGeom;
-                } else {
-                    if (inputCRS instanceof GeodeticCRS && targetCRS instanceof GeodeticCRS) {
-                        Set<CoordinateOperation> ops = CoordinateOperationFactory
-                                .createCoordinateOperations((GeodeticCRS) inputCRS, (GeodeticCRS) targetCRS);
-                        if (!ops.isEmpty()) {
-                            op = CoordinateOperationFactory.getMostPrecise(ops);
-                            Geometry outPutGeom = geom.copy();
-                            outPutGeom.geometryChanged();
-                            outPutGeom.apply(new CRSTransformFilter(op));
-                            copPool.put(epsg, op);
-                            outPutGeom.setSRID(codeEpsg);
-                            return outPutGeom;
-                        }
-                    } else {
-                        throw new SQLException("The transformation from "
-                                + inputCRS + " to " + codeEpsg + " is not yet supported.");
-                    }
-                }
-            }
-        } catch (CRSException ex) {
-            throw new SQLException("Cannot create the CRS", ex);
-        } finally {
-            srr.setConnection(null);
-        }
-        return null;
-
+        return CRSTransformService.transform(connection, geom, codeEpsg);
     }
 
-  
     /**
      * This method is used to apply a {@link CoordinateOperation} to a geometry.
      * The transformation loops on each coordinate. 
+     *
+     * @see CRSTransformService.CRSTransformSequenceFilter
      */
     public static class CRSTransformFilter implements CoordinateFilter{
         private final CoordinateOperation coordinateOperation;
@@ -178,7 +119,10 @@ public class ST_Transform extends AbstractFunction implements ScalarFunction {
 
     /**
      * A simple cache to manage {@link CoordinateOperation}
+     *
+     * @deprecated The coordinate operations are cached by {@link CRSTransformService}
      */
+    @Deprecated
     public static class CopCache extends LinkedHashMap<EPSGTuple, CoordinateOperation> {
 
         private final int limit;
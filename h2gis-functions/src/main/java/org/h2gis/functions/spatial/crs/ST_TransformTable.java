@@ -0,0 +1,385 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.spatial.crs;
+
+import org.h2gis.api.AbstractFunction;
+import org.h2gis.api.ScalarFunction;
+import org.h2gis.functions.spatial.crs.CRSTransformService.CRSTransformSequenceFilter;
+import org.h2gis.functions.spatial.crs.CRSTransformService.Transformation;
+import org.h2gis.utilities.*;
+import org.h2gis.utilities.dbtypes.DBTypes;
+import org.h2gis.utilities.dbtypes.DBUtils;
+import org.locationtech.jts.geom.Geometry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Copies a table to a new table with its geometries transformed to another
+ * CRS.
+ *
+ * <p>The source table is read in chunks of rows ordered by its primary key.
+ * The geometries of each chunk are transformed by the common fork-join pool
+ * while the next chunks are read and the previous ones written with batch
+ * inserts. The geometry column of the target table is created with the
+ * target SRID and its spatial index is built once all the rows are written.
+ * In auto commit mode the rows are committed chunk by chunk, otherwise the
+ * transaction is left to the caller. The target table is dropped if the copy
+ * fails.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public class ST_TransformTable extends AbstractFunction implements ScalarFunction {
+
+    /**
+     * Default number of rows of a chunk
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 10000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("gui." + ST_TransformTable.class);
+
+    public static final String REMARKS =
+            "ST_TransformTable copies the `source` table to the new `target` table, with the\n" +
+            "geometries transformed to the given SRID of the SPATIAL_REF_SYS table. The\n" +
+            "source table must have a single integer primary key. The geometry column of\n" +
+            "the target table is declared with the new SRID and has a spatial index.\n" +
+            "Returns the number of copied rows. Possible signatures:\n" +
+            "* `ST_TransformTable('source', 'target', srid)`\n" +
+            "* `ST_TransformTable('source', 'target', srid, 'options')`\n" +
+            "\n" +
+            "where `options` is a list of space separated parameters:\n" +
+            "* `geom=name` - Geometry column to transform, the first one by default\n" +
+            "* `chunk=n` - Number of rows transformed by a task (default 10000)\n" +
+            "* `threads=n` - Number of concurrent tasks, 1 to transform the rows in the\n" +
+            "  calling session (default is the number of processors)\n" +
+            "* `delete=true` - Drop the target table if it already exists\n" +
+            "\n" +
+            "In auto commit mode the rows are committed chunk by chunk. The target table\n" +
+            "is dropped if the copy fails.\n";
+
+    /**
+     * Constructor
+     */
+    public ST_TransformTable() {
+        addProperty(PROP_REMARKS, REMARKS);
+    }
+
+    @Override
+    public String getJavaStaticMethod() {
+        return "transformTable";
+    }
+
+    /**
+     * Copy the source table to the target table with the geometries of its
+     * first geometry column transformed to the SRID
+     *
+     * @param connection Connection
+     * @param source     Source table
+     * @param target     Target table
+     * @param srid       Target SRID
+     * @return The number of copied rows
+     * @throws SQLException
+     */
+    public static long transformTable(Connection connection, String source, String target,
+                                      int srid) throws SQLException {
+        return transformTable(connection, source, target, srid, null);
+    }
+
+    /**
+     * Copy the source table to the target table with its geometries
+     * transformed to the SRID
+     *
+     * @param connection Connection
+     * @param source     Source table
+     * @param target     Target table
+     * @param srid       Target SRID
+     * @param options    Space separated parameters geom=name, chunk=n,
+     *                   threads=n and delete=true|false
+     * @return The number of copied rows
+     * @throws SQLException
+     */
+    public static long transformTable(Connection connection, String source, String target,
+                                      int srid, String options) throws SQLException {
+        String geomColumn = null;
+        int chunkSize = DEFAULT_CHUNK_SIZE;
+        int threads = ForkJoinPool.getCommonPoolParallelism();
+        boolean delete = false;
+        if (options != null && !options.trim().isEmpty()) {
+            for (String param : options.trim().split("\\s+")) {
+                String[] keyValue = param.split("=");
+                if (keyValue.length != 2) {
+                    throw new IllegalArgumentException("Unknown parameters. Please read the documentation.");
+                }
+                if (keyValue[0].equalsIgnoreCase("geom")) {
+                    geomColumn = keyValue[1];
+                } else if (keyValue[0].equalsIgnoreCase("chunk")) {
+                    chunkSize = Integer.parseInt(keyValue[1]);
+                } else if (keyValue[0].equalsIgnoreCase("threads")) {
+                    threads = Integer.parseInt(keyValue[1]);
+                } else if (keyValue[0].equalsIgnoreCase("delete")) {
+                    delete = Boolean.parseBoolean(keyValue[1]);
+                } else {
+                    throw new IllegalArgumentException("Unknown parameters. Please read the documentation.");
+                }
+            }
+        }
+        if (chunkSize <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("The chunk size and the number of threads must be greater than 0.");
+        }
+        final DBTypes dbType = DBUtils.getDBType(connection);
+        final TableLocation sourceTable = TableUtilities.parseInputTable(connection, source);
+        final TableLocation targetTable = TableLocation.parse(target, dbType);
+        if (JDBCUtilities.tableExists(connection, targetTable)) {
+            if (!delete) {
+                throw new IllegalArgumentException("The table " + targetTable + " already exists.");
+            }
+            try (Statement st = connection.createStatement()) {
+                st.execute("DROP TABLE " + targetTable);
+            }
+        }
+        final Tuple<String, Integer> pkIndex = JDBCUtilities.getIntegerPrimaryKeyNameAndIndex(connection, sourceTable);
+        if (pkIndex == null) {
+            throw new IllegalStateException("Table " + sourceTable.getTable()
+                    + " must contain a single integer primary key.");
+        }
+        LinkedHashMap<String, GeometryMetaData> geomMetadatas = GeometryTableUtilities.getMetaData(connection, sourceTable);
+        if (geomMetadatas.isEmpty()) {
+            throw new SQLException("The table " + sourceTable + " does not contain a geometry field.");
+        }
+        String geomField = geomMetadatas.keySet().iterator().next();
+        if (geomColumn != null) {
+            geomField = null;
+            for (String field : geomMetadatas.keySet()) {
+                if (field.equalsIgnoreCase(geomColumn)) {
+                    geomField = field;
+                }
+            }
+            if (geomField == null) {
+                throw new SQLException("The geometry field " + geomColumn + " cannot be found.");
+            }
+        }
+        final long start = System.currentTimeMillis();
+        final String pkField = TableLocation.quoteIdentifier(pkIndex.first(), dbType);
+        try (Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE " + targetTable + " AS SELECT * FROM " + sourceTable + " WITH NO DATA");
+        }
+        final long count;
+        try {
+            GeometryTableUtilities.alterSRID(connection, targetTable, geomField, srid);
+            count = copy(connection, sourceTable, targetTable, pkIndex.first(), geomField, srid,
+                    chunkSize, threads);
+            try (Statement st = connection.createStatement()) {
+                st.execute("ALTER TABLE " + targetTable + " ALTER COLUMN " + pkField + " SET NOT NULL");
+                st.execute("ALTER TABLE " + targetTable + " ADD PRIMARY KEY (" + pkField + ")");
+            }
+            JDBCUtilities.createSpatialIndex(connection, targetTable, geomField);
+        } catch (SQLException | RuntimeException ex) {
+            try (Statement st = connection.createStatement()) {
+                st.execute("DROP TABLE IF EXISTS " + targetTable);
+            } catch (SQLException dropEx) {
+                ex.addSuppressed(dropEx);
+            }
+            throw ex;
+        }
+        LOGGER.info(count + " rows transformed in " + (System.currentTimeMillis() - start) + " ms");
+        return count;
+    }
+
+    /**
+     * Read, transform and write the rows chunk by chunk. The chunks are
+     * committed only if the connection is in auto commit mode.
+     *
+     * @return The number of copied rows
+     */
+    private static long copy(Connection connection, TableLocation sourceTable, TableLocation targetTable,
+                             String pkName, String geomField, int srid, int chunkSize,
+                             int threads) throws SQLException {
+        final String pkField = TableLocation.quoteIdentifier(pkName, sourceTable.getDbTypes());
+        final boolean autoCommit = connection.getAutoCommit();
+        final Map<Integer, Transformation> transformations = new ConcurrentHashMap<>();
+        final ArrayDeque<Future<List<Object[]>>> pending = new ArrayDeque<>();
+        long count = 0;
+        if (autoCommit) {
+            connection.setAutoCommit(false);
+        }
+        // The first chunk is read without lower bound, so the smallest key can be Long.MIN_VALUE
+        try (PreparedStatement first = connection.prepareStatement("SELECT * FROM " + sourceTable
+                + " ORDER BY " + pkField + " LIMIT " + chunkSize);
+             PreparedStatement next = connection.prepareStatement("SELECT * FROM " + sourceTable
+                + " WHERE " + pkField + " > ? ORDER BY " + pkField + " LIMIT " + chunkSize)) {
+            PreparedStatement insert = null;
+            int geomIndex = 0;
+            int pkIndex = 0;
+            int columnCount = 0;
+            Long lastKey = null;
+            boolean finished = false;
+            try {
+                while (!finished || !pending.isEmpty()) {
+                    // Read ahead at most two chunks per thread
+                    while (!finished && pending.size() < threads * 2) {
+                        PreparedStatement select = first;
+                        if (lastKey != null) {
+                            next.setLong(1, lastKey);
+                            select = next;
+                        }
+                        final List<Object[]> rows = new ArrayList<>(chunkSize);
+                        try (ResultSet rs = select.executeQuery()) {
+                            if (insert == null) {
+                                columnCount = rs.getMetaData().getColumnCount();
+                                geomIndex = rs.findColumn(geomField) - 1;
+                                pkIndex = rs.findColumn(pkName) - 1;
+                                insert = prepareInsert(connection, targetTable, columnCount);
+                            }
+                            while (rs.next()) {
+                                Object[] row = new Object[columnCount];
+                                for (int i = 0; i < columnCount; i++) {
+                                    row[i] = rs.getObject(i + 1);
+                                }
+                                final Geometry geom = (Geometry) row[geomIndex];
+                                if (geom != null) {
+                                    getTransformation(connection, transformations, geom.getSRID(), srid);
+                                }
+                                rows.add(row);
+                            }
+                        }
+                        if (rows.size() < chunkSize) {
+                            finished = true;
+                        }
+                        if (rows.isEmpty()) {
+                            break;
+                        }
+                        lastKey = ((Number) rows.get(rows.size() - 1)[pkIndex]).longValue();
+                        final int index = geomIndex;
+                        FutureTask<List<Object[]>> task = new FutureTask<>(
+                                () -> transform(rows, index, transformations, srid));
+                        if (threads > 1) {
+                            ForkJoinPool.commonPool().execute(task);
+                        } else {
+                            task.run();
+                        }
+                        pending.add(task);
+                    }
+                    if (pending.isEmpty()) {
+                        break;
+                    }
+                    for (Object[] row : get(pending.poll())) {
+                        for (int i = 0; i < columnCount; i++) {
+                            insert.setObject(i + 1, row[i]);
+                        }
+                        insert.addBatch();
+                        count++;
+                    }
+                    insert.executeBatch();
+                    if (autoCommit) {
+                        connection.commit();
+                    }
+                }
+            } finally {
+                for (Future<List<Object[]>> future : pending) {
+                    future.cancel(true);
+                }
+                if (insert != null) {
+                    insert.close();
+                }
+            }
+        } catch (SQLException | RuntimeException ex) {
+            if (autoCommit) {
+                connection.rollback();
+            }
+            throw ex;
+        } finally {
+            if (autoCommit) {
+                connection.setAutoCommit(true);
+            }
+        }
+        return count;
+    }
+
+    private static PreparedStatement prepareInsert(Connection connection, TableLocation targetTable,
+                                                   int columnCount) throws SQLException {
+        StringBuilder sb = new StringBuilder("INSERT INTO ").append(targetTable).append(" VALUES (?");
+        for (int i = 1; i < columnCount; i++) {
+            sb.append(", ?");
+        }
+        return connection.prepareStatement(sb.append(")").toString());
+    }
+
+    /**
+     * Resolve the transformation of a source SRID in the calling session, the
+     * workers only read the map.
+     */
+    private static void getTransformation(Connection connection, Map<Integer, Transformation> transformations,
+                                          int inputSRID, int srid) throws SQLException {
+        if (!transformations.containsKey(inputSRID)) {
+            if (inputSRID == 0) {
+                throw new SQLException("Cannot find a CRS");
+            }
+            Transformation transformation = CRSTransformService.getTransformation(connection, inputSRID, srid);
+            if (transformation == null) {
+                throw new SQLException("Cannot transform the geometries from " + inputSRID + " to " + srid);
+            }
+            transformations.put(inputSRID, transformation);
+        }
+    }
+
+    /**
+     * Transform in place the geometries of a chunk
+     */
+    private static List<Object[]> transform(List<Object[]> rows, int geomIndex,
+                                            Map<Integer, Transformation> transformations, int srid) {
+        for (Object[] row : rows) {
+            final Geometry geom = (Geometry) row[geomIndex];
+            if (geom != null) {
+                Transformation transformation = transformations.get(geom.getSRID());
+                if (transformation.getOperation() != null) {
+                    geom.apply(new CRSTransformSequenceFilter(transformation.getOperation()));
+                }
+                geom.setSRID(srid);
+            }
+        }
+        return rows;
+    }
+
+    private static List<Object[]> get(Future<List<Object[]>> future) throws SQLException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("The transformation has been interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new SQLException(ex.getCause());
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.spatial.predicates;
+
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.CoordinateSequenceFilter;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryComponentFilter;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.operation.distance.IndexedFacetDistance;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the {@link PreparedGeometry} of the geometries given again and again
+ * to the spatial predicates, such as the polygon joined with many candidate
+ * points in {@code a.geom && b.geom AND ST_Intersects(a.geom, b.geom)}.
+ *
+ * <p>H2 builds a new geometry each time a value is read, so a geometry is
+ * found again by its content: the lookup key is made of the type, SRID,
+ * number of points, envelope and a hash of the structure and coordinates of
+ * the geometry. The key only narrows the search, the cached geometry must be
+ * exactly equal to the given one. This check is done outside the lock, so the
+ * lock only covers the map lookup. A geometry is prepared only the second time it is
+ * seen, the geometries evaluated once never pay for the preparation. At most
+ * {@link #MAX_ENTRIES} geometries are kept, the least recently used is
+ * dropped first.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public final class PreparedGeometryCache {
+
+    /**
+     * Geometries with fewer points are evaluated directly, preparing them
+     * costs more than it saves
+     */
+    public static final int MIN_POINTS = 32;
+
+    /**
+     * Maximum number of cached geometries
+     */
+    public static final int MAX_ENTRIES = 64;
+
+    private static final Map<Key, Entry> CACHE = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private PreparedGeometryCache() {
+    }
+
+    /**
+     * @param geometry Geometry
+     * @return The prepared geometry, null if the geometry is too small or
+     * has not been seen before
+     */
+    public static PreparedGeometry getPrepared(Geometry geometry) {
+        Entry entry = lookup(geometry);
+        return entry == null ? null : entry.getPrepared();
+    }
+
+    /**
+     * Distance test against the cached forms of the geometry. The facets give
+     * the distance to the boundary only, so the intersection is tested first.
+     *
+     * @param geometry Geometry
+     * @param other    Geometry, not empty
+     * @param distance Distance
+     * @return True if the geometries are within the distance of one another,
+     * null if the geometry is too small or has not been seen before
+     */
+    public static Boolean isWithinDistance(Geometry geometry, Geometry other, double distance) {
+        Entry entry = lookup(geometry);
+        if (entry == null) {
+            return null;
+        }
+        return entry.getPrepared().intersects(other)
+                || entry.getFacetDistance().isWithinDistance(other, distance);
+    }
+
+    /**
+     * Drop all the cached geometries
+     */
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    /**
+     * @return Number of cached geometries
+     */
+    public static int size() {
+        synchronized (CACHE) {
+            return CACHE.size();
+        }
+    }
+
+    /**
+     * @return The entry of the geometry if it has already been seen, null
+     * otherwise. The geometry is recorded in the cache in the latter case.
+     */
+    private static Entry lookup(Geometry geometry) {
+        if (geometry == null || geometry.isEmpty() || geometry.getNumPoints() < MIN_POINTS) {
+            return null;
+        }
+        Key key = new Key(geometry);
+        Entry entry;
+        synchronized (CACHE) {
+            entry = CACHE.get(key);
+            if (entry == null) {
+                CACHE.put(key, new Entry(geometry));
+                return null;
+            }
+        }
+        if (entry.geometry == geometry || entry.geometry.equalsExact(geometry)) {
+            return entry;
+        }
+        // Same key but another geometry, the most recent one takes the place
+        synchronized (CACHE) {
+            CACHE.put(key, new Entry(geometry));
+        }
+        return null;
+    }
+
+    /**
+     * Lookup key of a geometry
+     */
+    private static final class Key {
+        private final String type;
+        private final int srid;
+        private final int numPoints;
+        private final Envelope envelope;
+        private final long coordinatesHash;
+        private final int hash;
+
+        Key(Geometry geometry) {
+            type = geometry.getGeometryType();
+            srid = geometry.getSRID();
+            numPoints = geometry.getNumPoints();
+            envelope = new Envelope(geometry.getEnvelopeInternal());
+            CoordinatesHash coordinates = new CoordinatesHash();
+            geometry.apply((GeometryComponentFilter) coordinates);
+            geometry.apply((CoordinateSequenceFilter) coordinates);
+            coordinatesHash = coordinates.value;
+            int h = type.hashCode();
+            h = 31 * h + srid;
+            h = 31 * h + numPoints;
+            h = 31 * h + envelope.hashCode();
+            hash = 31 * h + Long.hashCode(coordinatesHash);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash && coordinatesHash == other.coordinatesHash && srid == other.srid
+                    && numPoints == other.numPoints && type.equals(other.type) && envelope.equals(other.envelope);
+        }
+    }
+
+    /**
+     * Hash of the type and number of points of the components, then of the x
+     * and y of the coordinates, in order
+     */
+    private static final class CoordinatesHash implements GeometryComponentFilter, CoordinateSequenceFilter {
+        private long value = 1;
+
+        @Override
+        public void filter(Geometry geom) {
+            mix(geom.getGeometryType().hashCode());
+            mix(geom.getNumPoints());
+        }
+
+        @Override
+        public void filter(CoordinateSequence seq, int i) {
+            if (i == 0) {
+                mix(seq.size());
+            }
+            mix(Double.doubleToLongBits(seq.getX(i)));
+            mix(Double.doubleToLongBits(seq.getY(i)));
+        }
+
+        private void mix(long bits) {
+            value = Long.rotateLeft(value ^ bits, 27) * 0x9E3779B97F4A7C15L;
+        }
+
+        @Override
+        public boolean isDone() {
+            return false;
+        }
+
+        @Override
+        public boolean isGeometryChanged() {
+            return false;
+        }
+    }
+
+    /**
+     * Cached geometry, its prepared forms are built on first use
+     */
+    private static final class Entry {
+        private final Geometry geometry;
+        private volatile PreparedGeometry prepared;
+        private volatile IndexedFacetDistance facetDistance;
+
+        Entry(Geometry geometry) {
+            this.geometry = geometry;
+        }
+
+        PreparedGeometry getPrepared() {
+            PreparedGeometry result = prepared;
+            if (result == null) {
+                synchronized (this) {
+                    result = prepared;
+                    if (result == null) {
+                        result = PreparedGeometryFactory.prepare(geometry);
+                        prepared = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        IndexedFacetDistance getFacetDistance() {
+            IndexedFacetDistance result = facetDistance;
+            if (result == null) {
+                synchronized (this) {
+                    result = facetDistance;
+                    if (result == null) {
+                        result = new IndexedFacetDistance(geometry);
+                        facetDistance = result;
+                    }
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -57,6 +57,20 @@ public class ST_DWithin extends DeterministicScalarFunction {
         if(geomA.getSRID()!=geomB.getSRID()){
             throw new SQLException("Operation on mixed SRID geometries not supported");
         }
+        if (geomA.getNumPoints() < geomB.getNumPoints()) {
+            Geometry swap = geomA;
+            geomA = geomB;
+            geomB = swap;
+        }
+        if (geomA.getEnvelopeInternal().distance(geomB.getEnvelopeInternal()) > distance) {
+            return false;
+        }
+        if (!geomB.isEmpty()) {
+            Boolean withinDistance = PreparedGeometryCache.isWithinDistance(geomA, geomB, distance);
+            if (withinDistance != null) {
+                return withinDistance;
+            }
+        }
         return geomA.isWithinDistance(geomB, distance);
     }
 }
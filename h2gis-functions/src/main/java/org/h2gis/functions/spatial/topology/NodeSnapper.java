@@ -0,0 +1,509 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+package org.h2gis.functions.spatial.topology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Snaps the end points of the edges of {@link ST_Graph} to nodes.
+ *
+ * <p>Two points match if the squares of side 2 * tolerance centered on them
+ * intersect, or if they are equal when the tolerance is zero. A point is a
+ * node if it matches no point of smaller index, the nodes are numbered in the
+ * order of their points. Each point is then snapped to the closest node it
+ * matches, or to the one of smaller number at equal distance. A point may
+ * match no node when the tolerance is too large.
+ *
+ * <p>The points are hashed in a grid of cells of side 4 * tolerance, so only
+ * the points of the two or three cells per axis around a point are compared.
+ *
+ * <p>The extent can be split in tiles computed in parallel. Each tile owns the
+ * points it contains and also reads the points of its halo, the points at
+ * most 2 * tolerance away from it, so all the points a point can match are
+ * seen by its tile. The nodes are found by tile, then numbered in the order of
+ * their points, then the points are snapped by tile: the result does not
+ * depend on the number of tiles.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public final class NodeSnapper {
+
+    /**
+     * Minimum number of points of a tile
+     */
+    public static final int MIN_TILE_SIZE = 50000;
+
+    private final double[] x;
+    private final double[] y;
+    private final double[] z;
+    private final double tolerance;
+    private final double cellSize;
+    // Half width of the search window, with a margin for rounding errors
+    private final double reach;
+    // Index of the point of each node
+    private int[] nodePoints;
+    private int nodeCount = 0;
+    // Node of each point, -1 if it matches no node
+    private int[] pointNodes;
+
+    /**
+     * @param x         X of the points, NaN for a missing point
+     * @param y         Y of the points
+     * @param z         Z of the points, null if they are 2D
+     * @param tolerance Tolerance
+     */
+    public NodeSnapper(double[] x, double[] y, double[] z, double tolerance) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.tolerance = tolerance;
+        this.cellSize = 4 * tolerance;
+        this.reach = 2 * tolerance * (1 + 1e-9);
+    }
+
+    /**
+     * Find the nodes and snap the points in the calling thread
+     *
+     * @return this
+     */
+    public NodeSnapper snap() {
+        return snap(1);
+    }
+
+    /**
+     * Find the nodes and snap the points
+     *
+     * @param parallelism Maximum number of tiles computed at the same time
+     * by the common fork-join pool, 1 to compute a single tile in the calling
+     * thread
+     * @return this
+     */
+    public NodeSnapper snap(int parallelism) {
+        final List<Tile> tiles = split(parallelism);
+        final boolean[] nodeFlags = new boolean[x.length];
+        run(tiles, tile -> tile.findNodes(nodeFlags));
+        pointNodes = new int[x.length];
+        Arrays.fill(pointNodes, -1);
+        nodePoints = new int[16];
+        nodeCount = 0;
+        for (int i = 0; i < x.length; i++) {
+            if (nodeFlags[i]) {
+                if (nodeCount == nodePoints.length) {
+                    nodePoints = Arrays.copyOf(nodePoints, nodeCount * 2);
+                }
+                // A node point is snapped to its own node
+                pointNodes[i] = nodeCount;
+                nodePoints[nodeCount++] = i;
+            }
+        }
+        run(tiles, tile -> tile.snapPoints(nodeFlags));
+        return this;
+    }
+
+    /**
+     * @return Number of points
+     */
+    public int getPointCount() {
+        return x.length;
+    }
+
+    /**
+     * @return Number of nodes
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @param node Node number in [0, {@link #getNodeCount()}[
+     * @return The index of the point of the node
+     */
+    public int getNodePoint(int node) {
+        return nodePoints[node];
+    }
+
+    /**
+     * @param point Point index
+     * @return The node number of the point, -1 if it matches no node
+     */
+    public int getPointNode(int point) {
+        return pointNodes[point];
+    }
+
+    /**
+     * @return True if the points match, as the envelopes of ST_Expand(point,
+     * tolerance) intersect
+     */
+    boolean matches(int i, int j) {
+        if (tolerance > 0) {
+            return x[i] - tolerance <= x[j] + tolerance && x[j] - tolerance <= x[i] + tolerance
+                    && y[i] - tolerance <= y[j] + tolerance && y[j] - tolerance <= y[i] + tolerance;
+        }
+        return Double.doubleToLongBits(x[i]) == Double.doubleToLongBits(x[j])
+                && Double.doubleToLongBits(y[i]) == Double.doubleToLongBits(y[j])
+                && (z == null || Double.doubleToLongBits(z[i]) == Double.doubleToLongBits(z[j]));
+    }
+
+    /**
+     * Split the extent of the points in about 4 tiles per thread, with at
+     * least {@link #MIN_TILE_SIZE} points per tile on average and tiles wider
+     * than their halo.
+     */
+    private List<Tile> split(int parallelism) {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        int count = 0;
+        for (int i = 0; i < x.length; i++) {
+            if (!Double.isNaN(x[i])) {
+                minX = Math.min(minX, x[i]);
+                maxX = Math.max(maxX, x[i]);
+                minY = Math.min(minY, y[i]);
+                maxY = Math.max(maxY, y[i]);
+                count++;
+            }
+        }
+        int side = 1;
+        if (parallelism > 1) {
+            side = (int) Math.ceil(Math.sqrt(Math.min(4.0 * parallelism, (double) count / MIN_TILE_SIZE)));
+            side = Math.max(1, side);
+        }
+        final int tilesX = tileCount(side, maxX - minX);
+        final int tilesY = tileCount(side, maxY - minY);
+        final Tiling tiling = new Tiling(minX, minY, (maxX - minX) / tilesX, (maxY - minY) / tilesY,
+                tilesX, tilesY);
+        // The point lists are filled in the order of the points
+        final IntList[] members = new IntList[tilesX * tilesY];
+        for (int t = 0; t < members.length; t++) {
+            members[t] = new IntList();
+        }
+        for (int i = 0; i < x.length; i++) {
+            if (Double.isNaN(x[i])) {
+                continue;
+            }
+            final int maxTX = tiling.tileX(x[i] + reach);
+            final int minTY = tiling.tileY(y[i] - reach);
+            final int maxTY = tiling.tileY(y[i] + reach);
+            for (int tx = tiling.tileX(x[i] - reach); tx <= maxTX; tx++) {
+                for (int ty = minTY; ty <= maxTY; ty++) {
+                    members[tx * tilesY + ty].add(i);
+                }
+            }
+        }
+        final List<Tile> tiles = new ArrayList<>(members.length);
+        for (int t = 0; t < members.length; t++) {
+            if (members[t].size > 0) {
+                tiles.add(new Tile(tiling, t, members[t]));
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * @return The number of tiles along an axis, so that a tile is wider than
+     * its halo
+     */
+    private int tileCount(int side, double width) {
+        if (tolerance == 0 || side == 1) {
+            return width > 0 ? side : 1;
+        }
+        return (int) Math.max(1, Math.min(side, Math.floor(width / (2 * reach))));
+    }
+
+    private static void run(List<Tile> tiles, TileTask task) {
+        if (tiles.size() == 1) {
+            task.run(tiles.get(0));
+            return;
+        }
+        final List<Callable<Void>> callables = new ArrayList<>(tiles.size());
+        for (Tile tile : tiles) {
+            callables.add(() -> {
+                task.run(tile);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> future : ForkJoinPool.commonPool().invokeAll(callables)) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("The snapping of the nodes has been interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    private interface TileTask {
+        void run(Tile tile);
+    }
+
+    /**
+     * Regular tiles over the extent of the points
+     */
+    private static final class Tiling {
+        private final double minX;
+        private final double minY;
+        private final double width;
+        private final double height;
+        private final int tilesX;
+        private final int tilesY;
+
+        private Tiling(double minX, double minY, double width, double height, int tilesX, int tilesY) {
+            this.minX = minX;
+            this.minY = minY;
+            this.width = width;
+            this.height = height;
+            this.tilesX = tilesX;
+            this.tilesY = tilesY;
+        }
+
+        private int tileX(double value) {
+            return tilesX == 1 ? 0 : (int) Math.max(0, Math.min(tilesX - 1, Math.floor((value - minX) / width)));
+        }
+
+        private int tileY(double value) {
+            return tilesY == 1 ? 0 : (int) Math.max(0, Math.min(tilesY - 1, Math.floor((value - minY) / height)));
+        }
+    }
+
+    /**
+     * The points of a tile and of its halo, sorted by index
+     */
+    private final class Tile {
+        private final Tiling tiling;
+        private final int tile;
+        private final IntList members;
+
+        private Tile(Tiling tiling, int tile, IntList members) {
+            this.tiling = tiling;
+            this.tile = tile;
+            this.members = members;
+        }
+
+        private boolean owns(int i) {
+            return tiling.tileX(x[i]) * tiling.tilesY + tiling.tileY(y[i]) == tile;
+        }
+
+        /**
+         * Flag the points of the tile that match no point of smaller index
+         */
+        private void findNodes(boolean[] nodeFlags) {
+            final Grid points = new Grid(members.size);
+            for (int k = 0; k < members.size; k++) {
+                final int i = members.values[k];
+                if (owns(i) && points.findMatch(i) < 0) {
+                    nodeFlags[i] = true;
+                }
+                points.add(i);
+            }
+        }
+
+        /**
+         * Snap the points of the tile that are not nodes
+         */
+        private void snapPoints(boolean[] nodeFlags) {
+            int nodes = 0;
+            for (int k = 0; k < members.size; k++) {
+                if (nodeFlags[members.values[k]]) {
+                    nodes++;
+                }
+            }
+            final Grid grid = new Grid(nodes);
+            for (int k = 0; k < members.size; k++) {
+                if (nodeFlags[members.values[k]]) {
+                    grid.add(members.values[k]);
+                }
+            }
+            for (int k = 0; k < members.size; k++) {
+                final int i = members.values[k];
+                if (!nodeFlags[i] && owns(i)) {
+                    pointNodes[i] = grid.findClosest(i);
+                }
+            }
+        }
+    }
+
+    private static long cell(long cx, long cy) {
+        return mix(cx * 0x9E3779B97F4A7C15L + cy);
+    }
+
+    /**
+     * MurmurHash3 finalizer, so the low bits of the key depend on all the bits
+     * of the cell
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    private long cellOf(double value) {
+        return (long) Math.floor(value / cellSize);
+    }
+
+    /**
+     * @return The cell of a point when the tolerance is zero, the equal
+     * points share the same cell
+     */
+    private long exactCell(int i) {
+        long h = Double.doubleToLongBits(x[i]) * 0x9E3779B97F4A7C15L + Double.doubleToLongBits(y[i]);
+        if (z != null) {
+            h = h * 0x9E3779B97F4A7C15L + Double.doubleToLongBits(z[i]);
+        }
+        return mix(h);
+    }
+
+    /**
+     * Growable array of point indices
+     */
+    private static final class IntList {
+        private int[] values = new int[16];
+        private int size = 0;
+
+        private void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * Hash of the cells to the points they contain. The points of a cell are
+     * chained in the reverse order of their insertion.
+     */
+    private final class Grid {
+        private final long[] keys;
+        private final int[] heads;
+        private final int mask;
+        // Point index and next entry of the same cell for each entry
+        private final int[] points;
+        private final int[] next;
+        private int size = 0;
+
+        private Grid(int expected) {
+            int capacity = 16;
+            while (capacity < expected * 2) {
+                capacity <<= 1;
+            }
+            keys = new long[capacity];
+            heads = new int[capacity];
+            Arrays.fill(heads, -1);
+            mask = capacity - 1;
+            points = new int[expected];
+            next = new int[expected];
+        }
+
+        private int slot(long key) {
+            int slot = (int) key & mask;
+            while (heads[slot] >= 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void add(int i) {
+            final long key = tolerance > 0 ? cell(cellOf(x[i]), cellOf(y[i])) : exactCell(i);
+            final int slot = slot(key);
+            keys[slot] = key;
+            points[size] = i;
+            next[size] = heads[slot];
+            heads[slot] = size++;
+        }
+
+        /**
+         * @return Any point of the grid matching the point i, -1 if none
+         */
+        private int findMatch(int i) {
+            if (tolerance > 0) {
+                final long maxX = cellOf(x[i] + reach);
+                final long minY = cellOf(y[i] - reach);
+                final long maxY = cellOf(y[i] + reach);
+                for (long cx = cellOf(x[i] - reach); cx <= maxX; cx++) {
+                    for (long cy = minY; cy <= maxY; cy++) {
+                        for (int e = heads[slot(cell(cx, cy))]; e >= 0; e = next[e]) {
+                            if (matches(i, points[e])) {
+                                return points[e];
+                            }
+                        }
+                    }
+                }
+                return -1;
+            }
+            for (int e = heads[slot(exactCell(i))]; e >= 0; e = next[e]) {
+                if (matches(i, points[e])) {
+                    return points[e];
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return The number of the closest node matching the point i, -1 if
+         * none. The grid must contain the node points only.
+         */
+        private int findClosest(int i) {
+            if (tolerance == 0) {
+                for (int e = heads[slot(exactCell(i))]; e >= 0; e = next[e]) {
+                    if (matches(i, points[e])) {
+                        // Equal nodes cannot exist
+                        return pointNodes[points[e]];
+                    }
+                }
+                return -1;
+            }
+            int best = -1;
+            double bestDistance = Double.POSITIVE_INFINITY;
+            final long maxX = cellOf(x[i] + reach);
+            final long minY = cellOf(y[i] - reach);
+            final long maxY = cellOf(y[i] + reach);
+            for (long cx = cellOf(x[i] - reach); cx <= maxX; cx++) {
+                for (long cy = minY; cy <= maxY; cy++) {
+                    for (int e = heads[slot(cell(cx, cy))]; e >= 0; e = next[e]) {
+                        final int j = points[e];
+                        if (!matches(i, j)) {
+                            continue;
+                        }
+                        final double dx = x[i] - x[j];
+                        final double dy = y[i] - y[j];
+                        final double distance = dx * dx + dy * dy;
+                        final int node = pointNodes[j];
+                        if (distance < bestDistance || (distance == bestDistance && node < best)) {
+                            bestDistance = distance;
+                            best = node;
+                        }
+                    }
+                }
+            }
+            return best;
+        }
+    }
+}
@@ -28,9 +28,17 @@ import org.h2gis.utilities.dbtypes.DBUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.PrecisionModel;
+
 import java.sql.*;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Assigns integer node and edge ids to LINESTRING or MULTILINESTRING
@@ -46,8 +54,10 @@ public class ST_Graph extends AbstractFunction implements ScalarFunction {
     
     public static final String NODES_SUFFIX = "_NODES";
     public static final String EDGES_SUFFIX = "_EDGES";
-    public static String PTS_TABLE;
-    public static String COORDS_TABLE;
+    /**
+     * Number of rows inserted by a batch
+     */
+    public static final int BATCH_SIZE = 1000;
     
     public static final String REMARKS =
             "ST_Graph produces two tables (nodes and edges) from an input table containing\n" +
@@ -254,9 +264,6 @@ public class ST_Graph extends AbstractFunction implements ScalarFunction {
                 JDBCUtilities.tableExists(connection, edgesName)) {
             throw new IllegalArgumentException(ALREADY_RUN_ERROR + tableName.getTable());
         }
-        //Tables used to store intermediate data
-        PTS_TABLE = TableLocation.parse(System.currentTimeMillis()+"_PTS", dbType).toString();
-        COORDS_TABLE = TableLocation.parse(System.currentTimeMillis()+"_COORDS", dbType).toString();
         // Check for a primary key
         final Tuple<String, Integer> pkIndex = JDBCUtilities.getIntegerPrimaryKeyNameAndIndex(connection, tableName);
         if (pkIndex==null) {
@@ -276,22 +283,16 @@ public class ST_Graph extends AbstractFunction implements ScalarFunction {
             }
         }
         checkGeometryType(geometryMetada.getValue().geometryTypeCode);
-        final Statement st = connection.createStatement();
-        try {
-            firstFirstLastLast(st, tableName, pkIndex.first(), geometryMetada.getKey(), tolerance);            
-            int srid = geometryMetada.getValue().SRID;
-            boolean hasZ = geometryMetada.getValue().hasZ;
-            makeEnvelopes(st, tolerance, dbType, srid,hasZ);
-            nodesTable(st, nodesName, tolerance, srid, hasZ);
-            edgesTable(st, nodesName, edgesName, tolerance, dbType);
-            checkForNullEdgeEndpoints(st, edgesName);
-            if (orientBySlope) {
-                orientBySlope(st, nodesName, edgesName);
-            }
-        } finally {            
-            st.execute("DROP TABLE IF EXISTS "+ PTS_TABLE+ ","+ COORDS_TABLE);
-            st.close();
-        }
+        final int srid = geometryMetada.getValue().SRID;
+        final boolean hasZ = geometryMetada.getValue().hasZ;
+        final Endpoints endpoints = readEndpoints(connection, tableName, pkIndex.first(),
+                geometryMetada.getKey(), hasZ, dbType);
+        LOGGER.info("Snapping the end points...");
+        final NodeSnapper snapper = new NodeSnapper(endpoints.x, endpoints.y, endpoints.z, tolerance)
+                .snap(ForkJoinPool.getCommonPoolParallelism());
+        checkForNullEdgeEndpoints(snapper, endpoints.count);
+        nodesTable(connection, nodesName, snapper, endpoints, srid, hasZ, dbType);
+        edgesTable(connection, edgesName, snapper, endpoints, orientBySlope);
         return true;
     }
 
@@ -299,212 +300,175 @@ public class ST_Graph extends AbstractFunction implements ScalarFunction {
         if (geomType != GeometryTypeCodes.LINESTRING && geomType != GeometryTypeCodes.LINESTRINGZ) {
             throw new IllegalArgumentException(TYPE_ERROR);
         }
-    }   
-
-    private static String expand(String geom, double tol) {
-        return "ST_Expand(" + geom + ", " + tol + ")";
     }
 
     /**
-     * Return the first and last coordinates table
-     * @param st
-     * @param tableName
-     * @param pkCol
-     * @param geomCol
-     * @param tolerance
-     * @throws SQLException 
+     * Read the first coordinate of the first geometry and the last coordinate
+     * of the last geometry of each row. The point of index i is the start
+     * point of the edge i, the point of index count + i its end point.
      */
-    private static void firstFirstLastLast(Statement st,
+    private static Endpoints readEndpoints(Connection connection,
                                            TableLocation tableName,
                                            String pkCol,
                                            String geomCol,
-                                           double tolerance) throws SQLException {
+                                           boolean hasZ,
+                                           DBTypes dbType) throws SQLException {
         LOGGER.info("Selecting the first coordinate of the first geometry and " +
                 "the last coordinate of the last geometry...");
-        final String numGeoms = "ST_NumGeometries(" + geomCol + ")";
-        final String firstGeom = "ST_GeometryN(" + geomCol + ", 1)";
-        final String firstPointFirstGeom = "ST_PointN(" + firstGeom + ", 1)";
-        final String lastGeom = "ST_GeometryN(" + geomCol + ", " + numGeoms + ")";
-        final String lastPointLastGeom = "ST_PointN(" + lastGeom + ", ST_NumPoints(" + lastGeom + "))";
-        st.execute("drop TABLE if exists "+ COORDS_TABLE);
-        if (tolerance > 0) {
-            st.execute("CREATE TABLE "+ COORDS_TABLE+" AS "
-                    + "SELECT " + pkCol + " EDGE_ID, "
-                    + firstPointFirstGeom + " START_POINT, "
-                    + expand(firstPointFirstGeom, tolerance) + " START_POINT_EXP, "
-                    + lastPointLastGeom + " END_POINT, "
-                    + expand(lastPointLastGeom, tolerance) + " END_POINT_EXP "
-                    + "FROM " + tableName);
-        } else {
-            // If the tolerance is zero, there is no need to call ST_Expand.
-            st.execute("CREATE  TABLE "+ COORDS_TABLE+" AS "
-                    + "SELECT " + pkCol + " EDGE_ID, "
-                    + firstPointFirstGeom + " START_POINT, "
-                    + lastPointLastGeom + " END_POINT "
-                    + "FROM " + tableName);
-        }
-    }
-
-    /**
-     * Make a big table of all points in the coords table with an envelope around each point.
-     * We will use this table to remove duplicate points.
-     */
-    private static void makeEnvelopes(Statement st, double tolerance, DBTypes dbType, int srid, boolean hasZ) throws SQLException {
-        st.execute("DROP TABLE IF EXISTS" + PTS_TABLE + ";");
-        String pointSignature = hasZ?"POINTZ":"POINT";
-        if (tolerance > 0) {
-            LOGGER.info("Calculating envelopes around coordinates...");
-            // Putting all points and their envelopes together...
-            st.execute("CREATE  TABLE " + PTS_TABLE + "( ID SERIAL PRIMARY KEY, "
-                    + "THE_GEOM GEOMETRY("+pointSignature+"," + srid + "),"
-                    + "AREA GEOMETRY(POLYGON, " + srid + ")"
-                    + ") ");
-            st.execute("INSERT INTO " + PTS_TABLE + " (SELECT CAST((row_number() over()) as Integer) , a.THE_GEOM, A.AREA FROM  "
-                    + "(SELECT  START_POINT AS THE_GEOM, START_POINT_EXP as AREA FROM " + COORDS_TABLE
-                    + " UNION ALL "
-                    + "SELECT  END_POINT AS THE_GEOM, END_POINT_EXP as AREA FROM " + COORDS_TABLE + ") as a);");
-            // Putting a spatial index on the envelopes...
-            if (dbType == DBTypes.H2 || dbType == DBTypes.H2GIS) {
-                st.execute("CREATE SPATIAL INDEX ON " + PTS_TABLE + "(AREA);");
-            } else {
-                st.execute("CREATE INDEX ON " + PTS_TABLE + " USING GIST(AREA);");
-            }
-        } else {
-            LOGGER.info("Preparing temporary nodes table from coordinates...");
-            // If the tolerance is zero, we just put all points together
-            st.execute("CREATE  TABLE " + PTS_TABLE + "( "
-                    + "ID SERIAL PRIMARY KEY, "
-                    + "THE_GEOM GEOMETRY("+pointSignature+"," + srid + ")"
-                    + ")");
-            st.execute("INSERT INTO " + PTS_TABLE + " (SELECT (row_number() over())::int , a.the_geom FROM "
-                    + "(SELECT  START_POINT as THE_GEOM FROM " + COORDS_TABLE
-                    + " UNION ALL "
-                    + "SELECT  END_POINT as THE_GEOM FROM " + COORDS_TABLE + ") as a);");
-            if (dbType == DBTypes.H2 || dbType == DBTypes.H2GIS) {
-                // Putting a spatial index on the points themselves...
-                st.execute("CREATE SPATIAL INDEX ON " + PTS_TABLE + "(THE_GEOM);");
-            } else {
-                // Putting a spatial index on the points themselves...
-                st.execute("CREATE INDEX ON " + PTS_TABLE + " USING GIST(THE_GEOM);");
+        final int rowCount = JDBCUtilities.getRowCount(connection, tableName);
+        final Endpoints endpoints = new Endpoints(rowCount, hasZ);
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT " + TableLocation.quoteIdentifier(pkCol, dbType) + ", "
+                     + TableLocation.quoteIdentifier(geomCol, dbType) + " FROM " + tableName
+                     + " ORDER BY 1")) {
+            endpoints.edgeIdType = rs.getMetaData().getColumnTypeName(1);
+            int i = 0;
+            while (rs.next() && i < rowCount) {
+                endpoints.edgeIds[i] = rs.getLong(1);
+                final Geometry geom = (Geometry) rs.getObject(2);
+                if (geom != null && !geom.isEmpty()) {
+                    final Geometry first = geom.getGeometryN(0);
+                    final Geometry last = geom.getGeometryN(geom.getNumGeometries() - 1);
+                    endpoints.set(i, ((LineString) first).getCoordinateN(0));
+                    endpoints.set(rowCount + i, ((LineString) last).getCoordinateN(last.getNumPoints() - 1));
+                }
+                i++;
             }
+            endpoints.count = i;
         }
+        return endpoints;
     }
 
     /**
      * Create the nodes table.
      */
-    private static void nodesTable(Statement st,
+    private static void nodesTable(Connection connection,
                                    TableLocation nodesName,
-                                   double tolerance, int srid, boolean hasZ) throws SQLException {
+                                   NodeSnapper snapper,
+                                   Endpoints endpoints,
+                                   int srid, boolean hasZ,
+                                   DBTypes dbType) throws SQLException {
         LOGGER.info("Creating the nodes table...");
-        // Creating nodes table by removing copies from the pts table.
-        String pointSignature = hasZ?"POINTZ":"POINT";
-        if (tolerance > 0) {
-               st.execute("CREATE TABLE " + nodesName + "(" +
-                    "NODE_ID SERIAL PRIMARY KEY, " +
-                    "THE_GEOM GEOMETRY("+pointSignature+", " + srid+"), "+
-                    "EXP GEOMETRY(POLYGON," +srid+")"+
-                    ") " );
-                st.execute( "INSERT INTO "+nodesName +" (SELECT CAST((row_number() over()) AS INTEGER) , c.the_geom, c.area FROM (SELECT  A.THE_GEOM, A.AREA FROM "+ PTS_TABLE +" as  A, "+ PTS_TABLE +" as B " +
-                    "WHERE A.AREA && B.AREA " +
-                    "GROUP BY A.ID " +
-                    "HAVING A.ID=MIN(B.ID)) as c);"); 
-
-        } else {
-            // If the tolerance is zero, we can create the NODES table
-            // by using = rather than &&.
+        String pointSignature = hasZ ? "POINTZ" : "POINT";
+        try (Statement st = connection.createStatement()) {
             st.execute("CREATE TABLE " + nodesName + "(" +
                     "NODE_ID SERIAL PRIMARY KEY, " +
-                    "THE_GEOM GEOMETRY("+pointSignature+", "+srid+")" +
-                    ") " );            
-            st.execute("INSERT INTO "+nodesName +" (SELECT CAST((row_number() over()) as INTEGER) , c.the_geom FROM (SELECT A.THE_GEOM FROM "+ PTS_TABLE + " as A," + PTS_TABLE + " as B " +
-                    "WHERE A.THE_GEOM && B.THE_GEOM AND A.THE_GEOM=B.THE_GEOM " +
-                    "GROUP BY A.ID " +
-                    "HAVING A.ID=MIN(B.ID)) as c);");
+                    "THE_GEOM GEOMETRY(" + pointSignature + ", " + srid + ")" +
+                    ") ");
         }
-    }
-
-    /**
-     * Create the edges table.
-     */
-    private static void edgesTable(Statement st,
-                                   TableLocation nodesName,
-                                   TableLocation edgesName,
-                                   double tolerance, DBTypes dbType) throws SQLException {
-        LOGGER.info("Creating the edges table...");
-        if (tolerance > 0) {
-            if (dbType == DBTypes.H2 || dbType == DBTypes.H2GIS) {
-                st.execute("CREATE SPATIAL INDEX ON " + nodesName + "(EXP);");
-                st.execute("CREATE SPATIAL INDEX ON "+ COORDS_TABLE+"(START_POINT_EXP);");
-                st.execute("CREATE SPATIAL INDEX ON "+ COORDS_TABLE+"(END_POINT_EXP);");
-            } else {
-                st.execute("CREATE  INDEX ON " + nodesName + " USING GIST(EXP);");
-                st.execute("CREATE  INDEX ON "+ COORDS_TABLE+" USING GIST(START_POINT_EXP);");
-                st.execute("CREATE  INDEX ON "+ COORDS_TABLE+" USING GIST(END_POINT_EXP);");
+        final GeometryFactory factory = new GeometryFactory(new PrecisionModel(), srid);
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO " + nodesName + " VALUES (?, ?)")) {
+            final int nodeCount = snapper.getNodeCount();
+            for (int node = 0; node < nodeCount; node++) {
+                final int point = snapper.getNodePoint(node);
+                insert.setInt(1, node + 1);
+                insert.setObject(2, factory.createPoint(new Coordinate(endpoints.x[point],
+                        endpoints.y[point], endpoints.getZ(point))));
+                insert.addBatch();
+                if ((node + 1) % BATCH_SIZE == 0) {
+                    insert.executeBatch();
+                }
             }
-            st.execute("CREATE TABLE " + edgesName + " AS " +
-                    "SELECT EDGE_ID, " +
-                    "(SELECT NODE_ID FROM " + nodesName +
-                    " WHERE " + nodesName + ".EXP && "+ COORDS_TABLE+".START_POINT_EXP LIMIT 1) START_NODE, " +
-                    "(SELECT NODE_ID FROM " + nodesName +
-                    " WHERE " + nodesName + ".EXP && "+ COORDS_TABLE+".END_POINT_EXP LIMIT 1) END_NODE " +
-                    "FROM "+ COORDS_TABLE+";");
-            st.execute("ALTER TABLE " + nodesName + " DROP COLUMN EXP;");
-        } else {
+            insert.executeBatch();
+        }
+        try (Statement st = connection.createStatement()) {
             if (dbType == DBTypes.H2 || dbType == DBTypes.H2GIS) {
                 st.execute("CREATE SPATIAL INDEX ON " + nodesName + "(THE_GEOM);");
-                st.execute("CREATE SPATIAL INDEX ON "+ COORDS_TABLE+"(START_POINT);");
-                st.execute("CREATE SPATIAL INDEX ON "+ COORDS_TABLE+"(END_POINT);");
             } else {
                 st.execute("CREATE INDEX ON " + nodesName + " USING GIST(THE_GEOM);");
-                st.execute("CREATE INDEX ON "+ COORDS_TABLE+" USING GIST(START_POINT);");
-                st.execute("CREATE INDEX ON "+ COORDS_TABLE+" USING GIST(END_POINT);");
             }
-            // If the tolerance is zero, then we can use = on the geometries
-            // instead of && on the envelopes.
-            st.execute("CREATE TABLE " + edgesName + " AS " +
-                    "SELECT EDGE_ID, " +
-                    "(SELECT NODE_ID FROM " + nodesName +
-                    " WHERE " + nodesName + ".THE_GEOM && "+ COORDS_TABLE+".START_POINT " +
-                    "AND " + nodesName + ".THE_GEOM="+ COORDS_TABLE+".START_POINT LIMIT 1) START_NODE, " +
-                    "(SELECT NODE_ID FROM " + nodesName +
-                    " WHERE " + nodesName + ".THE_GEOM && "+ COORDS_TABLE+".END_POINT " +
-                    "AND " + nodesName + ".THE_GEOM="+ COORDS_TABLE+".END_POINT LIMIT 1) END_NODE " +
-                    "FROM "+ COORDS_TABLE+";");
         }
     }
 
     /**
-     * Edges direction according the slope (start and end z)
-     * @param st
-     * @param nodesName
-     * @param edgesName
-     * @throws SQLException 
+     * Create the edges table. If orientBySlope is true, the edges are
+     * oriented by the z-value of their nodes (decreasing).
      */
-    private static void orientBySlope(Statement st,
-                                      TableLocation nodesName,
-                                      TableLocation edgesName) throws SQLException {
-        LOGGER.info("Orienting edges by slope...");
-        st.execute("UPDATE " + edgesName + " c " +
-                    "SET START_NODE=END_NODE, " +
-                    "    END_NODE=START_NODE " +
-                    "WHERE (SELECT ST_Z(A.THE_GEOM) < ST_Z(B.THE_GEOM) " +
-                            "FROM " + nodesName + " A, " + nodesName + " B " +
-                            "WHERE C.START_NODE=A.NODE_ID AND C.END_NODE=B.NODE_ID);");
+    private static void edgesTable(Connection connection,
+                                   TableLocation edgesName,
+                                   NodeSnapper snapper,
+                                   Endpoints endpoints,
+                                   boolean orientBySlope) throws SQLException {
+        LOGGER.info("Creating the edges table...");
+        try (Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE " + edgesName + "(" +
+                    "EDGE_ID " + endpoints.edgeIdType + ", " +
+                    "START_NODE INTEGER, " +
+                    "END_NODE INTEGER)");
+        }
+        if (orientBySlope) {
+            LOGGER.info("Orienting edges by slope...");
+        }
+        final int rowCount = endpoints.edgeIds.length;
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO " + edgesName + " VALUES (?, ?, ?)")) {
+            for (int i = 0; i < endpoints.count; i++) {
+                int start = snapper.getPointNode(i);
+                int end = snapper.getPointNode(rowCount + i);
+                if (orientBySlope && endpoints.getZ(snapper.getNodePoint(start))
+                        < endpoints.getZ(snapper.getNodePoint(end))) {
+                    int tmp = start;
+                    start = end;
+                    end = tmp;
+                }
+                insert.setLong(1, endpoints.edgeIds[i]);
+                insert.setInt(2, start + 1);
+                insert.setInt(3, end + 1);
+                insert.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
     }
 
-    private static void checkForNullEdgeEndpoints(Statement st,
-                                                  TableLocation edgesName) throws SQLException {
+    private static void checkForNullEdgeEndpoints(NodeSnapper snapper, int count) {
         LOGGER.info("Checking for null edge endpoints...");
-        try (ResultSet nullEdges = st.executeQuery("SELECT COUNT(*) FROM " + edgesName + " WHERE " +
-                "START_NODE IS NULL OR END_NODE IS NULL;")) {
-            nullEdges.next();
-            final int n = nullEdges.getInt(1);
-            if (n > 0) {
-                String msg = "There " + (n == 1 ? "is one edge " : "are " + n + " edges ");
-                throw new IllegalStateException(msg + "with a null start node or end node. " +
-                        "Try using a slightly smaller tolerance.");
+        final int rowCount = snapper.getPointCount() / 2;
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (snapper.getPointNode(i) < 0 || snapper.getPointNode(rowCount + i) < 0) {
+                n++;
             }
         }
+        if (n > 0) {
+            String msg = "There " + (n == 1 ? "is one edge " : "are " + n + " edges ");
+            throw new IllegalStateException(msg + "with a null start node or end node. " +
+                    "Try using a slightly smaller tolerance.");
+        }
+    }
+
+    /**
+     * The edge ids and the coordinates of their end points
+     */
+    private static final class Endpoints {
+        private final long[] edgeIds;
+        private final double[] x;
+        private final double[] y;
+        private final double[] z;
+        private String edgeIdType;
+        private int count;
+
+        private Endpoints(int rowCount, boolean hasZ) {
+            edgeIds = new long[rowCount];
+            x = new double[2 * rowCount];
+            y = new double[2 * rowCount];
+            z = hasZ ? new double[2 * rowCount] : null;
+            Arrays.fill(x, Double.NaN);
+        }
+
+        private void set(int i, Coordinate coordinate) {
+            x[i] = coordinate.getX();
+            y[i] = coordinate.getY();
+            if (z != null) {
+                z[i] = coordinate.getZ();
+            }
+        }
+
+        private double getZ(int i) {
+            return z == null ? Double.NaN : z[i];
+        }
     }
 }
@@ -0,0 +1,397 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+package org.h2gis.functions.spatial.topology;
+
+import org.h2.value.Value;
+import org.h2.value.ValueArray;
+import org.h2.value.ValueNull;
+import org.h2gis.api.AbstractFunction;
+import org.h2gis.api.ScalarFunction;
+import org.h2gis.utilities.*;
+import org.locationtech.jts.geom.*;
+
+import java.sql.*;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Updates the nodes and edges tables produced by {@link ST_Graph} after some
+ * rows of the input table have been inserted, updated or deleted. Only the
+ * end points of the given edges are snapped against the existing nodes, the
+ * other nodes and edges keep their ids.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public class ST_GraphUpdate extends AbstractFunction implements ScalarFunction {
+
+    public static final String REMARKS =
+            "ST_GraphUpdate keeps the nodes and edges tables produced by `ST_Graph` in sync\n" +
+            "with the input table without rebuilding them. It is given the primary keys of\n" +
+            "the rows of `input` that have been inserted, updated or deleted since the last\n" +
+            "call, as an integer or an array of integers. For each of them the edge is\n" +
+            "removed from `input_edges` and, if the row still exists, its first and last\n" +
+            "coordinates are snapped to the existing nodes of `input_nodes` using the\n" +
+            "tolerance. A new node is created when no node is found, and the nodes that\n" +
+            "are no longer used by any edge are deleted. The ids of the other nodes and\n" +
+            "edges are left unchanged, so node ids may no longer be contiguous.\n" +
+            "The first call indexes the nodes and edges tables, which commits the current\n" +
+            "transaction. The next calls leave the transaction open, so they can be made\n" +
+            "from a trigger of the input table.\n" +
+            "\n" +
+            "The geometry column, the tolerance and the orientation by slope must be the\n" +
+            "ones given to `ST_Graph`. Possible signatures:\n" +
+            "* `ST_GraphUpdate('input', ids)`\n" +
+            "* `ST_GraphUpdate('input', ids, 'geom')`\n" +
+            "* `ST_GraphUpdate('input', ids, 'geom', tolerance)`\n" +
+            "* `ST_GraphUpdate('input', ids, 'geom', tolerance, orientBySlope)`\n";
+
+    public static final String NOT_RUN_ERROR = "ST_Graph has not been called on table ";
+
+    /**
+     * Constructor
+     */
+    public ST_GraphUpdate() {
+        addProperty(PROP_REMARKS, REMARKS);
+    }
+
+    @Override
+    public String getJavaStaticMethod() {
+        return "updateGraph";
+    }
+
+    /**
+     * Update the nodes and edges tables of the input table for the given rows,
+     * using the first geometry column.
+     *
+     * @param connection Connection
+     * @param inputTable Input table
+     * @param ids        Primary key or array of primary keys of the modified
+     *                   rows
+     * @return The number of edges written to the edges table
+     * @throws SQLException
+     */
+    public static int updateGraph(Connection connection, String inputTable, Value ids) throws SQLException {
+        return updateGraph(connection, inputTable, ids, null);
+    }
+
+    /**
+     * Update the nodes and edges tables of the input table for the given rows.
+     *
+     * @param connection       Connection
+     * @param inputTable       Input table
+     * @param ids              Primary key or array of primary keys of the
+     *                         modified rows
+     * @param spatialFieldName Name of column containing LINESTRINGs
+     * @return The number of edges written to the edges table
+     * @throws SQLException
+     */
+    public static int updateGraph(Connection connection, String inputTable, Value ids,
+                                  String spatialFieldName) throws SQLException {
+        return updateGraph(connection, inputTable, ids, spatialFieldName, 0.0);
+    }
+
+    /**
+     * Update the nodes and edges tables of the input table for the given rows,
+     * using the tolerance given to ST_Graph.
+     *
+     * @param connection       Connection
+     * @param inputTable       Input table
+     * @param ids              Primary key or array of primary keys of the
+     *                         modified rows
+     * @param spatialFieldName Name of column containing LINESTRINGs
+     * @param tolerance        Tolerance
+     * @return The number of edges written to the edges table
+     * @throws SQLException
+     */
+    public static int updateGraph(Connection connection, String inputTable, Value ids,
+                                  String spatialFieldName, double tolerance) throws SQLException {
+        return updateGraph(connection, inputTable, ids, spatialFieldName, tolerance, false);
+    }
+
+    /**
+     * Update the nodes and edges tables of the input table for the given rows.
+     *
+     * The edges of the given rows are first removed and the nodes they leave
+     * unused are deleted. The first and last coordinates of the rows that
+     * still exist are then snapped to the closest node whose envelope
+     * intersects their envelope, as done by ST_Graph, or to a new node.
+     *
+     * @param connection       Connection
+     * @param inputTable       Input table
+     * @param ids              Primary key or array of primary keys of the
+     *                         modified rows
+     * @param spatialFieldName Name of column containing LINESTRINGs
+     * @param tolerance        Tolerance
+     * @param orientBySlope    True if edges should be oriented by the z-value of
+     *                         their first and last coordinates (decreasing)
+     * @return The number of edges written to the edges table
+     * @throws SQLException
+     */
+    public static int updateGraph(Connection connection, String inputTable, Value ids,
+                                  final String spatialFieldName, double tolerance,
+                                  boolean orientBySlope) throws SQLException {
+        if (tolerance < 0) {
+            throw new IllegalArgumentException("Only positive tolerances are allowed.");
+        }
+        final TableLocation tableName = TableUtilities.parseInputTable(connection, inputTable);
+        final TableLocation nodesName = TableUtilities.suffixTableLocation(tableName, ST_Graph.NODES_SUFFIX);
+        final TableLocation edgesName = TableUtilities.suffixTableLocation(tableName, ST_Graph.EDGES_SUFFIX);
+        if (!JDBCUtilities.tableExists(connection, nodesName) ||
+                !JDBCUtilities.tableExists(connection, edgesName)) {
+            throw new IllegalArgumentException(NOT_RUN_ERROR + tableName.getTable());
+        }
+        final Tuple<String, Integer> pkIndex = JDBCUtilities.getIntegerPrimaryKeyNameAndIndex(connection, tableName);
+        if (pkIndex == null) {
+            throw new IllegalStateException("Table " + tableName.getTable()
+                    + " must contain a single integer primary key.");
+        }
+        LinkedHashMap<String, GeometryMetaData> geomMetadatas = GeometryTableUtilities.getMetaData(connection, tableName);
+        Map.Entry<String, GeometryMetaData> geometryMetada = geomMetadatas.entrySet().iterator().next();
+        if (spatialFieldName != null && !spatialFieldName.isEmpty()) {
+            Map.Entry<String, GeometryMetaData> result = geomMetadatas.entrySet().stream()
+                    .filter(columnName -> spatialFieldName.equalsIgnoreCase(columnName.getKey()))
+                    .findAny()
+                    .orElse(null);
+            if (result != null) {
+                geometryMetada = result;
+            }
+        }
+        final int geomType = geometryMetada.getValue().geometryTypeCode;
+        if (geomType != GeometryTypeCodes.LINESTRING && geomType != GeometryTypeCodes.LINESTRINGZ) {
+            throw new IllegalArgumentException(ST_Graph.TYPE_ERROR);
+        }
+        final Set<Integer> edgeIds = getIds(ids);
+        if (edgeIds.isEmpty()) {
+            return 0;
+        }
+        // The nodes are searched by envelope and the edges by id and by node.
+        // Creating an index commits the transaction, so it is only done when
+        // the index is missing, ie on the first call.
+        // The index utilities need the database type, which the suffixed names lose.
+        final TableLocation nodesTable = new TableLocation(nodesName.getCatalog(), nodesName.getSchema(),
+                nodesName.getTable(), tableName.getDbTypes());
+        final TableLocation edgesTable = new TableLocation(edgesName.getCatalog(), edgesName.getSchema(),
+                edgesName.getTable(), tableName.getDbTypes());
+        if (!JDBCUtilities.isSpatialIndexed(connection, nodesTable, "THE_GEOM")) {
+            JDBCUtilities.createSpatialIndex(connection, nodesTable, "THE_GEOM");
+        }
+        for (String column : new String[]{"EDGE_ID", "START_NODE", "END_NODE"}) {
+            if (!JDBCUtilities.isIndexed(connection, edgesTable, column)) {
+                JDBCUtilities.createIndex(connection, edgesTable, column);
+            }
+        }
+
+        final Set<Integer> oldNodes = removeEdges(connection, nodesName, edgesName, edgeIds);
+        deleteUnusedNodes(connection, nodesName, edgesName, oldNodes);
+        return insertEdges(connection, tableName, nodesName, edgesName, pkIndex.first(),
+                geometryMetada.getKey(), edgeIds, tolerance, orientBySlope);
+    }
+
+    /**
+     * @param ids Integer, array of integers or null
+     * @return The distinct ids, in the given order
+     */
+    private static Set<Integer> getIds(Value ids) {
+        Set<Integer> edgeIds = new LinkedHashSet<>();
+        if (ids instanceof ValueArray) {
+            for (Value id : ((ValueArray) ids).getList()) {
+                if (id != ValueNull.INSTANCE) {
+                    edgeIds.add(id.getInt());
+                }
+            }
+        } else if (ids != null && ids != ValueNull.INSTANCE) {
+            edgeIds.add(ids.getInt());
+        }
+        return edgeIds;
+    }
+
+    /**
+     * Delete the edges of the given ids
+     *
+     * @return The nodes used by the deleted edges
+     */
+    private static Set<Integer> removeEdges(Connection connection, TableLocation nodesName,
+                                            TableLocation edgesName, Set<Integer> edgeIds) throws SQLException {
+        Set<Integer> oldNodes = new LinkedHashSet<>();
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT START_NODE, END_NODE FROM " + edgesName + " WHERE EDGE_ID = ?");
+             PreparedStatement delete = connection.prepareStatement(
+                     "DELETE FROM " + edgesName + " WHERE EDGE_ID = ?")) {
+            for (int edgeId : edgeIds) {
+                select.setInt(1, edgeId);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        oldNodes.add(rs.getInt(1));
+                        oldNodes.add(rs.getInt(2));
+                    }
+                }
+                delete.setInt(1, edgeId);
+                delete.executeUpdate();
+            }
+        }
+        return oldNodes;
+    }
+
+    /**
+     * Delete the given nodes if no edge starts or ends at them anymore
+     */
+    private static void deleteUnusedNodes(Connection connection, TableLocation nodesName,
+                                          TableLocation edgesName, Set<Integer> nodes) throws SQLException {
+        try (PreparedStatement delete = connection.prepareStatement(
+                "DELETE FROM " + nodesName + " WHERE NODE_ID = ? " +
+                "AND NOT EXISTS (SELECT 1 FROM " + edgesName + " WHERE START_NODE = ?) " +
+                "AND NOT EXISTS (SELECT 1 FROM " + edgesName + " WHERE END_NODE = ?)")) {
+            for (int node : nodes) {
+                delete.setInt(1, node);
+                delete.setInt(2, node);
+                delete.setInt(3, node);
+                delete.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Snap the end points of the rows that still exist in the input table and
+     * insert their edges.
+     *
+     * @return The number of inserted edges
+     */
+    private static int insertEdges(Connection connection, TableLocation tableName,
+                                   TableLocation nodesName, TableLocation edgesName,
+                                   String pkCol, String geomCol, Set<Integer> edgeIds,
+                                   double tolerance, boolean orientBySlope) throws SQLException {
+        int nextNodeId;
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT MAX(NODE_ID) FROM " + nodesName)) {
+            rs.next();
+            nextNodeId = rs.getInt(1) + 1;
+        }
+        int count = 0;
+        try (PreparedStatement selectRow = connection.prepareStatement(
+                "SELECT " + geomCol + " FROM " + tableName + " WHERE " + pkCol + " = ?");
+             PreparedStatement selectNodes = connection.prepareStatement(
+                     "SELECT NODE_ID, THE_GEOM FROM " + nodesName + " WHERE THE_GEOM && ?");
+             PreparedStatement insertNode = connection.prepareStatement(
+                     "INSERT INTO " + nodesName + "(NODE_ID, THE_GEOM) VALUES (?, ?)");
+             PreparedStatement insertEdge = connection.prepareStatement(
+                     "INSERT INTO " + edgesName + "(EDGE_ID, START_NODE, END_NODE) VALUES (?, ?, ?)")) {
+            for (int edgeId : edgeIds) {
+                selectRow.setInt(1, edgeId);
+                Geometry geom = null;
+                try (ResultSet rs = selectRow.executeQuery()) {
+                    if (!rs.next()) {
+                        // The row has been deleted
+                        continue;
+                    }
+                    geom = (Geometry) rs.getObject(1);
+                }
+                if (geom == null || geom.isEmpty()) {
+                    throw new IllegalStateException("The edge " + edgeId + " has a null start node or end node.");
+                }
+                final LineString first = (LineString) geom.getGeometryN(0);
+                final LineString last = (LineString) geom.getGeometryN(geom.getNumGeometries() - 1);
+                final Point startPoint = first.getStartPoint();
+                final Point endPoint = last.getEndPoint();
+                startPoint.setSRID(geom.getSRID());
+                endPoint.setSRID(geom.getSRID());
+                Node start = snap(selectNodes, startPoint, tolerance);
+                if (start == null) {
+                    start = new Node(nextNodeId++, startPoint);
+                    insertNode(insertNode, start);
+                }
+                Node end = snap(selectNodes, endPoint, tolerance);
+                if (end == null) {
+                    end = new Node(nextNodeId++, endPoint);
+                    insertNode(insertNode, end);
+                }
+                if (orientBySlope && start.point.getCoordinate().getZ() < end.point.getCoordinate().getZ()) {
+                    Node tmp = start;
+                    start = end;
+                    end = tmp;
+                }
+                insertEdge.setInt(1, edgeId);
+                insertEdge.setInt(2, start.id);
+                insertEdge.setInt(3, end.id);
+                insertEdge.executeUpdate();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Find the node of a point. With a positive tolerance, a node matches if
+     * the squares of side 2 * tolerance centered on the node and on the point
+     * intersect, as in ST_Graph, and the closest one is returned.
+     *
+     * @return The node, null if no node matches
+     */
+    private static Node snap(PreparedStatement selectNodes, Point point, double tolerance) throws SQLException {
+        final Coordinate coord = point.getCoordinate();
+        final double size = 2 * tolerance;
+        Envelope envelope = new Envelope(coord);
+        envelope.expandBy(size);
+        Geometry search = point.getFactory().toGeometry(envelope);
+        search.setSRID(point.getSRID());
+        selectNodes.setObject(1, search);
+        Node node = null;
+        double best = Double.POSITIVE_INFINITY;
+        try (ResultSet rs = selectNodes.executeQuery()) {
+            while (rs.next()) {
+                final int id = rs.getInt(1);
+                final Point candidate = (Point) rs.getObject(2);
+                final Coordinate c = candidate.getCoordinate();
+                final boolean match = tolerance > 0
+                        ? Math.abs(c.x - coord.x) <= size && Math.abs(c.y - coord.y) <= size
+                        : c.equals3D(coord);
+                if (!match) {
+                    continue;
+                }
+                final double distance = c.distance(coord);
+                if (distance < best || (distance == best && id < node.id)) {
+                    best = distance;
+                    node = new Node(id, candidate);
+                }
+            }
+        }
+        return node;
+    }
+
+    private static void insertNode(PreparedStatement insertNode, Node node) throws SQLException {
+        insertNode.setInt(1, node.id);
+        insertNode.setObject(2, node.point);
+        insertNode.executeUpdate();
+    }
+
+    /**
+     * A node id and its point
+     */
+    private static final class Node {
+        private final int id;
+        private final Point point;
+
+        private Node(int id, Point point) {
+            this.id = id;
+            this.point = point;
+        }
+    }
+}
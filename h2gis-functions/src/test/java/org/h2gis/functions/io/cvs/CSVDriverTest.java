@@ -114,6 +114,32 @@ public class CSVDriverTest {
         }
     }
 
+    @Test
+    public void testDriverImportOptions() throws SQLException, IOException {
+        Statement stat = connection.createStatement();
+        stat.execute("DROP TABLE IF EXISTS AREA");
+        stat.execute("create table area(idarea int primary key, name varchar)");
+        stat.execute("insert into area select x, 'area' || x from system_range(1, 1000)");
+        File csvFile = new File("target/csv_import_options.csv");
+        CSVDriverFunction exp = new CSVDriverFunction();
+        exp.exportTable(connection, "AREA", csvFile, "fieldSeparator=|", true, new EmptyProgressVisitor());
+        stat.execute("DROP TABLE IF EXISTS mycsv");
+        exp.importFile(connection, "MYCSV", csvFile, "fieldSeparator=| batchSize=64 batchBytes=512 commitInterval=0",
+                new EmptyProgressVisitor());
+        try (ResultSet rs = stat.executeQuery("select count(*), SUM(idarea::int) from mycsv")) {
+            assertTrue(rs.next());
+            assertEquals(1000, rs.getInt(1));
+            assertEquals(500500, rs.getLong(2));
+        }
+        stat.execute("DROP TABLE IF EXISTS mycsv");
+        exp.importFile(connection, "MYCSV", csvFile, "fieldSeparator=| singleTransaction=true", new EmptyProgressVisitor());
+        try (ResultSet rs = stat.executeQuery("select count(*) from mycsv")) {
+            assertTrue(rs.next());
+            assertEquals(1000, rs.getInt(1));
+        }
+        assertTrue(connection.getAutoCommit());
+    }
+
     @Test
     public void testDriverDeleteTable() throws SQLException, IOException {
         Statement stat = connection.createStatement();
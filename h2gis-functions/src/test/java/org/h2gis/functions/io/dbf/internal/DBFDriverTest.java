@@ -1,11 +1,15 @@
 package org.h2gis.functions.io.dbf.internal;
 
 import org.h2gis.functions.io.shp.SHPEngineTest;
+import org.h2gis.functions.io.utility.MappedFile;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
@@ -18,4 +22,58 @@ public class DBFDriverTest {
         dbfDriver.initDriverFromFile(new File(SHPEngineTest.class.getResource("waternetwork.dbf").getFile()));
         assertTrue(dbfDriver.dbaseFileReader.getPositionFor(11000000, 0) > Integer.MAX_VALUE);
     }
+
+    @Test
+    public void testMemoryMappedDbf() throws IOException {
+        File dbfFile = new File(SHPEngineTest.class.getResource("waternetwork.dbf").getFile());
+        DBFDriver dbfDriver = new DBFDriver();
+        dbfDriver.initDriverFromFile(dbfFile);
+        DBFDriver mappedDriver = new DBFDriver();
+        mappedDriver.setMemoryMapped(true);
+        mappedDriver.initDriverFromFile(dbfFile);
+        try {
+            assertEquals(dbfDriver.getRowCount(), mappedDriver.getRowCount());
+            // Read backward in order to move the window at each row
+            for (long row = dbfDriver.getRowCount() - 1; row >= 0; row--) {
+                for (int column = 0; column < dbfDriver.getFieldCount(); column++) {
+                    assertEquals(dbfDriver.getField(row, column), mappedDriver.getField(row, column));
+                }
+            }
+        } finally {
+            dbfDriver.close();
+            mappedDriver.close();
+        }
+    }
+
+    @Test
+    public void testSharedMemoryMapping() throws IOException {
+        File dbfFile = new File(SHPEngineTest.class.getResource("waternetwork.dbf").getFile());
+        MappedFile first = MappedFile.open(dbfFile);
+        MappedFile second = MappedFile.open(dbfFile);
+        try {
+            // One mapping per file, shared by its readers
+            assertSame(first, second);
+        } finally {
+            first.close();
+        }
+        // The mapping is still usable by the remaining reader
+        assertEquals(dbfFile.length(), second.size());
+        second.getSegment(0);
+        second.close();
+        assertThrows(IOException.class, () -> second.getSegment(0));
+
+        DBFDriver firstDriver = new DBFDriver();
+        firstDriver.setMemoryMapped(true);
+        firstDriver.initDriverFromFile(dbfFile);
+        DBFDriver secondDriver = new DBFDriver();
+        secondDriver.setMemoryMapped(true);
+        secondDriver.initDriverFromFile(dbfFile);
+        try {
+            Object value = firstDriver.getField(firstDriver.getRowCount() - 1, 0);
+            firstDriver.close();
+            assertEquals(value, secondDriver.getField(secondDriver.getRowCount() - 1, 0));
+        } finally {
+            secondDriver.close();
+        }
+    }
 }
@@ -23,10 +23,12 @@ package org.h2gis.functions.io.geojson;
 import org.h2.jdbc.JdbcSQLDataException;
 import org.h2.jdbc.JdbcSQLException;
 import org.h2.util.StringUtils;
+import org.h2gis.api.DriverFunction;
 import org.h2gis.api.EmptyProgressVisitor;
 import org.h2gis.functions.factory.H2GISDBFactory;
 import org.h2gis.functions.factory.H2GISFunctions;
 import org.h2gis.postgis_jts_osgi.DataSourceFactoryImpl;
+import org.h2gis.utilities.GeometryTableUtilities;
 import org.h2gis.utilities.JDBCUtilities;
 import org.junit.jupiter.api.*;
 import org.locationtech.jts.geom.Coordinate;
@@ -34,11 +36,18 @@ import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.io.WKTReader;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.sql.*;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipInputStream;
 
 import org.h2gis.unitTest.GeometryAsserts;
 import org.osgi.service.jdbc.DataSourceFactory;
@@ -702,6 +711,64 @@ public class GeojsonImportExportTest {
         }
     }
 
+    @Test
+    public void testReadSinglePass() throws Exception {
+        try (Statement stat = connection.createStatement()) {
+            for (String file : new String[]{"startNull.geojson", "data.geojson", "complex.geojson"}) {
+                String path = StringUtils.quoteStringSQL(GeojsonImportExportTest.class.getResource(file).getPath());
+                stat.execute("DROP TABLE IF EXISTS TABLE_TWO_PASS, TABLE_SINGLE_PASS;");
+                stat.execute("CALL GeoJsonRead(" + path + ", 'TABLE_TWO_PASS');");
+                stat.execute("CALL GeoJsonRead(" + path + ", 'TABLE_SINGLE_PASS', 'singlePass=true batchSize=1');");
+                String columnsQuery = "SELECT COLUMN_NAME, DATA_TYPE, GEOMETRY_TYPE, GEOMETRY_SRID FROM INFORMATION_SCHEMA.COLUMNS " +
+                        "WHERE TABLE_NAME = '%s' ORDER BY ORDINAL_POSITION";
+                try (ResultSet twoPass = connection.createStatement().executeQuery(String.format(columnsQuery, "TABLE_TWO_PASS"));
+                     ResultSet singlePass = connection.createStatement().executeQuery(String.format(columnsQuery, "TABLE_SINGLE_PASS"))) {
+                    while (twoPass.next()) {
+                        assertTrue(singlePass.next());
+                        for (int i = 1; i <= 4; i++) {
+                            assertEquals(twoPass.getObject(i), singlePass.getObject(i), file);
+                        }
+                    }
+                    assertFalse(singlePass.next());
+                }
+                try (ResultSet res = stat.executeQuery("SELECT COUNT(*) FROM (SELECT * FROM TABLE_TWO_PASS " +
+                        "EXCEPT SELECT * FROM TABLE_SINGLE_PASS)")) {
+                    assertTrue(res.next());
+                    assertEquals(0, res.getInt(1), file);
+                }
+            }
+            stat.execute("DROP TABLE IF EXISTS TABLE_TWO_PASS, TABLE_SINGLE_PASS;");
+        }
+    }
+
+    @Test
+    public void testReadSinglePassCRSAfterFeatures() throws Exception {
+        File file = new File("target/crs_after_features.geojson");
+        Files.write(file.toPath(), ("{\"type\":\"FeatureCollection\",\"features\":["
+                + "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[1,2]},"
+                + "\"properties\":{\"id\":1}},"
+                + "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[3,4,5]},"
+                + "\"properties\":{\"id\":2.5}}],"
+                + "\"crs\":{\"type\":\"name\",\"properties\":{\"name\":\"urn:ogc:def:crs:EPSG::2154\"}}}")
+                .getBytes());
+        try (Statement stat = connection.createStatement()) {
+            stat.execute("DROP TABLE IF EXISTS TABLE_CRS_AFTER;");
+            stat.execute("CALL GeoJsonRead('target/crs_after_features.geojson', 'TABLE_CRS_AFTER', 'singlePass=true batchSize=1');");
+            assertEquals(2154, GeometryTableUtilities.getSRID(connection, "TABLE_CRS_AFTER"));
+            try (ResultSet res = stat.executeQuery("SELECT * FROM TABLE_CRS_AFTER ORDER BY ID")) {
+                assertTrue(res.next());
+                Geometry geom = (Geometry) res.getObject(1);
+                assertEquals(2154, geom.getSRID());
+                assertGeometryEquals("SRID=2154;POINTZ (1 2 0)", geom);
+                assertEquals(1, res.getDouble(2));
+                assertTrue(res.next());
+                assertEquals(2.5, res.getDouble(2));
+                assertFalse(res.next());
+            }
+            stat.execute("DROP TABLE TABLE_CRS_AFTER;");
+        }
+    }
+
     @Test
     public void testWriteReadProperties() throws Exception {
         try (Statement stat = connection.createStatement()) {
@@ -1275,4 +1342,190 @@ public class GeojsonImportExportTest {
             assertGeometryEquals("POINT Z (-1.637021666666667 47.15928666666667 10.2)", res.getObject(1));
         }
     }
+
+    @Test
+    public void testReadConcurrently() throws Exception {
+        int[] srids = new int[]{4326, 2154};
+        try (Statement stat = connection.createStatement()) {
+            for (int srid : srids) {
+                stat.execute("DROP TABLE IF EXISTS TABLE_POINTS_" + srid);
+                stat.execute("create table TABLE_POINTS_" + srid + "(id int, the_geom GEOMETRY(POINT, " + srid + "))");
+                stat.execute("insert into TABLE_POINTS_" + srid + " SELECT X, ST_SETSRID(ST_MAKEPOINT(X, X * 2), " + srid + ") FROM SYSTEM_RANGE(1, 500)");
+                stat.execute("CALL GeoJsonWrite('target/points_" + srid + ".geojson', 'TABLE_POINTS_" + srid + "', true);");
+            }
+        }
+        int importCount = 8;
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> imports = new ArrayList<>();
+            for (int i = 0; i < importCount; i++) {
+                final int srid = srids[i % srids.length];
+                final String tableName = "TABLE_POINTS_READ_" + i;
+                imports.add(executorService.submit(() -> {
+                    try (Connection con = H2GISDBFactory.openSpatialDataBase(DB_NAME);
+                         Statement stat = con.createStatement()) {
+                        stat.execute("CALL GeoJsonRead('target/points_" + srid + ".geojson', '" + tableName + "', true);");
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : imports) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        try (Statement stat = connection.createStatement()) {
+            for (int i = 0; i < importCount; i++) {
+                int srid = srids[i % srids.length];
+                ResultSet res = stat.executeQuery("SELECT COUNT(*), MIN(ST_SRID(THE_GEOM)), MAX(ST_SRID(THE_GEOM)) FROM TABLE_POINTS_READ_" + i);
+                res.next();
+                assertEquals(500, res.getInt(1));
+                assertEquals(srid, res.getInt(2));
+                assertEquals(srid, res.getInt(3));
+                res.close();
+                res = stat.executeQuery("SELECT COUNT(*) FROM (SELECT ID, THE_GEOM FROM TABLE_POINTS_" + srid
+                        + " EXCEPT SELECT ID, THE_GEOM FROM TABLE_POINTS_READ_" + i + ")");
+                res.next();
+                assertEquals(0, res.getInt(1));
+                res.close();
+                stat.execute("DROP TABLE TABLE_POINTS_READ_" + i);
+            }
+            for (int srid : srids) {
+                stat.execute("DROP TABLE TABLE_POINTS_" + srid);
+            }
+        }
+    }
+
+    @Test
+    public void testWriteReadGeojsonSequence() throws Exception {
+        try (Statement stat = connection.createStatement()) {
+            stat.execute("DROP TABLE IF EXISTS TABLE_POINTS, TABLE_POINTS_READ");
+            stat.execute("create table TABLE_POINTS(id bigint, name varchar, late varchar, the_geom GEOMETRY(POINT, 4326))");
+            stat.execute("insert into TABLE_POINTS SELECT X, 'point ' || X, CASE WHEN X > 250 THEN 'late' END, "
+                    + "ST_SETSRID(ST_MAKEPOINT(X, X * 2), 4326) FROM SYSTEM_RANGE(1, 300)");
+            for (String extension : new String[]{"geojsonl", "geojsons"}) {
+                String path = "target/points." + extension;
+                stat.execute("CALL GeoJsonWrite('" + path + "', 'TABLE_POINTS', true);");
+                List<String> lines = Files.readAllLines(new File(path).toPath());
+                assertEquals(300, lines.size());
+                assertEquals(extension.equals("geojsons"), lines.get(0).startsWith("\u001E"));
+                for (String options : new String[]{"", "threads=4 rangeSize=1000 batchSize=7"}) {
+                    stat.execute("CALL GeoJsonRead('" + path + "', 'TABLE_POINTS_READ', '" + options + "');");
+                    ResultSet res = stat.executeQuery("SELECT COUNT(*), MIN(ST_SRID(THE_GEOM)) FROM TABLE_POINTS_READ");
+                    res.next();
+                    assertEquals(300, res.getInt(1));
+                    assertEquals(4326, res.getInt(2));
+                    res.close();
+                    res = stat.executeQuery("SELECT COUNT(*) FROM (SELECT ID, NAME, LATE, THE_GEOM FROM TABLE_POINTS"
+                            + " EXCEPT SELECT ID, NAME, LATE, THE_GEOM FROM TABLE_POINTS_READ)");
+                    res.next();
+                    assertEquals(0, res.getInt(1));
+                    res.close();
+                    stat.execute("DROP TABLE TABLE_POINTS_READ");
+                }
+            }
+            stat.execute("DROP TABLE TABLE_POINTS");
+        }
+    }
+
+    @Test
+    public void testReadGeojsonSequenceMixed2D3D() throws Exception {
+        // The 3D features are in the last ranges of the file only
+        List<String> lines = new ArrayList<>();
+        for (int i = 1; i <= 40; i++) {
+            String coordinates = i <= 30 ? i + ", " + i * 2 : i + ", " + i * 2 + ", " + i * 3;
+            lines.add("{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":["
+                    + coordinates + "]},\"properties\":{\"ID\":" + i + "}}");
+        }
+        File file = new File("target/mixed_2d_3d.geojsonl");
+        Files.write(file.toPath(), lines);
+        try (Statement stat = connection.createStatement()) {
+            stat.execute("DROP TABLE IF EXISTS TABLE_MIXED_READ");
+            for (String options : new String[]{"", "threads=4 rangeSize=200"}) {
+                stat.execute("CALL GeoJsonRead('" + file.getPath() + "', 'TABLE_MIXED_READ', '" + options + "');");
+                ResultSet res = stat.executeQuery("SELECT COUNT(*), SUM(CASE WHEN ST_Z(THE_GEOM) = 0 THEN 1 ELSE 0 END),"
+                        + " SUM(CASE WHEN ST_Z(THE_GEOM) = ID * 3 THEN 1 ELSE 0 END) FROM TABLE_MIXED_READ");
+                res.next();
+                assertEquals(40, res.getInt(1));
+                assertEquals(30, res.getInt(2));
+                assertEquals(10, res.getInt(3));
+                res.close();
+                stat.execute("DROP TABLE TABLE_MIXED_READ");
+            }
+        }
+    }
+
+    @Test
+    public void testWriteParallel() throws Exception {
+        try (Statement stat = connection.createStatement()) {
+            stat.execute("DROP TABLE IF EXISTS TABLE_POINTS, TABLE_POINTS_NOPK, TABLE_POINTS_READ");
+            stat.execute("create table TABLE_POINTS(id int primary key, name varchar, the_geom GEOMETRY(POINT, 4326))");
+            stat.execute("insert into TABLE_POINTS SELECT X * 3, 'point ' || X, ST_SETSRID(ST_MAKEPOINT(X, X * 2), 4326) "
+                    + "FROM SYSTEM_RANGE(1, 25000)");
+            stat.execute("create table TABLE_POINTS_NOPK AS SELECT * FROM TABLE_POINTS");
+            GeoJsonDriverFunction driver = new GeoJsonDriverFunction();
+            GeoJsonSeqDriverFunction seqDriver = new GeoJsonSeqDriverFunction();
+            for (String table : new String[]{"TABLE_POINTS", "TABLE_POINTS_NOPK"}) {
+                for (String extension : new String[]{"geojson", "geojson.gz", "geojsonl"}) {
+                    File file = new File("target/points_parallel." + extension);
+                    DriverFunction format = extension.equals("geojsonl") ? seqDriver : driver;
+                    format.exportTable(connection, table, file, "threads=4", true, new EmptyProgressVisitor());
+                    format.importFile(connection, "TABLE_POINTS_READ", file, true, new EmptyProgressVisitor());
+                    ResultSet res = stat.executeQuery("SELECT COUNT(*), MIN(ST_SRID(THE_GEOM)) FROM TABLE_POINTS_READ");
+                    res.next();
+                    assertEquals(25000, res.getInt(1));
+                    assertEquals(4326, res.getInt(2));
+                    res.close();
+                    res = stat.executeQuery("SELECT COUNT(*) FROM (SELECT ID, NAME, THE_GEOM FROM " + table
+                            + " EXCEPT SELECT ID, NAME, THE_GEOM FROM TABLE_POINTS_READ)");
+                    res.next();
+                    assertEquals(0, res.getInt(1));
+                    res.close();
+                }
+            }
+            stat.execute("DROP TABLE TABLE_POINTS, TABLE_POINTS_NOPK, TABLE_POINTS_READ");
+        }
+    }
+
+    @Test
+    public void testWriteParallelExtremeKeys() throws Exception {
+        try (Statement stat = connection.createStatement()) {
+            stat.execute("DROP TABLE IF EXISTS TABLE_POINTS, TABLE_POINTS_READ");
+            stat.execute("create table TABLE_POINTS(id bigint primary key, name varchar, the_geom GEOMETRY(POINT, 4326))");
+            stat.execute("insert into TABLE_POINTS SELECT X * 1000, 'point ' || X, ST_SETSRID(ST_MAKEPOINT(X, X * 2), 4326) "
+                    + "FROM SYSTEM_RANGE(1, 25000)");
+            // The key span overflows a long
+            stat.execute("insert into TABLE_POINTS VALUES (-9223372036854775808, 'min', ST_SETSRID(ST_MAKEPOINT(-1, -1), 4326)),"
+                    + "(9223372036854775807, 'max', ST_SETSRID(ST_MAKEPOINT(-2, -2), 4326))");
+            GeoJsonDriverFunction driver = new GeoJsonDriverFunction();
+            GeoJsonSeqDriverFunction seqDriver = new GeoJsonSeqDriverFunction();
+            File seqFile = new File("target/points_extreme.geojsons");
+            seqDriver.exportTable(connection, "TABLE_POINTS", seqFile, "threads=4", true, new EmptyProgressVisitor());
+            seqDriver.importFile(connection, "TABLE_POINTS_READ", seqFile, true, new EmptyProgressVisitor());
+            assertTableEquals(stat, "TABLE_POINTS", "TABLE_POINTS_READ", 25002);
+            File zipFile = new File("target/points_extreme.geojson.zip");
+            File zipContent = new File("target/points_extreme_zip.geojson");
+            driver.exportTable(connection, "TABLE_POINTS", zipFile, "threads=4", true, new EmptyProgressVisitor());
+            try (ZipInputStream zip = new ZipInputStream(new FileInputStream(zipFile))) {
+                assertNotNull(zip.getNextEntry());
+                Files.copy(zip, zipContent.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            driver.importFile(connection, "TABLE_POINTS_READ", zipContent, true, new EmptyProgressVisitor());
+            assertTableEquals(stat, "TABLE_POINTS", "TABLE_POINTS_READ", 25002);
+            stat.execute("DROP TABLE TABLE_POINTS, TABLE_POINTS_READ");
+        }
+    }
+
+    private static void assertTableEquals(Statement stat, String table, String readTable, int count) throws SQLException {
+        try (ResultSet res = stat.executeQuery("SELECT COUNT(*) FROM " + readTable)) {
+            res.next();
+            assertEquals(count, res.getInt(1));
+        }
+        try (ResultSet res = stat.executeQuery("SELECT COUNT(*) FROM (SELECT ID, NAME, THE_GEOM FROM " + table
+                + " EXCEPT SELECT ID, NAME, THE_GEOM FROM " + readTable + ")")) {
+            res.next();
+            assertEquals(0, res.getInt(1));
+        }
+    }
 }
@@ -24,6 +24,7 @@ import org.apache.commons.io.FileUtils;
 import org.h2.util.StringUtils;
 import org.h2gis.functions.factory.H2GISDBFactory;
 import org.h2gis.functions.io.file_table.H2TableIndex;
+import org.h2gis.functions.io.file_table.PackedRTree;
 import org.h2gis.utilities.GeometryTableUtilities;
 import org.h2gis.utilities.GeometryTypeCodes;
 import org.h2gis.utilities.JDBCUtilities;
@@ -448,4 +449,53 @@ public class SHPEngineTest {
             assertTrue(rs.getString(1).contains("PK_INDEX"), "Expected contains PK_INDEX but result is " + rs.getString(1));
         }
     }
+
+    @Test
+    public void linkedShpSpatialIndexFileTest() throws Exception {
+        File src = new File(SHPEngineTest.class.getResource("waternetwork.shp").getPath());
+        File srcDbf = new File(SHPEngineTest.class.getResource("waternetwork.dbf").getPath());
+        File srcShx = new File(SHPEngineTest.class.getResource("waternetwork.shx").getPath());
+        File dst = new File("target/waternetwork_qix.shp");
+        File indexFile = new File("target/waternetwork_qix." + PackedRTree.FILE_EXTENSION);
+        indexFile.delete();
+        FileUtils.copyFile(src, dst);
+        FileUtils.copyFile(srcDbf, new File("target/waternetwork_qix.dbf"));
+        FileUtils.copyFile(srcShx, new File("target/waternetwork_qix.shx"));
+        Statement st = connection.createStatement();
+        st.execute("drop table if exists shptable, shpcopy");
+        st.execute("CALL FILE_TABLE('" + dst + "', 'SHPTABLE');");
+        st.execute("CREATE TABLE SHPCOPY AS SELECT * FROM SHPTABLE");
+        st.execute("CREATE SPATIAL INDEX SHP_FILE_INDEX ON SHPTABLE(THE_GEOM)");
+        assertTrue(indexFile.exists());
+        try (ResultSet rs = st.executeQuery("EXPLAIN SELECT PK FROM SHPTABLE WHERE THE_GEOM && ST_BUFFER('POINT(183541 2426015)', 15)")) {
+            assertTrue(rs.next());
+            assertTrue(rs.getString(1).contains("SHP_FILE_INDEX"), rs.getString(1));
+        }
+        String query = "SELECT COUNT(*) cpt, SUM(PK) sumpk FROM %s WHERE THE_GEOM && ST_EXPAND('POINT(183541 2426015)', 1000)";
+        long expectedCount;
+        long expectedSum;
+        try (ResultSet rs = st.executeQuery(String.format(query, "SHPCOPY"))) {
+            assertTrue(rs.next());
+            expectedCount = rs.getLong("cpt");
+            expectedSum = rs.getLong("sumpk");
+            assertTrue(expectedCount > 0);
+        }
+        try (ResultSet rs = st.executeQuery(String.format(query, "SHPTABLE"))) {
+            assertTrue(rs.next());
+            assertEquals(expectedCount, rs.getLong("cpt"));
+            assertEquals(expectedSum, rs.getLong("sumpk"));
+        }
+        // Link again, the index file is reused
+        long indexDate = indexFile.lastModified();
+        st.execute("drop table shptable");
+        st.execute("CALL FILE_TABLE('" + dst + "', 'SHPTABLE');");
+        st.execute("CREATE SPATIAL INDEX SHP_FILE_INDEX ON SHPTABLE(THE_GEOM)");
+        assertEquals(indexDate, indexFile.lastModified());
+        try (ResultSet rs = st.executeQuery(String.format(query, "SHPTABLE"))) {
+            assertTrue(rs.next());
+            assertEquals(expectedCount, rs.getLong("cpt"));
+            assertEquals(expectedSum, rs.getLong("sumpk"));
+        }
+        st.execute("drop table shptable, shpcopy");
+    }
 }
@@ -20,6 +20,7 @@
 package org.h2gis.functions.io.shp;
 
 import org.h2.util.StringUtils;
+import org.h2.value.Value;
 import org.h2.value.ValueGeometry;
 import org.h2gis.api.DriverFunction;
 import org.h2gis.api.EmptyProgressVisitor;
@@ -30,6 +31,7 @@ import org.h2gis.functions.io.dbf.DBFRead;
 import org.h2gis.functions.io.dbf.DBFWrite;
 import org.h2gis.functions.io.file_table.H2TableIndex;
 import org.h2gis.functions.io.shp.internal.SHPDriver;
+import org.h2gis.functions.io.utility.ImportOptions;
 import org.h2gis.postgis_jts_osgi.DataSourceFactoryImpl;
 import org.junit.jupiter.api.*;
 import org.locationtech.jts.geom.Coordinate;
@@ -40,6 +42,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -108,6 +111,86 @@ public class SHPImportExportTest {
         assertGeometryEquals("MULTIPOLYGON (((90 109, 190 109, 190 9, 90 9, 90 109)))", (ValueGeometry) shpDriver.getField(1, 1));
     }
 
+    @Test
+    public void readRowTest() throws SQLException, IOException {
+        Statement stat = connection.createStatement();
+        File shpFile = new File("target/area_export_row.shp");
+        stat.execute("DROP TABLE IF EXISTS AREA");
+        stat.execute("create table area(idarea int primary key, the_geom GEOMETRY(POLYGON), name varchar)");
+        stat.execute("insert into area values(1, 'POLYGON ((-10 109, 90 109, 90 9, -10 9, -10 109))', 'first')");
+        stat.execute("insert into area values(2, 'POLYGON ((90 109, 190 109, 190 9, 90 9, 90 109))', 'second')");
+        stat.execute("CALL SHPWrite('target/area_export_row.shp', 'AREA', true)");
+        SHPDriver shpDriver = new SHPDriver();
+        shpDriver.initDriverFromFile(shpFile);
+        shpDriver.setGeometryFieldIndex(1);
+        try {
+            assertEquals(3, shpDriver.getFieldCount());
+            Object[] row = null;
+            for (long rowId = 0; rowId < shpDriver.getRowCount(); rowId++) {
+                row = shpDriver.getRow(rowId, row);
+                for (int column = 0; column < shpDriver.getFieldCount(); column++) {
+                    assertEquals(shpDriver.getField(rowId, column), row[column]);
+                }
+            }
+            assertEquals("second", ((Value) row[2]).getString());
+        } finally {
+            shpDriver.close();
+        }
+    }
+
+    @Test
+    public void importParallelTest() throws SQLException, IOException {
+        Statement stat = connection.createStatement();
+        File shpFile = new File("target/points_parallel.shp");
+        stat.execute("DROP TABLE IF EXISTS POINTS, POINTS_SEQ, POINTS_PAR");
+        stat.execute("CREATE TABLE POINTS(id int primary key, the_geom GEOMETRY(POINT), name varchar)");
+        stat.execute("INSERT INTO POINTS SELECT X, ST_MakePoint(X, X * 2), 'point' || X FROM SYSTEM_RANGE(1, 1013)");
+        stat.execute("CALL SHPWrite('target/points_parallel.shp', 'POINTS', true)");
+        SHPDriverFunction driverFunction = new SHPDriverFunction();
+        driverFunction.importFile(connection, "POINTS_SEQ", shpFile, null, true, new EmptyProgressVisitor());
+        driverFunction.importFile(connection, "POINTS_PAR", shpFile, "threads=4 batchSize=50 commitBytes=4096",
+                true, new EmptyProgressVisitor());
+        try (ResultSet rs = stat.executeQuery("SELECT COUNT(*) FROM POINTS_PAR")) {
+            assertTrue(rs.next());
+            assertEquals(1013, rs.getInt(1));
+        }
+        try (ResultSet rs = stat.executeQuery("SELECT COUNT(*) FROM POINTS_SEQ S, POINTS_PAR P WHERE S.PK = P.PK " +
+                "AND S.ID = P.ID AND S.NAME = P.NAME AND ST_Equals(S.THE_GEOM, P.THE_GEOM)")) {
+            assertTrue(rs.next());
+            assertEquals(1013, rs.getInt(1));
+        }
+        stat.execute("DROP TABLE IF EXISTS POINTS, POINTS_SEQ, POINTS_PAR");
+    }
+
+    @Test
+    public void importCommitBytesTest() throws SQLException {
+        Statement stat = connection.createStatement();
+        stat.execute("DROP TABLE IF EXISTS COMMIT_BYTES");
+        stat.execute("CREATE TABLE COMMIT_BYTES(id int)");
+        ImportOptions importOptions = ImportOptions.parse("batchSize=2 commitInterval=100 commitBytes=100", 200);
+        assertEquals(100, importOptions.getCommitBytes());
+        boolean autoCommit = connection.getAutoCommit();
+        try (PreparedStatement ps = connection.prepareStatement("INSERT INTO COMMIT_BYTES VALUES (?)")) {
+            importOptions.begin(connection);
+            ImportOptions.Batch batch = importOptions.createBatch(connection, ps);
+            for (int i = 0; i < 10; i++) {
+                ps.setInt(1, i);
+                batch.addRow(30);
+            }
+            // 300 bytes in batches of 60 bytes, commit every two batches
+            assertEquals(2, batch.getCommitCount());
+            batch.finish();
+            assertEquals(3, batch.getCommitCount());
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        try (ResultSet rs = stat.executeQuery("SELECT COUNT(*) FROM COMMIT_BYTES")) {
+            assertTrue(rs.next());
+            assertEquals(10, rs.getInt(1));
+        }
+        stat.execute("DROP TABLE IF EXISTS COMMIT_BYTES");
+    }
+
     @Test
     public void exportTableTestGeomDeb() throws SQLException, IOException {
         Statement stat = connection.createStatement();
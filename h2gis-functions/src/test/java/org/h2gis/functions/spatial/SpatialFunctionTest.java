@@ -27,9 +27,11 @@ import org.h2.jdbc.JdbcSQLNonTransientException;
 import org.h2.value.ValueGeometry;
 import org.h2gis.functions.factory.H2GISDBFactory;
 import org.h2gis.functions.spatial.affine_transformations.ST_Translate;
+import org.h2gis.functions.spatial.predicates.PreparedGeometryCache;
 import org.h2gis.utilities.TableLocation;
 import org.junit.jupiter.api.*;
 import org.locationtech.jts.geom.*;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
 import org.locationtech.jts.io.WKTReader;
 
 import java.sql.*;
@@ -405,6 +407,77 @@ public class SpatialFunctionTest {
         st.execute("DROP TABLE input_table;");
     }
 
+    @Test
+    public void test_PreparedPredicates() throws Exception {
+        st.execute("DROP TABLE IF EXISTS country, points;"
+                + "CREATE TABLE country(the_geom GEOMETRY(POLYGON)) AS "
+                + "SELECT ST_Buffer('POINT(0 0)'::GEOMETRY, 10, 'quad_segs=32');"
+                + "CREATE TABLE points(the_geom GEOMETRY(POINT)) AS "
+                + "SELECT ST_MakePoint(X / 31 - 15, MOD(X, 31) - 15) FROM SYSTEM_RANGE(0, 960);");
+        ResultSet rs = st.executeQuery("SELECT "
+                + "SUM(CASE WHEN ST_Intersects(c.the_geom, p.the_geom) THEN 1 ELSE 0 END),"
+                + "SUM(CASE WHEN ST_Intersects(c.the_geom, p.the_geom) = ST_Disjoint(c.the_geom, p.the_geom) THEN 1 ELSE 0 END),"
+                + "SUM(CASE WHEN ST_Intersects(p.the_geom, c.the_geom) <> ST_Intersects(c.the_geom, p.the_geom) THEN 1 ELSE 0 END),"
+                + "SUM(CASE WHEN ST_Contains(c.the_geom, p.the_geom) <> ST_Relate(c.the_geom, p.the_geom, 'T*****FF*') THEN 1 ELSE 0 END),"
+                + "SUM(CASE WHEN ST_Within(p.the_geom, c.the_geom) <> ST_Contains(c.the_geom, p.the_geom) THEN 1 ELSE 0 END),"
+                + "SUM(CASE WHEN ST_Covers(c.the_geom, ST_Buffer(p.the_geom, 0.5)) <> ST_Relate(c.the_geom, ST_Buffer(p.the_geom, 0.5), '******FF*') THEN 1 ELSE 0 END),"
+                + "SUM(CASE WHEN ST_DWithin(c.the_geom, p.the_geom, 2) <> (ST_Distance(c.the_geom, p.the_geom) <= 2) THEN 1 ELSE 0 END),"
+                + "SUM(CASE WHEN ST_DWithin(p.the_geom, ST_ExteriorRing(c.the_geom), 2) <> (ST_Distance(p.the_geom, ST_ExteriorRing(c.the_geom)) <= 2) THEN 1 ELSE 0 END) "
+                + "FROM country c, points p");
+        assertTrue(rs.next());
+        assertTrue(rs.getInt(1) > 300);
+        for (int i = 2; i <= 8; i++) {
+            assertEquals(0, rs.getInt(i));
+        }
+        st.execute("DROP TABLE country, points;");
+    }
+
+    @Test
+    public void test_PreparedGeometryCache() throws Exception {
+        Geometry circle = WKT_READER.read("POINT (0 0)").buffer(10, 32);
+        PreparedGeometryCache.clear();
+        // Prepared the second time a geometry is seen, found again by content
+        assertNull(PreparedGeometryCache.getPrepared(circle));
+        assertNotNull(PreparedGeometryCache.getPrepared(circle.copy()));
+        assertEquals(1, PreparedGeometryCache.size());
+        // Same type, number of points and envelope but another vertex
+        Geometry moved = circle.copy();
+        CoordinateSequence ring = ((Polygon) moved).getExteriorRing().getCoordinateSequence();
+        ring.setOrdinate(5, CoordinateSequence.X, ring.getX(5) * 0.99);
+        moved.geometryChanged();
+        assertEquals(circle.getEnvelopeInternal(), moved.getEnvelopeInternal());
+        assertNull(PreparedGeometryCache.getPrepared(moved));
+        assertEquals(2, PreparedGeometryCache.size());
+        assertNotNull(PreparedGeometryCache.getPrepared(circle.copy()));
+        // Small geometries are never cached
+        assertNull(PreparedGeometryCache.getPrepared(WKT_READER.read("POLYGON ((0 0, 1 0, 1 1, 0 1, 0 0))")));
+        assertEquals(2, PreparedGeometryCache.size());
+        for (int i = 1; i <= PreparedGeometryCache.MAX_ENTRIES; i++) {
+            PreparedGeometryCache.getPrepared(WKT_READER.read("POINT (" + i + " 0)").buffer(10, 32));
+        }
+        assertEquals(PreparedGeometryCache.MAX_ENTRIES, PreparedGeometryCache.size());
+        assertNull(PreparedGeometryCache.getPrepared(circle));
+        PreparedGeometryCache.clear();
+        // Same coordinates, but the polygon and the line are swapped
+        GeometryFactory factory = circle.getFactory();
+        LinearRing r1 = ((Polygon) WKT_READER.read("POINT (0 0)").buffer(10, 5)).getExteriorRing();
+        LinearRing r2 = ((Polygon) WKT_READER.read("POINT (30 0)").buffer(10, 5)).getExteriorRing();
+        Geometry polygonFirst = factory.createGeometryCollection(new Geometry[]{
+                factory.createPolygon(r1), factory.createLineString(r2.getCoordinateSequence())});
+        Geometry lineFirst = factory.createGeometryCollection(new Geometry[]{
+                factory.createLineString(r1.getCoordinateSequence()), factory.createPolygon(r2)});
+        Geometry center = WKT_READER.read("POINT (0 0)");
+        assertNull(PreparedGeometryCache.getPrepared(polygonFirst));
+        assertNull(PreparedGeometryCache.getPrepared(lineFirst));
+        PreparedGeometry prepared = PreparedGeometryCache.getPrepared(lineFirst.copy());
+        assertNotNull(prepared);
+        assertFalse(prepared.intersects(center));
+        prepared = PreparedGeometryCache.getPrepared(polygonFirst.copy());
+        assertNotNull(prepared);
+        assertTrue(prepared.intersects(center));
+        PreparedGeometryCache.clear();
+    }
+
     @Test
     public void test_ST_XYZMinMax() throws Exception {
         st.execute("DROP TABLE IF EXISTS input_table;"
@@ -26,16 +26,24 @@ import org.h2gis.functions.factory.H2GISDBFactory;
 import org.junit.jupiter.api.*;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKTReader;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.h2.value.ValueGeometry;
 
 import static org.h2gis.unitTest.GeometryAsserts.assertGeometryBarelyEquals;
 
+import org.h2gis.utilities.GeometryTableUtilities;
 import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.TableLocation;
 import org.h2gis.utilities.GeographyUtilities;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -119,6 +127,121 @@ public class CRSFunctionTest {
         checkWithTolerance(rs, inGeom, 10E-13);
     }
 
+    @Test
+    public void testST_TransformConcurrent() throws Exception {
+        CRSTransformService.clear();
+        final Geometry input = new WKTReader().read("LINESTRING(2.114551393 50.345609791, 2.15 51)");
+        input.setSRID(4326);
+        final Geometry expected = new WKTReader().read("LINESTRING(636890.7403214505 7027895.263449971, 640202.1706468144 7100786.438815401)");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Geometry>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                results.add(executor.submit(() -> CRSTransformService.transform(connection, input, 2154)));
+            }
+            for (Future<Geometry> result : results) {
+                Geometry geom = result.get();
+                assertEquals(2154, geom.getSRID());
+                assertTrue(geom.equalsExact(expected, 10E-3));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        // The input geometry is left unchanged
+        assertEquals(2.114551393, input.getCoordinates()[0].x);
+    }
+
+    @Test
+    public void testST_TransformXYGeometryFromTable() throws Exception {
+        // H2 decodes 2D geometries into sequences of CoordinateXY
+        st.execute("DROP TABLE IF EXISTS XY_LINES;"
+                + "CREATE TABLE XY_LINES(THE_GEOM GEOMETRY(LINESTRING, 4326));"
+                + "INSERT INTO XY_LINES VALUES ('SRID=4326;LINESTRING(2.114551393 50.345609791, 2.15 51)');");
+        ResultSet rs = st.executeQuery("SELECT ST_Transform(THE_GEOM, 2154) FROM XY_LINES");
+        assertTrue(rs.next());
+        Geometry geom = (Geometry) rs.getObject(1);
+        assertEquals(2154, geom.getSRID());
+        assertTrue(Double.isNaN(geom.getCoordinate().getZ()));
+        assertTrue(geom.equalsExact(new WKTReader().read(
+                "LINESTRING(636890.7403214505 7027895.263449971, 640202.1706468144 7100786.438815401)"), 10E-3));
+        rs.close();
+        st.execute("DROP TABLE XY_LINES");
+    }
+
+    @Test
+    public void testST_TransformTable() throws Exception {
+        st.execute("DROP TABLE IF EXISTS SRC, DST;"
+                + "CREATE TABLE SRC(ID INT PRIMARY KEY, NAME VARCHAR, THE_GEOM GEOMETRY(POINT, 4326));"
+                + "INSERT INTO SRC VALUES (1, 'a', 'SRID=4326;POINT(2.114551393 50.345609791)'),"
+                + "(2, 'b', 'SRID=4326;POINT(2.15 51)'), (4, 'c', NULL),"
+                + "(7, 'd', 'SRID=4326;POINT(2.11 50.34)'), (9, 'e', 'SRID=4326;POINT(0 45)');");
+        ResultSet rs = st.executeQuery("SELECT ST_TransformTable('SRC', 'DST', 2154, 'chunk=2 threads=2')");
+        assertTrue(rs.next());
+        assertEquals(5, rs.getLong(1));
+        rs.close();
+        assertEquals(2154, GeometryTableUtilities.getSRID(connection, TableLocation.parse("DST"), "THE_GEOM"));
+        assertTrue(JDBCUtilities.isSpatialIndexed(connection, TableLocation.parse("DST"), "THE_GEOM"));
+        rs = st.executeQuery("SELECT D.ID, D.NAME, D.THE_GEOM, ST_Transform(S.THE_GEOM, 2154) "
+                + "FROM DST D, SRC S WHERE D.ID = S.ID ORDER BY D.ID");
+        int count = 0;
+        while (rs.next()) {
+            if (rs.getInt(1) == 4) {
+                assertNull(rs.getObject(3));
+            } else {
+                Geometry geom = (Geometry) rs.getObject(3);
+                assertEquals(2154, geom.getSRID());
+                assertTrue(geom.equalsExact((Geometry) rs.getObject(4), 10E-9));
+            }
+            count++;
+        }
+        assertEquals(5, count);
+        rs.close();
+    }
+
+    @Test
+    public void testST_TransformTableExistingTarget() throws Exception {
+        st.execute("DROP TABLE IF EXISTS SRC, DST;"
+                + "CREATE TABLE SRC(ID INT PRIMARY KEY, THE_GEOM GEOMETRY(POINT, 4326));"
+                + "INSERT INTO SRC VALUES (1, 'SRID=4326;POINT(2.15 51)');"
+                + "CREATE TABLE DST(ID INT);");
+        assertThrows(JdbcSQLNonTransientException.class, () ->
+                st.executeQuery("SELECT ST_TransformTable('SRC', 'DST', 2154)"));
+        ResultSet rs = st.executeQuery("SELECT ST_TransformTable('SRC', 'DST', 2154, 'geom=the_geom delete=true')");
+        assertTrue(rs.next());
+        assertEquals(1, rs.getLong(1));
+        rs.close();
+        assertEquals(2154, GeometryTableUtilities.getSRID(connection, TableLocation.parse("DST"), "THE_GEOM"));
+    }
+
+    @Test
+    public void testST_TransformTableMinKey() throws Exception {
+        st.execute("DROP TABLE IF EXISTS SRC, DST;"
+                + "CREATE TABLE SRC(ID BIGINT PRIMARY KEY, THE_GEOM GEOMETRY(POINT, 4326));"
+                + "INSERT INTO SRC VALUES (-9223372036854775808, 'SRID=4326;POINT(2.15 51)'),"
+                + "(1, 'SRID=4326;POINT(2.11 50.34)'), (9223372036854775807, 'SRID=4326;POINT(0 45)');");
+        ResultSet rs = st.executeQuery("SELECT ST_TransformTable('SRC', 'DST', 2154, 'chunk=2 threads=1')");
+        assertTrue(rs.next());
+        assertEquals(3, rs.getLong(1));
+        rs.close();
+        rs = st.executeQuery("SELECT COUNT(*) FROM DST WHERE ID = -9223372036854775808");
+        assertTrue(rs.next());
+        assertEquals(1, rs.getInt(1));
+        rs.close();
+        assertTrue(connection.getAutoCommit());
+    }
+
+    @Test
+    public void testST_TransformTableFailure() throws Exception {
+        st.execute("DROP TABLE IF EXISTS SRC, DST;"
+                + "CREATE TABLE SRC(ID INT PRIMARY KEY, THE_GEOM GEOMETRY);"
+                + "INSERT INTO SRC VALUES (1, 'SRID=4326;POINT(2.15 51)'), (2, 'SRID=4326;POINT(2.11 50.34)'),"
+                + "(3, 'POINT(0 45)');");
+        assertThrows(SQLException.class, () ->
+                st.executeQuery("SELECT ST_TransformTable('SRC', 'DST', 2154, 'chunk=1 threads=1')"));
+        assertFalse(JDBCUtilities.tableExists(connection, TableLocation.parse("DST")));
+        assertTrue(connection.getAutoCommit());
+    }
+
     @Test
     public void testST_TransformOnMULTILINESTRING() throws Exception {
         checkProjectedGeom("SRID=4326;MULTILINESTRING ((0 0, 1 0))",
@@ -19,9 +19,11 @@
  */
 package org.h2gis.functions.spatial.topology;
 
+import org.h2.api.Trigger;
 import org.h2.jdbc.JdbcSQLException;
 import org.h2.jdbc.JdbcSQLIntegrityConstraintViolationException;
 import org.h2.jdbc.JdbcSQLNonTransientException;
+import org.h2.value.ValueInteger;
 import org.h2gis.functions.factory.H2GISDBFactory;
 import org.h2gis.functions.factory.H2GISFunctions;
 import org.junit.jupiter.api.*;
@@ -30,6 +32,7 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Random;
 
 import static org.h2gis.unitTest.GeometryAsserts.assertGeometryEquals;
 import static org.junit.jupiter.api.Assertions.*;
@@ -51,6 +54,7 @@ public class ST_GraphTest {
         // Keep a connection alive to not close the DataBase on each unit test
         connection = H2GISDBFactory.createSpatialDataBase(DB_NAME, true);
         H2GISFunctions.registerFunction(connection.createStatement(), new ST_Graph(), "");
+        H2GISFunctions.registerFunction(connection.createStatement(), new ST_GraphUpdate(), "");
     }
 
     @BeforeEach
@@ -634,4 +638,167 @@ public class ST_GraphTest {
         }
     }
 
+    @Test
+    public void test_ST_GraphUpdate() throws Exception {
+        st.execute("DROP TABLE IF EXISTS TEST; DROP TABLE IF EXISTS TEST_NODES; DROP TABLE IF EXISTS TEST_EDGES");
+        st.execute("CREATE TABLE test(road GEOMETRY(LINESTRING), description VARCHAR, id INT AUTO_INCREMENT PRIMARY KEY);"
+                + "INSERT INTO test VALUES "
+                + "('LINESTRING (0 0, 1 2)', 'road1', DEFAULT),"
+                + "('LINESTRING (1 2, 2 3, 4 3)', 'road2', DEFAULT),"
+                + "('LINESTRING (4 3, 4 4, 1 4, 1 2)', 'road3', DEFAULT),"
+                + "('LINESTRING (4 3, 5 2)', 'road4', DEFAULT),"
+                + "('LINESTRING (4.05 4.1, 7 5)', 'road5', DEFAULT),"
+                + "('LINESTRING (7.1 5, 8 4)', 'road6', DEFAULT);");
+        st.execute("SELECT ST_Graph('TEST', 'road', 0.1, false)");
+        // Delete road4, move the end of road6 and add road7
+        st.execute("DELETE FROM test WHERE id = 4;"
+                + "UPDATE test SET road = 'LINESTRING (7.05 5, 9 9)' WHERE id = 6;"
+                + "INSERT INTO test VALUES ('LINESTRING (0.1 0, 9 9.1)', 'road7', DEFAULT);");
+        try (ResultSet rs = st.executeQuery("SELECT ST_GraphUpdate('TEST', ARRAY[4, 6, 7], 'road', 0.1, false)")) {
+            assertTrue(rs.next());
+            assertEquals(2, rs.getInt(1));
+            assertFalse(rs.next());
+        }
+        // The nodes 6 (5 2) and 7 (8 4) are no longer used
+        ResultSet nodesResult = st.executeQuery("SELECT * FROM TEST_NODES ORDER BY NODE_ID");
+        checkNode(nodesResult, 1, "POINT (0 0)");
+        checkNode(nodesResult, 2, "POINT (1 2)");
+        checkNode(nodesResult, 3, "POINT (4 3)");
+        checkNode(nodesResult, 4, "POINT (4.05 4.1)");
+        checkNode(nodesResult, 5, "POINT (7.1 5)");
+        checkNode(nodesResult, 6, "POINT (9 9)");
+        assertFalse(nodesResult.next());
+        nodesResult.close();
+        ResultSet edgesResult = st.executeQuery("SELECT * FROM TEST_EDGES ORDER BY EDGE_ID");
+        checkEdge(edgesResult, 1, 1, 2);
+        checkEdge(edgesResult, 2, 2, 3);
+        checkEdge(edgesResult, 3, 3, 2);
+        checkEdge(edgesResult, 5, 4, 5);
+        checkEdge(edgesResult, 6, 5, 6);
+        checkEdge(edgesResult, 7, 1, 6);
+        assertFalse(edgesResult.next());
+        edgesResult.close();
+    }
+
+    @Test
+    public void test_ST_GraphUpdate_OrientBySlope() throws Exception {
+        st.execute("DROP TABLE IF EXISTS TEST; DROP TABLE IF EXISTS TEST_NODES; DROP TABLE IF EXISTS TEST_EDGES");
+        st.execute("CREATE TABLE test(road GEOMETRY(LINESTRING Z), id INT AUTO_INCREMENT PRIMARY KEY);"
+                + "INSERT INTO test VALUES "
+                + "('LINESTRINGZ (0 0 0, 1 0 1)', DEFAULT),"
+                + "('LINESTRINGZ (1 0 1, 2 0 2)', DEFAULT);");
+        st.execute("SELECT ST_Graph('TEST', 'road', 0.0, true)");
+        st.execute("INSERT INTO test VALUES ('LINESTRINGZ (2 0 2, 3 0 3)', DEFAULT);");
+        st.execute("SELECT ST_GraphUpdate('TEST', 3, 'road', 0.0, true)");
+        ResultSet edgesResult = st.executeQuery("SELECT * FROM TEST_EDGES ORDER BY EDGE_ID");
+        checkEdge(edgesResult, 1, 2, 1);
+        checkEdge(edgesResult, 2, 3, 2);
+        checkEdge(edgesResult, 3, 4, 3);
+        assertFalse(edgesResult.next());
+        edgesResult.close();
+    }
+
+    @Test
+    public void test_ST_GraphUpdate_Trigger() throws Exception {
+        st.execute("DROP TABLE IF EXISTS TEST; DROP TABLE IF EXISTS TEST_NODES; DROP TABLE IF EXISTS TEST_EDGES");
+        st.execute("CREATE TABLE test(road GEOMETRY(LINESTRING), id INT AUTO_INCREMENT PRIMARY KEY);"
+                + "INSERT INTO test VALUES "
+                + "('LINESTRING (0 0, 1 2)', DEFAULT),"
+                + "('LINESTRING (1 2, 2 3, 4 3)', DEFAULT);");
+        st.execute("SELECT ST_Graph('TEST', 'road')");
+        // The first call creates the indexes
+        st.execute("SELECT ST_GraphUpdate('TEST', 1)");
+        // The next ones keep the transaction open
+        connection.setAutoCommit(false);
+        try {
+            st.execute("INSERT INTO test VALUES ('LINESTRING (4 3, 5 2)', DEFAULT)");
+            st.execute("SELECT ST_GraphUpdate('TEST', 3)");
+            connection.rollback();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM TEST_EDGES")) {
+            assertTrue(rs.next());
+            assertEquals(2, rs.getInt(1));
+        }
+        try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM TEST_NODES")) {
+            assertTrue(rs.next());
+            assertEquals(3, rs.getInt(1));
+        }
+        st.execute("CREATE TRIGGER TEST_GRAPH AFTER INSERT, UPDATE, DELETE ON TEST FOR EACH ROW CALL \""
+                + GraphUpdateTrigger.class.getName() + "\"");
+        try {
+            st.execute("INSERT INTO test VALUES ('LINESTRING (4 3, 5 2)', DEFAULT)");
+            st.execute("UPDATE test SET road = 'LINESTRING (0 0, 1 2.05)' WHERE id = 1");
+            st.execute("DELETE FROM test WHERE id = 2");
+        } finally {
+            st.execute("DROP TRIGGER TEST_GRAPH");
+        }
+        // The first call has replaced the node 1 (0 0) by the node 4, the
+        // update replaces it again by the node 6
+        ResultSet nodesResult = st.executeQuery("SELECT * FROM TEST_NODES ORDER BY NODE_ID");
+        checkNode(nodesResult, 3, "POINT (4 3)");
+        checkNode(nodesResult, 5, "POINT (5 2)");
+        checkNode(nodesResult, 6, "POINT (0 0)");
+        checkNode(nodesResult, 7, "POINT (1 2.05)");
+        assertFalse(nodesResult.next());
+        nodesResult.close();
+        ResultSet edgesResult = st.executeQuery("SELECT * FROM TEST_EDGES ORDER BY EDGE_ID");
+        // The rolled back insert has used the id 3
+        checkEdge(edgesResult, 1, 6, 7);
+        checkEdge(edgesResult, 4, 3, 5);
+        assertFalse(edgesResult.next());
+        edgesResult.close();
+    }
+
+    /**
+     * Keeps the graph of the TEST table up to date
+     */
+    public static class GraphUpdateTrigger implements Trigger {
+        @Override
+        public void fire(Connection connection, Object[] oldRow, Object[] newRow) throws SQLException {
+            Object id = newRow != null ? newRow[1] : oldRow[1];
+            ST_GraphUpdate.updateGraph(connection, "TEST", ValueInteger.get((Integer) id));
+        }
+    }
+
+    @Test
+    public void test_ST_GraphUpdate_ErrorWithoutGraph() {
+        assertThrows(JdbcSQLNonTransientException.class, () -> {
+            try {
+                st.execute("DROP TABLE IF EXISTS TEST; DROP TABLE IF EXISTS TEST_NODES; DROP TABLE IF EXISTS TEST_EDGES");
+                st.execute("CREATE TABLE test(road GEOMETRY(LINESTRING), id INT AUTO_INCREMENT PRIMARY KEY);"
+                        + "INSERT INTO test VALUES ('LINESTRING (0 0, 1 2)', DEFAULT);");
+                st.executeQuery("SELECT ST_GraphUpdate('TEST', 1)");
+            } catch (JdbcSQLNonTransientException e) {
+                assertTrue(e.getMessage().contains(ST_GraphUpdate.NOT_RUN_ERROR + "TEST"));
+                throw e;
+            }
+        });
+    }
+
+    @Test
+    public void test_ST_Graph_ParallelSnapping() {
+        // The tiles must give the same nodes as the sequential snapping
+        Random random = new Random(42);
+        int count = 4 * NodeSnapper.MIN_TILE_SIZE;
+        double[] x = new double[count];
+        double[] y = new double[count];
+        for (int i = 0; i < count; i++) {
+            x[i] = random.nextInt(1000) + random.nextDouble() * 0.1;
+            y[i] = random.nextInt(1000) + random.nextDouble() * 0.1;
+        }
+        for (double tolerance : new double[]{0, 0.01, 0.05}) {
+            NodeSnapper sequential = new NodeSnapper(x, y, null, tolerance).snap();
+            NodeSnapper parallel = new NodeSnapper(x, y, null, tolerance).snap(8);
+            assertEquals(sequential.getNodeCount(), parallel.getNodeCount());
+            for (int node = 0; node < sequential.getNodeCount(); node++) {
+                assertEquals(sequential.getNodePoint(node), parallel.getNodePoint(node));
+            }
+            for (int i = 0; i < count; i++) {
+                assertEquals(sequential.getPointNode(i), parallel.getPointNode(i));
+            }
+        }
+    }
+
 }
@@ -0,0 +1,122 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+
+package org.h2gis.network.functions;
+
+import org.h2gis.utilities.TableLocation;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Inserts rows into a table in large batches within a single transaction.
+ * The auto-commit mode of the connection is restored on close.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public final class BatchWriter implements AutoCloseable {
+
+    /**
+     * Number of rows sent to the database at once
+     */
+    public static final int BATCH_SIZE = 1000;
+
+    private final Connection connection;
+    private final PreparedStatement insert;
+    private final boolean previousAutoCommit;
+    private int count = 0;
+
+    /**
+     * @param connection  Connection
+     * @param table       Table
+     * @param columnCount Number of columns of the table
+     * @throws SQLException
+     */
+    public BatchWriter(Connection connection, TableLocation table, int columnCount) throws SQLException {
+        this.connection = connection;
+        final StringBuilder sb = new StringBuilder("INSERT INTO ").append(table).append(" VALUES(?");
+        for (int i = 1; i < columnCount; i++) {
+            sb.append(", ?");
+        }
+        insert = connection.prepareStatement(sb.append(")").toString());
+        previousAutoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+    }
+
+    /**
+     * @param column Column index, starting from 1
+     * @param value  Value of the current row
+     * @throws SQLException
+     */
+    public void setInt(int column, int value) throws SQLException {
+        insert.setInt(column, value);
+    }
+
+    /**
+     * @param column Column index, starting from 1
+     * @param value  Value of the current row
+     * @throws SQLException
+     */
+    public void setDouble(int column, double value) throws SQLException {
+        insert.setDouble(column, value);
+    }
+
+    /**
+     * Add the current row to the batch, and send the batch when it is full
+     *
+     * @throws SQLException
+     */
+    public void addRow() throws SQLException {
+        insert.addBatch();
+        if (++count == BATCH_SIZE) {
+            insert.executeBatch();
+            count = 0;
+        }
+    }
+
+    /**
+     * Send the last rows and commit them
+     *
+     * @throws SQLException
+     */
+    public void commit() throws SQLException {
+        if (count > 0) {
+            insert.executeBatch();
+            count = 0;
+        }
+        connection.commit();
+    }
+
+    /**
+     * Release the statement and restore the auto-commit mode
+     *
+     * @throws SQLException
+     */
+    @Override
+    public void close() throws SQLException {
+        try {
+            insert.close();
+        } finally {
+            connection.setAutoCommit(previousAutoCommit);
+        }
+    }
+}
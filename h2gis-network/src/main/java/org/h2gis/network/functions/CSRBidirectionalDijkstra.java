@@ -0,0 +1,118 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+
+package org.h2gis.network.functions;
+
+/**
+ * Bidirectional Dijkstra search on a {@link CSRGraph}: a forward search from
+ * the source and a backward search from the target on the reversed graph are
+ * run alternately, the side with the smallest next distance moving first.
+ *
+ * <p>Each time a vertex is settled, its arcs leading to a vertex reached by
+ * the other side give a candidate path. The search stops when the sum of the
+ * next distances of both sides is not smaller than the best candidate, which
+ * is then a shortest path. On road networks both balls are much smaller than
+ * the ball of a one way search.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public final class CSRBidirectionalDijkstra {
+
+    private final CSRGraph graph;
+    private final CSRGraph reversed;
+    private final CSRDijkstra forward;
+    private final CSRDijkstra backward;
+    // Best path found so far
+    private double best;
+    private int forwardVertex;
+    private int backwardVertex;
+    private int edgeId;
+    private double edgeWeight;
+
+    /**
+     * @param graph Graph
+     */
+    public CSRBidirectionalDijkstra(CSRGraph graph) {
+        this.graph = graph;
+        this.reversed = graph.getReverse();
+        this.forward = new CSRDijkstra(graph);
+        this.backward = new CSRDijkstra(reversed);
+    }
+
+    /**
+     * @param source Source vertex index
+     * @param target Target vertex index
+     * @return A shortest path, null if the target is not reachable
+     */
+    public CSRPath oneToOne(int source, int target) {
+        forward.init(source);
+        backward.init(target);
+        best = Double.POSITIVE_INFINITY;
+        forwardVertex = -1;
+        if (source == target) {
+            return CSRPath.fromSearch(forward, source);
+        }
+        while (!forward.isFinished() && !backward.isFinished()
+                && forward.getNextDistance() + backward.getNextDistance() < best) {
+            if (forward.getNextDistance() <= backward.getNextDistance()) {
+                final int v = forward.next();
+                meet(v, graph, forward, backward, true);
+            } else {
+                final int v = backward.next();
+                meet(v, reversed, backward, forward, false);
+            }
+        }
+        if (forwardVertex < 0) {
+            return null;
+        }
+        return CSRPath.join(forward, backward, forwardVertex, backwardVertex, edgeId, edgeWeight);
+    }
+
+    /**
+     * Update the best path with the arcs of a settled vertex leading to a
+     * vertex reached by the other side
+     */
+    private void meet(int v, CSRGraph sideGraph, CSRDijkstra side, CSRDijkstra other, boolean isForward) {
+        final double distance = side.getDistance(v);
+        final int end = sideGraph.getFirstArc(v + 1);
+        for (int arc = sideGraph.getFirstArc(v); arc < end; arc++) {
+            final int w = sideGraph.getTarget(arc);
+            if (!other.isReached(w)) {
+                continue;
+            }
+            final double candidate = distance + sideGraph.getWeight(arc) + other.getDistance(w);
+            if (candidate < best) {
+                best = candidate;
+                forwardVertex = isForward ? v : w;
+                backwardVertex = isForward ? w : v;
+                edgeId = sideGraph.getEdgeId(arc);
+                edgeWeight = sideGraph.getWeight(arc);
+            }
+        }
+    }
+
+    /**
+     * @return Number of vertices settled by both sides in the last search
+     */
+    public int getSettledCount() {
+        return forward.getSettledCount() + backward.getSettledCount();
+    }
+}
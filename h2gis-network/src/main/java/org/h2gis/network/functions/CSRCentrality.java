@@ -0,0 +1,478 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+
+package org.h2gis.network.functions;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Betweenness and closeness centrality of a {@link CSRGraph}, computed with
+ * Brandes' algorithm.
+ *
+ * <p>The sources are dealt round-robin to the workers of the common fork-join
+ * pool. Each worker accumulates the dependencies of its sources in its own
+ * arrays, which are summed in worker order at the end, so the result does not
+ * depend on the scheduling of the workers.
+ *
+ * <p>When a number of pivots smaller than the number of vertices is given, only
+ * the pivots are used as sources (Brandes and Pich, Centrality estimation in
+ * large networks, 2007). The betweenness is extrapolated from the pivots, and
+ * the closeness of a vertex is estimated from its distances to the pivots. The
+ * pivots are drawn with a fixed seed so a computation can be reproduced.
+ *
+ * <p>As in the java-network-analyzer, the betweenness values are normalized to
+ * [0, 1] and the closeness of a vertex that cannot reach every other vertex
+ * is zero.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public final class CSRCentrality {
+
+    /**
+     * Seed of the pivot selection
+     */
+    public static final long PIVOT_SEED = 42;
+
+    private final CSRGraph graph;
+    private final double[] nodeBetweenness;
+    private final double[] closeness;
+    private final int[] edgeIds;
+    private final double[] edgeBetweenness;
+
+    private CSRCentrality(CSRGraph graph, double[] nodeBetweenness, double[] closeness,
+                          int[] edgeIds, double[] edgeBetweenness) {
+        this.graph = graph;
+        this.nodeBetweenness = nodeBetweenness;
+        this.closeness = closeness;
+        this.edgeIds = edgeIds;
+        this.edgeBetweenness = edgeBetweenness;
+    }
+
+    /**
+     * Compute the exact centrality of every vertex and edge of the graph.
+     *
+     * @param graph    Graph
+     * @param weighted False to count the number of edges of the paths
+     * @return The centrality
+     * @throws SQLException If the computation is interrupted
+     */
+    public static CSRCentrality compute(CSRGraph graph, boolean weighted) throws SQLException {
+        return compute(graph, weighted, false, 0, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * Compute the centrality of every vertex and edge of the graph.
+     *
+     * @param graph       Graph
+     * @param weighted    False to count the number of edges of the paths
+     * @param undirected  True if every arc has a reverse arc of the same
+     *                    weight, the pivots distances then give the closeness
+     *                    without a search on the reversed graph
+     * @param pivots      Number of sources used to estimate the centrality, 0
+     *                    or at least the number of vertices for an exact
+     *                    computation
+     * @param parallelism Maximum number of concurrent workers, 1 to compute
+     *                    the centrality in the calling thread
+     * @return The centrality
+     * @throws SQLException If the computation is interrupted
+     */
+    public static CSRCentrality compute(CSRGraph graph, boolean weighted, boolean undirected,
+                                        int pivots, int parallelism) throws SQLException {
+        if (pivots < 0) {
+            throw new IllegalArgumentException("The number of pivots must be positive: " + pivots);
+        }
+        final int vertexCount = graph.getVertexCount();
+        final boolean exact = pivots == 0 || pivots >= vertexCount;
+        final int[] sources = exact ? identity(vertexCount) : samplePivots(vertexCount, pivots);
+        final int workerCount = Math.max(1, Math.min(parallelism, sources.length));
+        final List<Future<Brandes>> futures = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            final int first = i;
+            FutureTask<Brandes> task = new FutureTask<>(() -> {
+                Brandes brandes = new Brandes(graph, weighted, exact, undirected);
+                for (int s = first; s < sources.length; s += workerCount) {
+                    brandes.accumulate(sources[s]);
+                }
+                return brandes;
+            });
+            if (workerCount > 1) {
+                ForkJoinPool.commonPool().execute(task);
+            } else {
+                task.run();
+            }
+            futures.add(task);
+        }
+        final double[] nodeBetweenness = new double[vertexCount];
+        final double[] arcBetweenness = new double[graph.getArcCount()];
+        final double[] closeness = new double[vertexCount];
+        final double[] distanceSums = exact ? null : new double[vertexCount];
+        final int[] reachCounts = exact ? null : new int[vertexCount];
+        try {
+            for (Future<Brandes> future : futures) {
+                Brandes brandes = future.get();
+                add(nodeBetweenness, brandes.nodeBetweenness);
+                add(arcBetweenness, brandes.arcBetweenness);
+                if (exact) {
+                    add(closeness, brandes.closeness);
+                } else {
+                    add(distanceSums, brandes.distanceSums);
+                    for (int v = 0; v < vertexCount; v++) {
+                        reachCounts[v] += brandes.reachCounts[v];
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("The centrality computation has been interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new SQLException(ex.getCause());
+        } finally {
+            for (Future<Brandes> future : futures) {
+                future.cancel(true);
+            }
+        }
+        if (!exact) {
+            final boolean[] isPivot = new boolean[vertexCount];
+            for (int p : sources) {
+                isPivot[p] = true;
+            }
+            final double scale = (double) vertexCount / sources.length;
+            for (int v = 0; v < vertexCount; v++) {
+                nodeBetweenness[v] *= scale;
+                // Pivots other than v
+                final int others = isPivot[v] ? sources.length - 1 : sources.length;
+                closeness[v] = reachCounts[v] == others && distanceSums[v] > 0 ?
+                        others / distanceSums[v] : 0.0;
+            }
+            for (int arc = 0; arc < arcBetweenness.length; arc++) {
+                arcBetweenness[arc] *= scale;
+            }
+        }
+        normalize(nodeBetweenness);
+        return sumByEdge(graph, nodeBetweenness, closeness, arcBetweenness);
+    }
+
+    /**
+     * @param vertex Vertex index
+     * @return The normalized betweenness of the vertex
+     */
+    public double getBetweenness(int vertex) {
+        return nodeBetweenness[vertex];
+    }
+
+    /**
+     * @param vertex Vertex index
+     * @return The closeness of the vertex
+     */
+    public double getCloseness(int vertex) {
+        return closeness[vertex];
+    }
+
+    /**
+     * @return The graph
+     */
+    public CSRGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return Number of distinct edge ids
+     */
+    public int getEdgeCount() {
+        return edgeIds.length;
+    }
+
+    /**
+     * @param i Position in [0, {@link #getEdgeCount()}[
+     * @return The i-th edge id, edge ids are sorted
+     */
+    public int getEdgeId(int i) {
+        return edgeIds[i];
+    }
+
+    /**
+     * @param i Position in [0, {@link #getEdgeCount()}[
+     * @return The normalized betweenness of the i-th edge
+     */
+    public double getEdgeBetweenness(int i) {
+        return edgeBetweenness[i];
+    }
+
+    /**
+     * Sum the betweenness of the arcs sharing an edge id, the two arcs of an
+     * edge of an undirected graph.
+     */
+    private static CSRCentrality sumByEdge(CSRGraph graph, double[] nodeBetweenness, double[] closeness,
+                                           double[] arcBetweenness) {
+        final int arcCount = arcBetweenness.length;
+        final long[] keys = new long[arcCount];
+        for (int arc = 0; arc < arcCount; arc++) {
+            keys[arc] = ((long) graph.getEdgeId(arc) << 32) | arc;
+        }
+        Arrays.sort(keys);
+        int[] edgeIds = new int[arcCount];
+        double[] edgeBetweenness = new double[arcCount];
+        int edgeCount = 0;
+        for (int i = 0; i < arcCount; i++) {
+            final int edgeId = (int) (keys[i] >> 32);
+            final double value = arcBetweenness[(int) keys[i]];
+            if (edgeCount > 0 && edgeIds[edgeCount - 1] == edgeId) {
+                edgeBetweenness[edgeCount - 1] += value;
+            } else {
+                edgeIds[edgeCount] = edgeId;
+                edgeBetweenness[edgeCount++] = value;
+            }
+        }
+        edgeIds = Arrays.copyOf(edgeIds, edgeCount);
+        edgeBetweenness = Arrays.copyOf(edgeBetweenness, edgeCount);
+        normalize(edgeBetweenness);
+        return new CSRCentrality(graph, nodeBetweenness, closeness, edgeIds, edgeBetweenness);
+    }
+
+    /**
+     * Rescale the values to [0, 1], all the values are zero if they are equal
+     */
+    private static void normalize(double[] values) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (double value : values) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        final double range = max - min;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = range > 0 ? (values[i] - min) / range : 0.0;
+        }
+    }
+
+    private static void add(double[] sum, double[] values) {
+        for (int i = 0; i < sum.length; i++) {
+            sum[i] += values[i];
+        }
+    }
+
+    private static int[] identity(int n) {
+        final int[] values = new int[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = i;
+        }
+        return values;
+    }
+
+    /**
+     * @return k distinct vertex indices drawn uniformly, in increasing order
+     */
+    private static int[] samplePivots(int n, int k) {
+        final int[] values = identity(n);
+        final Random random = new Random(PIVOT_SEED);
+        for (int i = 0; i < k; i++) {
+            final int j = i + random.nextInt(n - i);
+            final int tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+        final int[] pivots = Arrays.copyOf(values, k);
+        Arrays.sort(pivots);
+        return pivots;
+    }
+
+    /**
+     * Single source shortest paths and dependency accumulation of one worker.
+     */
+    private static final class Brandes {
+
+        private final CSRGraph graph;
+        private final boolean weighted;
+        private final boolean exact;
+        private final boolean undirected;
+        private final IntDoubleHeap heap;
+        private final double[] distances;
+        // Number of shortest paths from the source
+        private final double[] sigma;
+        // Dependency of the source on a vertex, with and without the
+        // parallel arcs as in the java-network-analyzer
+        private final double[] delta;
+        private final double[] arcDelta;
+        // Vertices reached from the source, by increasing distance
+        private final int[] order;
+        private int count = 0;
+        // The successors of the vertex being accumulated are marked
+        private final int[] marks;
+        private int mark = 0;
+        private final double[] nodeBetweenness;
+        private final double[] arcBetweenness;
+        private final double[] closeness;
+        private final double[] distanceSums;
+        private final int[] reachCounts;
+        private final CSRDijkstra reverseSearch;
+
+        Brandes(CSRGraph graph, boolean weighted, boolean exact, boolean undirected) {
+            this.graph = graph;
+            this.weighted = weighted;
+            this.exact = exact;
+            this.undirected = undirected;
+            final int n = graph.getVertexCount();
+            heap = weighted ? new IntDoubleHeap(n) : null;
+            distances = new double[n];
+            Arrays.fill(distances, Double.POSITIVE_INFINITY);
+            sigma = new double[n];
+            delta = new double[n];
+            arcDelta = new double[n];
+            order = new int[n];
+            marks = new int[n];
+            nodeBetweenness = new double[n];
+            arcBetweenness = new double[graph.getArcCount()];
+            closeness = exact ? new double[n] : null;
+            distanceSums = exact ? null : new double[n];
+            reachCounts = exact ? null : new int[n];
+            reverseSearch = exact || undirected ? null : new CSRDijkstra(graph.getReverse());
+        }
+
+        void accumulate(int source) {
+            if (weighted) {
+                dijkstra(source);
+            } else {
+                breadthFirst(source);
+            }
+            for (int i = count - 1; i >= 0; i--) {
+                final int v = order[i];
+                final double distance = distances[v];
+                final int end = graph.getFirstArc(v + 1);
+                nextMark();
+                for (int arc = graph.getFirstArc(v); arc < end; arc++) {
+                    final int w = graph.getTarget(arc);
+                    if (distances[w] < Double.POSITIVE_INFINITY
+                            && distances[w] == distance + weight(arc)) {
+                        final double ratio = sigma[v] / sigma[w];
+                        final double c = ratio * (1 + arcDelta[w]);
+                        arcBetweenness[arc] += c;
+                        arcDelta[v] += c;
+                        // Parallel arcs count once in the dependency of v
+                        if (marks[w] != mark) {
+                            marks[w] = mark;
+                            delta[v] += ratio * (1 + delta[w]);
+                        }
+                    }
+                }
+                if (v != source) {
+                    nodeBetweenness[v] += delta[v];
+                }
+            }
+            if (exact) {
+                double sum = 0;
+                for (int i = 0; i < count; i++) {
+                    sum += distances[order[i]];
+                }
+                closeness[source] = count == graph.getVertexCount() && sum > 0 ?
+                        (count - 1) / sum : 0.0;
+            } else if (undirected) {
+                for (int i = 1; i < count; i++) {
+                    distanceSums[order[i]] += distances[order[i]];
+                    reachCounts[order[i]]++;
+                }
+            } else {
+                reverseSearch.calculate(source);
+                for (int i = 0; i < reverseSearch.getSettledCount(); i++) {
+                    final int v = reverseSearch.getSettledVertex(i);
+                    if (v != source) {
+                        distanceSums[v] += reverseSearch.getDistance(v);
+                        reachCounts[v]++;
+                    }
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                final int v = order[i];
+                distances[v] = Double.POSITIVE_INFINITY;
+                sigma[v] = 0;
+                delta[v] = 0;
+                arcDelta[v] = 0;
+            }
+            count = 0;
+        }
+
+        private void nextMark() {
+            if (mark == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                mark = 0;
+            }
+            mark++;
+        }
+
+        private double weight(int arc) {
+            return weighted ? graph.getWeight(arc) : 1.0;
+        }
+
+        private void dijkstra(int source) {
+            distances[source] = 0;
+            sigma[source] = 1;
+            heap.insertOrDecrease(source, 0);
+            while (!heap.isEmpty()) {
+                final int v = heap.poll();
+                order[count++] = v;
+                final double distance = distances[v];
+                final int end = graph.getFirstArc(v + 1);
+                for (int arc = graph.getFirstArc(v); arc < end; arc++) {
+                    final int w = graph.getTarget(arc);
+                    final double candidate = distance + graph.getWeight(arc);
+                    if (candidate < distances[w]) {
+                        distances[w] = candidate;
+                        sigma[w] = sigma[v];
+                        heap.insertOrDecrease(w, candidate);
+                    } else if (candidate == distances[w] && candidate < Double.POSITIVE_INFINITY) {
+                        sigma[w] += sigma[v];
+                    }
+                }
+            }
+        }
+
+        private void breadthFirst(int source) {
+            distances[source] = 0;
+            sigma[source] = 1;
+            order[count++] = source;
+            for (int head = 0; head < count; head++) {
+                final int v = order[head];
+                final double distance = distances[v] + 1.0;
+                final int end = graph.getFirstArc(v + 1);
+                for (int arc = graph.getFirstArc(v); arc < end; arc++) {
+                    final int w = graph.getTarget(arc);
+                    if (distances[w] == Double.POSITIVE_INFINITY) {
+                        distances[w] = distance;
+                        order[count++] = w;
+                    }
+                    if (distances[w] == distance) {
+                        sigma[w] += sigma[v];
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import java.util.Arrays;
+
+/**
+ * Dijkstra shortest path search on a {@link CSRGraph}.
+ *
+ * <p>The search state is kept in primitive arrays stamped with the number of
+ * the current run, so starting a new search costs nothing whatever the size of
+ * the graph. An instance is not thread safe, but any number of instances can
+ * share the same graph.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public final class CSRDijkstra {
+
+    private final CSRGraph graph;
+    private final IntDoubleHeap heap;
+    private final double[] distances;
+    private final int[] predecessorArcs;
+    private final int[] predecessors;
+    // A vertex is reached (resp. settled, a target) in the current run if its
+    // stamp equals run
+    private final int[] reached;
+    private final int[] settled;
+    private final int[] targets;
+    // Vertices settled by the current run, in the order of their distance
+    private final int[] settledOrder;
+    private int run = 0;
+    private int settledCount = 0;
+
+    /**
+     * @param graph Graph
+     */
+    public CSRDijkstra(CSRGraph graph) {
+        this.graph = graph;
+        int vertexCount = graph.getVertexCount();
+        heap = new IntDoubleHeap(vertexCount);
+        distances = new double[vertexCount];
+        predecessorArcs = new int[vertexCount];
+        predecessors = new int[vertexCount];
+        reached = new int[vertexCount];
+        settled = new int[vertexCount];
+        targets = new int[vertexCount];
+        settledOrder = new int[vertexCount];
+    }
+
+    /**
+     * @return The graph
+     */
+    public CSRGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Settle every vertex reachable from the source.
+     *
+     * @param source Source vertex index
+     */
+    public void calculate(int source) {
+        calculate(source, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Settle the vertices whose distance to the source is not greater than the
+     * radius.
+     *
+     * @param source Source vertex index
+     * @param radius Maximum distance
+     */
+    public void calculate(int source, double radius) {
+        init(source);
+        while (!heap.isEmpty() && heap.peekKey() <= radius) {
+            relax(settle());
+        }
+    }
+
+    /**
+     * Run the search until all the targets are settled.
+     *
+     * @param source  Source vertex index
+     * @param targets Target vertex indices
+     */
+    public void calculate(int source, int[] targets) {
+        init(source);
+        int remaining = 0;
+        for (int target : targets) {
+            if (this.targets[target] != run) {
+                this.targets[target] = run;
+                remaining++;
+            }
+        }
+        while (remaining > 0 && !heap.isEmpty()) {
+            int v = settle();
+            if (this.targets[v] == run) {
+                remaining--;
+            }
+            relax(v);
+        }
+    }
+
+    /**
+     * @param source Source vertex index
+     * @param target Target vertex index
+     * @return The distance between the two vertices, infinity if the target
+     * is not reachable
+     */
+    public double oneToOne(int source, int target) {
+        init(source);
+        while (!heap.isEmpty()) {
+            int v = settle();
+            if (v == target) {
+                break;
+            }
+            relax(v);
+        }
+        return getDistance(target);
+    }
+
+    /**
+     * A* search between two vertices. The heuristic must be consistent, the
+     * returned distance is then the same as {@link #oneToOne(int, int)} but
+     * fewer vertices are settled.
+     *
+     * @param source    Source vertex index
+     * @param target    Target vertex index
+     * @param heuristic Lower bound of the distance to the target
+     * @return The distance between the two vertices, infinity if the target
+     * is not reachable
+     */
+    public double aStar(int source, int target, EuclideanHeuristic heuristic) {
+        init(source);
+        heap.clear();
+        heap.insertOrDecrease(source, heuristic.estimate(source, target));
+        while (!heap.isEmpty()) {
+            final int v = settle();
+            if (v == target) {
+                break;
+            }
+            final double distance = distances[v];
+            final int end = graph.getFirstArc(v + 1);
+            for (int arc = graph.getFirstArc(v); arc < end; arc++) {
+                final int w = graph.getTarget(arc);
+                if (settled[w] == run) {
+                    continue;
+                }
+                final double candidate = distance + graph.getWeight(arc);
+                if (candidate < Double.POSITIVE_INFINITY && (reached[w] != run || candidate < distances[w])) {
+                    reached[w] = run;
+                    distances[w] = candidate;
+                    predecessorArcs[w] = arc;
+                    predecessors[w] = v;
+                    heap.insertOrDecrease(w, candidate + heuristic.estimate(w, target));
+                }
+            }
+        }
+        return getDistance(target);
+    }
+
+    /**
+     * Start a new search from the source. The search is then run step by step
+     * with {@link #next()}.
+     *
+     * @param source Source vertex index
+     */
+    public void init(int source) {
+        heap.clear();
+        if (run == Integer.MAX_VALUE) {
+            Arrays.fill(reached, 0);
+            Arrays.fill(settled, 0);
+            Arrays.fill(targets, 0);
+            run = 0;
+        }
+        run++;
+        settledCount = 0;
+        reached[source] = run;
+        distances[source] = 0;
+        predecessorArcs[source] = -1;
+        predecessors[source] = -1;
+        heap.insertOrDecrease(source, 0);
+    }
+
+    /**
+     * @return True if no vertex is left to settle
+     */
+    public boolean isFinished() {
+        return heap.isEmpty();
+    }
+
+    /**
+     * @return The distance of the next vertex to settle
+     */
+    public double getNextDistance() {
+        return heap.isEmpty() ? Double.POSITIVE_INFINITY : heap.peekKey();
+    }
+
+    /**
+     * Settle the closest vertex and relax its arcs
+     *
+     * @return The settled vertex index
+     */
+    public int next() {
+        final int v = settle();
+        relax(v);
+        return v;
+    }
+
+    /**
+     * @param vertex Vertex index
+     * @return True if a distance has been found for the vertex
+     */
+    public boolean isReached(int vertex) {
+        return reached[vertex] == run;
+    }
+
+    /**
+     * @param vertex Vertex index
+     * @return The distance found by the last search, infinity if the vertex
+     * was not reached
+     */
+    public double getDistance(int vertex) {
+        return reached[vertex] == run ? distances[vertex] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @param vertex Vertex index
+     * @return True if the distance of the vertex is final
+     */
+    public boolean isSettled(int vertex) {
+        return settled[vertex] == run;
+    }
+
+    /**
+     * @param vertex Vertex index
+     * @return The arc used to reach the vertex, -1 for the source or a vertex
+     * that was not reached
+     */
+    public int getPredecessorArc(int vertex) {
+        return reached[vertex] == run ? predecessorArcs[vertex] : -1;
+    }
+
+    /**
+     * @param vertex Vertex index
+     * @return The vertex the predecessor arc leaves from, -1 for the source
+     * or a vertex that was not reached
+     */
+    public int getPredecessor(int vertex) {
+        return reached[vertex] == run ? predecessors[vertex] : -1;
+    }
+
+    /**
+     * @param i Position in [0, {@link #getSettledCount()}[
+     * @return The i-th vertex settled by the last search, vertices are
+     * settled by increasing distance
+     */
+    public int getSettledVertex(int i) {
+        return settledOrder[i];
+    }
+
+    /**
+     * @return Number of vertices settled by the last search
+     */
+    public int getSettledCount() {
+        return settledCount;
+    }
+
+    private int settle() {
+        int v = heap.poll();
+        settled[v] = run;
+        settledOrder[settledCount++] = v;
+        return v;
+    }
+
+    private void relax(int v) {
+        final double distance = distances[v];
+        final int end = graph.getFirstArc(v + 1);
+        for (int arc = graph.getFirstArc(v); arc < end; arc++) {
+            final int w = graph.getTarget(arc);
+            if (settled[w] == run) {
+                continue;
+            }
+            final double candidate = distance + graph.getWeight(arc);
+            if (reached[w] != run || candidate < distances[w]) {
+                if (candidate == Double.POSITIVE_INFINITY) {
+                    continue;
+                }
+                reached[w] = run;
+                distances[w] = candidate;
+                predecessorArcs[w] = arc;
+                predecessors[w] = v;
+                heap.insertOrDecrease(w, candidate);
+            }
+        }
+    }
+}
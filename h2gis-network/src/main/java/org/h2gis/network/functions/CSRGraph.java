@@ -0,0 +1,381 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import org.h2gis.utilities.TableUtilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import static org.h2gis.network.functions.GraphConstants.*;
+import static org.h2gis.network.functions.GraphCreator.DIRECTED_EDGE;
+import static org.h2gis.network.functions.GraphCreator.REVERSED_EDGE;
+import static org.h2gis.network.functions.GraphCreator.UNDIRECTED_EDGE;
+import static org.h2gis.network.functions.GraphFunction.logTime;
+
+/**
+ * Read only directed graph stored in compressed sparse row arrays.
+ *
+ * <p>Vertices are numbered from 0 to {@link #getVertexCount()} - 1 in the
+ * order of their ids. The arcs leaving vertex {@code v} are the indices
+ * {@code getFirstArc(v)} (inclusive) to {@code getFirstArc(v + 1)} (exclusive)
+ * of the target, weight and edge id arrays. An edge costs 16 bytes, so much
+ * larger networks fit in memory than with the JGraphT graphs of
+ * {@link GraphCreator}.
+ *
+ * <p>Edge orientations follow {@link GraphCreator}: an undirected edge of a
+ * directed graph is stored as two arcs with opposite edge ids, and every edge
+ * of an undirected graph is stored in both directions with the same id.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public final class CSRGraph {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("gui." + CSRGraph.class);
+
+    private final int[] vertexIds;
+    private final int[] firstArc;
+    private final int[] targets;
+    private final double[] weights;
+    private final int[] edgeIds;
+    private volatile CSRGraph reversed;
+
+    private CSRGraph(int[] vertexIds, int[] firstArc, int[] targets, double[] weights, int[] edgeIds) {
+        this.vertexIds = vertexIds;
+        this.firstArc = firstArc;
+        this.targets = targets;
+        this.weights = weights;
+        this.edgeIds = edgeIds;
+    }
+
+    /**
+     * @return Number of vertices
+     */
+    public int getVertexCount() {
+        return vertexIds.length;
+    }
+
+    /**
+     * @return Number of arcs
+     */
+    public int getArcCount() {
+        return targets.length;
+    }
+
+    /**
+     * @param id Vertex id
+     * @return Index of the vertex, -1 if the graph does not contain it
+     */
+    public int getVertexIndex(int id) {
+        int index = Arrays.binarySearch(vertexIds, id);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * @param id Vertex id
+     * @return Index of the vertex
+     * @throws IllegalArgumentException if the graph does not contain the vertex
+     */
+    public int checkVertex(int id) {
+        int index = getVertexIndex(id);
+        if (index < 0) {
+            throw new IllegalArgumentException("The graph does not contain vertex " + id);
+        }
+        return index;
+    }
+
+    /**
+     * @param vertex Vertex index
+     * @return Vertex id
+     */
+    public int getVertexId(int vertex) {
+        return vertexIds[vertex];
+    }
+
+    /**
+     * @param vertex Vertex index, or the vertex count to get the end of the
+     *               last vertex arcs
+     * @return Index of the first arc leaving the vertex
+     */
+    public int getFirstArc(int vertex) {
+        return firstArc[vertex];
+    }
+
+    /**
+     * @param arc Arc index
+     * @return Target vertex index of the arc
+     */
+    public int getTarget(int arc) {
+        return targets[arc];
+    }
+
+    /**
+     * @param arc Arc index
+     * @return Weight of the arc
+     */
+    public double getWeight(int arc) {
+        return weights[arc];
+    }
+
+    /**
+     * @param arc Arc index
+     * @return Id of the edge the arc was built from
+     */
+    public int getEdgeId(int arc) {
+        return edgeIds[arc];
+    }
+
+    /**
+     * @return The graph with every arc reversed
+     */
+    public CSRGraph reverse() {
+        Builder builder = new Builder(targets.length);
+        int vertexCount = vertexIds.length;
+        for (int v = 0; v < vertexCount; v++) {
+            for (int arc = firstArc[v]; arc < firstArc[v + 1]; arc++) {
+                builder.addArc(vertexIds[targets[arc]], vertexIds[v], edgeIds[arc], weights[arc]);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return The reversed graph, built on the first call then shared. Both
+     * graphs have the same vertex indices.
+     */
+    public CSRGraph getReverse() {
+        CSRGraph graph = reversed;
+        if (graph == null) {
+            synchronized (this) {
+                graph = reversed;
+                if (graph == null) {
+                    graph = reverse();
+                    graph.reversed = this;
+                    reversed = graph;
+                }
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Load the graph of an edges table produced by ST_Graph.
+     *
+     * @param connection                Connection
+     * @param inputTable                Edges table
+     * @param globalOrientation         Global orientation
+     * @param edgeOrientationColumnName Edge orientation column name
+     * @param weightColumn              Weight column name, null for unweighted graphs
+     * @return The graph
+     * @throws SQLException
+     */
+    public static CSRGraph load(Connection connection,
+                                String inputTable,
+                                GraphFunctionParser.Orientation globalOrientation,
+                                String edgeOrientationColumnName,
+                                String weightColumn) throws SQLException {
+        LOGGER.info("Loading graph into memory...");
+        final long start = System.currentTimeMillis();
+        final boolean undirected = globalOrientation.equals(GraphFunctionParser.Orientation.UNDIRECTED);
+        final boolean reversed = globalOrientation.equals(GraphFunctionParser.Orientation.REVERSED);
+        try (Statement st = connection.createStatement();
+             ResultSet edges = st.executeQuery("SELECT * FROM " +
+                     TableUtilities.parseInputTable(connection, inputTable))) {
+            int startNodeIndex = -1;
+            int endNodeIndex = -1;
+            int edgeIDIndex = -1;
+            int edgeOrientationIndex = -1;
+            int weightColumnIndex = -1;
+            ResultSetMetaData metaData = edges.getMetaData();
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                final String columnName = metaData.getColumnName(i);
+                if (columnName.equalsIgnoreCase(START_NODE)) startNodeIndex = i;
+                if (columnName.equalsIgnoreCase(END_NODE)) endNodeIndex = i;
+                if (columnName.equalsIgnoreCase(EDGE_ID)) edgeIDIndex = i;
+                if (columnName.equalsIgnoreCase(edgeOrientationColumnName)) edgeOrientationIndex = i;
+                if (columnName.equalsIgnoreCase(weightColumn)) weightColumnIndex = i;
+            }
+            verifyIndex(startNodeIndex, START_NODE);
+            verifyIndex(endNodeIndex, END_NODE);
+            verifyIndex(edgeIDIndex, EDGE_ID);
+            if (!undirected) {
+                verifyIndex(edgeOrientationIndex, edgeOrientationColumnName);
+            }
+            if (weightColumn != null) {
+                verifyIndex(weightColumnIndex, weightColumn);
+            }
+            Builder builder = new Builder(1024);
+            while (edges.next()) {
+                final int startNode = edges.getInt(startNodeIndex);
+                final int endNode = edges.getInt(endNodeIndex);
+                final int edgeID = edges.getInt(edgeIDIndex);
+                final double weight = weightColumnIndex == -1 ? 1.0 : edges.getDouble(weightColumnIndex);
+                if (undirected) {
+                    builder.addArc(startNode, endNode, edgeID, weight);
+                    builder.addArc(endNode, startNode, edgeID, weight);
+                    continue;
+                }
+                final int edgeOrientation = edges.getInt(edgeOrientationIndex);
+                if (edges.wasNull()) {
+                    throw new IllegalArgumentException("Invalid edge orientation: NULL.");
+                }
+                if (edgeOrientation == UNDIRECTED_EDGE) {
+                    if (reversed) {
+                        builder.addArc(endNode, startNode, edgeID, weight);
+                        builder.addArc(startNode, endNode, -edgeID, weight);
+                    } else {
+                        builder.addArc(startNode, endNode, edgeID, weight);
+                        builder.addArc(endNode, startNode, -edgeID, weight);
+                    }
+                } else if (edgeOrientation == DIRECTED_EDGE) {
+                    if (reversed) {
+                        builder.addArc(endNode, startNode, edgeID, weight);
+                    } else {
+                        builder.addArc(startNode, endNode, edgeID, weight);
+                    }
+                } else if (edgeOrientation == REVERSED_EDGE) {
+                    if (reversed) {
+                        builder.addArc(startNode, endNode, edgeID, weight);
+                    } else {
+                        builder.addArc(endNode, startNode, edgeID, weight);
+                    }
+                } else {
+                    throw new IllegalArgumentException("Invalid edge orientation: " + edgeOrientation);
+                }
+            }
+            CSRGraph graph = builder.build();
+            logTime(LOGGER, start);
+            return graph;
+        }
+    }
+
+    private static void verifyIndex(int index, String missingField) {
+        if (index == -1) {
+            throw new IndexOutOfBoundsException("Column \"" + missingField + "\" not found.");
+        }
+    }
+
+    /**
+     * Accumulates arcs in growable arrays then sorts them by source vertex.
+     */
+    public static final class Builder {
+        private int[] sources;
+        private int[] targets;
+        private int[] edgeIds;
+        private double[] weights;
+        private int size = 0;
+        private int[] vertices = new int[0];
+        private int vertexSize = 0;
+
+        /**
+         * @param capacity Initial number of arcs
+         */
+        public Builder(int capacity) {
+            capacity = Math.max(capacity, 16);
+            sources = new int[capacity];
+            targets = new int[capacity];
+            edgeIds = new int[capacity];
+            weights = new double[capacity];
+        }
+
+        /**
+         * Add an arc between two vertex ids
+         *
+         * @param source Source vertex id
+         * @param target Target vertex id
+         * @param edgeId Edge id
+         * @param weight Weight
+         */
+        public void addArc(int source, int target, int edgeId, double weight) {
+            if (size == sources.length) {
+                int capacity = sources.length + (sources.length >> 1);
+                sources = Arrays.copyOf(sources, capacity);
+                targets = Arrays.copyOf(targets, capacity);
+                edgeIds = Arrays.copyOf(edgeIds, capacity);
+                weights = Arrays.copyOf(weights, capacity);
+            }
+            sources[size] = source;
+            targets[size] = target;
+            edgeIds[size] = edgeId;
+            weights[size] = weight;
+            size++;
+        }
+
+        /**
+         * Add a vertex, so that graphs built with the same vertices have
+         * the same vertex indices whatever their arcs
+         *
+         * @param id Vertex id
+         */
+        public void addVertex(int id) {
+            if (vertexSize == vertices.length) {
+                vertices = Arrays.copyOf(vertices, Math.max(16, vertices.length + (vertices.length >> 1)));
+            }
+            vertices[vertexSize++] = id;
+        }
+
+        /**
+         * @return The graph
+         */
+        public CSRGraph build() {
+            // Sorted distinct vertex ids
+            int[] ids = new int[size * 2 + vertexSize];
+            System.arraycopy(sources, 0, ids, 0, size);
+            System.arraycopy(targets, 0, ids, size, size);
+            System.arraycopy(vertices, 0, ids, size * 2, vertexSize);
+            Arrays.sort(ids);
+            int vertexCount = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (i == 0 || ids[i] != ids[i - 1]) {
+                    ids[vertexCount++] = ids[i];
+                }
+            }
+            ids = Arrays.copyOf(ids, vertexCount);
+            // Counting sort of the arcs on their source
+            int[] firstArc = new int[vertexCount + 1];
+            int[] sourceIndex = new int[size];
+            for (int i = 0; i < size; i++) {
+                sourceIndex[i] = Arrays.binarySearch(ids, sources[i]);
+                firstArc[sourceIndex[i] + 1]++;
+            }
+            for (int v = 0; v < vertexCount; v++) {
+                firstArc[v + 1] += firstArc[v];
+            }
+            int[] next = Arrays.copyOf(firstArc, vertexCount);
+            int[] csrTargets = new int[size];
+            int[] csrEdgeIds = new int[size];
+            double[] csrWeights = new double[size];
+            for (int i = 0; i < size; i++) {
+                int arc = next[sourceIndex[i]]++;
+                csrTargets[arc] = Arrays.binarySearch(ids, targets[i]);
+                csrEdgeIds[arc] = edgeIds[i];
+                csrWeights[arc] = weights[i];
+            }
+            return new CSRGraph(ids, firstArc, csrTargets, csrWeights, csrEdgeIds);
+        }
+    }
+}
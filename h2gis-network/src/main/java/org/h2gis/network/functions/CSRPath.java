@@ -0,0 +1,179 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+
+package org.h2gis.network.functions;
+
+/**
+ * A path found in a {@link CSRGraph}, as a list of arcs in travel order.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public final class CSRPath {
+
+    private final int[] sources;
+    private final int[] targets;
+    private final int[] edgeIds;
+    private final double[] weights;
+    private final int settledCount;
+    private int size = 0;
+
+    private CSRPath(int capacity, int settledCount) {
+        sources = new int[capacity];
+        targets = new int[capacity];
+        edgeIds = new int[capacity];
+        weights = new double[capacity];
+        this.settledCount = settledCount;
+    }
+
+    /**
+     * Rebuild the path to the target from the predecessors of the last search
+     *
+     * @param search Search
+     * @param target Target vertex index
+     * @return The path, null if the target was not reached
+     */
+    public static CSRPath fromSearch(CSRDijkstra search, int target) {
+        if (!search.isReached(target)) {
+            return null;
+        }
+        int count = 0;
+        for (int v = target; search.getPredecessor(v) >= 0; v = search.getPredecessor(v)) {
+            count++;
+        }
+        CSRPath path = new CSRPath(count, search.getSettledCount());
+        path.size = count;
+        final CSRGraph graph = search.getGraph();
+        int i = count;
+        for (int v = target; search.getPredecessor(v) >= 0; v = search.getPredecessor(v)) {
+            i--;
+            path.set(i, search.getPredecessor(v), v, graph, search.getPredecessorArc(v));
+        }
+        return path;
+    }
+
+    /**
+     * Join the paths of a bidirectional search. The backward search runs on
+     * the reversed graph, so its predecessor arcs are walked from the meeting
+     * vertex to the target.
+     *
+     * @param forward       Forward search
+     * @param backward      Backward search
+     * @param forwardVertex Last vertex of the forward path
+     * @param backwardVertex First vertex of the backward path
+     * @param edgeId        Id of the edge between the two vertices
+     * @param weight        Weight of the edge between the two vertices
+     * @return The path
+     */
+    static CSRPath join(CSRDijkstra forward, CSRDijkstra backward,
+                        int forwardVertex, int backwardVertex, int edgeId, double weight) {
+        CSRPath head = fromSearch(forward, forwardVertex);
+        int tailCount = 0;
+        for (int v = backwardVertex; backward.getPredecessor(v) >= 0; v = backward.getPredecessor(v)) {
+            tailCount++;
+        }
+        CSRPath path = new CSRPath(head.size + 1 + tailCount,
+                forward.getSettledCount() + backward.getSettledCount());
+        System.arraycopy(head.sources, 0, path.sources, 0, head.size);
+        System.arraycopy(head.targets, 0, path.targets, 0, head.size);
+        System.arraycopy(head.edgeIds, 0, path.edgeIds, 0, head.size);
+        System.arraycopy(head.weights, 0, path.weights, 0, head.size);
+        path.size = head.size;
+        path.add(forwardVertex, backwardVertex, edgeId, weight);
+        final CSRGraph reversed = backward.getGraph();
+        for (int v = backwardVertex; backward.getPredecessor(v) >= 0; v = backward.getPredecessor(v)) {
+            final int arc = backward.getPredecessorArc(v);
+            path.add(v, backward.getPredecessor(v), reversed.getEdgeId(arc), reversed.getWeight(arc));
+        }
+        return path;
+    }
+
+    private void set(int i, int source, int target, CSRGraph graph, int arc) {
+        sources[i] = source;
+        targets[i] = target;
+        edgeIds[i] = graph.getEdgeId(arc);
+        weights[i] = graph.getWeight(arc);
+    }
+
+    private void add(int source, int target, int edgeId, double weight) {
+        sources[size] = source;
+        targets[size] = target;
+        edgeIds[size] = edgeId;
+        weights[size] = weight;
+        size++;
+    }
+
+    /**
+     * @return Number of arcs of the path
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i Arc position in the path
+     * @return Source vertex index of the arc
+     */
+    public int getSource(int i) {
+        return sources[i];
+    }
+
+    /**
+     * @param i Arc position in the path
+     * @return Target vertex index of the arc
+     */
+    public int getTarget(int i) {
+        return targets[i];
+    }
+
+    /**
+     * @param i Arc position in the path
+     * @return Edge id of the arc
+     */
+    public int getEdgeId(int i) {
+        return edgeIds[i];
+    }
+
+    /**
+     * @param i Arc position in the path
+     * @return Weight of the arc
+     */
+    public double getWeight(int i) {
+        return weights[i];
+    }
+
+    /**
+     * @return Sum of the weights of the path
+     */
+    public double getLength() {
+        double length = 0;
+        for (int i = 0; i < size; i++) {
+            length += weights[i];
+        }
+        return length;
+    }
+
+    /**
+     * @return Number of vertices settled by the search that found the path
+     */
+    public int getSettledCount() {
+        return settledCount;
+    }
+}
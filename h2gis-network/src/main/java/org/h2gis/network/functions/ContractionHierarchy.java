@@ -0,0 +1,543 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+
+package org.h2gis.network.functions;
+
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.TableUtilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.h2gis.network.functions.GraphConstants.*;
+import static org.h2gis.network.functions.GraphFunction.logTime;
+
+/**
+ * Contraction hierarchy of a {@link CSRGraph}, answering point to point
+ * shortest path length queries by two small Dijkstra searches.
+ *
+ * <p>Vertices are contracted one by one, least important first: a shortcut
+ * replaces each shortest path going through the contracted vertex unless a
+ * witness path avoiding it is found. The importance of a vertex is the number
+ * of shortcuts its contraction adds minus the number of its arcs, plus the
+ * number of its contracted neighbours and its depth in the hierarchy so that
+ * the contraction spreads over the graph.
+ *
+ * <p>A query runs a forward search from the source on the upward arcs and a
+ * backward search from the target on the reversed downward arcs, both only
+ * going to more important vertices. The hierarchy is read only and may be
+ * queried by several threads.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public final class ContractionHierarchy {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("gui." + ContractionHierarchy.class);
+
+    /**
+     * Maximum number of vertices settled by a witness search. A witness
+     * search stopped early only adds a useless shortcut.
+     */
+    public static final int WITNESS_SETTLED_LIMIT = 500;
+
+    /**
+     * Maximum number of vertices settled by a witness search when the
+     * priority of a vertex is estimated
+     */
+    public static final int ESTIMATE_SETTLED_LIMIT = 50;
+
+    private static final int BATCH_SIZE = 1000;
+
+    // Arcs to more important vertices
+    private final CSRGraph upward;
+    // Arcs from more important vertices, reversed
+    private final CSRGraph downward;
+    private final ConcurrentLinkedQueue<CSRDijkstra[]> searches = new ConcurrentLinkedQueue<>();
+
+    private ContractionHierarchy(CSRGraph upward, CSRGraph downward) {
+        this.upward = upward;
+        this.downward = downward;
+    }
+
+    /**
+     * @return Number of arcs, shortcuts included
+     */
+    public long getArcCount() {
+        return (long) upward.getArcCount() + downward.getArcCount();
+    }
+
+    /**
+     * @return Number of vertices
+     */
+    public int getVertexCount() {
+        return upward.getVertexCount();
+    }
+
+    /**
+     * @param source      Source vertex id
+     * @param destination Destination vertex id
+     * @return The shortest path length, infinity if the destination is not
+     * reachable
+     * @throws IllegalArgumentException if the graph does not contain a vertex
+     */
+    public double distance(int source, int destination) {
+        final int s = upward.checkVertex(source);
+        final int t = upward.checkVertex(destination);
+        CSRDijkstra[] search = searches.poll();
+        if (search == null) {
+            search = new CSRDijkstra[]{new CSRDijkstra(upward), new CSRDijkstra(downward)};
+        }
+        try {
+            return distance(search[0], search[1], s, t);
+        } finally {
+            searches.add(search);
+        }
+    }
+
+    private static double distance(CSRDijkstra forward, CSRDijkstra backward, int s, int t) {
+        forward.init(s);
+        backward.init(t);
+        double best = Double.POSITIVE_INFINITY;
+        while (true) {
+            final double f = forward.getNextDistance();
+            final double b = backward.getNextDistance();
+            // A side is done once its next vertex is farther than the best path
+            final boolean forwardDone = f >= best;
+            final boolean backwardDone = b >= best;
+            if (forwardDone && backwardDone) {
+                return best;
+            }
+            if (!forwardDone && (backwardDone || f <= b)) {
+                final int v = forward.next();
+                if (backward.isReached(v)) {
+                    best = Math.min(best, forward.getDistance(v) + backward.getDistance(v));
+                }
+            } else {
+                final int v = backward.next();
+                if (forward.isReached(v)) {
+                    best = Math.min(best, forward.getDistance(v) + backward.getDistance(v));
+                }
+            }
+        }
+    }
+
+    /**
+     * Contract a graph
+     *
+     * @param graph Graph
+     * @return The contraction hierarchy
+     */
+    public static ContractionHierarchy contract(CSRGraph graph) {
+        LOGGER.info("Contracting graph...");
+        final long start = System.currentTimeMillis();
+        final ContractionHierarchy hierarchy = new Contractor(graph).contract();
+        logTime(LOGGER, start);
+        return hierarchy;
+    }
+
+    /**
+     * Store the hierarchy in a new table with the columns SOURCE, DESTINATION,
+     * WEIGHT and UPWARD, one row per arc in its original direction.
+     *
+     * @param connection Connection
+     * @param tableName  Table to create
+     * @throws SQLException
+     */
+    public void save(Connection connection, TableLocation tableName) throws SQLException {
+        LOGGER.info("Storing contraction hierarchy...");
+        final long start = System.currentTimeMillis();
+        try (Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE " + tableName + "(" +
+                    SOURCE + " INTEGER, " +
+                    DESTINATION + " INTEGER, " +
+                    WEIGHT + " DOUBLE, " +
+                    UPWARD + " BOOLEAN)");
+        }
+        final boolean previousAutoCommit = connection.getAutoCommit();
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO " + tableName + " VALUES(?, ?, ?, ?)")) {
+            connection.setAutoCommit(false);
+            int count = 0;
+            final int vertexCount = upward.getVertexCount();
+            for (int v = 0; v < vertexCount; v++) {
+                final int id = upward.getVertexId(v);
+                for (int arc = upward.getFirstArc(v); arc < upward.getFirstArc(v + 1); arc++) {
+                    count = addRow(insert, id, upward.getVertexId(upward.getTarget(arc)),
+                            upward.getWeight(arc), true, count);
+                }
+                for (int arc = downward.getFirstArc(v); arc < downward.getFirstArc(v + 1); arc++) {
+                    count = addRow(insert, downward.getVertexId(downward.getTarget(arc)), id,
+                            downward.getWeight(arc), false, count);
+                }
+                if (upward.getFirstArc(v) == upward.getFirstArc(v + 1)
+                        && downward.getFirstArc(v) == downward.getFirstArc(v + 1)) {
+                    // Keep the vertices without arcs
+                    count = addRow(insert, id, id, 0, true, count);
+                }
+            }
+            if (count > 0) {
+                insert.executeBatch();
+            }
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(previousAutoCommit);
+        }
+        logTime(LOGGER, start);
+    }
+
+    private static int addRow(PreparedStatement insert, int source, int destination, double weight,
+                              boolean upward, int count) throws SQLException {
+        insert.setInt(1, source);
+        insert.setInt(2, destination);
+        insert.setDouble(3, weight);
+        insert.setBoolean(4, upward);
+        insert.addBatch();
+        if (++count == BATCH_SIZE) {
+            insert.executeBatch();
+            return 0;
+        }
+        return count;
+    }
+
+    /**
+     * Load a hierarchy stored by {@link #save(Connection, TableLocation)}
+     *
+     * @param connection Connection
+     * @param chTable    Contraction hierarchy table
+     * @return The hierarchy
+     * @throws SQLException
+     */
+    public static ContractionHierarchy load(Connection connection, String chTable) throws SQLException {
+        LOGGER.info("Loading contraction hierarchy into memory...");
+        final long start = System.currentTimeMillis();
+        final CSRGraph.Builder upward = new CSRGraph.Builder(1024);
+        final CSRGraph.Builder downward = new CSRGraph.Builder(1024);
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT " + SOURCE + ", " + DESTINATION + ", " + WEIGHT + ", "
+                     + UPWARD + " FROM " + TableUtilities.parseInputTable(connection, chTable))) {
+            while (rs.next()) {
+                final int source = rs.getInt(1);
+                final int destination = rs.getInt(2);
+                final double weight = rs.getDouble(3);
+                upward.addVertex(source);
+                upward.addVertex(destination);
+                downward.addVertex(source);
+                downward.addVertex(destination);
+                if (source == destination) {
+                    continue;
+                }
+                if (rs.getBoolean(4)) {
+                    upward.addArc(source, destination, 0, weight);
+                } else {
+                    downward.addArc(destination, source, 0, weight);
+                }
+            }
+        }
+        final ContractionHierarchy hierarchy = new ContractionHierarchy(upward.build(), downward.build());
+        logTime(LOGGER, start);
+        return hierarchy;
+    }
+
+    /**
+     * Contraction state: the remaining graph as growable adjacency lists in
+     * both directions.
+     */
+    private static final class Contractor {
+        private final CSRGraph graph;
+        private final int n;
+        private final int[][] outTargets;
+        private final double[][] outWeights;
+        private final int[] outSizes;
+        private final int[][] inSources;
+        private final double[][] inWeights;
+        private final int[] inSizes;
+        private final boolean[] contracted;
+        private final int[] contractedNeighbours;
+        // Depth of each vertex in the hierarchy
+        private final int[] levels;
+        private final int[] neighbourMarks;
+        private final CSRGraph.Builder upward;
+        private final CSRGraph.Builder downward;
+        // Witness search state
+        private final IntDoubleHeap heap;
+        private final double[] distances;
+        private final int[] reached;
+        private final int[] targets;
+        private int run = 0;
+
+        Contractor(CSRGraph graph) {
+            this.graph = graph;
+            n = graph.getVertexCount();
+            outTargets = new int[n][];
+            outWeights = new double[n][];
+            outSizes = new int[n];
+            inSources = new int[n][];
+            inWeights = new double[n][];
+            inSizes = new int[n];
+            contracted = new boolean[n];
+            contractedNeighbours = new int[n];
+            levels = new int[n];
+            neighbourMarks = new int[n];
+            Arrays.fill(neighbourMarks, -1);
+            heap = new IntDoubleHeap(n);
+            distances = new double[n];
+            reached = new int[n];
+            targets = new int[n];
+            upward = new CSRGraph.Builder(graph.getArcCount());
+            downward = new CSRGraph.Builder(graph.getArcCount());
+            for (int v = 0; v < n; v++) {
+                upward.addVertex(graph.getVertexId(v));
+                downward.addVertex(graph.getVertexId(v));
+                outTargets[v] = new int[4];
+                outWeights[v] = new double[4];
+                inSources[v] = new int[4];
+                inWeights[v] = new double[4];
+            }
+            for (int v = 0; v < n; v++) {
+                for (int arc = graph.getFirstArc(v); arc < graph.getFirstArc(v + 1); arc++) {
+                    final int w = graph.getTarget(arc);
+                    final double weight = graph.getWeight(arc);
+                    if (w != v && weight < Double.POSITIVE_INFINITY) {
+                        addArc(v, w, weight);
+                    }
+                }
+            }
+        }
+
+        ContractionHierarchy contract() {
+            final IntDoubleHeap queue = new IntDoubleHeap(n);
+            for (int v = 0; v < n; v++) {
+                queue.insertOrDecrease(v, priority(v));
+            }
+            while (!queue.isEmpty()) {
+                final int v = queue.poll();
+                // Lazy update: the priority may have grown since v was queued
+                final double priority = priority(v);
+                if (!queue.isEmpty() && priority > queue.peekKey()) {
+                    queue.insertOrDecrease(v, priority);
+                    continue;
+                }
+                contractVertex(v);
+                for (int i = 0; i < outSizes[v]; i++) {
+                    updateNeighbour(queue, v, outTargets[v][i]);
+                }
+                for (int i = 0; i < inSizes[v]; i++) {
+                    updateNeighbour(queue, v, inSources[v][i]);
+                }
+            }
+            return new ContractionHierarchy(upward.build(), downward.build());
+        }
+
+        private void updateNeighbour(IntDoubleHeap queue, int v, int w) {
+            if (!contracted[w] && neighbourMarks[w] != v) {
+                neighbourMarks[w] = v;
+                contractedNeighbours[w]++;
+                levels[w] = Math.max(levels[w], levels[v] + 1);
+                queue.insertOrDecrease(w, priority(w));
+            }
+        }
+
+        private double priority(int v) {
+            int degree = 0;
+            for (int i = 0; i < outSizes[v]; i++) {
+                if (!contracted[outTargets[v][i]]) {
+                    degree++;
+                }
+            }
+            for (int i = 0; i < inSizes[v]; i++) {
+                if (!contracted[inSources[v][i]]) {
+                    degree++;
+                }
+            }
+            return shortcuts(v, false) - degree + contractedNeighbours[v] + levels[v];
+        }
+
+        private void contractVertex(int v) {
+            final int id = graph.getVertexId(v);
+            for (int i = 0; i < outSizes[v]; i++) {
+                final int w = outTargets[v][i];
+                if (!contracted[w]) {
+                    upward.addArc(id, graph.getVertexId(w), 0, outWeights[v][i]);
+                }
+            }
+            for (int i = 0; i < inSizes[v]; i++) {
+                final int u = inSources[v][i];
+                if (!contracted[u]) {
+                    downward.addArc(id, graph.getVertexId(u), 0, inWeights[v][i]);
+                }
+            }
+            shortcuts(v, true);
+            contracted[v] = true;
+            // Remove v from the lists of its neighbours, its own lists are
+            // kept to update the priority of the neighbours
+            for (int i = 0; i < outSizes[v]; i++) {
+                final int w = outTargets[v][i];
+                inSizes[w] = remove(inSources[w], inWeights[w], inSizes[w], v);
+            }
+            for (int i = 0; i < inSizes[v]; i++) {
+                final int u = inSources[v][i];
+                outSizes[u] = remove(outTargets[u], outWeights[u], outSizes[u], v);
+            }
+        }
+
+        /**
+         * Remove a vertex from an adjacency list
+         *
+         * @return The new size of the list
+         */
+        private static int remove(int[] vertices, double[] weights, int size, int v) {
+            for (int i = 0; i < size; i++) {
+                if (vertices[i] == v) {
+                    size--;
+                    vertices[i] = vertices[size];
+                    weights[i] = weights[size];
+                    return size;
+                }
+            }
+            return size;
+        }
+
+        /**
+         * Count, and add if asked, the shortcuts needed to contract v
+         */
+        private int shortcuts(int v, boolean add) {
+            int count = 0;
+            for (int i = 0; i < inSizes[v]; i++) {
+                final int u = inSources[v][i];
+                if (contracted[u]) {
+                    continue;
+                }
+                final double toV = inWeights[v][i];
+                nextRun();
+                double limit = Double.NEGATIVE_INFINITY;
+                int targetCount = 0;
+                for (int j = 0; j < outSizes[v]; j++) {
+                    final int w = outTargets[v][j];
+                    if (!contracted[w] && w != u) {
+                        limit = Math.max(limit, toV + outWeights[v][j]);
+                        if (targets[w] != run) {
+                            targets[w] = run;
+                            targetCount++;
+                        }
+                    }
+                }
+                if (targetCount == 0) {
+                    continue;
+                }
+                witnessSearch(u, v, limit, targetCount, add ? WITNESS_SETTLED_LIMIT : ESTIMATE_SETTLED_LIMIT);
+                for (int j = 0; j < outSizes[v]; j++) {
+                    final int w = outTargets[v][j];
+                    if (contracted[w] || w == u) {
+                        continue;
+                    }
+                    final double viaV = toV + outWeights[v][j];
+                    if (reached[w] != run || distances[w] > viaV) {
+                        count++;
+                        if (add) {
+                            addArc(u, w, viaV);
+                        }
+                    }
+                }
+            }
+            return count;
+        }
+
+        private void nextRun() {
+            if (run == Integer.MAX_VALUE) {
+                Arrays.fill(reached, 0);
+                Arrays.fill(targets, 0);
+                run = 0;
+            }
+            run++;
+        }
+
+        /**
+         * Dijkstra search from the source in the remaining graph without the
+         * excluded vertex, until the targets of the current run are settled
+         * or the limit distance is reached
+         */
+        private void witnessSearch(int source, int excluded, double limit, int targetCount, int settledLimit) {
+            heap.clear();
+            reached[source] = run;
+            distances[source] = 0;
+            heap.insertOrDecrease(source, 0);
+            int settled = 0;
+            while (!heap.isEmpty() && heap.peekKey() <= limit && settled < settledLimit) {
+                final int v = heap.poll();
+                settled++;
+                if (targets[v] == run && --targetCount == 0) {
+                    break;
+                }
+                final double distance = distances[v];
+                for (int i = 0; i < outSizes[v]; i++) {
+                    final int w = outTargets[v][i];
+                    if (w == excluded || contracted[w]) {
+                        continue;
+                    }
+                    final double candidate = distance + outWeights[v][i];
+                    if (reached[w] != run || candidate < distances[w]) {
+                        reached[w] = run;
+                        distances[w] = candidate;
+                        heap.insertOrDecrease(w, candidate);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Add the arc u -> w, or decrease its weight if it exists
+         */
+        private void addArc(int u, int w, double weight) {
+            for (int i = 0; i < outSizes[u]; i++) {
+                if (outTargets[u][i] == w) {
+                    if (weight < outWeights[u][i]) {
+                        outWeights[u][i] = weight;
+                        for (int j = 0; j < inSizes[w]; j++) {
+                            if (inSources[w][j] == u) {
+                                inWeights[w][j] = weight;
+                            }
+                        }
+                    }
+                    return;
+                }
+            }
+            if (outSizes[u] == outTargets[u].length) {
+                outTargets[u] = Arrays.copyOf(outTargets[u], outSizes[u] * 2);
+                outWeights[u] = Arrays.copyOf(outWeights[u], outSizes[u] * 2);
+            }
+            outTargets[u][outSizes[u]] = w;
+            outWeights[u][outSizes[u]++] = weight;
+            if (inSizes[w] == inSources[w].length) {
+                inSources[w] = Arrays.copyOf(inSources[w], inSizes[w] * 2);
+                inWeights[w] = Arrays.copyOf(inWeights[w], inSizes[w] * 2);
+            }
+            inSources[w][inSizes[w]] = u;
+            inWeights[w][inSizes[w]++] = weight;
+        }
+    }
+}
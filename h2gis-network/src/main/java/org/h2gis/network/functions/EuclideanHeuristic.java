@@ -0,0 +1,162 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+
+package org.h2gis.network.functions;
+
+import org.h2gis.utilities.TableLocation;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import static org.h2gis.network.functions.GraphConstants.END_NODE;
+import static org.h2gis.network.functions.GraphConstants.START_NODE;
+
+/**
+ * Straight line lower bound of the distance between two vertices of a
+ * {@link CSRGraph}, used by the A* search.
+ *
+ * <p>The vertex coordinates are the end points of the edge geometries, that
+ * is the nodes computed by ST_Graph. The straight line distance is scaled by
+ * the smallest ratio between the weight and the length of an arc, so the
+ * estimate never exceeds the weight of an arc plus the estimate of its target
+ * whatever the weight column. An unweighted graph or a weight which is not a
+ * length only makes the estimate less tight.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public final class EuclideanHeuristic {
+
+    // Heuristics of the graphs of the cache, the vertex coordinates do not
+    // change as long as the graph is up to date
+    private static final Map<CSRGraph, EuclideanHeuristic> HEURISTICS = new WeakHashMap<>();
+
+    private final double[] x;
+    private final double[] y;
+    private final double factor;
+
+    /**
+     * @param graph Graph
+     * @param x     X coordinate of each vertex index
+     * @param y     Y coordinate of each vertex index
+     */
+    public EuclideanHeuristic(CSRGraph graph, double[] x, double[] y) {
+        this.x = x;
+        this.y = y;
+        double min = Double.POSITIVE_INFINITY;
+        final int vertexCount = graph.getVertexCount();
+        for (int v = 0; v < vertexCount && min > 0; v++) {
+            final int end = graph.getFirstArc(v + 1);
+            for (int arc = graph.getFirstArc(v); arc < end; arc++) {
+                final double length = distance(v, graph.getTarget(arc));
+                if (length > 0) {
+                    min = Math.min(min, graph.getWeight(arc) / length);
+                }
+            }
+        }
+        // Keep the estimate below the arc weights despite rounding errors
+        this.factor = min == Double.POSITIVE_INFINITY || !(min > 0) ? 0 : min * (1 - 1e-9);
+    }
+
+    /**
+     * @param vertex Vertex index
+     * @param target Target vertex index
+     * @return A lower bound of the distance from the vertex to the target
+     */
+    public double estimate(int vertex, int target) {
+        return factor * distance(vertex, target);
+    }
+
+    /**
+     * @return The ratio applied to the straight line distance
+     */
+    public double getFactor() {
+        return factor;
+    }
+
+    private double distance(int v, int w) {
+        final double dx = x[v] - x[w];
+        final double dy = y[v] - y[w];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Return the heuristic of a graph, reading the vertex coordinates from the
+     * edges table if the graph has no heuristic yet.
+     *
+     * @param connection    Connection
+     * @param tableName     Edges table the graph was loaded from
+     * @param geometryField Geometry column of the edges table
+     * @param graph         Graph
+     * @return The heuristic
+     * @throws SQLException
+     */
+    public static EuclideanHeuristic get(Connection connection, TableLocation tableName,
+                                         String geometryField, CSRGraph graph) throws SQLException {
+        synchronized (HEURISTICS) {
+            EuclideanHeuristic heuristic = HEURISTICS.get(graph);
+            if (heuristic != null) {
+                return heuristic;
+            }
+        }
+        final int vertexCount = graph.getVertexCount();
+        final double[] x = new double[vertexCount];
+        final double[] y = new double[vertexCount];
+        Arrays.fill(x, Double.NaN);
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT " + START_NODE + ", " + END_NODE + ", "
+                     + geometryField + " FROM " + tableName)) {
+            while (rs.next()) {
+                final Geometry geometry = (Geometry) rs.getObject(3);
+                if (geometry == null || geometry.isEmpty()) {
+                    continue;
+                }
+                final Coordinate[] coordinates = geometry.getCoordinates();
+                setCoordinate(graph, rs.getInt(1), coordinates[0], x, y);
+                setCoordinate(graph, rs.getInt(2), coordinates[coordinates.length - 1], x, y);
+            }
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            if (Double.isNaN(x[v])) {
+                throw new IllegalArgumentException("No coordinates found for vertex " + graph.getVertexId(v));
+            }
+        }
+        final EuclideanHeuristic heuristic = new EuclideanHeuristic(graph, x, y);
+        synchronized (HEURISTICS) {
+            HEURISTICS.put(graph, heuristic);
+        }
+        return heuristic;
+    }
+
+    private static void setCoordinate(CSRGraph graph, int id, Coordinate coordinate, double[] x, double[] y) {
+        final int v = graph.getVertexIndex(id);
+        if (v >= 0 && Double.isNaN(x[v])) {
+            x[v] = coordinate.x;
+            y[v] = coordinate.y;
+        }
+    }
+}
@@ -0,0 +1,503 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import org.h2.engine.Session;
+import org.h2.engine.SessionLocal;
+import org.h2.jdbc.JdbcConnection;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.TableUtilities;
+import org.javanetworkanalyzer.model.KeyedGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.ToLongFunction;
+
+/**
+ * In memory cache of the graphs built by {@link GraphCreator}.
+ *
+ * <p>A graph is identified by its database, edges table, orientation, weight
+ * column and vertex/edge classes. It is stored with the last modification id
+ * of the edges table, so any change of the table invalidates it. Nothing is
+ * cached or read from the cache while the edges table or the calling session
+ * has uncommitted changes. The cache is a LRU bounded by the total number of
+ * cached edges.
+ *
+ * <p>Graph algorithms store their state in the vertices, so a cached JGraphT
+ * graph cannot be shared. {@link #acquire} removes the graph from the cache and
+ * {@link #release} puts it back once the calling function is done with it; a
+ * concurrent call on the same graph simply builds its own copy. The read only
+ * {@link CSRGraph} are shared by all the callers.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public final class GraphCache {
+
+    /**
+     * Default maximum number of edges kept in the cache
+     */
+    public static final long DEFAULT_MAX_EDGES = 5_000_000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("gui." + GraphCache.class);
+
+    private static final LinkedHashMap<Key, Entry> CACHE = new LinkedHashMap<>(16, 0.75f, true);
+    private static final Map<Object, Entry> BORROWED = new IdentityHashMap<>();
+    private static long maxEdges = DEFAULT_MAX_EDGES;
+    private static long cachedEdges = 0;
+
+    private GraphCache() {
+    }
+
+    /**
+     * Return the graph of the edges table, from the cache if it is up to date.
+     * The graph must be given back with {@link #release(KeyedGraph)}.
+     *
+     * @param connection        Connection
+     * @param inputTable        Edges table
+     * @param globalOrientation Global orientation
+     * @param edgeOrientation   Edge orientation column name
+     * @param weightColumn      Weight column name, null for unweighted graphs
+     * @param vertexClass       Vertex class
+     * @param edgeClass         Edge class
+     * @return Graph
+     * @throws SQLException
+     */
+    public static KeyedGraph acquire(Connection connection,
+                                     String inputTable,
+                                     GraphFunctionParser.Orientation globalOrientation,
+                                     String edgeOrientation,
+                                     String weightColumn,
+                                     Class vertexClass,
+                                     Class edgeClass) throws SQLException {
+        final GraphCreator creator = new GraphCreator(connection, inputTable,
+                globalOrientation, edgeOrientation, weightColumn, vertexClass, edgeClass);
+        final Object database = getDatabase(connection);
+        if (database == null || hasPendingTransaction(connection)) {
+            return creator.prepareGraph();
+        }
+        final TableLocation table = TableUtilities.parseInputTable(connection, inputTable);
+        final long modificationId = getModificationId(connection, table);
+        if (modificationId < 0) {
+            return creator.prepareGraph();
+        }
+        final Key key = new Key(database, getTableId(table), globalOrientation, edgeOrientation, weightColumn,
+                vertexClass, edgeClass);
+        synchronized (GraphCache.class) {
+            Entry entry = CACHE.remove(key);
+            if (entry != null) {
+                cachedEdges -= entry.edgeCount;
+                if (entry.modificationId == modificationId) {
+                    BORROWED.put(entry.graph, entry);
+                    return (KeyedGraph) entry.graph;
+                }
+            }
+        }
+        final KeyedGraph graph = creator.prepareGraph();
+        if (graph != null) {
+            synchronized (GraphCache.class) {
+                BORROWED.put(graph, new Entry(key, modificationId, graph, graph.edgeSet().size()));
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Give back a graph returned by {@link #acquire}. Graphs which were not
+     * acquired from the cache are ignored.
+     *
+     * @param graph Graph
+     */
+    public static synchronized void release(KeyedGraph graph) {
+        if (graph == null) {
+            return;
+        }
+        final Entry entry = BORROWED.remove(graph);
+        if (entry != null) {
+            store(entry);
+        }
+    }
+
+    /**
+     * Return the compressed graph of the edges table, from the cache if it is
+     * up to date. The graph is read only and may be used by several threads.
+     *
+     * @param connection        Connection
+     * @param inputTable        Edges table
+     * @param globalOrientation Global orientation
+     * @param edgeOrientation   Edge orientation column name
+     * @param weightColumn      Weight column name, null for unweighted graphs
+     * @return Graph
+     * @throws SQLException
+     */
+    public static CSRGraph getCSRGraph(Connection connection,
+                                       String inputTable,
+                                       GraphFunctionParser.Orientation globalOrientation,
+                                       String edgeOrientation,
+                                       String weightColumn) throws SQLException {
+        return getShared(connection, inputTable, globalOrientation, edgeOrientation, weightColumn,
+                CSRGraph.class,
+                () -> CSRGraph.load(connection, inputTable, globalOrientation, edgeOrientation, weightColumn),
+                CSRGraph::getArcCount);
+    }
+
+    /**
+     * Return the contraction hierarchy stored in a table by
+     * ST_ContractionHierarchy, from the cache if it is up to date. It is read
+     * only and may be used by several threads.
+     *
+     * @param connection Connection
+     * @param chTable    Contraction hierarchy table
+     * @return Contraction hierarchy
+     * @throws SQLException
+     */
+    public static ContractionHierarchy getContractionHierarchy(Connection connection,
+                                                               String chTable) throws SQLException {
+        return getShared(connection, chTable, null, null, null,
+                ContractionHierarchy.class,
+                () -> ContractionHierarchy.load(connection, chTable),
+                ContractionHierarchy::getArcCount);
+    }
+
+    /**
+     * Return a read only structure loaded from a table, from the cache if it
+     * is up to date
+     */
+    private static <T> T getShared(Connection connection,
+                                   String inputTable,
+                                   GraphFunctionParser.Orientation globalOrientation,
+                                   String edgeOrientation,
+                                   String weightColumn,
+                                   Class<T> type,
+                                   Loader<T> loader,
+                                   ToLongFunction<T> size) throws SQLException {
+        final Object database = getDatabase(connection);
+        if (database == null || hasPendingTransaction(connection)) {
+            return loader.load();
+        }
+        final TableLocation table = TableUtilities.parseInputTable(connection, inputTable);
+        final long modificationId = getModificationId(connection, table);
+        if (modificationId < 0) {
+            return loader.load();
+        }
+        final Key key = new Key(database, getTableId(table), globalOrientation, edgeOrientation, weightColumn,
+                type, null);
+        synchronized (GraphCache.class) {
+            Entry entry = CACHE.get(key);
+            if (entry != null && entry.modificationId == modificationId) {
+                return type.cast(entry.graph);
+            }
+        }
+        final T graph = loader.load();
+        synchronized (GraphCache.class) {
+            store(new Entry(key, modificationId, graph, size.applyAsLong(graph)));
+        }
+        return graph;
+    }
+
+    /**
+     * Put a graph in the cache unless a more recent graph is already there
+     *
+     * @param entry Graph entry
+     */
+    private static void store(Entry entry) {
+        if (entry.key.database.get() == null) {
+            return;
+        }
+        final Entry current = CACHE.get(entry.key);
+        if (current != null) {
+            if (current.modificationId >= entry.modificationId) {
+                return;
+            }
+            CACHE.remove(entry.key);
+            cachedEdges -= current.edgeCount;
+        }
+        if (entry.edgeCount > maxEdges) {
+            return;
+        }
+        CACHE.put(entry.key, entry);
+        cachedEdges += entry.edgeCount;
+        evict();
+    }
+
+    /**
+     * Remove from the cache all the graphs of the given edges table
+     *
+     * @param connection Connection
+     * @param inputTable Edges table
+     * @return Number of removed graphs
+     * @throws SQLException
+     */
+    public static int drop(Connection connection, String inputTable) throws SQLException {
+        final Object database = getDatabase(connection);
+        if (database == null) {
+            return 0;
+        }
+        final String table = getTableId(TableUtilities.parseInputTable(connection, inputTable));
+        synchronized (GraphCache.class) {
+            int count = 0;
+            for (Iterator<Entry> it = CACHE.values().iterator(); it.hasNext(); ) {
+                Entry entry = it.next();
+                if (entry.key.database.get() == database && entry.key.table.equals(table)) {
+                    it.remove();
+                    cachedEdges -= entry.edgeCount;
+                    count++;
+                }
+            }
+            // Graphs in use are not put back in the cache
+            BORROWED.values().removeIf(entry -> entry.key.database.get() == database && entry.key.table.equals(table));
+            return count;
+        }
+    }
+
+    /**
+     * Remove from the cache all the graphs of the connection database
+     *
+     * @param connection Connection
+     * @return Number of removed graphs
+     * @throws SQLException
+     */
+    public static int clear(Connection connection) throws SQLException {
+        final Object database = getDatabase(connection);
+        if (database == null) {
+            return 0;
+        }
+        synchronized (GraphCache.class) {
+            int count = 0;
+            for (Iterator<Entry> it = CACHE.values().iterator(); it.hasNext(); ) {
+                Entry entry = it.next();
+                if (entry.key.database.get() == database) {
+                    it.remove();
+                    cachedEdges -= entry.edgeCount;
+                    count++;
+                }
+            }
+            BORROWED.values().removeIf(entry -> entry.key.database.get() == database);
+            return count;
+        }
+    }
+
+    /**
+     * @return Number of graphs in the cache
+     */
+    public static synchronized int size() {
+        return CACHE.size();
+    }
+
+    /**
+     * @return Number of edges in the cache
+     */
+    public static synchronized long getCachedEdges() {
+        return cachedEdges;
+    }
+
+    /**
+     * Set the maximum number of edges kept in the cache, 0 disables the cache
+     *
+     * @param maxEdges Maximum number of edges
+     */
+    public static synchronized void setMaxEdges(long maxEdges) {
+        if (maxEdges < 0) {
+            throw new IllegalArgumentException("The maximum number of edges must be positive");
+        }
+        GraphCache.maxEdges = maxEdges;
+        evict();
+    }
+
+    /**
+     * @return The maximum number of edges kept in the cache
+     */
+    public static synchronized long getMaxEdges() {
+        return maxEdges;
+    }
+
+    /**
+     * Drop the graphs of closed databases then the least recently used graphs
+     * until the cache fits in its budget.
+     */
+    private static void evict() {
+        for (Iterator<Entry> it = CACHE.values().iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (entry.key.database.get() == null) {
+                it.remove();
+                cachedEdges -= entry.edgeCount;
+            }
+        }
+        for (Iterator<Entry> it = CACHE.values().iterator(); it.hasNext() && cachedEdges > maxEdges; ) {
+            Entry entry = it.next();
+            it.remove();
+            cachedEdges -= entry.edgeCount;
+            LOGGER.info("Graph of " + entry.key.table + " evicted from the cache");
+        }
+    }
+
+    /**
+     * @param connection Connection
+     * @return The H2 database object of the connection, null if the graphs of
+     * this connection cannot be cached
+     */
+    private static Object getDatabase(Connection connection) throws SQLException {
+        if (!connection.isWrapperFor(JdbcConnection.class)) {
+            return null;
+        }
+        Session session = connection.unwrap(JdbcConnection.class).getSession();
+        if (session instanceof SessionLocal) {
+            return ((SessionLocal) session).getDatabase();
+        }
+        return null;
+    }
+
+    /**
+     * The last modification id of a table also moves on uncommitted changes,
+     * which the other sessions do not see and which may be rolled back. A
+     * session with uncommitted changes neither reads nor feeds the cache, the
+     * uncommitted changes of the other sessions are checked by
+     * {@link #getModificationId}.
+     *
+     * @param connection Connection
+     * @return True if the session of the connection has uncommitted changes
+     */
+    private static boolean hasPendingTransaction(Connection connection) throws SQLException {
+        return !connection.getAutoCommit()
+                && connection.unwrap(JdbcConnection.class).getSession().hasPendingTransaction();
+    }
+
+    /**
+     * @param table Table
+     * @return The schema qualified name of the table
+     */
+    private static String getTableId(TableLocation table) {
+        return table.getSchema("PUBLIC") + "." + table.getTable();
+    }
+
+    /**
+     * The sessions writing in a table hold a lock on it until they commit or
+     * roll back, a table is not cached while such a lock exists.
+     *
+     * @param connection Connection
+     * @param table      Table
+     * @return The last modification id of the table, -1 if unknown or if
+     * some session has uncommitted changes on the table
+     */
+    private static long getModificationId(Connection connection, TableLocation table) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT T.LAST_MODIFICATION, (SELECT COUNT(*) FROM INFORMATION_SCHEMA.LOCKS L "
+                        + "WHERE L.TABLE_SCHEMA = T.TABLE_SCHEMA AND L.TABLE_NAME = T.TABLE_NAME) "
+                        + "FROM INFORMATION_SCHEMA.TABLES T WHERE T.TABLE_SCHEMA = ? AND T.TABLE_NAME = ?")) {
+            ps.setString(1, table.getSchema("PUBLIC"));
+            ps.setString(2, table.getTable());
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    long modificationId = rs.getLong(1);
+                    if (!rs.wasNull() && rs.getLong(2) == 0) {
+                        return modificationId;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Loads a graph from its table
+     */
+    private interface Loader<T> {
+        T load() throws SQLException;
+    }
+
+    /**
+     * Graph identifier. The database is weakly referenced so that the graphs
+     * of a closed database can be collected.
+     */
+    private static final class Key {
+        private final WeakReference<Object> database;
+        private final int databaseHash;
+        private final String table;
+        private final GraphFunctionParser.Orientation globalOrientation;
+        private final String edgeOrientation;
+        private final String weightColumn;
+        private final Class vertexClass;
+        private final Class edgeClass;
+
+        Key(Object database, String table, GraphFunctionParser.Orientation globalOrientation,
+            String edgeOrientation, String weightColumn, Class vertexClass, Class edgeClass) {
+            this.database = new WeakReference<>(database);
+            this.databaseHash = System.identityHashCode(database);
+            this.table = table;
+            this.globalOrientation = globalOrientation;
+            this.edgeOrientation = edgeOrientation;
+            this.weightColumn = weightColumn;
+            this.vertexClass = vertexClass;
+            this.edgeClass = edgeClass;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            Object db = database.get();
+            return db != null && db == other.database.get()
+                    && table.equals(other.table)
+                    && globalOrientation == other.globalOrientation
+                    && Objects.equals(edgeOrientation, other.edgeOrientation)
+                    && Objects.equals(weightColumn, other.weightColumn)
+                    && vertexClass == other.vertexClass
+                    && edgeClass == other.edgeClass;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(databaseHash, table, globalOrientation, edgeOrientation, weightColumn,
+                    vertexClass, edgeClass);
+        }
+    }
+
+    /**
+     * A graph and the table state it was built from
+     */
+    private static final class Entry {
+        private final Key key;
+        private final long modificationId;
+        private final Object graph;
+        private final long edgeCount;
+
+        Entry(Key key, long modificationId, Object graph, long edgeCount) {
+            this.key = key;
+            this.modificationId = modificationId;
+            this.graph = graph;
+            this.edgeCount = edgeCount;
+        }
+    }
+}
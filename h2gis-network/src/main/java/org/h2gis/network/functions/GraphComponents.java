@@ -0,0 +1,225 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+
+package org.h2gis.network.functions;
+
+import java.util.Arrays;
+
+/**
+ * Connected components of the vertices of a graph, numbered from 1.
+ *
+ * <p>The connected components of an undirected graph are found by a union-find
+ * over the edges, the strongly connected components of a directed graph by an
+ * iterative Tarjan search on its {@link CSRGraph}. Neither builds a JGraphT
+ * graph.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public final class GraphComponents {
+
+    // Sorted vertex ids
+    private final int[] vertexIds;
+    private final int[] components;
+    private final int componentCount;
+
+    private GraphComponents(int[] vertexIds, int[] components, int componentCount) {
+        this.vertexIds = vertexIds;
+        this.components = components;
+        this.componentCount = componentCount;
+    }
+
+    /**
+     * Find the connected components of an undirected graph. The components
+     * are numbered in the order of their smallest vertex id.
+     *
+     * @param startNodes Start vertex id of each edge
+     * @param endNodes   End vertex id of each edge
+     * @param edgeCount  Number of edges
+     * @return The components
+     */
+    public static GraphComponents undirected(int[] startNodes, int[] endNodes, int edgeCount) {
+        final int[] ids = new int[2 * edgeCount];
+        System.arraycopy(startNodes, 0, ids, 0, edgeCount);
+        System.arraycopy(endNodes, 0, ids, edgeCount, edgeCount);
+        Arrays.sort(ids);
+        int n = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (n == 0 || ids[n - 1] != ids[i]) {
+                ids[n++] = ids[i];
+            }
+        }
+        final int[] vertexIds = Arrays.copyOf(ids, n);
+        final int[] parents = new int[n];
+        final int[] sizes = new int[n];
+        for (int v = 0; v < n; v++) {
+            parents[v] = v;
+            sizes[v] = 1;
+        }
+        for (int e = 0; e < edgeCount; e++) {
+            int a = find(parents, Arrays.binarySearch(vertexIds, startNodes[e]));
+            int b = find(parents, Arrays.binarySearch(vertexIds, endNodes[e]));
+            if (a != b) {
+                // Union by size keeps the trees shallow
+                if (sizes[a] < sizes[b]) {
+                    final int tmp = a;
+                    a = b;
+                    b = tmp;
+                }
+                parents[b] = a;
+                sizes[a] += sizes[b];
+            }
+        }
+        final int[] components = new int[n];
+        int componentCount = 0;
+        for (int v = 0; v < n; v++) {
+            final int root = find(parents, v);
+            if (components[root] == 0) {
+                components[root] = ++componentCount;
+            }
+            components[v] = components[root];
+        }
+        return new GraphComponents(vertexIds, components, componentCount);
+    }
+
+    /**
+     * Root of the tree of the vertex, halving the path on the way
+     */
+    private static int find(int[] parents, int v) {
+        while (parents[v] != v) {
+            parents[v] = parents[parents[v]];
+            v = parents[v];
+        }
+        return v;
+    }
+
+    /**
+     * Find the strongly connected components of a directed graph with
+     * Tarjan's algorithm. The recursion is replaced by an explicit stack so
+     * long paths do not overflow the thread stack.
+     *
+     * @param graph Graph
+     * @return The components
+     */
+    public static GraphComponents strong(CSRGraph graph) {
+        final int n = graph.getVertexCount();
+        final int[] vertexIds = new int[n];
+        for (int v = 0; v < n; v++) {
+            vertexIds[v] = graph.getVertexId(v);
+        }
+        final int[] index = new int[n];
+        Arrays.fill(index, -1);
+        final int[] low = new int[n];
+        final boolean[] onStack = new boolean[n];
+        // Vertices of the components being built
+        final int[] stack = new int[n];
+        int stackSize = 0;
+        // Search path, with the next arc to follow from each vertex
+        final int[] path = new int[n];
+        final int[] nextArc = new int[n];
+        int pathSize = 0;
+        final int[] components = new int[n];
+        int componentCount = 0;
+        int counter = 0;
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            index[root] = low[root] = counter++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+            path[pathSize] = root;
+            nextArc[pathSize++] = graph.getFirstArc(root);
+            while (pathSize > 0) {
+                final int v = path[pathSize - 1];
+                final int arc = nextArc[pathSize - 1];
+                if (arc < graph.getFirstArc(v + 1)) {
+                    nextArc[pathSize - 1]++;
+                    final int w = graph.getTarget(arc);
+                    if (index[w] < 0) {
+                        index[w] = low[w] = counter++;
+                        stack[stackSize++] = w;
+                        onStack[w] = true;
+                        path[pathSize] = w;
+                        nextArc[pathSize++] = graph.getFirstArc(w);
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+                pathSize--;
+                if (low[v] == index[v]) {
+                    componentCount++;
+                    int w;
+                    do {
+                        w = stack[--stackSize];
+                        onStack[w] = false;
+                        components[w] = componentCount;
+                    } while (w != v);
+                }
+                if (pathSize > 0) {
+                    final int parent = path[pathSize - 1];
+                    low[parent] = Math.min(low[parent], low[v]);
+                }
+            }
+        }
+        return new GraphComponents(vertexIds, components, componentCount);
+    }
+
+    /**
+     * @return Number of vertices
+     */
+    public int getVertexCount() {
+        return vertexIds.length;
+    }
+
+    /**
+     * @param i Position in [0, {@link #getVertexCount()}[
+     * @return The i-th vertex id, vertex ids are sorted
+     */
+    public int getVertexId(int i) {
+        return vertexIds[i];
+    }
+
+    /**
+     * @param i Position in [0, {@link #getVertexCount()}[
+     * @return The component number of the i-th vertex
+     */
+    public int getComponent(int i) {
+        return components[i];
+    }
+
+    /**
+     * @param vertexId Vertex id
+     * @return The component number of the vertex, -1 if the graph does not
+     * contain the vertex
+     */
+    public int getComponentOf(int vertexId) {
+        final int i = Arrays.binarySearch(vertexIds, vertexId);
+        return i < 0 ? -1 : components[i];
+    }
+
+    /**
+     * @return Number of components
+     */
+    public int getComponentCount() {
+        return componentCount;
+    }
+}
@@ -45,4 +45,7 @@ public interface GraphConstants {
     String PATH_EDGE_ID = "PATH_EDGE_ID";
     String TREE_ID = "TREE_ID";
     String WEIGHT = "WEIGHT";
+    String UPWARD = "UPWARD";
+    String THRESHOLD = "THRESHOLD";
+    String CH_SUFFIX = "_CH";
 }
@@ -63,6 +63,70 @@ public class GraphFunction extends AbstractFunction {
                 edgeClass).prepareGraph();
     }
 
+    /**
+     * Return a JGraphT graph from the input edges table, taken from the
+     * {@link GraphCache} when the table has not changed since the graph was
+     * built. The graph must be given back with {@link #releaseGraph(KeyedGraph)}
+     * once the function no longer reads it.
+     *
+     * @param connection  Connection
+     * @param inputTable  Input table name
+     * @param orientation Orientation string
+     * @param weight      Weight column name, null for unweighted graphs
+     * @param vertexClass
+     * @param edgeClass
+     * @return Graph
+     * @throws java.sql.SQLException
+     */
+    protected static KeyedGraph acquireGraph(Connection connection,
+                                             String inputTable,
+                                             String orientation,
+                                             String weight,
+                                             Class vertexClass,
+                                             Class edgeClass) throws SQLException {
+        GraphFunctionParser parser = new GraphFunctionParser();
+        parser.parseWeightAndOrientation(orientation, weight);
+
+        return GraphCache.acquire(connection,
+                inputTable,
+                parser.getGlobalOrientation(), parser.getEdgeOrientation(), parser.getWeightColumn(),
+                vertexClass,
+                edgeClass);
+    }
+
+    /**
+     * Return the compressed graph of the input edges table, taken from the
+     * {@link GraphCache} when the table has not changed since the graph was
+     * built.
+     *
+     * @param connection  Connection
+     * @param inputTable  Input table name
+     * @param orientation Orientation string
+     * @param weight      Weight column name, null for unweighted graphs
+     * @return Graph
+     * @throws java.sql.SQLException
+     */
+    protected static CSRGraph prepareCSRGraph(Connection connection,
+                                              String inputTable,
+                                              String orientation,
+                                              String weight) throws SQLException {
+        GraphFunctionParser parser = new GraphFunctionParser();
+        parser.parseWeightAndOrientation(orientation, weight);
+
+        return GraphCache.getCSRGraph(connection,
+                inputTable,
+                parser.getGlobalOrientation(), parser.getEdgeOrientation(), parser.getWeightColumn());
+    }
+
+    /**
+     * Give back a graph returned by {@link #acquireGraph}.
+     *
+     * @param graph Graph
+     */
+    protected static void releaseGraph(KeyedGraph graph) {
+        GraphCache.release(graph);
+    }
+
     /**
      * Log the time elapsed from startTime until now.
      *
@@ -29,6 +29,7 @@ public class GraphFunctionParser {
     private String weightColumn;
     private Orientation globalOrientation;
     private String edgeOrientation;
+    private SearchMode searchMode = SearchMode.DIJKSTRA;
 
     public static final String SEPARATOR = "-";
     public static final String DIRECTED = "directed";
@@ -39,6 +40,16 @@ public class GraphFunctionParser {
         DIRECTED, REVERSED, UNDIRECTED
     }
 
+    public static final String MODE_SEPARATOR = ",";
+
+    /**
+     * Shortest path search algorithm, given after the orientation, e.g.
+     * 'directed - edge_orientation, astar'.
+     */
+    public enum SearchMode {
+        DIJKSTRA, BIDIRECTIONAL, ASTAR
+    }
+
     public static final String EDGE_ORIENTATION_COLUMN = "edge_orientation_column";
     public static final String POSSIBLE_ORIENTATIONS =
             "'" + DIRECTED + " - " + EDGE_ORIENTATION_COLUMN + "' "
@@ -170,6 +181,14 @@ public class GraphFunctionParser {
 
     private void setWeightAndOrientation(String weight, String orient) {
         weightColumn = parseWeight(weight);
+        if (orient != null && orient.contains(MODE_SEPARATOR)) {
+            String[] s = orient.split(MODE_SEPARATOR);
+            if (s.length != 2) {
+                throw new IllegalArgumentException(ORIENTATION_ERROR);
+            }
+            searchMode = parseSearchMode(s[1]);
+            orient = s[0];
+        }
         globalOrientation = parseGlobalOrientation(orient);
         if (globalOrientation != null) {
             if (!globalOrientation.equals(Orientation.UNDIRECTED)) {
@@ -178,6 +197,23 @@ public class GraphFunctionParser {
         }
     }
 
+    /**
+     * Recovers the search mode from a string.
+     *
+     * @param v String
+     * @return The search mode
+     */
+    protected static SearchMode parseSearchMode(String v) {
+        final String mode = v.trim().toUpperCase();
+        for (SearchMode searchMode : SearchMode.values()) {
+            if (searchMode.name().equals(mode)) {
+                return searchMode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown search mode: " + v.trim()
+                + ". Enter dijkstra, bidirectional or astar.");
+    }
+
     /**
      * Get the weight column name.
      *
@@ -205,6 +241,15 @@ public class GraphFunctionParser {
         return edgeOrientation;
     }
 
+    /**
+     * Get the search mode, {@link SearchMode#DIJKSTRA} by default.
+     *
+     * @return search mode
+     */
+    public SearchMode getSearchMode() {
+        return searchMode;
+    }
+
     /**
      * Returns true if the given string contains a comma.
      * @param s String
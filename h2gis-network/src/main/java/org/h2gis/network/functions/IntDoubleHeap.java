@@ -0,0 +1,161 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import java.util.Arrays;
+
+/**
+ * Binary min heap of int elements in [0, capacity[ with double keys. The
+ * position of each element is indexed so its key can be decreased in place,
+ * no object is allocated while the heap is used.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public final class IntDoubleHeap {
+
+    private final int[] elements;
+    private final double[] keys;
+    // Position of each element in the heap, -1 if it is not in the heap
+    private final int[] positions;
+    private int size = 0;
+
+    /**
+     * @param capacity Number of distinct elements
+     */
+    public IntDoubleHeap(int capacity) {
+        elements = new int[capacity];
+        keys = new double[capacity];
+        positions = new int[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    /**
+     * @return True if the heap is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return Number of elements in the heap
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param element Element
+     * @return True if the element is in the heap
+     */
+    public boolean contains(int element) {
+        return positions[element] >= 0;
+    }
+
+    /**
+     * @return The key of the minimum element
+     */
+    public double peekKey() {
+        return keys[0];
+    }
+
+    /**
+     * Add an element, or decrease its key if it is already in the heap and
+     * the new key is smaller.
+     *
+     * @param element Element
+     * @param key     Key
+     */
+    public void insertOrDecrease(int element, double key) {
+        int pos = positions[element];
+        if (pos < 0) {
+            pos = size++;
+        } else if (key >= keys[pos]) {
+            return;
+        }
+        siftUp(pos, element, key);
+    }
+
+    /**
+     * Remove the minimum element
+     *
+     * @return The element
+     */
+    public int poll() {
+        final int min = elements[0];
+        positions[min] = -1;
+        size--;
+        if (size > 0) {
+            siftDown(0, elements[size], keys[size]);
+        }
+        return min;
+    }
+
+    /**
+     * Remove all the elements
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[elements[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int pos, int element, double key) {
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (keys[parent] <= key) {
+                break;
+            }
+            move(parent, pos);
+            pos = parent;
+        }
+        set(pos, element, key);
+    }
+
+    private void siftDown(int pos, int element, double key) {
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            int right = child + 1;
+            if (right < size && keys[right] < keys[child]) {
+                child = right;
+            }
+            if (key <= keys[child]) {
+                break;
+            }
+            move(child, pos);
+            pos = child;
+        }
+        set(pos, element, key);
+    }
+
+    private void move(int from, int to) {
+        elements[to] = elements[from];
+        keys[to] = keys[from];
+        positions[elements[to]] = to;
+    }
+
+    private void set(int pos, int element, double key) {
+        elements[pos] = element;
+        keys[pos] = key;
+        positions[element] = pos;
+    }
+}
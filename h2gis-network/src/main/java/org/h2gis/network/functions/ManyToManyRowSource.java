@@ -0,0 +1,187 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import org.h2.tools.SimpleRowSource;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Rows (SOURCE, DESTINATION, DISTANCE) of a many-to-many shortest path length
+ * computation.
+ *
+ * <p>Sources are split in chunks computed by the common fork-join pool, each
+ * worker running its own {@link CSRDijkstra} on the shared read only graph.
+ * At most two chunks per worker are computed ahead of the reader and the rows
+ * are returned in the order of the sources, so the whole distance matrix is
+ * never held in memory. A reset computes the distances again.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public final class ManyToManyRowSource implements SimpleRowSource {
+
+    /**
+     * Number of sources computed by a task
+     */
+    public static final int SOURCES_PER_TASK = 16;
+
+    private final CSRGraph graph;
+    private final int[] sources;
+    private final int[][] destinations;
+    private final int parallelism;
+    private final ConcurrentLinkedQueue<CSRDijkstra> searches = new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<Future<double[][]>> pending = new ArrayDeque<>();
+    private int nextTask = 0;
+    private int chunkStart = 0;
+    private double[][] chunk;
+    private int sourceIndex = 0;
+    private int destinationIndex = 0;
+
+    /**
+     * @param graph        Graph
+     * @param sources      Source vertex indices
+     * @param destinations Destination vertex indices of each source
+     */
+    public ManyToManyRowSource(CSRGraph graph, int[] sources, int[][] destinations) {
+        this(graph, sources, destinations, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * @param graph        Graph
+     * @param sources      Source vertex indices
+     * @param destinations Destination vertex indices of each source
+     * @param parallelism  Maximum number of concurrent tasks, 1 to compute
+     *                     the distances in the reader thread
+     */
+    public ManyToManyRowSource(CSRGraph graph, int[] sources, int[][] destinations, int parallelism) {
+        this.graph = graph;
+        this.sources = sources;
+        this.destinations = destinations;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    @Override
+    public Object[] readRow() throws SQLException {
+        while (true) {
+            if (chunk != null) {
+                if (destinationIndex < destinations[sourceIndex].length) {
+                    final int destination = destinations[sourceIndex][destinationIndex];
+                    final double distance = chunk[sourceIndex - chunkStart][destinationIndex];
+                    destinationIndex++;
+                    return new Object[]{graph.getVertexId(sources[sourceIndex]),
+                            graph.getVertexId(destination), distance};
+                }
+                sourceIndex++;
+                destinationIndex = 0;
+                if (sourceIndex - chunkStart < chunk.length) {
+                    continue;
+                }
+                chunk = null;
+            }
+            if (sourceIndex == sources.length) {
+                return null;
+            }
+            chunkStart = sourceIndex;
+            chunk = nextChunk();
+        }
+    }
+
+    /**
+     * @return The distances of the next chunk of sources
+     */
+    private double[][] nextChunk() throws SQLException {
+        final int taskCount = (sources.length + SOURCES_PER_TASK - 1) / SOURCES_PER_TASK;
+        while (nextTask < taskCount && pending.size() < parallelism * 2) {
+            final int from = nextTask * SOURCES_PER_TASK;
+            final int to = Math.min(sources.length, from + SOURCES_PER_TASK);
+            FutureTask<double[][]> task = new FutureTask<>(() -> compute(from, to));
+            if (parallelism > 1) {
+                ForkJoinPool.commonPool().execute(task);
+            } else {
+                task.run();
+            }
+            pending.add(task);
+            nextTask++;
+        }
+        try {
+            return pending.poll().get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("The shortest path computation has been interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new SQLException(ex.getCause());
+        }
+    }
+
+    /**
+     * Compute the distances of the sources [from, to[
+     */
+    private double[][] compute(int from, int to) {
+        CSRDijkstra dijkstra = searches.poll();
+        if (dijkstra == null) {
+            dijkstra = new CSRDijkstra(graph);
+        }
+        try {
+            final double[][] distances = new double[to - from][];
+            for (int i = from; i < to; i++) {
+                final int[] dest = destinations[i];
+                dijkstra.calculate(sources[i], dest);
+                final double[] row = new double[dest.length];
+                for (int j = 0; j < dest.length; j++) {
+                    row[j] = dijkstra.getDistance(dest[j]);
+                }
+                distances[i - from] = row;
+            }
+            return distances;
+        } finally {
+            searches.add(dijkstra);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Future<double[][]> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+        searches.clear();
+    }
+
+    @Override
+    public void reset() {
+        // The distances are not kept, they are computed again
+        close();
+        nextTask = 0;
+        chunkStart = 0;
+        chunk = null;
+        sourceIndex = 0;
+        destinationIndex = 0;
+    }
+}
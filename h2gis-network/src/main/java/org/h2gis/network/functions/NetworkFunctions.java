@@ -47,7 +47,11 @@ public class NetworkFunctions {
         return new Function[]{
             new ST_Accessibility(),
             new ST_ConnectedComponents(),
+            new ST_ContractedPathLength(),
+            new ST_ContractionHierarchy(),
             new ST_GraphAnalysis(),
+            new ST_GraphCache(),
+            new ST_Isochrone(),
             new ST_ShortestPathLength(),
             new ST_ShortestPathTree(),
             new ST_ShortestPath()
@@ -21,6 +21,7 @@ package org.h2gis.network.functions;
 
 
 import org.h2.tools.SimpleResultSet;
+import org.h2.tools.SimpleRowSource;
 import org.h2gis.api.ScalarFunction;
 import org.h2gis.utilities.TableLocation;
 import org.h2gis.utilities.TableUtilities;
@@ -31,6 +32,7 @@ import org.javanetworkanalyzer.model.KeyedGraph;
 
 import java.sql.*;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
 
 import static org.h2gis.network.functions.GraphConstants.*;
@@ -122,14 +124,44 @@ public class ST_Accessibility extends GraphFunction implements ScalarFunction {
 
     private static ResultSet compute(KeyedGraph<VAccess, Edge> graph,
                                      Set<VAccess> destinations) throws SQLException {
-        SimpleResultSet output = prepareResultSet();
         new AccessibilityAnalyzer(graph, destinations).compute();
-        for (VAccess v : graph.vertexSet()) {
-            output.addRow(v.getID(), v.getClosestDestinationId(), v.getDistanceToClosestDestination());
-        }
+        SimpleResultSet output = new SimpleResultSet(new AccessibilityRowSource(graph));
+        addColumns(output);
         return output;
     }
 
+    /**
+     * Rows read from the vertices of the analyzed graph as they are fetched.
+     */
+    private static final class AccessibilityRowSource implements SimpleRowSource {
+
+        private final KeyedGraph<VAccess, Edge> graph;
+        private Iterator<VAccess> vertices;
+
+        AccessibilityRowSource(KeyedGraph<VAccess, Edge> graph) {
+            this.graph = graph;
+            reset();
+        }
+
+        @Override
+        public Object[] readRow() {
+            if (!vertices.hasNext()) {
+                return null;
+            }
+            final VAccess v = vertices.next();
+            return new Object[]{v.getID(), v.getClosestDestinationId(), v.getDistanceToClosestDestination()};
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void reset() {
+            vertices = graph.vertexSet().iterator();
+        }
+    }
+
     private static Set<VAccess> prepareDestSet(KeyedGraph<VAccess, Edge> graph, int[] dests) {
         Set<VAccess> destinations = new HashSet<VAccess>();
         for (int i = 0; i < dests.length; i++) {
@@ -158,9 +190,13 @@ public class ST_Accessibility extends GraphFunction implements ScalarFunction {
 
     private static SimpleResultSet prepareResultSet() {
         SimpleResultSet output = new SimpleResultSet();
+        addColumns(output);
+        return output;
+    }
+
+    private static void addColumns(SimpleResultSet output) {
         output.addColumn(SOURCE, Types.INTEGER, 10, 0);
         output.addColumn(CLOSEST_DEST, Types.INTEGER, 10, 0);
         output.addColumn(DISTANCE, Types.DOUBLE, 10, 0);
-        return output;
     }
 }
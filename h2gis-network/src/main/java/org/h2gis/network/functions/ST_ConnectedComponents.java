@@ -22,23 +22,14 @@ package org.h2gis.network.functions;
 import org.h2gis.api.ScalarFunction;
 import org.h2gis.utilities.TableLocation;
 import org.h2gis.utilities.TableUtilities;
-import org.javanetworkanalyzer.data.VUCent;
-import org.javanetworkanalyzer.model.Edge;
-import org.javanetworkanalyzer.model.KeyedGraph;
-import org.jgrapht.DirectedGraph;
-import org.jgrapht.Graph;
-import org.jgrapht.UndirectedGraph;
-import org.jgrapht.alg.ConnectivityInspector;
-import org.jgrapht.alg.GabowStrongConnectivityInspector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
-import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.List;
-import java.util.Set;
+import java.util.Arrays;
 
 import static org.h2gis.network.functions.GraphConstants.*;
 import static org.h2gis.network.functions.GraphFunctionParser.Orientation.UNDIRECTED;
@@ -48,11 +39,15 @@ import static org.h2gis.network.functions.GraphFunctionParser.parseGlobalOrienta
  * Calculates the connected components (for undirected graphs) or strongly
  * connected components (for directed graphs) of a graph.
  *
+ * <p>The components are found by {@link GraphComponents} without building a
+ * JGraphT graph. The component of an edge is deduced in memory from the
+ * components of its end points, then both tables are written in batches.
+ *
  * @author Adam Gouge
  */
 public class ST_ConnectedComponents  extends GraphFunction implements ScalarFunction {
 
-    protected static final int BATCH_SIZE = 100;
+    protected static final int BATCH_SIZE = BatchWriter.BATCH_SIZE;
     public static final int NULL_CONNECTED_COMPONENT_NUMBER = -1;
     private static final Logger LOGGER = LoggerFactory.getLogger("gui." + ST_ConnectedComponents.class);
     public static final String REMARKS =
@@ -91,19 +86,14 @@ public class ST_ConnectedComponents  extends GraphFunction implements ScalarFunc
     public static boolean getConnectedComponents(Connection connection,
                                                  String inputTable,
                                                  String orientation) throws SQLException {
-        KeyedGraph graph = prepareGraph(connection, inputTable, orientation, null,
-                VUCent.class, Edge.class);
-        if (graph == null) {
-            return false;
-        }
-        final List<Set<VUCent>> componentsList = getConnectedComponents(graph, orientation);
-
         final TableLocation tableName = TableUtilities.parseInputTable(connection, inputTable);
         final TableLocation nodesName = TableUtilities.suffixTableLocation(tableName, NODE_COMP_SUFFIX);
         final TableLocation edgesName = TableUtilities.suffixTableLocation(tableName, EDGE_COMP_SUFFIX);
 
-        if (storeNodeConnectedComponents(connection, nodesName, edgesName, componentsList)) {
-            return storeEdgeConnectedComponents(connection, tableName, nodesName, edgesName);
+        final Edges edges = new Edges(connection, tableName);
+        final GraphComponents components = getConnectedComponents(connection, inputTable, orientation, edges);
+        if (storeNodeConnectedComponents(connection, nodesName, edgesName, components)) {
+            return storeEdgeConnectedComponents(connection, nodesName, edgesName, components, edges);
         }
         return false;
     }
@@ -124,75 +114,58 @@ public class ST_ConnectedComponents  extends GraphFunction implements ScalarFunc
         }
     }
 
-    private static List<Set<VUCent>> getConnectedComponents(Graph<VUCent, Edge> graph,
-                                                            String orientation) {
-        LOGGER.info("Calculating connected components... ");
-        final long start = System.currentTimeMillis();
-        List<Set<VUCent>> sets;
+    private static GraphComponents getConnectedComponents(Connection connection,
+                                                          String inputTable,
+                                                          String orientation,
+                                                          Edges edges) throws SQLException {
         if (parseGlobalOrientation(orientation).equals(UNDIRECTED)) {
-            sets = new ConnectivityInspector<VUCent, Edge>(
-                    (UndirectedGraph<VUCent, Edge>) graph).connectedSets();
-        } else {
-            sets = new GabowStrongConnectivityInspector<VUCent, Edge>(
-                    (DirectedGraph) graph).stronglyConnectedSets();
+            LOGGER.info("Calculating connected components... ");
+            final long start = System.currentTimeMillis();
+            final GraphComponents components =
+                    GraphComponents.undirected(edges.startNodes, edges.endNodes, edges.count);
+            logTime(LOGGER, start);
+            return components;
         }
+        final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, null);
+        LOGGER.info("Calculating connected components... ");
+        final long start = System.currentTimeMillis();
+        final GraphComponents components = GraphComponents.strong(graph);
         logTime(LOGGER, start);
-        return sets;
+        return components;
     }
 
     private static boolean storeNodeConnectedComponents(Connection connection,
                                                         TableLocation nodesName,
                                                         TableLocation edgesName,
-                                                        List<Set<VUCent>> componentsList)
+                                                        GraphComponents components)
             throws SQLException {
         LOGGER.info("Storing node connected components... ");
         final long start = System.currentTimeMillis();
-        createNodeTable(connection, nodesName);
-        final PreparedStatement nodeSt =
-                connection.prepareStatement("INSERT INTO " + nodesName + " VALUES(?,?)");
         try {
-            connection.setAutoCommit(false);
-            final boolean previousAutoCommit = connection.getAutoCommit();
-            int componentNumber = 0;
-            for (Set<VUCent> component : componentsList) {
-                componentNumber++;
-                int count = 0;
-                for (VUCent v : component) {
-                    nodeSt.setInt(1, v.getID());
-                    nodeSt.setInt(2, componentNumber);
-                    nodeSt.addBatch();
-                    count++;
-                    if (count >= BATCH_SIZE) {
-                        nodeSt.executeBatch();
-                        connection.commit();
-                        nodeSt.clearBatch();
-                        count = 0;
-                    }
-                }
-                if (count > 0) {
-                    nodeSt.executeBatch();
-                    connection.commit();
-                    nodeSt.clearBatch();
+            createTable(connection, nodesName, NODE_ID);
+            try (BatchWriter writer = new BatchWriter(connection, nodesName, 2)) {
+                for (int i = 0; i < components.getVertexCount(); i++) {
+                    writer.setInt(1, components.getVertexId(i));
+                    writer.setInt(2, components.getComponent(i));
+                    writer.addRow();
                 }
+                writer.commit();
             }
-            connection.setAutoCommit(true);
         } catch (SQLException e) {
             cancel(connection, nodesName, edgesName, e, "Could not store node connected components.");
             return false;
-        } finally {
-            connection.setAutoCommit(true);
-            nodeSt.close();
         }
         logTime(LOGGER, start);
         return true;
     }
 
-    private static void createNodeTable(Connection connection,
-                                        TableLocation nodesName) throws SQLException {
+    private static void createTable(Connection connection,
+                                    TableLocation name,
+                                    String idColumn) throws SQLException {
         final Statement st = connection.createStatement();
         try {
-            st.execute("CREATE TABLE " + nodesName + "(" +
-                    NODE_ID + " INTEGER PRIMARY KEY, " +
+            st.execute("CREATE TABLE " + name + "(" +
+                    idColumn + " INTEGER PRIMARY KEY, " +
                     CONNECTED_COMPONENT + " INTEGER);");
         } finally {
             st.close();
@@ -200,60 +173,64 @@ public class ST_ConnectedComponents  extends GraphFunction implements ScalarFunc
     }
 
     private static boolean storeEdgeConnectedComponents(Connection connection,
-                                                        TableLocation tableName,
                                                         TableLocation nodesName,
-                                                        TableLocation edgesName) throws SQLException {
+                                                        TableLocation edgesName,
+                                                        GraphComponents components,
+                                                        Edges edges) throws SQLException {
         LOGGER.info("Storing edge connected components...");
         final long start = System.currentTimeMillis();
-        final Statement st = connection.createStatement();
         try {
-            final String tmpName = "TMP" + System.currentTimeMillis();
-            final String startNodeCC = "SN_CC";
-            final String endNodeCC = "EN_CC";
-            st.execute(
-                // Create a temporary table containing the connected component
-                // of each start node.
-                "CREATE INDEX ON " + tableName + "(" + START_NODE + ");" +
-                "CREATE INDEX ON " + nodesName + "(" + NODE_ID + ");" +
-                "CREATE TEMPORARY TABLE " + tmpName +
-                "(" + EDGE_ID + " INT PRIMARY KEY, " + startNodeCC + " INT, " + endNodeCC + " INT) " +
-                "AS SELECT A." + EDGE_ID + ", B." + CONNECTED_COMPONENT + ", NULL " +
-                "FROM " + tableName + " A, " + nodesName + " B " +
-                "WHERE A." + START_NODE + "=B." + NODE_ID + ";" +
-                // Add indices to speed up the UPDATE.
-                "CREATE INDEX ON " + tableName + "(" + END_NODE + ");" +
-                "CREATE INDEX ON " + tableName + "(" + EDGE_ID + ");" +
-                "CREATE INDEX ON " + tmpName + "(" + EDGE_ID + ");" +
-                // Update the temporary table with the connected component
-                // of each end node.
-                "UPDATE " + tmpName + " C " +
-                "SET " + endNodeCC + "=(" +
-                "SELECT B." + CONNECTED_COMPONENT + " " +
-                "FROM " + tableName + " A, " + nodesName + " B " +
-                "WHERE A." + END_NODE + "=B." + NODE_ID + " AND C." + EDGE_ID + "=A." + EDGE_ID + ");" +
-                // Use this temporary table to deduce the connected component
-                // of each edge. If the start and end node are in the same
-                // connected component, then so is the edge. If they are in
-                // different connected components (this is only possible for
-                // directed graphs), then we consider that this edge is not in
-                // a strongly connected component and so assign a connected
-                // component id of NULL_CONNECTED_COMPONENT_NUMBER.
-                "CREATE TABLE " + edgesName +
-                "(" + EDGE_ID + " INT PRIMARY KEY, " + CONNECTED_COMPONENT + " INT) AS " +
-                "SELECT " + EDGE_ID + ", " + startNodeCC + " " +
-                "FROM " + tmpName + " WHERE " + startNodeCC + "=" + endNodeCC + "; " +
-                "INSERT INTO " + edgesName + "(" + EDGE_ID + ", " + CONNECTED_COMPONENT + ") " +
-                "SELECT " + EDGE_ID + ", " + NULL_CONNECTED_COMPONENT_NUMBER +
-                " FROM " + tmpName + " WHERE " + startNodeCC + "!=" + endNodeCC + ";" +
-                // Drop the temporary table.
-                "DROP TABLE IF EXISTS " + tmpName + ";");
+            createTable(connection, edgesName, EDGE_ID);
+            try (BatchWriter writer = new BatchWriter(connection, edgesName, 2)) {
+                for (int e = 0; e < edges.count; e++) {
+                    // If the start and end node are in the same connected
+                    // component, then so is the edge. If they are in different
+                    // connected components (this is only possible for directed
+                    // graphs), then we consider that this edge is not in a
+                    // strongly connected component.
+                    final int startComponent = components.getComponentOf(edges.startNodes[e]);
+                    final int endComponent = components.getComponentOf(edges.endNodes[e]);
+                    writer.setInt(1, edges.edgeIds[e]);
+                    writer.setInt(2, startComponent == endComponent ?
+                            startComponent : NULL_CONNECTED_COMPONENT_NUMBER);
+                    writer.addRow();
+                }
+                writer.commit();
+            }
         } catch (SQLException e) {
             cancel(connection, nodesName, edgesName, e, "Could not store edge connected components.");
             return false;
-        } finally {
-            st.close();
         }
         logTime(LOGGER, start);
         return true;
     }
+
+    /**
+     * Id and end points of the edges of the input table
+     */
+    private static final class Edges {
+        private int[] edgeIds = new int[1024];
+        private int[] startNodes = new int[1024];
+        private int[] endNodes = new int[1024];
+        private int count = 0;
+
+        Edges(Connection connection, TableLocation tableName) throws SQLException {
+            try (Statement st = connection.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT " + EDGE_ID + ", " + START_NODE + ", " +
+                         END_NODE + " FROM " + tableName)) {
+                while (rs.next()) {
+                    if (count == edgeIds.length) {
+                        final int capacity = count * 2;
+                        edgeIds = Arrays.copyOf(edgeIds, capacity);
+                        startNodes = Arrays.copyOf(startNodes, capacity);
+                        endNodes = Arrays.copyOf(endNodes, capacity);
+                    }
+                    edgeIds[count] = rs.getInt(1);
+                    startNodes[count] = rs.getInt(2);
+                    endNodes[count] = rs.getInt(3);
+                    count++;
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,76 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+
+package org.h2gis.network.functions;
+
+import org.h2gis.api.ScalarFunction;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Calculates the shortest path length between two vertices with a
+ * contraction hierarchy built by {@link ST_ContractionHierarchy}.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public class ST_ContractedPathLength extends GraphFunction implements ScalarFunction {
+
+    public static final String REMARKS =
+            "`ST_ContractedPathLength` calculates the length of the shortest path between\n" +
+            "two vertices with a contraction hierarchy built by `ST_ContractionHierarchy`.\n" +
+            "The orientation and weights are the ones given to `ST_ContractionHierarchy`.\n" +
+            "Returns Infinity if the destination is not reachable. Signature:\n" +
+            "* `ST_ContractedPathLength('input_edges_CH', s, d)`\n" +
+            "\n" +
+            "where\n" +
+            "* `input_edges_CH` = Table produced by `ST_ContractionHierarchy` from table `input_edges`\n" +
+            "* `s` = Source vertex id\n" +
+            "* `d` = Destination vertex id\n";
+
+    /**
+     * Constructor
+     */
+    public ST_ContractedPathLength() {
+        addProperty(PROP_REMARKS, REMARKS);
+    }
+
+    @Override
+    public String getJavaStaticMethod() {
+        return "getContractedPathLength";
+    }
+
+    /**
+     * @param connection  Connection
+     * @param chTable     Table produced by ST_ContractionHierarchy
+     * @param source      Source vertex id
+     * @param destination Destination vertex id
+     * @return The shortest path length, infinity if the destination is not
+     * reachable
+     * @throws SQLException
+     */
+    public static double getContractedPathLength(Connection connection,
+                                                 String chTable,
+                                                 int source,
+                                                 int destination) throws SQLException {
+        return GraphCache.getContractionHierarchy(connection, chTable).distance(source, destination);
+    }
+}
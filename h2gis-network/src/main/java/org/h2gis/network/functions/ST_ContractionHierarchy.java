@@ -0,0 +1,105 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+
+package org.h2gis.network.functions;
+
+import org.h2gis.api.ScalarFunction;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.TableUtilities;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.h2gis.network.functions.GraphConstants.CH_SUFFIX;
+
+/**
+ * Preprocesses the graph of an edges table into a contraction hierarchy
+ * stored in the table input_edges_CH, queried by
+ * {@link ST_ContractedPathLength}.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public class ST_ContractionHierarchy extends GraphFunction implements ScalarFunction {
+
+    public static final String REMARKS =
+            "`ST_ContractionHierarchy` preprocesses a graph into a contraction hierarchy\n" +
+            "stored in the table `input_edges_CH`, so that `ST_ContractedPathLength`\n" +
+            "answers point to point shortest path length queries in a few searched\n" +
+            "vertices. The hierarchy must be built again when the edges change.\n" +
+            "Possible signatures:\n" +
+            "* `ST_ContractionHierarchy('input_edges', 'o[ - eo]')`\n" +
+            "* `ST_ContractionHierarchy('input_edges', 'o[ - eo]', 'w')`\n" +
+            "\n" +
+            "where\n" +
+            "* `input_edges` = Edges table produced by `ST_Graph` from table `input`\n" +
+            "* `o` = Global orientation (directed, reversed or undirected)\n" +
+            "* `eo` = Edge orientation (1 = directed, -1 = reversed, 0 = undirected).\n" +
+            "  Required if global orientation is directed or reversed.\n" +
+            "* `w` = Name of column containing edge weights as doubles\n";
+
+    /**
+     * Constructor
+     */
+    public ST_ContractionHierarchy() {
+        addProperty(PROP_REMARKS, REMARKS);
+    }
+
+    @Override
+    public String getJavaStaticMethod() {
+        return "contractionHierarchy";
+    }
+
+    /**
+     * Build the contraction hierarchy of an unweighted graph
+     *
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @return True if the hierarchy was stored
+     * @throws SQLException
+     */
+    public static boolean contractionHierarchy(Connection connection,
+                                               String inputTable,
+                                               String orientation) throws SQLException {
+        return contractionHierarchy(connection, inputTable, orientation, null);
+    }
+
+    /**
+     * Build the contraction hierarchy of a graph
+     *
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @param weight      Weight column name, null for unweighted graphs
+     * @return True if the hierarchy was stored
+     * @throws SQLException
+     */
+    public static boolean contractionHierarchy(Connection connection,
+                                               String inputTable,
+                                               String orientation,
+                                               String weight) throws SQLException {
+        final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
+        final TableLocation tableName = TableUtilities.parseInputTable(connection, inputTable);
+        final TableLocation chName = TableUtilities.suffixTableLocation(tableName, CH_SUFFIX);
+        ContractionHierarchy.contract(graph).save(connection, chName);
+        return true;
+    }
+}
@@ -19,28 +19,19 @@
  */
 package org.h2gis.network.functions;
 
+import org.h2.value.Value;
+import org.h2.value.ValueInteger;
+import org.h2.value.ValueVarchar;
 import org.h2gis.api.ScalarFunction;
 import org.h2gis.utilities.TableLocation;
 import org.h2gis.utilities.TableUtilities;
-import org.javanetworkanalyzer.analyzers.GraphAnalyzer;
-import org.javanetworkanalyzer.analyzers.UnweightedGraphAnalyzer;
-import org.javanetworkanalyzer.analyzers.WeightedGraphAnalyzer;
-import org.javanetworkanalyzer.data.VCent;
-import org.javanetworkanalyzer.data.VUCent;
-import org.javanetworkanalyzer.data.VWCent;
-import org.javanetworkanalyzer.model.EdgeCent;
-import org.javanetworkanalyzer.model.KeyedGraph;
-import org.javanetworkanalyzer.progress.DefaultProgressMonitor;
-import org.jgrapht.WeightedGraph;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.InvocationTargetException;
 import java.sql.Connection;
-import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.h2gis.network.functions.GraphConstants.*;
 
@@ -52,7 +43,7 @@ import static org.h2gis.network.functions.GraphConstants.*;
  */
 public class ST_GraphAnalysis extends GraphFunction implements ScalarFunction {
 
-    protected static final int BATCH_SIZE = 100;
+    protected static final int BATCH_SIZE = BatchWriter.BATCH_SIZE;
     private static final Logger LOGGER = LoggerFactory.getLogger(ST_GraphAnalysis.class);
 
     public static final String REMARKS =
@@ -60,6 +51,8 @@ public class ST_GraphAnalysis extends GraphFunction implements ScalarFunction {
             "as well as betweenness centrality for edges. Possible signatures:\n" +
             "* `ST_GraphAnalysis('input_edges', 'o[ - eo]')`\n" +
             "* `ST_GraphAnalysis('input_edges', 'o[ - eo]', 'w')`\n" +
+            "* `ST_GraphAnalysis('input_edges', 'o[ - eo]', p)`\n" +
+            "* `ST_GraphAnalysis('input_edges', 'o[ - eo]', 'w', p)`\n" +
             "\n" +
             "where\n" +
             "* `input_edges` = Edges table produced by `ST_Graph` from table `input`\n" +
@@ -67,6 +60,11 @@ public class ST_GraphAnalysis extends GraphFunction implements ScalarFunction {
             "* `eo` = Edge orientation (1 = directed, -1 = reversed, 0 = undirected).\n" +
             "  Required if global orientation is directed or reversed.\n" +
             "* `w` = Name of column containing edge weights as doubles\n" +
+            "* `p` = Number of pivots. When smaller than the number of nodes, the centrality\n" +
+            "  is estimated from the shortest paths of `p` randomly chosen nodes only\n" +
+            "  (0 = exact computation). The pivots are chosen with a fixed seed.\n" +
+            "\n" +
+            "The shortest paths of the nodes are computed in parallel.\n" +
             "\n" +
             "**WARNING**: If ST_GraphAnalysis is called on a graph with more than one\n" +
             "(strongly) connected component, all closeness centrality scores will be zero.\n" +
@@ -93,17 +91,35 @@ public class ST_GraphAnalysis extends GraphFunction implements ScalarFunction {
      * @param orientation Global orientation
      * @return True if the calculation was successful
      * @throws SQLException
-     * @throws NoSuchMethodException
-     * @throws InstantiationException
-     * @throws IllegalAccessException
-     * @throws InvocationTargetException
      */
     public static boolean doGraphAnalysis(Connection connection,
                                           String inputTable,
-                                          String orientation)
-            throws SQLException, NoSuchMethodException, InstantiationException,
-            IllegalAccessException, InvocationTargetException {
-        return doGraphAnalysis(connection, inputTable, orientation, null);
+                                          String orientation) throws SQLException {
+        return doGraphAnalysis(connection, inputTable, orientation, null, 0);
+    }
+
+    /**
+     * Calculate centrality indices on the nodes and edges of a graph
+     * constructed from the input table.
+     *
+     * @param connection  Connection
+     * @param inputTable  Input table
+     * @param orientation Global orientation
+     * @param arg3        Edge weight column name or number of pivots
+     * @return True if the calculation was successful
+     * @throws SQLException
+     */
+    public static boolean doGraphAnalysis(Connection connection,
+                                          String inputTable,
+                                          String orientation,
+                                          Value arg3) throws SQLException {
+        if (arg3 instanceof ValueVarchar) {
+            return doGraphAnalysis(connection, inputTable, orientation, arg3.getString(), 0);
+        } else if (arg3 instanceof ValueInteger) {
+            return doGraphAnalysis(connection, inputTable, orientation, null, arg3.getInt());
+        } else {
+            throw new IllegalArgumentException(ARG_ERROR + arg3);
+        }
     }
 
     /**
@@ -113,29 +129,29 @@ public class ST_GraphAnalysis extends GraphFunction implements ScalarFunction {
      * @param connection  Connection
      * @param inputTable  Input table
      * @param orientation Global orientation
-     * @param weight      Edge weight column name
+     * @param weight      Edge weight column name, null for unweighted graphs
+     * @param pivots      Number of nodes the centrality is estimated from, 0
+     *                    for an exact computation
      * @return True if the calculation was successful
      * @throws SQLException
-     * @throws InvocationTargetException
-     * @throws NoSuchMethodException
-     * @throws InstantiationException
-     * @throws IllegalAccessException
      */
     public static boolean doGraphAnalysis(Connection connection,
                                           String inputTable,
                                           String orientation,
-                                          String weight)
-            throws SQLException, InvocationTargetException, NoSuchMethodException,
-            InstantiationException, IllegalAccessException {
+                                          String weight,
+                                          int pivots) throws SQLException {
+        if (pivots < 0) {
+            throw new IllegalArgumentException("The number of pivots must be positive: " + pivots);
+        }
         final TableLocation tableName = TableUtilities.parseInputTable(connection, inputTable);
         final TableLocation nodesName = TableUtilities.suffixTableLocation(tableName, NODE_CENT_SUFFIX);
         final TableLocation edgesName = TableUtilities.suffixTableLocation(tableName, EDGE_CENT_SUFFIX);
         try {
             createTables(connection, nodesName, edgesName);
-            final KeyedGraph graph =
-                    doAnalysisAndReturnGraph(connection, inputTable, orientation, weight);
-            storeNodeCentrality(connection, nodesName, graph);
-            storeEdgeCentrality(connection, edgesName, graph);
+            final CSRCentrality centrality =
+                    doAnalysis(connection, inputTable, orientation, weight, pivots);
+            storeNodeCentrality(connection, nodesName, centrality);
+            storeEdgeCentrality(connection, edgesName, centrality);
         } catch (SQLException e) {
             LOGGER.error("Problem creating centrality tables.");
             final Statement statement = connection.createStatement();
@@ -150,20 +166,22 @@ public class ST_GraphAnalysis extends GraphFunction implements ScalarFunction {
         return true;
     }
 
-    private static KeyedGraph doAnalysisAndReturnGraph(Connection connection,
-                                                       String inputTable,
-                                                       String orientation,
-                                                       String weight)
-            throws SQLException, NoSuchMethodException, InstantiationException,
-            IllegalAccessException, InvocationTargetException {
-        final KeyedGraph graph = prepareGraph(connection, inputTable, orientation, weight,
-                (weight == null) ? VUCent.class : VWCent.class, EdgeCent.class);
-        final DefaultProgressMonitor pm = new DefaultProgressMonitor();
-        GraphAnalyzer analyzer = (weight == null) ?
-                new UnweightedGraphAnalyzer(graph, pm) :
-                new WeightedGraphAnalyzer((WeightedGraph) graph, pm);
-        analyzer.computeAll();
-        return graph;
+    private static CSRCentrality doAnalysis(Connection connection,
+                                            String inputTable,
+                                            String orientation,
+                                            String weight,
+                                            int pivots) throws SQLException {
+        final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
+        final GraphFunctionParser parser = new GraphFunctionParser();
+        parser.parseWeightAndOrientation(orientation, weight);
+        final boolean undirected =
+                parser.getGlobalOrientation() == GraphFunctionParser.Orientation.UNDIRECTED;
+        LOGGER.info("Computing centrality...");
+        final long start = System.currentTimeMillis();
+        final CSRCentrality centrality = CSRCentrality.compute(graph, weight != null, undirected,
+                pivots, ForkJoinPool.getCommonPoolParallelism());
+        logTime(LOGGER, start);
+        return centrality;
     }
 
     private static void createTables(Connection connection,
@@ -185,64 +203,29 @@ public class ST_GraphAnalysis extends GraphFunction implements ScalarFunction {
 
     private static void storeNodeCentrality(Connection connection,
                                             TableLocation nodesName,
-                                            KeyedGraph graph) throws SQLException {
-        final PreparedStatement nodeSt =
-                connection.prepareStatement("INSERT INTO " + nodesName + " VALUES(?,?,?)");
-        try {
-            connection.setAutoCommit(false);
-            int count = 0;
-            for (VCent v : (Set<VCent>) graph.vertexSet()) {
-                nodeSt.setInt(1, v.getID());
-                nodeSt.setDouble(2, v.getBetweenness());
-                nodeSt.setDouble(3, v.getCloseness());
-                nodeSt.addBatch();
-                count++;
-                if (count >= BATCH_SIZE) {
-                    nodeSt.executeBatch();
-                    connection.commit();
-                    nodeSt.clearBatch();
-                    count = 0;
-                }
-            }
-            if (count > 0) {
-                nodeSt.executeBatch();
-                connection.commit();
-                nodeSt.clearBatch();
+                                            CSRCentrality centrality) throws SQLException {
+        final CSRGraph graph = centrality.getGraph();
+        try (BatchWriter writer = new BatchWriter(connection, nodesName, 3)) {
+            for (int v = 0; v < graph.getVertexCount(); v++) {
+                writer.setInt(1, graph.getVertexId(v));
+                writer.setDouble(2, centrality.getBetweenness(v));
+                writer.setDouble(3, centrality.getCloseness(v));
+                writer.addRow();
             }
-        } finally {
-            connection.setAutoCommit(true);
-            nodeSt.close();
+            writer.commit();
         }
     }
 
     private static void storeEdgeCentrality(Connection connection,
                                             TableLocation edgesName,
-                                            KeyedGraph graph) throws SQLException {
-        final PreparedStatement edgeSt =
-                connection.prepareStatement("INSERT INTO " + edgesName + " VALUES(?,?)");
-        try {
-            connection.setAutoCommit(false);
-            int count = 0;
-            for (EdgeCent e : (Set<EdgeCent>) graph.edgeSet()) {
-                edgeSt.setInt(1, e.getID());
-                edgeSt.setDouble(2, e.getBetweenness());
-                edgeSt.addBatch();
-                count++;
-                if (count >= BATCH_SIZE) {
-                    edgeSt.executeBatch();
-                    connection.commit();
-                    edgeSt.clearBatch();
-                    count = 0;
-                }
-            }
-            if (count > 0) {
-                edgeSt.executeBatch();
-                connection.commit();
-                edgeSt.clearBatch();
+                                            CSRCentrality centrality) throws SQLException {
+        try (BatchWriter writer = new BatchWriter(connection, edgesName, 2)) {
+            for (int i = 0; i < centrality.getEdgeCount(); i++) {
+                writer.setInt(1, centrality.getEdgeId(i));
+                writer.setDouble(2, centrality.getEdgeBetweenness(i));
+                writer.addRow();
             }
-        } finally {
-            connection.setAutoCommit(true);
-            edgeSt.close();
+            writer.commit();
         }
     }
 }
@@ -0,0 +1,129 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import org.h2gis.api.ScalarFunction;
+import org.javanetworkanalyzer.data.VDijkstra;
+import org.javanetworkanalyzer.model.Edge;
+import org.javanetworkanalyzer.model.KeyedGraph;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Loads or drops the graphs kept in memory by the shortest path functions.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public class ST_GraphCache extends GraphFunction implements ScalarFunction {
+
+    public static final String REMARKS =
+            "`ST_GraphCache` manages the graphs kept in memory by `ST_ShortestPath`,\n" +
+            "`ST_ShortestPathLength` and `ST_ShortestPathTree`. A cached graph is reused\n" +
+            "until its edges table is modified. Possible signatures:\n" +
+            "* `ST_GraphCache()` - Drop all the cached graphs, returns the number of dropped graphs\n" +
+            "* `ST_GraphCache('input_edges')` - Drop the graphs of `input_edges`, returns the number of dropped graphs\n" +
+            "* `ST_GraphCache('input_edges', 'o[ - eo]')` - Load the graph, returns its number of edges\n" +
+            "* `ST_GraphCache('input_edges', 'o[ - eo]', 'w')` - Load the weighted graph, returns its number of edges\n" +
+            "\n" +
+            "where\n" +
+            "* `input_edges` = Edges table produced by `ST_Graph` from table `input`\n" +
+            "* `o` = Global orientation (directed, reversed or undirected)\n" +
+            "* `eo` = Edge orientation (1 = directed, -1 = reversed, 0 = undirected).\n" +
+            "  Required if global orientation is directed or reversed.\n" +
+            "* `w` = Name of column containing edge weights as doubles\n";
+
+    /**
+     * Constructor
+     */
+    public ST_GraphCache() {
+        addProperty(PROP_REMARKS, REMARKS);
+    }
+
+    @Override
+    public String getJavaStaticMethod() {
+        return "graphCache";
+    }
+
+    /**
+     * Drop all the cached graphs of the database
+     *
+     * @param connection Connection
+     * @return Number of dropped graphs
+     * @throws SQLException
+     */
+    public static int graphCache(Connection connection) throws SQLException {
+        return GraphCache.clear(connection);
+    }
+
+    /**
+     * Drop the cached graphs of the edges table
+     *
+     * @param connection Connection
+     * @param inputTable Edges table produced by ST_Graph
+     * @return Number of dropped graphs
+     * @throws SQLException
+     */
+    public static int graphCache(Connection connection, String inputTable) throws SQLException {
+        return GraphCache.drop(connection, inputTable);
+    }
+
+    /**
+     * Load the unweighted graph in the cache
+     *
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @return Number of edges of the graph
+     * @throws SQLException
+     */
+    public static int graphCache(Connection connection, String inputTable,
+                                 String orientation) throws SQLException {
+        return graphCache(connection, inputTable, orientation, null);
+    }
+
+    /**
+     * Load the graph in the cache, both as a JGraphT graph for the path
+     * functions and as a compressed graph for ST_ShortestPathLength
+     *
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @param weight      Weight column name, null for unweighted graphs
+     * @return Number of edges of the graph
+     * @throws SQLException
+     */
+    public static int graphCache(Connection connection, String inputTable,
+                                 String orientation, String weight) throws SQLException {
+        prepareCSRGraph(connection, inputTable, orientation, weight);
+        final KeyedGraph<VDijkstra, Edge> graph =
+                acquireGraph(connection, inputTable, orientation, weight,
+                        VDijkstra.class, Edge.class);
+        if (graph == null) {
+            return 0;
+        }
+        try {
+            return graph.edgeSet().size();
+        } finally {
+            releaseGraph(graph);
+        }
+    }
+}
@@ -0,0 +1,441 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+
+
+package org.h2gis.network.functions;
+
+import org.h2.tools.SimpleResultSet;
+import org.h2.tools.SimpleRowSource;
+import org.h2.value.Value;
+import org.h2.value.ValueVarchar;
+import org.h2gis.api.ScalarFunction;
+import org.h2gis.utilities.GeometryTableUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.TableUtilities;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.h2gis.network.functions.GraphConstants.*;
+import static org.h2gis.utilities.TableUtilities.isColumnListConnection;
+
+/**
+ * Calculates the vertices, or the areas, reachable from sources within one
+ * or more cost thresholds.
+ *
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public class ST_Isochrone extends GraphFunction implements ScalarFunction {
+
+    public static final String REMARKS =
+            "`ST_Isochrone` calculates what is reachable from each source within one or more\n" +
+            "cost thresholds. The search of a source stops at the largest threshold.\n" +
+            "Possible signatures:\n" +
+            "* `ST_Isochrone('input_edges', 'o[ - eo]', 'ss', 'ts')` - Reached vertices\n" +
+            "* `ST_Isochrone('input_edges', 'o[ - eo]', 'w', 'ss', 'ts')` - Reached vertices\n" +
+            "* `ST_Isochrone('input_edges', 'o[ - eo]', 'ss', 'ts', b)` - Areas\n" +
+            "* `ST_Isochrone('input_edges', 'o[ - eo]', 'w', 'ss', 'ts', b)` - Areas\n" +
+            "\n" +
+            "where\n" +
+            "* `input_edges` = Edges table produced by `ST_Graph` from table `input`\n" +
+            "* `o` = Global orientation (directed, reversed or undirected)\n" +
+            "* `eo` = Edge orientation (1 = directed, -1 = reversed, 0 = undirected).\n" +
+            "  Required if global orientation is directed or reversed.\n" +
+            "* `w` = Name of column containing edge weights as doubles\n" +
+            "* `ss` = Comma-separated source string ('src1, src2, ...') or source table name\n" +
+            "  (must contain a SOURCE column of integer vertex ids)\n" +
+            "* `ts` = Comma-separated thresholds ('t1, t2, ...')\n" +
+            "* `b` = Buffer distance of the edges reached within each threshold\n" +
+            "\n" +
+            "Reached vertices are returned once per source with the smallest threshold\n" +
+            "they are within (`SOURCE`, `THRESHOLD`, `NODE_ID`, `DISTANCE`), so the vertices\n" +
+            "within `t` are the rows with `THRESHOLD <= t`. Areas are returned per source and\n" +
+            "threshold (`THE_GEOM`, `SOURCE`, `THRESHOLD`) as the buffer of the edges which\n" +
+            "can be entirely travelled within the threshold.\n";
+
+    /**
+     * Constructor
+     */
+    public ST_Isochrone() {
+        addProperty(PROP_REMARKS, REMARKS);
+    }
+
+    @Override
+    public String getJavaStaticMethod() {
+        return "getIsochrone";
+    }
+
+    /**
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @param sources     Source string or source table
+     * @param thresholds  Threshold string
+     * @return The reached vertices
+     * @throws SQLException
+     */
+    public static ResultSet getIsochrone(Connection connection,
+                                         String inputTable,
+                                         String orientation,
+                                         String sources,
+                                         String thresholds) throws SQLException {
+        return reachedVertices(connection, inputTable, orientation, null, sources, thresholds);
+    }
+
+    /**
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @param arg3        Weight or source string or source table
+     * @param arg4        Source string or source table, or threshold string
+     * @param arg5        Threshold string or buffer distance
+     * @return The reached vertices or areas
+     * @throws SQLException
+     */
+    public static ResultSet getIsochrone(Connection connection,
+                                         String inputTable,
+                                         String orientation,
+                                         String arg3,
+                                         String arg4,
+                                         Value arg5) throws SQLException {
+        if (arg5 instanceof ValueVarchar) {
+            return reachedVertices(connection, inputTable, orientation, arg3, arg4, arg5.getString());
+        }
+        try {
+            return areas(connection, inputTable, orientation, null, arg3, arg4, arg5.getDouble());
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException(ARG_ERROR + arg5, ex);
+        }
+    }
+
+    /**
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @param weight      Weight
+     * @param sources     Source string or source table
+     * @param thresholds  Threshold string
+     * @param buffer      Buffer distance of the reached edges
+     * @return The reached areas
+     * @throws SQLException
+     */
+    public static ResultSet getIsochrone(Connection connection,
+                                         String inputTable,
+                                         String orientation,
+                                         String weight,
+                                         String sources,
+                                         String thresholds,
+                                         double buffer) throws SQLException {
+        return areas(connection, inputTable, orientation, weight, sources, thresholds, buffer);
+    }
+
+    private static ResultSet reachedVertices(Connection connection,
+                                             String inputTable,
+                                             String orientation,
+                                             String weight,
+                                             String sources,
+                                             String thresholds) throws SQLException {
+        if (isColumnListConnection(connection)) {
+            return vertexColumns(new SimpleResultSet());
+        }
+        final double[] limits = parseThresholds(thresholds);
+        final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
+        return vertexColumns(new SimpleResultSet(
+                new VertexRowSource(graph, parseSources(connection, graph, sources), limits)));
+    }
+
+    private static SimpleResultSet vertexColumns(SimpleResultSet output) {
+        output.addColumn(SOURCE, Types.INTEGER, 10, 0);
+        output.addColumn(THRESHOLD, Types.DOUBLE, 10, 0);
+        output.addColumn(NODE_ID, Types.INTEGER, 10, 0);
+        output.addColumn(DISTANCE, Types.DOUBLE, 10, 0);
+        return output;
+    }
+
+    private static ResultSet areas(Connection connection,
+                                   String inputTable,
+                                   String orientation,
+                                   String weight,
+                                   String sources,
+                                   String thresholds,
+                                   double buffer) throws SQLException {
+        if (isColumnListConnection(connection)) {
+            return areaColumns(new SimpleResultSet());
+        }
+        final TableLocation tableName = TableUtilities.parseInputTable(connection, inputTable);
+        final String geometryField;
+        try {
+            geometryField = GeometryTableUtilities.getFirstGeometryColumnNameAndIndex(connection, tableName).first();
+        } catch (SQLException ex) {
+            throw new IllegalArgumentException(ST_ShortestPath.NO_GEOM_FIELD_ERROR, ex);
+        }
+        final double[] limits = parseThresholds(thresholds);
+        final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
+        final int[] sourceIndices = parseSources(connection, graph, sources);
+        // Search all the sources first, only the geometries of the reached edges are read
+        final ReachedEdges[] reached = new ReachedEdges[sourceIndices.length];
+        final Set<Integer> edgeIds = new HashSet<>();
+        final CSRDijkstra dijkstra = new CSRDijkstra(graph);
+        for (int i = 0; i < sourceIndices.length; i++) {
+            reached[i] = ReachedEdges.search(dijkstra, graph, sourceIndices[i], limits[limits.length - 1]);
+            for (int edgeID : reached[i].edgeIds) {
+                edgeIds.add(edgeID);
+            }
+        }
+        final Map<Integer, Geometry> edgeGeometries =
+                ST_ShortestPath.getEdgeGeometryMap(connection, tableName, geometryField, edgeIds);
+        // The areas keep the SRID of the edges, whether they come from one or several edges
+        final int srid = edgeGeometries.isEmpty()
+                ? GeometryTableUtilities.getSRID(connection, tableName, geometryField)
+                : edgeGeometries.values().iterator().next().getSRID();
+        return areaColumns(new SimpleResultSet(
+                new AreaRowSource(graph, sourceIndices, reached, limits, edgeGeometries, srid, buffer)));
+    }
+
+    private static SimpleResultSet areaColumns(SimpleResultSet output) {
+        output.addColumn(THE_GEOM, Types.OTHER, "GEOMETRY", 0, 0);
+        output.addColumn(SOURCE, Types.INTEGER, 10, 0);
+        output.addColumn(THRESHOLD, Types.DOUBLE, 10, 0);
+        return output;
+    }
+
+    /**
+     * Searches the sources one after the other while the rows are read
+     */
+    private static final class VertexRowSource implements SimpleRowSource {
+
+        private final CSRGraph graph;
+        private final CSRDijkstra dijkstra;
+        private final int[] sources;
+        private final double[] limits;
+        private int nextSource = 0;
+        private int source = -1;
+        private int settled = 0;
+        private int threshold = 0;
+
+        private VertexRowSource(CSRGraph graph, int[] sources, double[] limits) {
+            this.graph = graph;
+            this.dijkstra = new CSRDijkstra(graph);
+            this.sources = sources;
+            this.limits = limits;
+        }
+
+        @Override
+        public Object[] readRow() {
+            while (source < 0 || settled == dijkstra.getSettledCount()) {
+                if (nextSource == sources.length) {
+                    return null;
+                }
+                source = sources[nextSource++];
+                dijkstra.calculate(source, limits[limits.length - 1]);
+                settled = 0;
+                threshold = 0;
+            }
+            // Vertices are settled by increasing distance
+            final int v = dijkstra.getSettledVertex(settled++);
+            final double distance = dijkstra.getDistance(v);
+            while (distance > limits[threshold]) {
+                threshold++;
+            }
+            return new Object[]{graph.getVertexId(source), limits[threshold], graph.getVertexId(v), distance};
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void reset() {
+            nextSource = 0;
+            source = -1;
+        }
+    }
+
+    /**
+     * Edges reached from a source within the largest threshold, sorted on the
+     * cost to travel them entirely
+     */
+    private static final class ReachedEdges {
+        private final double[] costs;
+        private final int[] edgeIds;
+
+        private ReachedEdges(double[] costs, int[] edgeIds) {
+            this.costs = costs;
+            this.edgeIds = edgeIds;
+        }
+
+        static ReachedEdges search(CSRDijkstra dijkstra, CSRGraph graph, int source, double limit) {
+            dijkstra.calculate(source, limit);
+            final List<double[]> arcs = new ArrayList<>();
+            for (int i = 0; i < dijkstra.getSettledCount(); i++) {
+                final int v = dijkstra.getSettledVertex(i);
+                final double distance = dijkstra.getDistance(v);
+                for (int arc = graph.getFirstArc(v); arc < graph.getFirstArc(v + 1); arc++) {
+                    final double cost = distance + graph.getWeight(arc);
+                    if (cost <= limit) {
+                        arcs.add(new double[]{cost, arc});
+                    }
+                }
+            }
+            arcs.sort((a, b) -> Double.compare(a[0], b[0]));
+            final double[] costs = new double[arcs.size()];
+            final int[] edgeIds = new int[arcs.size()];
+            for (int i = 0; i < costs.length; i++) {
+                costs[i] = arcs.get(i)[0];
+                edgeIds[i] = Math.abs(graph.getEdgeId((int) arcs.get(i)[1]));
+            }
+            return new ReachedEdges(costs, edgeIds);
+        }
+    }
+
+    /**
+     * Builds the area of each source and threshold while the rows are read
+     */
+    private static final class AreaRowSource implements SimpleRowSource {
+
+        private final CSRGraph graph;
+        private final int[] sources;
+        private final ReachedEdges[] reached;
+        private final double[] limits;
+        private final Map<Integer, Geometry> edgeGeometries;
+        private final GeometryFactory factory;
+        private final int srid;
+        private final double buffer;
+        private int source = 0;
+        private int threshold = 0;
+        private int next = 0;
+        private final Set<Integer> edges = new HashSet<>();
+        private final List<Geometry> geometries = new ArrayList<>();
+
+        private AreaRowSource(CSRGraph graph, int[] sources, ReachedEdges[] reached, double[] limits,
+                              Map<Integer, Geometry> edgeGeometries, int srid, double buffer) {
+            this.graph = graph;
+            this.sources = sources;
+            this.reached = reached;
+            this.limits = limits;
+            this.edgeGeometries = edgeGeometries;
+            this.factory = new GeometryFactory(new PrecisionModel(), srid);
+            this.srid = srid;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public Object[] readRow() {
+            if (threshold == limits.length) {
+                source++;
+                threshold = 0;
+                next = 0;
+                edges.clear();
+                geometries.clear();
+            }
+            if (source == sources.length) {
+                return null;
+            }
+            final ReachedEdges arcs = reached[source];
+            final double limit = limits[threshold++];
+            for (; next < arcs.costs.length && arcs.costs[next] <= limit; next++) {
+                final int edgeID = arcs.edgeIds[next];
+                final Geometry geometry = edgeGeometries.get(edgeID);
+                if (geometry != null && edges.add(edgeID)) {
+                    geometries.add(geometry);
+                }
+            }
+            final Geometry area = geometries.isEmpty() ? factory.createPolygon()
+                    : factory.buildGeometry(geometries).buffer(buffer);
+            area.setSRID(srid);
+            return new Object[]{area, graph.getVertexId(sources[source]), limit};
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void reset() {
+            source = 0;
+            threshold = 0;
+            next = 0;
+            edges.clear();
+            geometries.clear();
+        }
+    }
+
+    /**
+     * @return The thresholds sorted in increasing order
+     */
+    private static double[] parseThresholds(String thresholds) {
+        final String[] values = thresholds.split(",");
+        final double[] limits = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            final String value = values[i].trim();
+            if (value.isEmpty()) {
+                throw new IllegalArgumentException("Empty threshold. Too many commas?");
+            }
+            limits[i] = Double.parseDouble(value);
+            if (!(limits[i] >= 0)) {
+                throw new IllegalArgumentException("The thresholds must be positive: " + value);
+            }
+        }
+        Arrays.sort(limits);
+        return limits;
+    }
+
+    /**
+     * @return The source vertex indices
+     */
+    private static int[] parseSources(Connection connection, CSRGraph graph, String sources) throws SQLException {
+        if (GraphFunctionParser.isDestinationsString(sources)) {
+            final int[] ids = GraphFunctionParser.parseDestinationsString(sources);
+            final int[] indices = new int[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                indices[i] = graph.checkVertex(ids[i]);
+            }
+            return indices;
+        }
+        final TableLocation sourceTable = TableUtilities.parseInputTable(connection, sources);
+        final List<Integer> indices = new ArrayList<>();
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT " + SOURCE + " FROM " + sourceTable)) {
+            while (rs.next()) {
+                indices.add(graph.checkVertex(rs.getInt(1)));
+            }
+        }
+        if (indices.isEmpty()) {
+            throw new IllegalArgumentException("Table " + sourceTable + " was empty.");
+        }
+        final int[] result = new int[indices.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = indices.get(i);
+        }
+        return result;
+    }
+}
@@ -20,6 +20,7 @@
 package org.h2gis.network.functions;
 
 import org.h2.tools.SimpleResultSet;
+import org.h2.tools.SimpleRowSource;
 import org.h2gis.api.ScalarFunction;
 import org.h2gis.utilities.TableLocation;
 import org.h2gis.utilities.TableUtilities;
@@ -30,7 +31,9 @@ import org.javanetworkanalyzer.model.KeyedGraph;
 import org.locationtech.jts.geom.Geometry;
 
 import java.sql.*;
+import java.util.ArrayDeque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -46,8 +49,6 @@ import static org.h2gis.utilities.TableUtilities.isColumnListConnection;
  */
 public class ST_ShortestPath extends GraphFunction implements ScalarFunction {
 
-    private int globalID = 1;
-
     public static final String NO_GEOM_FIELD_ERROR = "The input table must contain a geometry field.";
 
     public static final String REMARKS =
@@ -55,12 +56,17 @@ public class ST_ShortestPath extends GraphFunction implements ScalarFunction {
             "Possible signatures:\n" +
             "* `ST_ShortestPath('input_edges', 'o[ - eo]', s, d)`  - One-to-One\n" +
             "* `ST_ShortestPath('input_edges', 'o[ - eo]', 'w', s, d)`  - One-to-One weighted\n" +
+            "* `ST_ShortestPath('input_edges', 'o[ - eo], m', ['w', ]s, d)`  - One-to-One with a search mode\n" +
             "\n" +
             "where\n" +
             "* `input_edges` = Edges table produced by `ST_Graph` from table `input`\n" +
             "* `o` = Global orientation (directed, reversed or undirected)\n" +
             "* `eo` = Edge orientation (1 = directed, -1 = reversed, 0 = undirected). Required\n" +
             "  if global orientation is directed or reversed.\n" +
+            "* `m` = Search mode: `dijkstra` (default) returns all the shortest paths,\n" +
+            "  `bidirectional` and `astar` return one shortest path and settle fewer vertices.\n" +
+            "  `astar` uses the straight line distance between the end points of the edge\n" +
+            "  geometries, scaled so that it never exceeds the weights.\n" +
             "* `w` = Name of column containing edge weights as doubles\n" +
             "* `s` = Source vertex id\n" +
             "* `d` = Destination vertex id\n";
@@ -126,89 +132,219 @@ public class ST_ShortestPath extends GraphFunction implements ScalarFunction {
         } catch (SQLException ex) {
         }
         final boolean containsGeomField = firstGeometryField != null;
-        final SimpleResultSet output = prepareResultSet(containsGeomField);
         if (isColumnListConnection(connection)) {
-            return output;
+            return prepareResultSet(containsGeomField, null);
         }
-        // Do the calculation.
-        final KeyedGraph<VDijkstra, Edge> graph =
-                prepareGraph(connection, inputTable, orientation, weight,
-                        VDijkstra.class, Edge.class);
-        final Dijkstra<VDijkstra, Edge> dijkstra = new Dijkstra<VDijkstra, Edge>(graph);
-        final VDijkstra vDestination = graph.getVertex(destination);
-        final double distance = dijkstra.oneToOne(graph.getVertex(source), vDestination);
-
-        if (distance != Double.POSITIVE_INFINITY) {           
-            // Need to create an object for the globalID recursion.
-            final ST_ShortestPath f = new ST_ShortestPath();
-            if (containsGeomField) {
-                final Map<Integer, Geometry> edgeGeometryMap =
-                        getEdgeGeometryMap(connection, tableName, firstGeometryField);
-                f.addPredEdges(graph, vDestination, output, edgeGeometryMap, 1);
-            } else {
-                f.addPredEdges(graph, vDestination, output, 1);
+        final GraphFunctionParser parser = new GraphFunctionParser();
+        parser.parseWeightAndOrientation(orientation, weight);
+        final Map<Integer, Step[]> predecessors;
+        if (parser.getSearchMode() != GraphFunctionParser.SearchMode.DIJKSTRA) {
+            final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
+            final CSRPath path = findPath(connection, tableName, firstGeometryField, graph,
+                    parser.getSearchMode(), source, destination);
+            predecessors = path != null ? getPredecessors(graph, path) : new HashMap<>();
+        } else {
+            // Do the calculation.
+            final KeyedGraph<VDijkstra, Edge> graph =
+                    acquireGraph(connection, inputTable, orientation, weight,
+                            VDijkstra.class, Edge.class);
+            try {
+                final Dijkstra<VDijkstra, Edge> dijkstra = new Dijkstra<VDijkstra, Edge>(graph);
+                final VDijkstra vDestination = graph.getVertex(destination);
+                final double distance = dijkstra.oneToOne(graph.getVertex(source), vDestination);
+                predecessors = distance != Double.POSITIVE_INFINITY ?
+                        getPredecessors(graph, vDestination) : new HashMap<>();
+            } finally {
+                releaseGraph(graph);
             }
         }
-        return output;
+        Map<Integer, Geometry> edgeGeometryMap = null;
+        if (containsGeomField) {
+            final Set<Integer> edgeIds = new HashSet<>();
+            for (Step[] steps : predecessors.values()) {
+                for (Step step : steps) {
+                    edgeIds.add(Math.abs(step.edgeId));
+                }
+            }
+            edgeGeometryMap = getEdgeGeometryMap(connection, tableName, firstGeometryField, edgeIds);
+        }
+        return prepareResultSet(containsGeomField,
+                new PathRowSource(predecessors, destination, edgeGeometryMap));
     }
 
-    private void addPredEdges(KeyedGraph<VDijkstra, Edge> graph, VDijkstra dest, SimpleResultSet output,
-                              Map<Integer, Geometry> edgeGeomMap, int localID) throws SQLException {
-        // Rebuild the shortest path(s). (Yes, there could be more than
-        // one if they have the same distance!)
-        final Set<Edge> predEdges = dest.getPredecessorEdges();
-        // The only vertex with no predecessors is the source vertex, so we can
-        // start renumbering here.
-        if (predEdges.isEmpty()) {
-            globalID++;
+    /**
+     * Find one shortest path with the bidirectional or the A* search
+     *
+     * @return The path, null if the destination is not reachable
+     */
+    private static CSRPath findPath(Connection connection, TableLocation tableName, String geometryField,
+                                    CSRGraph graph, GraphFunctionParser.SearchMode searchMode,
+                                    int source, int destination) throws SQLException {
+        final int s = graph.getVertexIndex(source);
+        if (s < 0) {
+            throw new IllegalArgumentException("Source vertex not found");
+        }
+        final int d = graph.getVertexIndex(destination);
+        if (d < 0) {
+            throw new IllegalArgumentException("Target vertex not found");
         }
-        // Recursively add the predecessor edges.
-        for (Edge e : predEdges) {
-            final VDijkstra edgeSource = graph.getEdgeSource(e);
-            final VDijkstra edgeDestination = graph.getEdgeTarget(e);
-            final Geometry geometry = edgeGeomMap.get(Math.abs(e.getID()));
-            // Right order
-            if (edgeDestination.equals(dest)) {
-                output.addRow(geometry, e.getID(), globalID, localID,
-                        edgeSource.getID(), edgeDestination.getID(), graph.getEdgeWeight(e));
-                addPredEdges(graph, edgeSource, output, edgeGeomMap, localID + 1);
-            } // Wrong order
-            else {
-                output.addRow(geometry, e.getID(), globalID, localID,
-                        edgeDestination.getID(), edgeSource.getID(), graph.getEdgeWeight(e));
-                addPredEdges(graph, edgeDestination, output, edgeGeomMap, localID + 1);
+        if (searchMode == GraphFunctionParser.SearchMode.BIDIRECTIONAL) {
+            return new CSRBidirectionalDijkstra(graph).oneToOne(s, d);
+        }
+        if (geometryField == null) {
+            throw new IllegalArgumentException(NO_GEOM_FIELD_ERROR);
+        }
+        final CSRDijkstra search = new CSRDijkstra(graph);
+        search.aStar(s, d, EuclideanHeuristic.get(connection, tableName, geometryField, graph));
+        return CSRPath.fromSearch(search, d);
+    }
+
+    /**
+     * Copy the predecessor edges of the vertices of the shortest paths, so
+     * the cached graph can be released before the rows are read.
+     *
+     * @return The predecessor steps of each vertex id, the source has none
+     */
+    private static Map<Integer, Step[]> getPredecessors(KeyedGraph<VDijkstra, Edge> graph,
+                                                        VDijkstra destination) {
+        final Map<Integer, Step[]> predecessors = new HashMap<>();
+        final ArrayDeque<VDijkstra> queue = new ArrayDeque<>();
+        queue.add(destination);
+        while (!queue.isEmpty()) {
+            final VDijkstra dest = queue.poll();
+            if (predecessors.containsKey(dest.getID())) {
+                continue;
             }
+            // Rebuild the shortest path(s). (Yes, there could be more than
+            // one if they have the same distance!)
+            final Set<Edge> predEdges = dest.getPredecessorEdges();
+            final Step[] steps = new Step[predEdges.size()];
+            int i = 0;
+            for (Edge e : predEdges) {
+                final VDijkstra edgeSource = graph.getEdgeSource(e);
+                final VDijkstra edgeDestination = graph.getEdgeTarget(e);
+                // The edge may be taken in the wrong order
+                final VDijkstra previous = edgeDestination.equals(dest) ? edgeSource : edgeDestination;
+                steps[i++] = new Step(e.getID(), previous.getID(), graph.getEdgeWeight(e));
+                queue.add(previous);
+            }
+            predecessors.put(dest.getID(), steps);
+        }
+        return predecessors;
+    }
+
+    /**
+     * @return The predecessor step of each vertex id of the path
+     */
+    private static Map<Integer, Step[]> getPredecessors(CSRGraph graph, CSRPath path) {
+        final Map<Integer, Step[]> predecessors = new HashMap<>();
+        for (int i = 0; i < path.size(); i++) {
+            predecessors.put(graph.getVertexId(path.getTarget(i)), new Step[]{
+                    new Step(path.getEdgeId(i), graph.getVertexId(path.getSource(i)), path.getWeight(i))});
         }
+        return predecessors;
     }
 
-    private void addPredEdges(KeyedGraph<VDijkstra, Edge> graph, VDijkstra dest, SimpleResultSet output,
-                              int localID) throws SQLException {
-        // Rebuild the shortest path(s). (Yes, there could be more than
-        // one if they have the same distance!)
-        final Set<Edge> predEdges = dest.getPredecessorEdges();
-        // The only vertex with no predecessors is the source vertex, so we can
-        // start renumbering here.
-        if (predEdges.isEmpty()) {
-            globalID++;
+    /**
+     * An edge of a shortest path, taken from the previous vertex
+     */
+    private static final class Step {
+        private final int edgeId;
+        private final int previous;
+        private final double weight;
+
+        Step(int edgeId, int previous, double weight) {
+            this.edgeId = edgeId;
+            this.previous = previous;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Rows of the shortest paths, enumerated lazily by a depth first walk of
+     * the predecessor edges from the destination. A path id is given to each
+     * branch that reaches the source, the edges shared with the previous path
+     * are not repeated.
+     */
+    private static final class PathRowSource implements SimpleRowSource {
+
+        private final Map<Integer, Step[]> predecessors;
+        private final int destination;
+        private final Map<Integer, Geometry> edgeGeometryMap;
+        private final ArrayDeque<Frame> stack = new ArrayDeque<>();
+        private int pathID;
+
+        PathRowSource(Map<Integer, Step[]> predecessors, int destination,
+                      Map<Integer, Geometry> edgeGeometryMap) {
+            this.predecessors = predecessors;
+            this.destination = destination;
+            this.edgeGeometryMap = edgeGeometryMap;
+            reset();
+        }
+
+        @Override
+        public Object[] readRow() {
+            while (!stack.isEmpty()) {
+                final Frame frame = stack.peek();
+                if (frame.next == frame.steps.length) {
+                    stack.pop();
+                    continue;
+                }
+                final Step step = frame.steps[frame.next++];
+                final Object[] row;
+                if (edgeGeometryMap != null) {
+                    row = new Object[]{edgeGeometryMap.get(Math.abs(step.edgeId)), step.edgeId, pathID,
+                            frame.localID, step.previous, frame.vertex, step.weight};
+                } else {
+                    row = new Object[]{step.edgeId, pathID,
+                            frame.localID, step.previous, frame.vertex, step.weight};
+                }
+                push(step.previous, frame.localID + 1);
+                return row;
+            }
+            return null;
+        }
+
+        /**
+         * Walk the predecessor edges of the vertex, or start the next path if
+         * the vertex is the source
+         */
+        private void push(int vertex, int localID) {
+            final Step[] steps = predecessors.get(vertex);
+            if (steps == null || steps.length == 0) {
+                pathID++;
+            } else {
+                stack.push(new Frame(vertex, steps, localID));
+            }
+        }
+
+        @Override
+        public void close() {
+            stack.clear();
+        }
+
+        @Override
+        public void reset() {
+            stack.clear();
+            pathID = 1;
+            if (predecessors.containsKey(destination)) {
+                push(destination, 1);
+            }
         }
-        // Recursively add the predecessor edges.
-        for (Edge e : predEdges) {
-            final VDijkstra edgeSource = graph.getEdgeSource(e);
-            final VDijkstra edgeDestination = graph.getEdgeTarget(e);
-            // Right order
-            if (edgeDestination.equals(dest)) {
-                output.addRow(e.getID(), globalID, localID,
-                        edgeSource.getID(), edgeDestination.getID(), graph.getEdgeWeight(e));
-                addPredEdges(graph, edgeSource, output, localID + 1);
-            } // Wrong order
-            else {
-                output.addRow(e.getID(), globalID, localID,
-                        edgeDestination.getID(), edgeSource.getID(), graph.getEdgeWeight(e));
-                addPredEdges(graph, edgeDestination, output, localID + 1);
-           }
+
+        private static final class Frame {
+            private final int vertex;
+            private final Step[] steps;
+            private final int localID;
+            private int next = 0;
+
+            Frame(int vertex, Step[] steps, int localID) {
+                this.vertex = vertex;
+                this.steps = steps;
+                this.localID = localID;
+            }
         }
     }
-    
 
     /**
      * Return a map of edge ids to edge geometries, or null if the input table
@@ -225,6 +361,27 @@ public class ST_ShortestPath extends GraphFunction implements ScalarFunction {
                                                                TableLocation tableName,
                                                                String firstGeometryField)
             throws SQLException {
+        return getEdgeGeometryMap(connection, tableName, firstGeometryField, null);
+    }
+
+    /**
+     * Return a map of the given edge ids to edge geometries, or null if the
+     * input table contains no geometry fields. Only the geometries of these
+     * edges are kept while the table is read.
+     *
+     * @param connection Connection
+     * @param tableName  TableLocation
+     * @param firstGeometryField
+     * @param edgeIds    Edge ids, null for all the edges
+     * @return A map of edge ids to edge geometries, or null if the input table
+     * contains no geometry fields
+     * @throws SQLException
+     */
+    protected static Map<Integer, Geometry> getEdgeGeometryMap(Connection connection,
+                                                               TableLocation tableName,
+                                                               String firstGeometryField,
+                                                               Set<Integer> edgeIds)
+            throws SQLException {
         if (firstGeometryField == null) {
             return null;
         }
@@ -238,6 +395,9 @@ public class ST_ShortestPath extends GraphFunction implements ScalarFunction {
                 Map<Integer, Geometry> edgeGeomMap = new HashMap<Integer, Geometry>();
                 while (resultSet.next()) {
                     final int edgeID = resultSet.getInt(1);
+                    if (edgeIds != null && !edgeIds.contains(edgeID)) {
+                        continue;
+                    }
                     final Geometry geom = (Geometry) resultSet.getObject(2);
                     edgeGeomMap.put(edgeID, geom);
                 }
@@ -257,9 +417,10 @@ public class ST_ShortestPath extends GraphFunction implements ScalarFunction {
      * DESTINATION and DISTANCE columns
      *
      * @param includeGeomColumn True if we include a Geometry column
+     * @param rowSource         Row source, null for an empty result set
      */
-    private static SimpleResultSet prepareResultSet(boolean includeGeomColumn) {
-        SimpleResultSet output = new SimpleResultSet();
+    private static SimpleResultSet prepareResultSet(boolean includeGeomColumn, SimpleRowSource rowSource) {
+        SimpleResultSet output = rowSource != null ? new SimpleResultSet(rowSource) : new SimpleResultSet();
         if (includeGeomColumn) {
             output.addColumn(THE_GEOM, Types.OTHER, "GEOMETRY", 0, 0);
         }
@@ -21,19 +21,17 @@ package org.h2gis.network.functions;
 
 
 import org.h2.tools.SimpleResultSet;
+import org.h2.tools.SimpleRowSource;
 import org.h2.value.Value;
 import org.h2.value.ValueInteger;
 import org.h2.value.ValueVarchar;
 import org.h2gis.api.ScalarFunction;
 import org.h2gis.utilities.JDBCUtilities;
-import org.javanetworkanalyzer.alg.Dijkstra;
-import org.javanetworkanalyzer.data.VDijkstra;
-import org.javanetworkanalyzer.model.Edge;
-import org.javanetworkanalyzer.model.KeyedGraph;
 
 import java.sql.*;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -41,8 +39,8 @@ import static org.h2gis.network.functions.GraphConstants.*;
 import static org.h2gis.utilities.TableUtilities.isColumnListConnection;
 
 /**
- * Calculates the length(s) of shortest path(s) between vertices in a JGraphT
- * graph produced from the input_edges table produced by ST_Graph.
+ * Calculates the length(s) of shortest path(s) between vertices in a
+ * {@link CSRGraph} produced from the input_edges table produced by ST_Graph.
  *
  * @author Adam Gouge
  */
@@ -248,12 +246,10 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
                                      int source,
                                      int destination) throws SQLException {
         final SimpleResultSet output = prepareResultSet();
-        final KeyedGraph<VDijkstra, Edge> graph =
-                prepareGraph(connection, inputTable, orientation, weight,
-                        VDijkstra.class, Edge.class);
+        final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
         // 7: (o, w, s, d)
-        final double distance = new Dijkstra<VDijkstra, Edge>(graph)
-                .oneToOne(graph.getVertex(source), graph.getVertex(destination));
+        final double distance = new CSRDijkstra(graph)
+                .oneToOne(graph.checkVertex(source), graph.checkVertex(destination));
         output.addRow(source, destination, distance);
         return output;
     }
@@ -263,17 +259,11 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
                                       String orientation,
                                       String weight,
                                       int source) throws SQLException {
-        final SimpleResultSet output = prepareResultSet();
-        final KeyedGraph<VDijkstra, Edge> graph =
-                prepareGraph(connection, inputTable, orientation, weight,
-                        VDijkstra.class, Edge.class);
+        final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
         // 5: (o, w, s)
-        final Map<VDijkstra,Double> distances = new Dijkstra<VDijkstra, Edge>(graph)
-                        .oneToMany(graph.getVertex(source), graph.vertexSet());
-        for (Map.Entry<VDijkstra, Double> e : distances.entrySet()) {
-            output.addRow(source, e.getKey().getID(), e.getValue());
-        }
-        return output;
+        final CSRDijkstra dijkstra = new CSRDijkstra(graph);
+        dijkstra.calculate(graph.checkVertex(source));
+        return prepareResultSet(new OneToManyRowSource(dijkstra, source, null));
     }
 
     private static ResultSet manyToMany(Connection connection,
@@ -281,33 +271,25 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
                                         String orientation,
                                         String weight,
                                         String sourceDestinationTable) throws SQLException {
-        final SimpleResultSet output = prepareResultSet();
-        final KeyedGraph<VDijkstra, Edge> graph =
-                prepareGraph(connection, inputTable, orientation, weight,
-                        VDijkstra.class, Edge.class);
+        final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
         final Statement st = connection.createStatement();
         try {
             // Prepare the source-destination map from the source-destination table.
-            Map<VDijkstra, Set<VDijkstra>> sourceDestinationMap =
+            Map<Integer, int[]> sourceDestinationMap =
                     prepareSourceDestinationMap(st, sourceDestinationTable, graph);
-
-            // Reusable Dijkstra object.
-            final Dijkstra<VDijkstra, Edge> dijkstra = new Dijkstra<VDijkstra, Edge>(graph);
-
-            // 6: (o, w, sdt). Do One-to-Many many times and store the results.
-            for (Map.Entry<VDijkstra, Set<VDijkstra>> sourceToDestSetMap : sourceDestinationMap.entrySet()) {
-                Map<VDijkstra, Double> distances =
-                        dijkstra.oneToMany(sourceToDestSetMap.getKey(),
-                                           sourceToDestSetMap.getValue());
-                for (Map.Entry<VDijkstra, Double> destToDistMap : distances.entrySet()) {
-                    output.addRow(sourceToDestSetMap.getKey().getID(),
-                            destToDistMap.getKey().getID(), destToDistMap.getValue());
-                }
+            final int[] sources = new int[sourceDestinationMap.size()];
+            final int[][] destinations = new int[sources.length][];
+            int i = 0;
+            for (Map.Entry<Integer, int[]> sourceToDestSetMap : sourceDestinationMap.entrySet()) {
+                sources[i] = sourceToDestSetMap.getKey();
+                destinations[i] = sourceToDestSetMap.getValue();
+                i++;
             }
+            // 6: (o, w, sdt). Do One-to-Many for each source in parallel.
+            return prepareResultSet(new ManyToManyRowSource(graph, sources, destinations));
         } finally {
             st.close();
         }
-        return output;
     }
 
     private static ResultSet manyToManySeparateTables(
@@ -317,57 +299,87 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
             String weight,
             String sourceTable,
             String destTable) throws SQLException {
-        final SimpleResultSet output = prepareResultSet();
-        final KeyedGraph<VDijkstra, Edge> graph =
-                prepareGraph(connection, inputTable, orientation, weight,
-                        VDijkstra.class, Edge.class);
+        final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
         final Statement st = connection.createStatement();
         try {
-            final Set<VDijkstra> destSet = getSet(st, graph, destTable);
-            final Set<VDijkstra> sourceSet = getSet(st, graph, sourceTable);
-            final Dijkstra<VDijkstra, Edge> dijkstra = new Dijkstra<VDijkstra, Edge>(graph);
-            for (VDijkstra source : sourceSet) {
-                Map<VDijkstra, Double> distances =
-                        dijkstra.oneToMany(source, destSet);
-                for (Map.Entry<VDijkstra, Double> destToDistMap : distances.entrySet()) {
-                    output.addRow(source.getID(),
-                            destToDistMap.getKey().getID(), destToDistMap.getValue());
-                }
-            }
+            final int[] destSet = getSet(st, graph, destTable);
+            final int[] sourceSet = getSet(st, graph, sourceTable);
+            final int[][] destinations = new int[sourceSet.length][];
+            Arrays.fill(destinations, destSet);
+            return prepareResultSet(new ManyToManyRowSource(graph, sourceSet, destinations));
         } finally {
             st.close();
         }
-        return output;
     }
 
     /**
-     * Puts the integers contained in the first column of the table in a Set of
-     * corresponding VDijkstra.
+     * Rows (SOURCE, DESTINATION, DISTANCE) read from the distances of a
+     * search, one row per destination.
+     */
+    private static final class OneToManyRowSource implements SimpleRowSource {
+
+        private final CSRDijkstra dijkstra;
+        private final int sourceId;
+        private final int[] destinations;
+        private int next = 0;
+
+        /**
+         * @param dijkstra     Search run from the source
+         * @param sourceId     Source vertex id
+         * @param destinations Destination vertex indices, null for all the
+         *                     vertices
+         */
+        OneToManyRowSource(CSRDijkstra dijkstra, int sourceId, int[] destinations) {
+            this.dijkstra = dijkstra;
+            this.sourceId = sourceId;
+            this.destinations = destinations;
+        }
+
+        @Override
+        public Object[] readRow() {
+            final CSRGraph graph = dijkstra.getGraph();
+            final int count = destinations == null ? graph.getVertexCount() : destinations.length;
+            if (next == count) {
+                return null;
+            }
+            final int dest = destinations == null ? next : destinations[next];
+            next++;
+            return new Object[]{sourceId, graph.getVertexId(dest), dijkstra.getDistance(dest)};
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void reset() {
+            next = 0;
+        }
+    }
+
+    /**
+     * Puts the integers contained in the first column of the table in a set of
+     * vertex indices.
      *
      * @param st        Statement
      * @param graph     Graph
      * @param tableName Table
-     * @return Set of VDijkstra
+     * @return Distinct vertex indices
      * @throws SQLException
      */
-    private static Set<VDijkstra> getSet(Statement st,
-            KeyedGraph<VDijkstra, Edge> graph, String tableName) throws SQLException {
+    private static int[] getSet(Statement st,
+            CSRGraph graph, String tableName) throws SQLException {
         final ResultSet intSet =
                 st.executeQuery("SELECT * FROM " + tableName);
         try {
-            final Set<VDijkstra> set = new HashSet<VDijkstra>();
+            final Set<Integer> set = new LinkedHashSet<Integer>();
             while (intSet.next()) {
-                final int vertexID = intSet.getInt(1);
-                final VDijkstra vertex = graph.getVertex(vertexID);
-                if (vertex == null) {
-                    throw new IllegalArgumentException("The graph does not contain vertex " + vertexID);
-                }
-                set.add(vertex);
+                set.add(graph.checkVertex(intSet.getInt(1)));
             }
             if (set.isEmpty()) {
                 throw new IllegalArgumentException("Table " + tableName + " was empty.");
             }
-            return set;
+            return toArray(set);
         } finally {
             intSet.close();
         }
@@ -379,27 +391,18 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
                                           String weight,
                                           int source,
                                           String destString) throws SQLException {
-        final SimpleResultSet output = prepareResultSet();
-        final KeyedGraph<VDijkstra, Edge> graph =
-                prepareGraph(connection, inputTable, orientation, weight,
-                        VDijkstra.class, Edge.class);
+        final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
 
         final int[] destIDs = GraphFunctionParser.parseDestinationsString(destString);
-        Set<VDijkstra> destSet = new HashSet<VDijkstra>();
+        Set<Integer> destSet = new LinkedHashSet<Integer>();
         for (int d : destIDs)  {
-            final VDijkstra dest = graph.getVertex(d);
-            if (dest == null) {
-                throw new IllegalArgumentException("The graph does not contain vertex " + d);
-            }
-            destSet.add(dest);
+            destSet.add(graph.checkVertex(d));
         }
         // 8: (o, w, s, ds)
-        final Map<VDijkstra, Double> distances = new Dijkstra<VDijkstra, Edge>(graph)
-                .oneToMany(graph.getVertex(source), destSet);
-        for (Map.Entry<VDijkstra, Double> e : distances.entrySet()) {
-            output.addRow(source, e.getKey().getID(), e.getValue());
-        }
-        return output;
+        final int[] destinations = toArray(destSet);
+        final CSRDijkstra dijkstra = new CSRDijkstra(graph);
+        dijkstra.calculate(graph.checkVertex(source), destinations);
+        return prepareResultSet(new OneToManyRowSource(dijkstra, source, destinations));
     }
 
     /**
@@ -408,13 +411,13 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
      *
      * @param sourceDestinationTable Source-Destination table name
      * @param graph                  Graph
-     * @return Source-Destination map
+     * @return Source-Destination map of vertex indices
      * @throws SQLException
      */
-    private static Map<VDijkstra, Set<VDijkstra>> prepareSourceDestinationMap(
+    private static Map<Integer, int[]> prepareSourceDestinationMap(
             Statement st,
             String sourceDestinationTable,
-            KeyedGraph<VDijkstra, Edge> graph) throws SQLException {
+            CSRGraph graph) throws SQLException {
         final ResultSet sourceDestinationRS =
                 st.executeQuery("SELECT " +
                         SOURCE + ", " + DESTINATION +
@@ -422,28 +425,35 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
         try {
             // Make sure the source-destination table has columns named
             // SOURCE and DESTINATION. An SQLException is thrown if not.
-            Map<VDijkstra, Set<VDijkstra>> map = new HashMap<VDijkstra, Set<VDijkstra>>();
+            Map<Integer, Set<Integer>> map = new LinkedHashMap<Integer, Set<Integer>>();
             while (sourceDestinationRS.next()) {
-                final VDijkstra source = graph.getVertex(sourceDestinationRS.getInt(SOURCE_INDEX));
-                final VDijkstra destination = graph.getVertex(sourceDestinationRS.getInt(DESTINATION_INDEX));
-                Set<VDijkstra> targets = map.get(source);
+                final int source = graph.checkVertex(sourceDestinationRS.getInt(SOURCE_INDEX));
+                final int destination = graph.checkVertex(sourceDestinationRS.getInt(DESTINATION_INDEX));
                 // Lazy initialize if the destinations set is null.
-                if (targets == null) {
-                    targets = new HashSet<VDijkstra>();
-                    map.put(source, targets);
-                }
-                // Add the destination.
-                targets.add(destination);
+                map.computeIfAbsent(source, k -> new LinkedHashSet<Integer>()).add(destination);
             }
             if (map.isEmpty()) {
                 throw new IllegalArgumentException("No sources/destinations requested.");
             }
-            return map;
+            Map<Integer, int[]> result = new LinkedHashMap<Integer, int[]>(map.size());
+            for (Map.Entry<Integer, Set<Integer>> e : map.entrySet()) {
+                result.put(e.getKey(), toArray(e.getValue()));
+            }
+            return result;
         } finally {
             sourceDestinationRS.close();
         }
     }
 
+    private static int[] toArray(Set<Integer> set) {
+        final int[] array = new int[set.size()];
+        int i = 0;
+        for (int v : set) {
+            array[i++] = v;
+        }
+        return array;
+    }
+
     /**
      * Return a new {@link org.h2.tools.SimpleResultSet} with SOURCE,
      * DESTINATION and DISTANCE columns.
@@ -451,7 +461,21 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
      * DESTINATION and DISTANCE columns
      */
     private static SimpleResultSet prepareResultSet() {
-        SimpleResultSet output = new SimpleResultSet();
+        return addColumns(new SimpleResultSet());
+    }
+
+    /**
+     * Return a new {@link org.h2.tools.SimpleResultSet} with SOURCE,
+     * DESTINATION and DISTANCE columns reading its rows from the given source.
+     *
+     * @param rowSource Row source
+     * @return a new {@link org.h2.tools.SimpleResultSet}
+     */
+    private static SimpleResultSet prepareResultSet(SimpleRowSource rowSource) {
+        return addColumns(new SimpleResultSet(rowSource));
+    }
+
+    private static SimpleResultSet addColumns(SimpleResultSet output) {
         output.addColumn(SOURCE, Types.INTEGER, 10, 0);
         output.addColumn(DESTINATION, Types.INTEGER, 10, 0);
         output.addColumn(DISTANCE, Types.DOUBLE, 10, 0);
@@ -167,42 +167,45 @@ public class ST_ShortestPathTree extends GraphFunction implements ScalarFunction
         }
         // Do the calculation.
         final KeyedGraph<VDijkstra, Edge> graph =
-                prepareGraph(connection, inputTable, orientation, weight,
+                acquireGraph(connection, inputTable, orientation, weight,
                         VDijkstra.class, Edge.class);
+        try {
+            final Dijkstra<VDijkstra, Edge> dijkstra = new Dijkstra<VDijkstra, Edge>(graph);
+            final VDijkstra vSource = graph.getVertex(source);
+            final TraversalGraph<VDijkstra, Edge> shortestPathTree;
 
-        final Dijkstra<VDijkstra, Edge> dijkstra = new Dijkstra<VDijkstra, Edge>(graph);
-        final VDijkstra vSource = graph.getVertex(source);
-        final TraversalGraph<VDijkstra, Edge> shortestPathTree;
-
-        if (radius < Double.POSITIVE_INFINITY) {
-            dijkstra.calculate(vSource, radius);
-            shortestPathTree = dijkstra.reconstructTraversalGraph(radius);
-        } else {
-            dijkstra.calculate(vSource);
-            shortestPathTree = dijkstra.reconstructTraversalGraph();
-        }
-
-        if (containsGeomField) {
-            final Map<Integer, Geometry> edgeGeometryMap =
-                    ST_ShortestPath.getEdgeGeometryMap(connection, tableName, firstGeometryField);
-            for (Edge e : shortestPathTree.edgeSet()) {
-                final Edge baseGraphEdge = e.getBaseGraphEdge();
-                final int id = baseGraphEdge.getID();
-                output.addRow(edgeGeometryMap.get(Math.abs(id)),
-                        id,
-                        shortestPathTree.getEdgeSource(e).getID(),
-                        shortestPathTree.getEdgeTarget(e).getID(),
-                        graph.getEdgeWeight(baseGraphEdge));
+            if (radius < Double.POSITIVE_INFINITY) {
+                dijkstra.calculate(vSource, radius);
+                shortestPathTree = dijkstra.reconstructTraversalGraph(radius);
+            } else {
+                dijkstra.calculate(vSource);
+                shortestPathTree = dijkstra.reconstructTraversalGraph();
             }
-        } else {
-            for (Edge e : shortestPathTree.edgeSet()) {
-                final Edge baseGraphEdge = e.getBaseGraphEdge();
-                final int id = baseGraphEdge.getID();
-                output.addRow(id,
-                        shortestPathTree.getEdgeSource(e).getID(),
-                        shortestPathTree.getEdgeTarget(e).getID(),
-                        graph.getEdgeWeight(baseGraphEdge));
+
+            if (containsGeomField) {
+                final Map<Integer, Geometry> edgeGeometryMap =
+                        ST_ShortestPath.getEdgeGeometryMap(connection, tableName, firstGeometryField);
+                for (Edge e : shortestPathTree.edgeSet()) {
+                    final Edge baseGraphEdge = e.getBaseGraphEdge();
+                    final int id = baseGraphEdge.getID();
+                    output.addRow(edgeGeometryMap.get(Math.abs(id)),
+                            id,
+                            shortestPathTree.getEdgeSource(e).getID(),
+                            shortestPathTree.getEdgeTarget(e).getID(),
+                            graph.getEdgeWeight(baseGraphEdge));
+                }
+            } else {
+                for (Edge e : shortestPathTree.edgeSet()) {
+                    final Edge baseGraphEdge = e.getBaseGraphEdge();
+                    final int id = baseGraphEdge.getID();
+                    output.addRow(id,
+                            shortestPathTree.getEdgeSource(e).getID(),
+                            shortestPathTree.getEdgeTarget(e).getID(),
+                            graph.getEdgeWeight(baseGraphEdge));
+                }
             }
+        } finally {
+            releaseGraph(graph);
         }
         return output;
     }
@@ -361,6 +361,60 @@ public class GraphCreatorTest {
         }
     }
 
+    @Test
+    public void testCSRGraph() throws SQLException {
+        for (GraphFunctionParser.Orientation orientation : GraphFunctionParser.Orientation.values()) {
+            final String edgeOrientation = orientation == GraphFunctionParser.Orientation.UNDIRECTED
+                    ? null : "edge_orientation";
+            for (String weight : new String[]{null, "weight"}) {
+                final KeyedGraph<VDijkstra, Edge> graph = new GraphCreator<VDijkstra, Edge>(connection,
+                        "CORMEN_EDGES_ALL", orientation, edgeOrientation, weight,
+                        VDijkstra.class, Edge.class).prepareGraph();
+                final CSRGraph csrGraph = CSRGraph.load(connection, "CORMEN_EDGES_ALL",
+                        orientation, edgeOrientation, weight);
+                assertEquals(graph.vertexSet().size(), csrGraph.getVertexCount());
+                // Undirected edges are stored in both directions
+                final boolean undirected = orientation == GraphFunctionParser.Orientation.UNDIRECTED;
+                assertEquals(graph.edgeSet().size() * (undirected ? 2 : 1), csrGraph.getArcCount());
+                for (Edge e : graph.edgeSet()) {
+                    checkArc(csrGraph, e.getID(), graph.getEdgeSource(e).getID(),
+                            graph.getEdgeTarget(e).getID(), graph.getEdgeWeight(e));
+                    if (undirected) {
+                        checkArc(csrGraph, e.getID(), graph.getEdgeTarget(e).getID(),
+                                graph.getEdgeSource(e).getID(), graph.getEdgeWeight(e));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCSRInvalidOrientation() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            final Statement st = connection.createStatement();
+            st.execute("DROP TABLE IF EXISTS COPY; CREATE TABLE COPY AS SELECT * FROM CORMEN_EDGES_ALL");
+            st.execute("UPDATE COPY SET edge_orientation=2 WHERE edge_id=1");
+            try {
+                CSRGraph.load(connection, "COPY", GraphFunctionParser.Orientation.DIRECTED,
+                        "edge_orientation", "weight");
+            } finally {
+                st.execute("DROP TABLE COPY");
+                st.close();
+            }
+        });
+    }
+
+    private void checkArc(CSRGraph graph, int id, int source, int dest, double weight) {
+        final int v = graph.checkVertex(source);
+        for (int arc = graph.getFirstArc(v); arc < graph.getFirstArc(v + 1); arc++) {
+            if (graph.getEdgeId(arc) == id && graph.getVertexId(graph.getTarget(arc)) == dest) {
+                assertEquals(weight, graph.getWeight(arc), TOLERANCE);
+                return;
+            }
+        }
+        fail("Arc " + id + " from " + source + " to " + dest + " not found");
+    }
+
     @Test
     public void testNullOrientation() {
         assertThrows(IllegalArgumentException.class, () -> testOrientation("NULL"));
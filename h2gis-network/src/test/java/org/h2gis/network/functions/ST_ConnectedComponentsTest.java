@@ -151,6 +151,21 @@ public class ST_ConnectedComponentsTest {
                 getEdgePartition(st.executeQuery("SELECT * FROM " + name + EDGE_COMP_SUFFIX)));
     }
 
+    @Test
+    public void testLongDirectedCycle() throws Exception {
+        // A cycle deep enough to overflow a recursive search
+        final int n = 100000;
+        st.execute("DROP TABLE IF EXISTS CYCLE, CYCLE" + NODE_COMP_SUFFIX + ", CYCLE" + EDGE_COMP_SUFFIX);
+        st.execute("CREATE TABLE CYCLE AS SELECT X " + EDGE_ID + ", X " + START_NODE + ", " +
+                "MOD(X, " + n + ") + 1 " + END_NODE + ", 1 EDGE_ORIENTATION FROM SYSTEM_RANGE(1, " + n + ")");
+        checkBoolean(st.executeQuery("SELECT ST_ConnectedComponents('CYCLE', " + DO + ")"));
+        assertEquals(getOneElementPartition(n),
+                getVertexPartition(st.executeQuery("SELECT * FROM CYCLE" + NODE_COMP_SUFFIX)));
+        assertEquals(getOneElementPartition(n),
+                getEdgePartition(st.executeQuery("SELECT * FROM CYCLE" + EDGE_COMP_SUFFIX)));
+        st.execute("DROP TABLE CYCLE, CYCLE" + NODE_COMP_SUFFIX + ", CYCLE" + EDGE_COMP_SUFFIX);
+    }
+
     private Set<Set<Integer>> getOneElementPartition(int n) {
         Set<Set<Integer>> p = new HashSet<Set<Integer>>();
         Set<Integer> component = new HashSet<Integer>();
@@ -0,0 +1,151 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+package org.h2gis.network.functions;
+
+import org.h2.jdbc.JdbcSQLNonTransientException;
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.functions.factory.H2GISFunctions;
+import org.junit.jupiter.api.*;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public class ST_ContractionHierarchyTest {
+
+    private static Connection connection;
+    private Statement st;
+    private static final double TOLERANCE = 0.0;
+    private static final String DO = "'directed - edge_orientation'";
+    private static final String RO = "'reversed - edge_orientation'";
+    private static final String U = "'undirected'";
+    private static final String W = "'weight'";
+
+    @BeforeAll
+    public static void setUp() throws Exception {
+        // Keep a connection alive to not close the DataBase on each unit test
+        connection = H2GISDBFactory.createSpatialDataBase("ST_ContractionHierarchyTest", true);
+        H2GISFunctions.registerFunction(connection.createStatement(), new ST_ContractionHierarchy(), "");
+        H2GISFunctions.registerFunction(connection.createStatement(), new ST_ContractedPathLength(), "");
+        H2GISFunctions.registerFunction(connection.createStatement(), new ST_ShortestPathLength(), "");
+        GraphCreatorTest.registerCormenGraph(connection);
+    }
+
+    @BeforeEach
+    public void setUpStatement() throws Exception {
+        st = connection.createStatement();
+        st.execute("DROP TABLE IF EXISTS CORMEN_EDGES_ALL_CH, COPY_EDGES_ALL_CH");
+    }
+
+    @AfterEach
+    public void tearDownStatement() throws Exception {
+        st.close();
+    }
+
+    @AfterAll
+    public static void tearDown() throws Exception {
+        connection.close();
+    }
+
+    @Test
+    public void testAllPairs() throws Exception {
+        for (String orientation : new String[]{DO, RO, U}) {
+            for (String weight : new String[]{null, W}) {
+                st.execute("DROP TABLE IF EXISTS CORMEN_EDGES_ALL_CH");
+                ResultSet rs = st.executeQuery("SELECT ST_ContractionHierarchy('CORMEN_EDGES_ALL', "
+                        + orientation + ((weight != null) ? ", " + weight : "") + ")");
+                assertTrue(rs.next());
+                assertTrue(rs.getBoolean(1));
+                rs.close();
+                for (int source = 1; source <= 5; source++) {
+                    for (int destination = 1; destination <= 5; destination++) {
+                        assertEquals(shortestPathLength("CORMEN_EDGES_ALL", orientation, weight, source, destination),
+                                contractedPathLength("CORMEN_EDGES_ALL_CH", source, destination), TOLERANCE);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWeightedDirected() throws Exception {
+        st.execute("CALL ST_ContractionHierarchy('CORMEN_EDGES_ALL', " + DO + ", " + W + ")");
+        assertEquals(0.0, contractedPathLength("CORMEN_EDGES_ALL_CH", 1, 1), TOLERANCE);
+        assertEquals(8.0, contractedPathLength("CORMEN_EDGES_ALL_CH", 1, 2), TOLERANCE);
+        assertEquals(5.0, contractedPathLength("CORMEN_EDGES_ALL_CH", 1, 3), TOLERANCE);
+        assertEquals(13.0, contractedPathLength("CORMEN_EDGES_ALL_CH", 1, 4), TOLERANCE);
+        assertEquals(7.0, contractedPathLength("CORMEN_EDGES_ALL_CH", 1, 5), TOLERANCE);
+    }
+
+    @Test
+    public void testUnreachableVertices() throws Exception {
+        st.execute("CALL ST_ContractionHierarchy('COPY_EDGES_ALL', " + DO + ", " + W + ")");
+        // Vertices 3 and 6 are in different connected components.
+        assertEquals(Double.POSITIVE_INFINITY, contractedPathLength("COPY_EDGES_ALL_CH", 3, 6), TOLERANCE);
+        // 7 is reachable from 6, but not the other way around.
+        assertEquals(1.0, contractedPathLength("COPY_EDGES_ALL_CH", 6, 7), TOLERANCE);
+        assertEquals(Double.POSITIVE_INFINITY, contractedPathLength("COPY_EDGES_ALL_CH", 7, 6), TOLERANCE);
+    }
+
+    @Test
+    public void testNonexistentVertex() throws Exception {
+        st.execute("CALL ST_ContractionHierarchy('CORMEN_EDGES_ALL', " + U + ")");
+        assertThrows(JdbcSQLNonTransientException.class, () ->
+                contractedPathLength("CORMEN_EDGES_ALL_CH", 1, 6));
+    }
+
+    @Test
+    public void testUpdatedHierarchy() throws Exception {
+        st.execute("DROP TABLE IF EXISTS CH_EDGES, CH_EDGES_CH;" +
+                "CREATE TABLE CH_EDGES AS SELECT * FROM CORMEN_EDGES_ALL");
+        st.execute("CALL ST_ContractionHierarchy('CH_EDGES', " + U + ", " + W + ")");
+        assertEquals(4.0, contractedPathLength("CH_EDGES_CH", 5, 2), TOLERANCE);
+        // A cached hierarchy is not used once its table is rebuilt
+        st.execute("UPDATE CH_EDGES SET WEIGHT = 2 * WEIGHT;" +
+                "DROP TABLE CH_EDGES_CH");
+        st.execute("CALL ST_ContractionHierarchy('CH_EDGES', " + U + ", " + W + ")");
+        assertEquals(8.0, contractedPathLength("CH_EDGES_CH", 5, 2), TOLERANCE);
+        st.execute("DROP TABLE CH_EDGES, CH_EDGES_CH");
+    }
+
+    private double contractedPathLength(String chTable, int source, int destination) throws SQLException {
+        try (ResultSet rs = st.executeQuery("SELECT ST_ContractedPathLength('" + chTable + "', "
+                + source + ", " + destination + ")")) {
+            assertTrue(rs.next());
+            return rs.getDouble(1);
+        }
+    }
+
+    private double shortestPathLength(String table, String orientation, String weight,
+                                      int source, int destination) throws SQLException {
+        try (ResultSet rs = st.executeQuery("SELECT * FROM ST_ShortestPathLength('" + table + "', "
+                + orientation + ((weight != null) ? ", " + weight : "")
+                + ", " + source + ", " + destination + ")")) {
+            assertTrue(rs.next());
+            return rs.getDouble(ST_ShortestPathLength.DISTANCE_INDEX);
+        }
+    }
+}
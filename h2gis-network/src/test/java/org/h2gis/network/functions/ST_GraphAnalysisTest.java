@@ -20,6 +20,7 @@
 package org.h2gis.network.functions;
 
 
+import org.h2.jdbc.JdbcSQLNonTransientException;
 import org.h2gis.functions.factory.H2GISDBFactory;
 import org.h2gis.functions.factory.H2GISFunctions;
 import org.junit.jupiter.api.*;
@@ -405,6 +406,81 @@ public class ST_GraphAnalysisTest {
                 new double[]{0., 4./7, 6./7, 2./7, 3./7, 0., 1., 2./7, 6./7, 4./7, 1./7, 2./7, 2./7});
     }
 
+    @Test
+    public void testPivotsExact() throws Exception {
+        st.execute("DROP TABLE IF EXISTS CORMEN_EDGES_ALL" + NODE_CENT_SUFFIX);
+        st.execute("DROP TABLE IF EXISTS CORMEN_EDGES_ALL" + EDGE_CENT_SUFFIX);
+        // 0 pivots, or at least as many pivots as nodes, is the exact computation
+        checkBoolean(st.executeQuery("SELECT ST_GraphAnalysis('CORMEN_EDGES_ALL', " + DO + ", 0)"));
+        checkNodes(st.executeQuery("SELECT * FROM CORMEN_EDGES_ALL" + NODE_CENT_SUFFIX),
+                new double[]{
+                        4.0 / (0.0 + 1.0 + 1.0 + 2.0 + 1.0),
+                        4.0 / (3.0 + 0.0 + 1.0 + 2.0 + 2.0),
+                        4.0 / (2.0 + 1.0 + 0.0 + 1.0 + 1.0),
+                        4.0 / (2.0 + 1.0 + 2.0 + 0.0 + 1.0),
+                        4.0 / (1.0 + 2.0 + 2.0 + 1.0 + 0.0)},
+                DO_RO_NODE_BETWEENNESS
+        );
+        checkEdges(st.executeQuery("SELECT * FROM CORMEN_EDGES_ALL" + EDGE_CENT_SUFFIX),
+                DO_RO_EDGE_BETWEENNESS);
+
+        st.execute("DROP TABLE CORMEN_EDGES_ALL" + NODE_CENT_SUFFIX);
+        st.execute("DROP TABLE CORMEN_EDGES_ALL" + EDGE_CENT_SUFFIX);
+        checkBoolean(st.executeQuery("SELECT ST_GraphAnalysis('CORMEN_EDGES_ALL', " + DO + ", " + W + ", 10)"));
+        checkNodes(st.executeQuery("SELECT * FROM CORMEN_EDGES_ALL" + NODE_CENT_SUFFIX),
+                new double[]{
+                        4.0 / (0.0 + 8.0 + 5.0 + 13.0 + 7.0),
+                        4.0 / (11.0 + 0.0 + 2.0 + 10.0 + 4.0),
+                        4.0 / (9.0 + 3.0 + 0.0 + 8.0 + 2.0),
+                        4.0 / (11.0 + 1.0 + 3.0 + 0.0 + 4.0),
+                        4.0 / (7.0 + 7.0 + 9.0 + 6.0 + 0.0)},
+                WDO_WRO_NODE_BETWEENNESS
+        );
+        checkEdges(st.executeQuery("SELECT * FROM CORMEN_EDGES_ALL" + EDGE_CENT_SUFFIX),
+                WDO_WRO_EDGE_BETWEENNESS);
+    }
+
+    @Test
+    public void testPivotsEstimate() throws Exception {
+        final int n = 101;
+        final String tableName = createLineGraphTable(connection, n);
+        final double[][] first = estimate(tableName, n, 20);
+        st.execute("DROP TABLE " + tableName + NODE_CENT_SUFFIX);
+        st.execute("DROP TABLE " + tableName + EDGE_CENT_SUFFIX);
+        final double[][] second = estimate(tableName, n, 20);
+        // The pivots are chosen with a fixed seed
+        assertArrayEquals(first[0], second[0]);
+        assertArrayEquals(first[1], second[1]);
+        // The ends of the line are on no shortest path
+        assertEquals(0., first[0][1], TOLERANCE);
+        assertEquals(0., first[0][n], TOLERANCE);
+        for (int k = 1; k <= n; k++) {
+            assertTrue(first[0][k] >= 0. && first[0][k] <= 1.);
+            // Estimated from the distances to the pivots
+            final double closeness = 2. * (n - 1) / (k * (k - 1) + (n - k) * (n - k + 1));
+            assertEquals(closeness, first[1][k], closeness / 2);
+        }
+    }
+
+    @Test
+    public void testNegativePivots() {
+        assertThrows(JdbcSQLNonTransientException.class, () ->
+                st.executeQuery("SELECT ST_GraphAnalysis('CORMEN_EDGES_ALL', " + DO + ", -1)"));
+    }
+
+    private double[][] estimate(String tableName, int n, int pivots) throws SQLException {
+        checkBoolean(st.executeQuery("SELECT ST_GraphAnalysis('" + tableName + "', 'undirected', " + pivots + ")"));
+        final double[][] values = new double[2][n + 1];
+        try (ResultSet nodeCent = st.executeQuery("SELECT * FROM " + tableName + NODE_CENT_SUFFIX)) {
+            while (nodeCent.next()) {
+                final int k = nodeCent.getInt(NODE_ID);
+                values[0][k] = nodeCent.getDouble(BETWEENNESS);
+                values[1][k] = nodeCent.getDouble(CLOSENESS);
+            }
+        }
+        return values;
+    }
+
     @Test
     public void testLineGraphOdd() throws Exception {
         testBatchComputation(5 * BATCH_SIZE + 1);
@@ -0,0 +1,149 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+package org.h2gis.network.functions;
+
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.functions.factory.H2GISFunctions;
+import org.junit.jupiter.api.*;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public class ST_GraphCacheTest {
+
+    private static Connection connection;
+    private Statement st;
+    private static final double TOLERANCE = 0.0;
+
+    @BeforeAll
+    public static void setUp() throws Exception {
+        // Keep a connection alive to not close the DataBase on each unit test
+        connection = H2GISDBFactory.createSpatialDataBase("ST_GraphCacheTest", true);
+        H2GISFunctions.registerFunction(connection.createStatement(), new ST_GraphCache(), "");
+        H2GISFunctions.registerFunction(connection.createStatement(), new ST_ShortestPathLength(), "");
+        GraphCreatorTest.registerCormenGraph(connection);
+    }
+
+    @BeforeEach
+    public void setUpStatement() throws Exception {
+        st = connection.createStatement();
+        st.execute("DROP TABLE IF EXISTS CACHE_EDGES; CREATE TABLE CACHE_EDGES AS SELECT * FROM CORMEN_EDGES_ALL");
+    }
+
+    @AfterEach
+    public void tearDownStatement() throws Exception {
+        st.execute("CALL ST_GraphCache()");
+        st.close();
+    }
+
+    @AfterAll
+    public static void tearDown() throws Exception {
+        connection.close();
+    }
+
+    @Test
+    public void testLoadAndDrop() throws Exception {
+        ResultSet rs = st.executeQuery("SELECT ST_GraphCache('CACHE_EDGES', 'directed - edge_orientation', 'weight')");
+        assertTrue(rs.next());
+        // The undirected edge is stored in both directions
+        assertEquals(11, rs.getInt(1));
+        rs.close();
+        rs = st.executeQuery("SELECT ST_GraphCache('CACHE_EDGES', 'undirected')");
+        assertTrue(rs.next());
+        assertEquals(10, rs.getInt(1));
+        rs.close();
+        // Each graph is kept as a JGraphT graph and as a compressed graph
+        assertEquals(4, dropGraphs("'CACHE_EDGES'"));
+        assertEquals(0, dropGraphs("'CACHE_EDGES'"));
+    }
+
+    @Test
+    public void testReuseAndInvalidate() throws Exception {
+        st.execute("CALL ST_GraphCache('CACHE_EDGES', 'directed - edge_orientation', 'weight')");
+        assertEquals(8.0, distance(1, 2), TOLERANCE);
+        assertEquals(7.0, distance(1, 5), TOLERANCE);
+        st.execute("UPDATE CACHE_EDGES SET WEIGHT = WEIGHT * 2");
+        assertEquals(16.0, distance(1, 2), TOLERANCE);
+        assertEquals(14.0, distance(1, 5), TOLERANCE);
+        // The updated compressed graph and the outdated JGraphT graph
+        assertEquals(2, dropGraphs(""));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        long maxEdges = GraphCache.getMaxEdges();
+        try {
+            GraphCache.setMaxEdges(25);
+            st.execute("CALL ST_GraphCache('CACHE_EDGES', 'directed - edge_orientation', 'weight')");
+            st.execute("CALL ST_GraphCache('CACHE_EDGES', 'undirected')");
+            // Only the most recently used graph fits in the cache
+            assertEquals(1, dropGraphs(""));
+        } finally {
+            GraphCache.setMaxEdges(maxEdges);
+        }
+    }
+
+    @Test
+    public void testUncommittedChanges() throws Exception {
+        st.execute("CALL ST_GraphCache('CACHE_EDGES', 'directed - edge_orientation', 'weight')");
+        try (Connection other = H2GISDBFactory.openSpatialDataBase("ST_GraphCacheTest");
+             Statement otherSt = other.createStatement()) {
+            other.setAutoCommit(false);
+            otherSt.execute("UPDATE CACHE_EDGES SET WEIGHT = WEIGHT * 2");
+            // Each session sees its own version of the edges
+            assertEquals(16.0, distance(otherSt, 1, 2), TOLERANCE);
+            assertEquals(8.0, distance(st, 1, 2), TOLERANCE);
+            other.rollback();
+            assertEquals(8.0, distance(otherSt, 1, 2), TOLERANCE);
+            assertEquals(8.0, distance(st, 1, 2), TOLERANCE);
+            // A graph built while the changes are pending is not kept once they are committed
+            otherSt.execute("UPDATE CACHE_EDGES SET WEIGHT = WEIGHT * 3");
+            assertEquals(8.0, distance(st, 1, 2), TOLERANCE);
+            other.commit();
+            assertEquals(24.0, distance(st, 1, 2), TOLERANCE);
+            assertEquals(24.0, distance(otherSt, 1, 2), TOLERANCE);
+        }
+    }
+
+    private int dropGraphs(String table) throws Exception {
+        try (ResultSet rs = st.executeQuery("SELECT ST_GraphCache(" + table + ")")) {
+            assertTrue(rs.next());
+            return rs.getInt(1);
+        }
+    }
+
+    private double distance(int source, int destination) throws Exception {
+        return distance(st, source, destination);
+    }
+
+    private double distance(Statement st, int source, int destination) throws Exception {
+        try (ResultSet rs = st.executeQuery("SELECT DISTANCE FROM ST_ShortestPathLength('CACHE_EDGES', " +
+                "'directed - edge_orientation', 'weight', " + source + ", " + destination + ")")) {
+            assertTrue(rs.next());
+            return rs.getDouble(1);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <http://www.h2database.com>. H2GIS is developed by CNRS
+ * <http://www.cnrs.fr/>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <http://www.h2gis.org/>
+ * or contact directly: info_at_h2gis.org
+ */
+package org.h2gis.network.functions;
+
+import org.h2.jdbc.JdbcSQLNonTransientException;
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.functions.factory.H2GISFunctions;
+import org.junit.jupiter.api.*;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Erwan Bocher, CNRS, 2023
+ */
+public class ST_IsochroneTest {
+
+    private static Connection connection;
+    private Statement st;
+    private static final double TOLERANCE = 0.0;
+    private static final String DO = "'directed - edge_orientation'";
+    private static final String U = "'undirected'";
+    private static final String W = "'weight'";
+
+    @BeforeAll
+    public static void setUp() throws Exception {
+        // Keep a connection alive to not close the DataBase on each unit test
+        connection = H2GISDBFactory.createSpatialDataBase("ST_IsochroneTest", true);
+        H2GISFunctions.registerFunction(connection.createStatement(), new ST_Isochrone(), "");
+        GraphCreatorTest.registerCormenGraph(connection);
+    }
+
+    @BeforeEach
+    public void setUpStatement() throws Exception {
+        st = connection.createStatement();
+    }
+
+    @AfterEach
+    public void tearDownStatement() throws Exception {
+        st.close();
+    }
+
+    @AfterAll
+    public static void tearDown() throws Exception {
+        connection.close();
+    }
+
+    @Test
+    public void testReachedVerticesWD() throws Exception {
+        // Distances from 1: 1 -> 0, 2 -> 8, 3 -> 5, 4 -> 13, 5 -> 7
+        ResultSet rs = st.executeQuery("SELECT * FROM ST_Isochrone('CORMEN_EDGES_ALL', "
+                + DO + ", " + W + ", '1', '10, 5')");
+        checkVertex(rs, 1, 5.0, 1, 0.0);
+        checkVertex(rs, 1, 5.0, 3, 5.0);
+        checkVertex(rs, 1, 10.0, 5, 7.0);
+        checkVertex(rs, 1, 10.0, 2, 8.0);
+        assertFalse(rs.next());
+        rs.close();
+    }
+
+    @Test
+    public void testReachedVerticesSeveralSources() throws Exception {
+        ResultSet rs = st.executeQuery("SELECT * FROM ST_Isochrone('CORMEN_EDGES_ALL', "
+                + U + ", '1, 2', '1')");
+        final Map<Integer, Map<Integer, Double>> distances = collect(rs);
+        assertEquals(2, distances.size());
+        Map<Integer, Double> expected = new HashMap<>();
+        expected.put(1, 0.0);
+        expected.put(2, 1.0);
+        expected.put(3, 1.0);
+        expected.put(5, 1.0);
+        assertEquals(expected, distances.get(1));
+        assertEquals(0.0, distances.get(2).get(2), TOLERANCE);
+        assertFalse(distances.get(2).containsKey(5));
+    }
+
+    @Test
+    public void testReachedVerticesSourceTable() throws Exception {
+        st.execute("DROP TABLE IF EXISTS ISO_SOURCES;" +
+                "CREATE TABLE ISO_SOURCES(SOURCE INT);" +
+                "INSERT INTO ISO_SOURCES VALUES (1), (2);");
+        final Map<Integer, Map<Integer, Double>> fromTable = collect(st.executeQuery(
+                "SELECT * FROM ST_Isochrone('CORMEN_EDGES_ALL', " + U + ", " + W + ", 'ISO_SOURCES', '6')"));
+        final Map<Integer, Map<Integer, Double>> fromString = collect(st.executeQuery(
+                "SELECT * FROM ST_Isochrone('CORMEN_EDGES_ALL', " + U + ", " + W + ", '1, 2', '6')"));
+        assertEquals(fromString, fromTable);
+        assertEquals(5.0, fromTable.get(1).get(3), TOLERANCE);
+        assertFalse(fromTable.get(1).containsKey(2));
+        st.execute("DROP TABLE ISO_SOURCES");
+    }
+
+    @Test
+    public void testAreas() throws Exception {
+        ResultSet rs = st.executeQuery("SELECT * FROM ST_Isochrone('CORMEN_EDGES_ALL', "
+                + U + ", " + W + ", '1', '0, 5, 100', 0.1)");
+        assertTrue(rs.next());
+        assertEquals(0.0, rs.getDouble(GraphConstants.THRESHOLD), TOLERANCE);
+        assertTrue(((Geometry) rs.getObject(GraphConstants.THE_GEOM)).isEmpty());
+        assertTrue(rs.next());
+        assertEquals(5.0, rs.getDouble(GraphConstants.THRESHOLD), TOLERANCE);
+        final Geometry small = (Geometry) rs.getObject(GraphConstants.THE_GEOM);
+        assertTrue(small.getArea() > 0);
+        assertTrue(rs.next());
+        assertEquals(100.0, rs.getDouble(GraphConstants.THRESHOLD), TOLERANCE);
+        final Geometry large = (Geometry) rs.getObject(GraphConstants.THE_GEOM);
+        // The holes of the large area can lie on the offset curves of the small one
+        assertTrue(large.buffer(1e-6).covers(small));
+        assertTrue(large.getArea() > small.getArea());
+        // Every edge is reached
+        final GeometryFactory factory = new GeometryFactory();
+        for (Coordinate c : new Coordinate[]{new Coordinate(0, 1), new Coordinate(1, 2),
+                new Coordinate(2, 2), new Coordinate(1, 0), new Coordinate(2, 0)}) {
+            assertTrue(large.contains(factory.createPoint(c)));
+        }
+        assertEquals(1, rs.getInt(GraphConstants.SOURCE));
+        assertFalse(rs.next());
+        rs.close();
+    }
+
+    @Test
+    public void testAreasSRID() throws Exception {
+        st.execute("DROP TABLE IF EXISTS ISO_EDGES;" +
+                "CREATE TABLE ISO_EDGES AS SELECT ST_SetSRID(ROAD, 2154)::GEOMETRY(LINESTRING, 2154) ROAD, " +
+                "WEIGHT, EDGE_ORIENTATION, EDGE_ID, START_NODE, END_NODE FROM CORMEN_EDGES_ALL;");
+        // No edge, a single edge, then several edges buffered together
+        ResultSet rs = st.executeQuery("SELECT * FROM ST_Isochrone('ISO_EDGES', "
+                + U + ", " + W + ", '1', '0, 5, 7', 0.1)");
+        int count = 0;
+        while (rs.next()) {
+            assertEquals(2154, ((Geometry) rs.getObject(GraphConstants.THE_GEOM)).getSRID());
+            count++;
+        }
+        assertEquals(3, count);
+        rs.close();
+        st.execute("DROP TABLE ISO_EDGES");
+    }
+
+    @Test
+    public void testNonexistentSource() {
+        assertThrows(JdbcSQLNonTransientException.class, () ->
+                st.executeQuery("SELECT * FROM ST_Isochrone('CORMEN_EDGES_ALL', " + U + ", '6', '1')"));
+    }
+
+    @Test
+    public void testNegativeThreshold() {
+        assertThrows(JdbcSQLNonTransientException.class, () ->
+                st.executeQuery("SELECT * FROM ST_Isochrone('CORMEN_EDGES_ALL', " + U + ", '1', '-1')"));
+    }
+
+    private void checkVertex(ResultSet rs, int source, double threshold, int node, double distance)
+            throws SQLException {
+        assertTrue(rs.next());
+        assertEquals(source, rs.getInt(GraphConstants.SOURCE));
+        assertEquals(threshold, rs.getDouble(GraphConstants.THRESHOLD), TOLERANCE);
+        assertEquals(node, rs.getInt(GraphConstants.NODE_ID));
+        assertEquals(distance, rs.getDouble(GraphConstants.DISTANCE), TOLERANCE);
+    }
+
+    private Map<Integer, Map<Integer, Double>> collect(ResultSet rs) throws SQLException {
+        final Map<Integer, Map<Integer, Double>> distances = new HashMap<>();
+        while (rs.next()) {
+            assertTrue(rs.getDouble(GraphConstants.DISTANCE) <= rs.getDouble(GraphConstants.THRESHOLD));
+            distances.computeIfAbsent(rs.getInt(GraphConstants.SOURCE), k -> new HashMap<>())
+                    .put(rs.getInt(GraphConstants.NODE_ID), rs.getDouble(GraphConstants.DISTANCE));
+        }
+        rs.close();
+        return distances;
+    }
+}
@@ -22,6 +22,8 @@ package org.h2gis.network.functions;
 
 import org.h2.jdbc.JdbcSQLException;
 import org.h2.jdbc.JdbcSQLNonTransientException;
+import org.h2.tools.SimpleResultSet;
+import org.h2.value.ValueVarchar;
 import org.h2gis.functions.factory.H2GISDBFactory;
 import org.h2gis.functions.factory.H2GISFunctions;
 import org.junit.jupiter.api.*;
@@ -30,6 +32,8 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -401,6 +405,28 @@ public class ST_ShortestPathLengthTest {
         oneToAll(DO, 5, new double[]{1.0, 2.0, 2.0, 1.0, 0.0});
     }
 
+    @Test
+    public void oneToAllInsertSelect() throws Exception {
+        // The rows are read from the search as the insert fetches them
+        st.execute("DROP TABLE IF EXISTS ONE_TO_ALL");
+        st.execute("CREATE TABLE ONE_TO_ALL AS SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL', "
+                + DO + ", " + W + ", 1)");
+        final ResultSet rs = st.executeQuery("SELECT * FROM ONE_TO_ALL ORDER BY " + ST_ShortestPathLength.DESTINATION_INDEX);
+        try {
+            final double[] distances = new double[]{0.0, 8.0, 5.0, 13.0, 7.0};
+            for (int i = 0; i < distances.length; i++) {
+                assertTrue(rs.next());
+                assertEquals(1, rs.getInt(ST_ShortestPathLength.SOURCE_INDEX));
+                assertEquals(i + 1, rs.getInt(ST_ShortestPathLength.DESTINATION_INDEX));
+                assertEquals(distances[i], rs.getDouble(ST_ShortestPathLength.DISTANCE_INDEX), TOLERANCE);
+            }
+            assertFalse(rs.next());
+        } finally {
+            rs.close();
+        }
+        st.execute("DROP TABLE ONE_TO_ALL");
+    }
+
     @Test
     public void oneToAllWDO() throws Exception {
         // SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL',
@@ -935,4 +961,62 @@ public class ST_ShortestPathLengthTest {
         assertFalse(rs.next());
         rs.close();
     }
+
+    @Test
+    public void manyToManyGrid() throws SQLException {
+        // Undirected 20x20 grid, the distance between two nodes is the
+        // manhattan distance. The sources are split across several tasks.
+        final int size = 20;
+        st.execute("DROP TABLE IF EXISTS GRID_EDGES, GRID_SOURCES, GRID_DESTS, GRID_SD;" +
+                "CREATE TABLE GRID_EDGES(EDGE_ID INT AUTO_INCREMENT PRIMARY KEY, START_NODE INT, END_NODE INT);" +
+                "INSERT INTO GRID_EDGES(START_NODE, END_NODE) SELECT X, X + 1 FROM SYSTEM_RANGE(1, " + size * size + ") WHERE MOD(X, " + size + ") <> 0;" +
+                "INSERT INTO GRID_EDGES(START_NODE, END_NODE) SELECT X, X + " + size + " FROM SYSTEM_RANGE(1, " + size * (size - 1) + ");" +
+                "CREATE TABLE GRID_SOURCES AS SELECT X * 7 AS ID FROM SYSTEM_RANGE(1, 57);" +
+                "CREATE TABLE GRID_DESTS AS SELECT X * 13 AS ID FROM SYSTEM_RANGE(1, 30);" +
+                "CREATE TABLE GRID_SD AS SELECT S.ID SOURCE, D.ID DESTINATION FROM GRID_SOURCES S, GRID_DESTS D WHERE MOD(S.ID + D.ID, 3) = 0");
+        try {
+            checkGrid(st.executeQuery("SELECT * FROM ST_ShortestPathLength('GRID_EDGES', 'undirected', 'GRID_SOURCES', 'GRID_DESTS')"),
+                    size, 57 * 30);
+            ResultSet count = st.executeQuery("SELECT COUNT(*) FROM GRID_SD");
+            count.next();
+            final int sdCount = count.getInt(1);
+            count.close();
+            checkGrid(st.executeQuery("SELECT * FROM ST_ShortestPathLength('GRID_EDGES', 'undirected', 'GRID_SD')"),
+                    size, sdCount);
+            // The rows are computed again after a reset
+            SimpleResultSet rs = (SimpleResultSet) ST_ShortestPathLength.getShortestPathLength(connection,
+                    "GRID_EDGES", "undirected", ValueVarchar.get("GRID_SD"));
+            rs.setAutoClose(false);
+            int firstCount = 0;
+            while (rs.next()) {
+                firstCount++;
+            }
+            assertEquals(sdCount, firstCount);
+            rs.beforeFirst();
+            checkGrid(rs, size, sdCount);
+        } finally {
+            st.execute("DROP TABLE GRID_EDGES, GRID_SOURCES, GRID_DESTS, GRID_SD");
+        }
+    }
+
+    private void checkGrid(ResultSet rs, int size, int expectedCount) throws SQLException {
+        int count = 0;
+        int previousSource = -1;
+        final Set<Integer> finishedSources = new HashSet<>();
+        while (rs.next()) {
+            final int source = rs.getInt(ST_ShortestPathLength.SOURCE_INDEX) - 1;
+            final int destination = rs.getInt(ST_ShortestPathLength.DESTINATION_INDEX) - 1;
+            // Rows are grouped by source
+            if (source != previousSource) {
+                assertTrue(finishedSources.add(previousSource));
+                assertFalse(finishedSources.contains(source));
+                previousSource = source;
+            }
+            final int distance = Math.abs(source % size - destination % size) + Math.abs(source / size - destination / size);
+            assertEquals(distance, rs.getDouble(ST_ShortestPathLength.DISTANCE_INDEX), TOLERANCE);
+            count++;
+        }
+        rs.close();
+        assertEquals(expectedCount, count);
+    }
 }
@@ -24,6 +24,7 @@ import org.h2.jdbc.JdbcSQLNonTransientException;
 import org.h2.value.ValueGeometry;
 import org.h2gis.functions.factory.H2GISDBFactory;
 import org.h2gis.functions.factory.H2GISFunctions;
+import org.h2gis.utilities.TableLocation;
 import org.junit.jupiter.api.*;
 
 import java.sql.Connection;
@@ -808,6 +809,132 @@ public class ST_ShortestPathTest {
                 new PathEdge("LINESTRING (3 1, 4 2)", 11, 1, 1, 7, 6, 1.0)});
     }
 
+    @Test
+    public void testSearchModes() throws SQLException {
+        for (String orientation : new String[]{DO, RO, U}) {
+            for (String weight : new String[]{null, W}) {
+                for (int source = 1; source <= 5; source++) {
+                    for (int destination = 1; destination <= 5; destination++) {
+                        final double expected = firstPathLength(oneToOne(orientation, weight, source, destination));
+                        for (String mode : new String[]{"bidirectional", "astar"}) {
+                            final double actual = checkSinglePath(
+                                    oneToOne(withMode(orientation, mode), weight, source, destination),
+                                    source, destination);
+                            assertEquals(expected, actual, 1e-9);
+                        }
+                    }
+                }
+            }
+        }
+        // Unique shortest path
+        check(oneToOne(withMode(U, "astar"), W, 5, 2), new PathEdge[]{
+                new PathEdge("LINESTRING (1 2, 0.75 1, 1 0)", 3, 1, 1, 3, 2, 2.0),
+                new PathEdge("LINESTRING (1 0, 2 0)", 7, 1, 2, 5, 3, 2.0)});
+        check(oneToOne(withMode(U, "bidirectional"), W, 5, 2), new PathEdge[]{
+                new PathEdge("LINESTRING (1 2, 0.75 1, 1 0)", 3, 1, 1, 3, 2, 2.0),
+                new PathEdge("LINESTRING (1 0, 2 0)", 7, 1, 2, 5, 3, 2.0)});
+        check(oneToOne(withMode(DO, "dijkstra"), W, 5, 5), EMPTY);
+    }
+
+    @Test
+    public void testSearchModesUnreachable() throws SQLException {
+        assertFalse(oneToOne("COPY_EDGES_ALL", withMode(DO, "bidirectional"), W, 3, 6).next());
+        assertFalse(oneToOne("COPY_EDGES_ALL", withMode(DO, "astar"), W, 7, 6).next());
+        check(oneToOne("COPY_EDGES_ALL", withMode(U, "astar"), W, 7, 6), new PathEdge[]{
+                new PathEdge("LINESTRING (3 1, 4 2)", 11, 1, 1, 7, 6, 1.0)});
+    }
+
+    @Test
+    public void testUnknownSearchMode() {
+        assertThrows(JdbcSQLNonTransientException.class, () -> oneToOne(withMode(U, "dfs"), W, 1, 2));
+    }
+
+    @Test
+    public void testAStarSettlesFewerVertices() throws SQLException {
+        // 30x30 grid, edge weights are the edge lengths
+        st.execute("DROP TABLE IF EXISTS GRID_EDGES;" +
+                "CREATE TABLE GRID_EDGES(THE_GEOM GEOMETRY, EDGE_ID INT, START_NODE INT, END_NODE INT, WEIGHT DOUBLE)");
+        final int size = 30;
+        int edgeID = 1;
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                final int node = i * size + j + 1;
+                if (j + 1 < size) {
+                    st.execute("INSERT INTO GRID_EDGES VALUES ('LINESTRING (" + i + " " + j + ", " + i + " " + (j + 1)
+                            + ")', " + edgeID++ + ", " + node + ", " + (node + 1) + ", 1.0)");
+                }
+                if (i + 1 < size) {
+                    st.execute("INSERT INTO GRID_EDGES VALUES ('LINESTRING (" + i + " " + j + ", " + (i + 1) + " " + j
+                            + ")', " + edgeID++ + ", " + node + ", " + (node + size) + ", 1.0)");
+                }
+            }
+        }
+        final CSRGraph graph = CSRGraph.load(connection, "GRID_EDGES",
+                GraphFunctionParser.Orientation.UNDIRECTED, null, "WEIGHT");
+        final int source = graph.checkVertex(1);
+        final int destination = graph.checkVertex(size * size);
+        final CSRDijkstra dijkstra = new CSRDijkstra(graph);
+        final double distance = dijkstra.oneToOne(source, destination);
+        final int dijkstraSettled = dijkstra.getSettledCount();
+        final CSRDijkstra aStar = new CSRDijkstra(graph);
+        assertEquals(distance, aStar.aStar(source, destination,
+                EuclideanHeuristic.get(connection, TableLocation.parse("GRID_EDGES"), "THE_GEOM", graph)), 1e-9);
+        final CSRBidirectionalDijkstra bidirectional = new CSRBidirectionalDijkstra(graph);
+        assertEquals(distance, bidirectional.oneToOne(source, destination).getLength(), 1e-9);
+        assertEquals(2 * (size - 1), distance, 1e-9);
+        assertTrue(aStar.getSettledCount() <= dijkstraSettled);
+        assertTrue(bidirectional.getSettledCount() <= dijkstraSettled);
+        // A vertex in the middle of the grid
+        final int middle = graph.checkVertex(size * size / 2 + size / 2);
+        dijkstra.oneToOne(middle, destination);
+        aStar.aStar(middle, destination,
+                EuclideanHeuristic.get(connection, TableLocation.parse("GRID_EDGES"), "THE_GEOM", graph));
+        assertTrue(aStar.getSettledCount() < dijkstra.getSettledCount() / 2);
+        st.execute("DROP TABLE GRID_EDGES");
+    }
+
+    private static String withMode(String orientation, String mode) {
+        return orientation.substring(0, orientation.length() - 1) + ", " + mode + "'";
+    }
+
+    /**
+     * @return The length of the first path of the result set
+     */
+    private double firstPathLength(ResultSet rs) throws SQLException {
+        double length = 0;
+        while (rs.next()) {
+            if (rs.getInt(GraphConstants.PATH_ID) == 1) {
+                length += rs.getDouble(GraphConstants.WEIGHT);
+            }
+        }
+        rs.close();
+        return length;
+    }
+
+    /**
+     * Check that the result set holds one path from the source to the
+     * destination, listed from the destination
+     *
+     * @return The length of the path
+     */
+    private double checkSinglePath(ResultSet rs, int source, int destination) throws SQLException {
+        double length = 0;
+        int localID = 1;
+        int next = destination;
+        while (rs.next()) {
+            assertEquals(1, rs.getInt(GraphConstants.PATH_ID));
+            assertEquals(localID++, rs.getInt(GraphConstants.PATH_EDGE_ID));
+            assertEquals(next, rs.getInt(GraphConstants.DESTINATION));
+            next = rs.getInt(GraphConstants.SOURCE);
+            length += rs.getDouble(GraphConstants.WEIGHT);
+        }
+        rs.close();
+        if (localID > 1) {
+            assertEquals(source, next);
+        }
+        return length;
+    }
+
     private ResultSet oneToOne(String table, String orientation, String weight,
                                int source, int destination) throws SQLException {
         return st.executeQuery(